@@ -0,0 +1,78 @@
+package io.personium.client.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.Ace;
+import io.personium.client.Acl;
+import io.personium.client.DaoException;
+import io.personium.client.Principal;
+import io.personium.client.Role;
+
+/**
+ * Cost of writing an ACL as WebDAV XML with Acl.toXmlString and of reading it back with Acl.parse. Half of the roles
+ * belong to the Box of the base URL, the others to the main box, and one ACE grants to DAV:all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AclBenchmark {
+
+    /** Number of ACEs. */
+    @Param({"4", "64"})
+    int aces;
+
+    private Acl acl;
+    private String xml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws DaoException {
+        Fixtures.silenceLogging();
+        acl = new Acl();
+        acl.setBase("https://unit.example/cell/__role/box/");
+        acl.setRequireSchemaAuthz("public");
+        Ace all = new Ace();
+        all.setPrincipal(Principal.ALL);
+        all.addPrivilege("read");
+        acl.addAce(all);
+        for (int i = 1; i < aces; i++) {
+            Role role = new Role();
+            role.setName("role" + i);
+            role.setBoxName(i % 2 == 0 ? "box" : null);
+            Ace ace = new Ace();
+            ace.setPrincipal(role);
+            ace.addPrivilege("read");
+            ace.addPrivilege(i % 3 == 0 ? "write" : "read-acl");
+            if (i % 5 == 0) {
+                ace.addPrivilege("exec");
+            }
+            acl.addAce(ace);
+        }
+        xml = acl.toXmlString();
+    }
+
+    @Benchmark
+    public String toXmlString() throws DaoException {
+        return acl.toXmlString();
+    }
+
+    @Benchmark
+    public Acl parse() {
+        return Acl.parse(xml);
+    }
+}
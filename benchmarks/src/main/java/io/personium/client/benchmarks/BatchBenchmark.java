@@ -0,0 +1,92 @@
+package io.personium.client.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.DaoException;
+import io.personium.client.ODataBatch;
+import io.personium.client.ODataBatchResponseParser;
+import io.personium.client.ODataResponse;
+import io.personium.client.PersoniumContext;
+
+/**
+ * Cost of a $batch without the network.
+ * <p>
+ * {@code serialize} queues the operations in an ODataBatch, nine creations then a retrieval, and writes the request
+ * body produced by BatchAdapter. {@code parse} reads a response of the same shape with ODataBatchResponseParser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+
+    private static final String BASE_URL = "https://unit.example/";
+    private static final String BOUNDARY = "batch_bench";
+
+    /** Number of operations of the batch. */
+    @Param({"10", "100", "1000"})
+    int operations;
+
+    private PersoniumContext context;
+    private HashMap<String, Object> entity;
+    private byte[] response;
+
+    @Setup(Level.Trial)
+    public void setUp() throws DaoException {
+        Fixtures.silenceLogging();
+        context = new PersoniumContext(BASE_URL, "cell", "", "box", true);
+        entity = new HashMap<String, Object>();
+        entity.put("Name", "パーソニウム");
+        entity.put("Value", 12345);
+        entity.put("Enabled", true);
+        response = Fixtures.batchResponse(operations, BOUNDARY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long serialize() throws DaoException, IOException {
+        ODataBatch batch = new ODataBatch(context.withToken("token-0001"), BASE_URL + "cell/box/odata");
+        for (int i = 0; i < operations; i++) {
+            if (i % 10 == 9) {
+                batch.entitySet("Set").retrieveAsJson("id-" + i);
+            } else {
+                entity.put("__id", "id-" + i);
+                batch.entitySet("Set").createAsJson(entity);
+            }
+        }
+        HttpEntity body = batch.getAccessor().getBatchAdapter().getEntity();
+        body.writeTo(OutputStream.nullOutputStream());
+        return body.getContentLength();
+    }
+
+    @Benchmark
+    public List<ODataResponse> parse() {
+        return new ODataBatchResponseParser().parse(new ByteArrayInputStream(response), BOUNDARY);
+    }
+}
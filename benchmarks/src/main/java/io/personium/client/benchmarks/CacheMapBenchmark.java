@@ -0,0 +1,96 @@
+package io.personium.client.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.http.CacheEntry;
+import io.personium.client.http.CacheMap;
+
+/**
+ * Cost of the CacheMap operations on a full cache: a hit, a miss, and a put replacing an entry or evicting the least
+ * recently used one. {@code getContended} runs the hits on 4 threads, since all the operations share one lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheMapBenchmark {
+
+    /** Number of entries of the cache. */
+    @Param({"100", "1000"})
+    int entries;
+
+    private CacheMap cache;
+    private String[] keys;
+    private CacheEntry[] values;
+    private CacheEntry[] newValues;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.silenceLogging();
+        cache = new CacheMap(entries, CacheMap.DEFAULT_MAX_BYTES, 0, TimeUnit.MILLISECONDS);
+        keys = new String[entries];
+        values = new CacheEntry[entries];
+        newValues = new CacheEntry[entries];
+        String body = new String(Fixtures.text(1024), StandardCharsets.UTF_8);
+        for (int i = 0; i < entries; i++) {
+            keys[i] = "https://unit.example/cell/box/col/file-" + i + ".txt";
+            Header[] headers = {new BasicHeader("ETag", "\"1-" + i + "\""),
+                new BasicHeader("Content-Type", "text/plain")};
+            values[i] = new CacheEntry(keys[i], headers, body);
+            newValues[i] = new CacheEntry(keys[i] + "?new", headers, body);
+            cache.put(values[i]);
+        }
+    }
+
+    private int next() {
+        return ThreadLocalRandom.current().nextInt(entries);
+    }
+
+    @Benchmark
+    public CacheEntry getHit() {
+        return cache.get(keys[next()]);
+    }
+
+    @Benchmark
+    public CacheEntry getMiss() {
+        return cache.get(newValues[next()].getUrl());
+    }
+
+    @Benchmark
+    public void putReplace() {
+        cache.put(values[next()]);
+    }
+
+    @Benchmark
+    public void putEvict() {
+        int i = next();
+        cache.put(newValues[i]);
+        cache.put(values[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CacheEntry getContended() {
+        return cache.get(keys[next()]);
+    }
+}
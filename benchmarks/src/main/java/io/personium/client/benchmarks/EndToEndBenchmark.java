@@ -0,0 +1,122 @@
+package io.personium.client.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.Accessor;
+import io.personium.client.DaoException;
+import io.personium.client.DavCollection;
+import io.personium.client.ODataBatch;
+import io.personium.client.PersoniumContext;
+import io.personium.client.WebDAV;
+import io.personium.client.benchmarks.mock.MockPersoniumServer;
+import io.personium.client.http.PersoniumResponse;
+import io.personium.client.http.RestAdapter;
+import io.personium.client.http.RestAdapterFactory;
+
+/**
+ * Requests sent to MockPersoniumServer over the loopback interface, so that the whole client path is measured:
+ * connection pool, request building, response parsing.
+ * <p>
+ * {@code restGet} retrieves an entity with RestAdapter. {@code batch} sends a $batch of ten updates and a
+ * retrieval. {@code davGet} and {@code davPut} read and write a file of 1 KiB. {@code latency} is added by the server
+ * to every response; run with {@code -t} to add client threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final int BATCH_UPDATES = 10;
+
+    /** Latency added by the server, in milliseconds. */
+    @Param({"0", "5"})
+    long latency;
+
+    private MockPersoniumServer server;
+    private PersoniumContext context;
+    private Accessor accessor;
+    private String collectionUrl;
+    private String entityUrl;
+    private DavCollection dav;
+    private HashMap<String, Object> entity;
+    private String content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Fixtures.silenceLogging();
+        server = MockPersoniumServer.start();
+        server.addODataCollection("/cell/box/odata");
+        String base = server.getBaseUrl();
+        context = new PersoniumContext(base, "cell", "", "box", true);
+        accessor = context.asAccount(base + "cell/", "user", "password");
+        collectionUrl = base + "cell/box/odata";
+        entityUrl = collectionUrl + "/Set('id-0')";
+        entity = new HashMap<String, Object>();
+        entity.put("Name", "パーソニウム");
+        entity.put("Value", 12345);
+        entity.put("Enabled", true);
+        for (int i = 0; i < BATCH_UPDATES; i++) {
+            entity.put("__id", "id-" + i);
+            accessor.cell().box().odata("odata").entitySet("Set").createAsJson(entity);
+        }
+        entity.remove("__id");
+        accessor.cell().box().mkCol("dav");
+        dav = accessor.cell().box().col("dav");
+        content = new String(Fixtures.text(1024), StandardCharsets.UTF_8);
+        dav.put("file.txt", "text/plain", content, "*");
+        server.setLatency(latency, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        server.close();
+    }
+
+    @Benchmark
+    public PersoniumResponse restGet() throws DaoException {
+        RestAdapter rest = (RestAdapter) RestAdapterFactory.create(accessor);
+        return rest.get(entityUrl, RestAdapter.CONTENT_TYPE_JSON);
+    }
+
+    @Benchmark
+    public int batch() throws DaoException {
+        ODataBatch batch = new ODataBatch(accessor, collectionUrl);
+        for (int i = 0; i < BATCH_UPDATES; i++) {
+            batch.entitySet("Set").update("id-" + i, entity, "*");
+        }
+        batch.entitySet("Set").retrieveAsJson("id-0");
+        int[] count = new int[1];
+        batch.send(response -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public String davGet() throws DaoException {
+        return dav.getString("file.txt");
+    }
+
+    @Benchmark
+    public WebDAV davPut() throws DaoException {
+        return dav.put("file.txt", "text/plain", content, "*");
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+import io.personium.client.utils.PersoniumLogger;
+import io.personium.client.utils.PersoniumLoggerFactory;
+
+/**
+ * In-memory fixtures shared by the benchmarks.
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Replaces the default logger with a disabled no-op logger, so that the results do not depend on the logging
+     * configuration.
+     */
+    public static void silenceLogging() {
+        PersoniumLoggerFactory.setDefaultFactory(new PersoniumLoggerFactory() {
+            @SuppressWarnings("rawtypes")
+            @Override
+            protected PersoniumLogger newInstance(Class clazz) {
+                return new PersoniumLogger() {
+                    @Override
+                    public void debug(String msg) {
+                    }
+
+                    @Override
+                    public boolean isDebugEnabled() {
+                        return false;
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Creates a 200 response whose entity streams the given body, as received from the connection.
+     * @param body response body
+     * @param contentLength Content-Length, or -1 for a chunked response
+     * @return response
+     */
+    public static HttpResponse streamingResponse(byte[] body, long contentLength) {
+        BasicHttpResponse res = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(body));
+        entity.setContentLength(contentLength);
+        entity.setContentType("application/json; charset=utf-8");
+        res.setEntity(entity);
+        return res;
+    }
+
+    /**
+     * Creates a 200 response whose body is already in memory, as RestAdapter leaves it when not streaming.
+     * @param body response body
+     * @param contentType Content-Type
+     * @return response
+     */
+    public static HttpResponse bufferedResponse(byte[] body, String contentType) {
+        BasicHttpResponse res = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ByteArrayEntity entity = new ByteArrayEntity(body);
+        entity.setContentType(contentType);
+        res.setEntity(entity);
+        res.setHeader("Content-Type", contentType);
+        return res;
+    }
+
+    /**
+     * Creates the JSON body of an OData feed, as returned by a query on an entity set.
+     * @param entries number of entities
+     * @return body bytes
+     */
+    public static byte[] jsonFeed(int entries) {
+        StringBuilder sb = new StringBuilder("{\"d\":{\"results\":[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"__metadata\":{\"uri\":\"https://unit.example/cell/box/odata/Set('id-").append(i)
+                    .append("')\",\"etag\":\"W/\\\"1-1500000000000\\\"\",\"type\":\"UserData.Set\"},")
+                    .append("\"__id\":\"id-").append(i).append("\",")
+                    .append("\"__published\":\"/Date(1500000000000)/\",\"__updated\":\"/Date(1500000000000)/\",")
+                    .append("\"Name\":\"パーソニウム ").append(i).append("\",\"Value\":").append(i * 31)
+                    .append(",\"Enabled\":").append(i % 2 == 0).append(",\"Score\":").append(i / 7.0)
+                    .append(",\"Tags\":[\"a\",\"b\",\"c\"]}");
+        }
+        sb.append("],\"__count\":\"").append(entries).append("\"}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the XML body of a PROPFIND response on a collection.
+     * @param resources number of resources
+     * @return body bytes
+     */
+    public static byte[] multistatus(int resources) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>")
+                .append("<multistatus xmlns=\"DAV:\" xmlns:p=\"urn:x-personium:xmlns\">");
+        for (int i = 0; i < resources; i++) {
+            sb.append("<response><href>https://unit.example/cell/box/col/file-").append(i).append(".txt</href>")
+                    .append("<propstat><prop><creationdate>2017-07-14T02:40:00.000+0000</creationdate>")
+                    .append("<getcontentlength>").append(i * 100).append("</getcontentlength>")
+                    .append("<getcontenttype>text/plain</getcontenttype>")
+                    .append("<getlastmodified>Fri, 14 Jul 2017 02:40:00 GMT</getlastmodified>")
+                    .append("<getetag>\"1-1500000000000\"</getetag><resourcetype/></prop>")
+                    .append("<status>HTTP/1.1 200 OK</status></propstat></response>");
+        }
+        sb.append("</multistatus>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the body of a $batch response, one changeset of creations for each group of 10 operations followed by
+     * a retrieval.
+     * @param operations number of operations
+     * @param boundary boundary of the response
+     * @return body bytes
+     */
+    public static byte[] batchResponse(int operations, String boundary) {
+        StringBuilder sb = new StringBuilder();
+        String changeset = "changeset_bench";
+        int i = 0;
+        while (i < operations) {
+            sb.append("--").append(boundary).append("\r\n")
+                    .append("Content-Type: multipart/mixed; boundary=").append(changeset).append("\r\n\r\n");
+            for (int j = 0; j < 9 && i < operations; j++, i++) {
+                sb.append("--").append(changeset).append("\r\n")
+                        .append("Content-Type: application/http\r\nContent-Transfer-Encoding: binary\r\n\r\n")
+                        .append("HTTP/1.1 201 Created\r\n")
+                        .append("Location: https://unit.example/cell/box/odata/Set('id-").append(i).append("')\r\n")
+                        .append("Content-Type: application/json\r\nDataServiceVersion: 2.0\r\n")
+                        .append("ETag: W/\"1-1500000000000\"\r\n\r\n")
+                        .append("{\"d\":{\"results\":{\"__id\":\"id-").append(i)
+                        .append("\",\"Name\":\"パーソニウム\"}}}\r\n");
+            }
+            sb.append("--").append(changeset).append("--\r\n");
+            if (i < operations) {
+                sb.append("--").append(boundary).append("\r\n")
+                        .append("Content-Type: application/http\r\nContent-Transfer-Encoding: binary\r\n\r\n")
+                        .append("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nDataServiceVersion: 2.0\r\n\r\n")
+                        .append("{\"d\":{\"results\":{\"__id\":\"id-").append(i).append("\"}}}\r\n");
+                i++;
+            }
+        }
+        sb.append("--").append(boundary).append("--\r\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a UTF-8 JSON-like text of the given size with some multi-byte characters.
+     * @param size size in bytes
+     * @return text bytes
+     */
+    public static byte[] text(int size) {
+        byte[] unit = "{\"__id\":\"id-0001\",\"Name\":\"パーソニウム\",\"Value\":12345},\n"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[size];
+        for (int i = 0; i < size; i++) {
+            out[i] = unit[i % unit.length];
+        }
+        // Do not end in the middle of a multi-byte character.
+        for (int i = size - 1; i >= 0 && (out[i] & 0x80) != 0; i--) {
+            out[i] = ' ';
+        }
+        return out;
+    }
+}
@@ -0,0 +1,151 @@
+package io.personium.client.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.personium.client.Accessor;
+import io.personium.client.Box;
+import io.personium.client.DaoException;
+import io.personium.client.DavCollection;
+import io.personium.client.EntitySet;
+import io.personium.client.ODataBatch;
+import io.personium.client.PersoniumContext;
+import io.personium.client.benchmarks.mock.MockPersoniumServer;
+import io.personium.client.http.ClientMetrics;
+import io.personium.client.http.RetryPolicy;
+
+/**
+ * Load test against MockPersoniumServer: client threads send a mix of OData retrievals and merges, $batch requests
+ * of updates and WebDAV reads and writes for a given duration, then the ClientMetrics report is printed, with the
+ * percentiles by endpoint. The arguments are {@code name=value} pairs, all optional:
+ * <pre>
+ * java -cp target/benchmarks.jar io.personium.client.benchmarks.LoadTest threads=16 duration=30 latency=5 \
+ *     jitter=5 errorRate=0.01 errorStatus=503
+ * </pre>
+ * {@code duration} is in seconds, {@code latency} and {@code jitter} in milliseconds. The idempotent requests failing
+ * with an injected error are retried by a RetryPolicy with short backoffs.
+ */
+public final class LoadTest {
+
+    private static final int ENTITIES = 100;
+    private static final int BATCH_UPDATES = 10;
+    private static final long RETRY_BACKOFF = 10;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("expected name=value: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "10"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "0"));
+        long jitter = Long.parseLong(options.getOrDefault("jitter", "0"));
+        double errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+        int errorStatus = Integer.parseInt(options.getOrDefault("errorStatus", "503"));
+
+        Fixtures.silenceLogging();
+        try (MockPersoniumServer server = MockPersoniumServer.start()) {
+            server.addODataCollection("/cell/box/odata");
+            String base = server.getBaseUrl();
+            PersoniumContext context = new PersoniumContext(base, "cell", "", "box", true);
+            ClientMetrics metrics = new ClientMetrics();
+            context.getDaoConfig().addRequestListener(metrics);
+            RetryPolicy retryPolicy = new RetryPolicy();
+            retryPolicy.setInitialBackoff(RETRY_BACKOFF);
+            context.getDaoConfig().setRetryPolicy(retryPolicy);
+            Accessor accessor = context.asAccount(base + "cell/", "user", "password");
+            String content = new String(Fixtures.text(1024), StandardCharsets.UTF_8);
+            Box box = accessor.cell().box();
+            EntitySet set = box.odata("odata").entitySet("Set");
+            for (int i = 0; i < ENTITIES; i++) {
+                set.createAsJson(entity("id-" + i));
+            }
+            box.mkCol("dav");
+            DavCollection dav = box.col("dav");
+            dav.put("file.txt", "text/plain", content, "*");
+            metrics.reset();
+            server.setLatency(latency, jitter);
+            server.setErrorRate(errorRate, errorStatus);
+
+            LongAdder operations = new LongAdder();
+            LongAdder failures = new LongAdder();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        try {
+                            operation(accessor, set, dav, base + "cell/box/odata", content);
+                        } catch (DaoException e) {
+                            failures.increment();
+                        }
+                        operations.increment();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            context.close();
+
+            System.out.printf(Locale.ROOT, "threads=%d duration=%ds latency=%dms jitter=%dms errorRate=%.3f%n",
+                    threads, duration, latency, jitter, errorRate);
+            System.out.printf(Locale.ROOT, "operations=%d (%.1f/s) failed=%d requests=%d injectedErrors=%d%n",
+                    operations.sum(), (double) operations.sum() / duration, failures.sum(), server.getRequestCount(),
+                    server.getInjectedErrorCount());
+            System.out.print(metrics);
+        }
+    }
+
+    private static void operation(Accessor accessor, EntitySet set, DavCollection dav, String collectionUrl,
+            String content) throws DaoException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = "id-" + random.nextInt(ENTITIES);
+        int choice = random.nextInt(100);
+        if (choice < 40) {
+            set.retrieveAsJson(id);
+        } else if (choice < 60) {
+            set.merge(id, entity(null), "*");
+        } else if (choice < 70) {
+            ODataBatch batch = new ODataBatch(accessor, collectionUrl);
+            for (int i = 0; i < BATCH_UPDATES; i++) {
+                batch.entitySet("Set").update("id-" + random.nextInt(ENTITIES), entity(null), "*");
+            }
+            batch.send();
+        } else if (choice < 90) {
+            dav.getString("file.txt");
+        } else {
+            dav.put("file.txt", "text/plain", content, "*");
+        }
+    }
+
+    private static HashMap<String, Object> entity(String id) {
+        HashMap<String, Object> entity = new HashMap<String, Object>();
+        if (id != null) {
+            entity.put("__id", id);
+        }
+        entity.put("Name", "パーソニウム");
+        entity.put("Value", ThreadLocalRandom.current().nextInt());
+        return entity;
+    }
+}
@@ -0,0 +1,53 @@
+package io.personium.client.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.Query;
+
+/**
+ * Cost of Query.makeQueryString, called for every page of a query. {@code paging} only has $top and $skip;
+ * {@code full} also has a $filter, $select, $expand, $orderby, $inlinecount and q with characters to escape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    private Query paging;
+    private Query full;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.silenceLogging();
+        paging = new Query().top(1000).skip(5000);
+        full = new Query().top(1000).skip(5000)
+                .filter("Name eq 'パーソニウム' and (Value ge 100 or startswith(Code, 'A&B'))")
+                .select("__id,Name,Value,Code").expand("_Other,_Another").orderby("__updated desc,Name")
+                .inlinecount("allpages").q("full text");
+    }
+
+    @Benchmark
+    public String paging() {
+        return paging.makeQueryString();
+    }
+
+    @Benchmark
+    public String full() {
+        return full.makeQueryString();
+    }
+}
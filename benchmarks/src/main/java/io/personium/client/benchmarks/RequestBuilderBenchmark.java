@@ -0,0 +1,78 @@
+package io.personium.client.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.DaoException;
+import io.personium.client.http.PersoniumRequestBuilder;
+import io.personium.client.http.RestAdapter;
+
+/**
+ * Cost of building a request with PersoniumRequestBuilder, as RestAdapter does for every call.
+ * <p>
+ * {@code get} is a GET with the usual headers. {@code postJson} is a POST of a JSON body, which goes through
+ * toUniversalCharacterNames to escape the non-ASCII characters; {@code ascii} selects a body without any.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBuilderBenchmark {
+
+    /** Length of the JSON body in characters. */
+    @Param({"64", "4096"})
+    int bodyLength;
+
+    /** Whether the JSON body is ASCII only. */
+    @Param({"true", "false"})
+    boolean ascii;
+
+    private String url;
+    private String body;
+    private HashMap<String, String> defaultHeaders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.silenceLogging();
+        url = "https://unit.example/cell/box/odata/Set('id-0001')?$select=Name,Value&$expand=_Other";
+        String unit = ascii ? "{\"Name\":\"personium\",\"Value\":12345}," : "{\"Name\":\"パーソニウム\",\"Value\":12345},";
+        StringBuilder sb = new StringBuilder("[");
+        while (sb.length() < bodyLength - 1) {
+            sb.append(unit);
+        }
+        sb.setLength(Math.min(sb.length(), bodyLength - 1));
+        body = sb.append(']').toString();
+        defaultHeaders = new HashMap<String, String>();
+        defaultHeaders.put("X-Personium-RequestKey", "benchmark");
+    }
+
+    @Benchmark
+    public HttpUriRequest get() throws DaoException {
+        return new PersoniumRequestBuilder().url(url).method("GET").acceptEncoding("gzip")
+                .accept(RestAdapter.CONTENT_TYPE_JSON).token("token-0001").ifNoneMatch("W/\"1-1500000000000\"")
+                .defaultHeaders(defaultHeaders).build();
+    }
+
+    @Benchmark
+    public HttpUriRequest postJson() throws DaoException {
+        return new PersoniumRequestBuilder().url(url).method("POST").contentType(RestAdapter.CONTENT_TYPE_JSON)
+                .accept(RestAdapter.CONTENT_TYPE_JSON).token("token-0001").defaultHeaders(defaultHeaders).body(body)
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.client.DaoException;
+import io.personium.client.http.PersoniumResponse;
+import io.personium.client.http.RestAdapter;
+
+/**
+ * Throughput of reading a response body received from the connection, from 1 KB to 50 MB.
+ * <p>
+ * Every invocation buffers a fresh streaming entity the way RestAdapter does, then decodes it. {@code legacy} is the
+ * char-at-a-time StringBuffer loop bodyAsString used before, kept as the baseline. Run with
+ * {@code java -jar target/benchmarks.jar ResponseBodyBenchmark -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ResponseBodyBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    int size;
+
+    /** Whether the response announces its Content-Length. */
+    @Param({"true", "false"})
+    boolean contentLength;
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.silenceLogging();
+        body = Fixtures.text(size);
+    }
+
+    private PersoniumResponse receive() throws IOException {
+        HttpResponse res = Fixtures.streamingResponse(body, contentLength ? body.length : -1);
+        RestAdapter.bufferEntity(res);
+        return new PersoniumResponse(res);
+    }
+
+    @Benchmark
+    public String bodyAsString() throws IOException, DaoException {
+        return receive().bodyAsString();
+    }
+
+    @Benchmark
+    public byte[] bodyAsBytes() throws IOException, DaoException {
+        return receive().bodyAsBytes();
+    }
+
+    @Benchmark
+    public ByteBuffer bodyAsByteBuffer() throws IOException, DaoException {
+        return receive().bodyAsByteBuffer();
+    }
+
+    @Benchmark
+    public String legacy() throws IOException {
+        HttpResponse res = Fixtures.streamingResponse(body, contentLength ? body.length : -1);
+        BufferedHttpEntity entity = new BufferedHttpEntity(res.getEntity());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "utf-8"))) {
+            StringBuffer sb = new StringBuffer();
+            int chr;
+            while ((chr = reader.read()) != -1) {
+                sb.append((char) chr);
+            }
+            return sb.toString();
+        }
+    }
+}
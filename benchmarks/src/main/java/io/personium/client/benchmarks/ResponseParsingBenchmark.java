@@ -0,0 +1,67 @@
+package io.personium.client.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import io.personium.client.DaoException;
+import io.personium.client.http.PersoniumResponse;
+
+/**
+ * Cost of decoding a response body already in memory: an OData feed as a String and as JSON, and a PROPFIND
+ * multistatus as XML. Unlike ResponseBodyBenchmark, the buffering of the body is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    /** Number of entities of the feed and of resources of the multistatus. */
+    @Param({"10", "1000"})
+    int entries;
+
+    private byte[] json;
+    private byte[] xml;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.silenceLogging();
+        json = Fixtures.jsonFeed(entries);
+        xml = Fixtures.multistatus(entries);
+    }
+
+    private PersoniumResponse jsonResponse() {
+        return new PersoniumResponse(Fixtures.bufferedResponse(json, "application/json; charset=utf-8"));
+    }
+
+    @Benchmark
+    public String bodyAsString() throws DaoException {
+        return jsonResponse().bodyAsString();
+    }
+
+    @Benchmark
+    public JSONObject bodyAsJson() throws DaoException {
+        return jsonResponse().bodyAsJson();
+    }
+
+    @Benchmark
+    public Document bodyAsXml() {
+        return new PersoniumResponse(Fixtures.bufferedResponse(xml, "application/xml; charset=utf-8")).bodyAsXml();
+    }
+}
@@ -0,0 +1,313 @@
+package io.personium.client.benchmarks.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The WebDAV part of MockPersoniumServer: collections and files kept in memory by path. The cell and Box levels
+ * always exist, as collections. Each PUT gives a new ETag, checked against If-Match, and a GET with the current ETag
+ * in If-None-Match gets a 304. The ACL set on a resource is returned as is by a PROPFIND of depth 0.
+ */
+final class DavHandler {
+
+    /** Number of path segments of a Box, which always exists. */
+    private static final int BOX_DEPTH = 2;
+    /** ACL returned when none was set. */
+    private static final String EMPTY_ACL = "<acl xmlns=\"DAV:\"/>";
+
+    /** Resources by path, without trailing slash. */
+    private final Map<String, Resource> resources = new ConcurrentSkipListMap<String, Resource>();
+    /** Version of the ETags. */
+    private final AtomicLong versions = new AtomicLong();
+    private final ODataHandler odata;
+
+    /**
+     * A collection or a file.
+     */
+    private static final class Resource {
+        private final boolean collection;
+        private final boolean odata;
+        private final byte[] content;
+        private final String contentType;
+        private final String etag;
+        private volatile String acl;
+
+        Resource(boolean collection, boolean odata, byte[] content, String contentType, String etag) {
+            this.collection = collection;
+            this.odata = odata;
+            this.content = content;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+    }
+
+    DavHandler(ODataHandler odata) {
+        this.odata = odata;
+    }
+
+    /**
+     * Removes the trailing slash of a path, keeping the root.
+     * @param path path
+     * @return normalized path
+     */
+    static String normalize(String path) {
+        String normalized = path;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * Appends a response element to a multistatus.
+     * @param sb multistatus
+     * @param href href of the resource
+     * @param collection whether the resource is a collection
+     * @param length length of a file
+     * @param contentType Content-Type of a file, may be null
+     * @param etag ETag, may be null
+     */
+    static void appendResponse(StringBuilder sb, String href, boolean collection, long length, String contentType,
+            String etag) {
+        appendResponse(sb, href, collection, false, length, contentType, etag, null);
+    }
+
+    private static void appendResponse(StringBuilder sb, String href, boolean collection, boolean odata, long length,
+            String contentType, String etag, String acl) {
+        sb.append("<response><href>").append(escape(href)).append("</href><propstat><prop>");
+        if (collection) {
+            sb.append("<resourcetype><collection/>");
+            if (odata) {
+                sb.append("<p:odata xmlns:p=\"urn:x-personium:xmlns\"/>");
+            }
+            sb.append("</resourcetype>");
+        } else {
+            sb.append("<resourcetype/><getcontentlength>").append(length).append("</getcontentlength>");
+            if (contentType != null) {
+                sb.append("<getcontenttype>").append(escape(contentType)).append("</getcontenttype>");
+            }
+        }
+        if (etag != null) {
+            sb.append("<getetag>").append(escape(etag)).append("</getetag>");
+        }
+        if (acl != null) {
+            sb.append(acl);
+        }
+        sb.append("</prop><status>HTTP/1.1 200 OK</status></propstat></response>");
+    }
+
+    /**
+     * Creates a collection, replacing any existing one.
+     * @param path normalized path
+     * @param isOData whether it is an OData collection
+     */
+    void mkcol(String path, boolean isOData) {
+        resources.put(path, new Resource(true, isOData, null, null, nextEtag()));
+    }
+
+    /**
+     * Removes the files and the collections other than the OData ones.
+     */
+    void clearFiles() {
+        resources.values().removeIf(resource -> !resource.odata);
+    }
+
+    /**
+     * Returns the OData collection containing a path.
+     * @param path normalized path
+     * @return path of the OData collection, or null if none
+     */
+    String odataCollectionOf(String path) {
+        String candidate = path;
+        while (candidate.lastIndexOf('/') > 0) {
+            Resource resource = resources.get(candidate);
+            if (resource != null && resource.odata) {
+                return candidate;
+            }
+            candidate = candidate.substring(0, candidate.lastIndexOf('/'));
+        }
+        return null;
+    }
+
+    /**
+     * Handles a WebDAV request.
+     * @param ex exchange
+     * @param method method
+     * @param path normalized path
+     * @param body request body
+     */
+    void handle(Exchange ex, String method, String path, byte[] body) {
+        Resource resource = get(path);
+        switch (method) {
+        case "GET":
+        case "HEAD":
+            if (resource == null) {
+                ex.sendError(404, "PR404-DV-0001", "resource not found");
+            } else if (resource.collection) {
+                ex.send(200, null, null);
+            } else {
+                ex.setResponseHeader("ETag", resource.etag);
+                if (resource.etag.equals(ex.getRequestHeader("If-None-Match"))) {
+                    ex.send(304, null, null);
+                } else {
+                    ex.send(200, resource.contentType, resource.content);
+                }
+            }
+            return;
+        case "PUT":
+            put(ex, path, resource, body);
+            return;
+        case "DELETE":
+            delete(ex, path, resource);
+            return;
+        case "MKCOL":
+            if (resource != null) {
+                ex.sendError(405, "PR405-DV-0004", "resource already exists");
+            } else if (!isCollection(parent(path))) {
+                ex.sendError(409, "PR409-DV-0002", "parent collection not found");
+            } else {
+                mkcol(path, new String(body, StandardCharsets.UTF_8).contains("odata"));
+                ex.send(201, null, null);
+            }
+            return;
+        case "PROPFIND":
+            propfind(ex, path, resource);
+            return;
+        case "PROPPATCH":
+            if (resource == null) {
+                ex.sendError(404, "PR404-DV-0001", "resource not found");
+            } else {
+                StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>")
+                        .append("<multistatus xmlns=\"DAV:\">");
+                appendResponse(sb, path, resource.collection, 0, null, null);
+                sb.append("</multistatus>");
+                ex.send(207, MockPersoniumServer.XML, sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        case "ACL":
+            if (resource == null) {
+                ex.sendError(404, "PR404-DV-0001", "resource not found");
+            } else {
+                resource.acl = new String(body, StandardCharsets.UTF_8).replaceFirst("^\\s*<\\?xml[^>]*\\?>", "");
+                ex.send(200, null, null);
+            }
+            return;
+        default:
+            ex.sendError(405, "PR405-MC-0001", "method not allowed");
+        }
+    }
+
+    private void put(Exchange ex, String path, Resource resource, byte[] body) {
+        if (resource != null && resource.collection) {
+            ex.sendError(405, "PR405-DV-0001", "cannot PUT a collection");
+            return;
+        }
+        if (!isCollection(parent(path))) {
+            ex.sendError(409, "PR409-DV-0002", "parent collection not found");
+            return;
+        }
+        String ifMatch = ex.getRequestHeader("If-Match");
+        if (ifMatch != null && !"*".equals(ifMatch) && (resource == null || !resource.etag.equals(ifMatch))) {
+            ex.sendError(412, "PR412-DV-0001", "ETag does not match");
+            return;
+        }
+        String contentType = ex.getRequestHeader("Content-Type");
+        Resource file = new Resource(false, false, body, contentType != null ? contentType : "application/octet-stream",
+                nextEtag());
+        if (resource != null) {
+            file.acl = resource.acl;
+        }
+        resources.put(path, file);
+        ex.setResponseHeader("ETag", file.etag);
+        ex.send(resource == null ? 201 : 204, null, null);
+    }
+
+    private void delete(Exchange ex, String path, Resource resource) {
+        if (resource == null) {
+            ex.sendError(404, "PR404-DV-0001", "resource not found");
+            return;
+        }
+        String ifMatch = ex.getRequestHeader("If-Match");
+        if (ifMatch != null && !"*".equals(ifMatch) && !resource.etag.equals(ifMatch)) {
+            ex.sendError(412, "PR412-DV-0001", "ETag does not match");
+            return;
+        }
+        if (resource.collection && !children(path).isEmpty()) {
+            ex.sendError(403, "PR403-DV-0003", "collection not empty");
+            return;
+        }
+        resources.remove(path);
+        if (resource.odata) {
+            odata.clear(path);
+        }
+        ex.send(204, null, null);
+    }
+
+    private void propfind(Exchange ex, String path, Resource resource) {
+        if (resource == null) {
+            ex.sendError(404, "PR404-DV-0001", "resource not found");
+            return;
+        }
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>")
+                .append("<multistatus xmlns=\"DAV:\">");
+        boolean depthZero = "0".equals(ex.getRequestHeader("Depth"));
+        String acl = depthZero ? (resource.acl != null ? resource.acl : EMPTY_ACL) : null;
+        append(sb, path, resource, acl);
+        if (!depthZero && resource.collection) {
+            for (String child : children(path)) {
+                append(sb, child, resources.get(child), null);
+            }
+        }
+        sb.append("</multistatus>");
+        ex.send(207, MockPersoniumServer.XML, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(StringBuilder sb, String path, Resource resource, String acl) {
+        appendResponse(sb, path, resource.collection, resource.odata,
+                resource.content == null ? 0 : resource.content.length, resource.contentType, resource.etag, acl);
+    }
+
+    private Resource get(String path) {
+        Resource resource = resources.get(path);
+        if (resource == null && path.length() > 1 && path.split("/").length <= BOX_DEPTH + 1) {
+            // The cell and the Box levels, which always exist.
+            resource = new Resource(true, false, null, null, null);
+            resources.putIfAbsent(path, resource);
+            resource = resources.get(path);
+        }
+        return resource;
+    }
+
+    private boolean isCollection(String path) {
+        Resource resource = get(path);
+        return resource != null && resource.collection;
+    }
+
+    private List<String> children(String path) {
+        List<String> children = new ArrayList<String>();
+        String prefix = path + "/";
+        for (String key : resources.keySet()) {
+            if (key.startsWith(prefix) && key.indexOf('/', prefix.length()) < 0) {
+                children.add(key);
+            }
+        }
+        return children;
+    }
+
+    private static String parent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+
+    private String nextEtag() {
+        return "\"" + versions.incrementAndGet() + "-" + System.currentTimeMillis() + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
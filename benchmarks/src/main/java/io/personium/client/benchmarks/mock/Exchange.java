@@ -0,0 +1,110 @@
+package io.personium.client.benchmarks.mock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A request received by MockPersoniumServer and its response. The header names are sent as given, as Personium
+ * does, and the client keeps them in case-sensitive maps.
+ */
+final class Exchange {
+
+    private final HttpRequest request;
+    private final HttpResponse response;
+    private final String method;
+    private final String path;
+    private final String rawQuery;
+    private final byte[] body;
+
+    Exchange(HttpRequest request, HttpResponse response) throws IOException {
+        this.request = request;
+        this.response = response;
+        this.method = request.getRequestLine().getMethod();
+        String uri = request.getRequestLine().getUri();
+        int scheme = uri.indexOf("://");
+        if (scheme >= 0) {
+            int slash = uri.indexOf('/', scheme + "://".length());
+            uri = slash < 0 ? "/" : uri.substring(slash);
+        }
+        int question = uri.indexOf('?');
+        this.path = question < 0 ? uri : uri.substring(0, question);
+        this.rawQuery = question < 0 ? null : uri.substring(question + 1);
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest
+                ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        this.body = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the path of the request, not decoded.
+     * @return path
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the query of the request, not decoded.
+     * @return query, null if none
+     */
+    String getRawQuery() {
+        return rawQuery;
+    }
+
+    String getRequestHeader(String name) {
+        Header header = request.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    void setResponseHeader(String name, String value) {
+        response.setHeader(name, value);
+    }
+
+    /**
+     * Sets the response.
+     * @param status status
+     * @param contentType Content-Type, null if no body
+     * @param content body, null if none
+     */
+    void send(int status, String contentType, byte[] content) {
+        response.setStatusCode(status);
+        response.setHeader("DataServiceVersion", "2.0");
+        if (content != null && content.length > 0 && status != 204 && status != 304) {
+            ByteArrayEntity entity = new ByteArrayEntity(content);
+            entity.setContentType(contentType);
+            response.setEntity(entity);
+        } else {
+            response.setEntity(null);
+        }
+    }
+
+    /**
+     * Sets a Personium error response.
+     * @param status status
+     * @param code Personium error code
+     * @param message message
+     */
+    void sendError(int status, String code, String message) {
+        byte[] content = MockPersoniumServer.errorBody(code, message).getBytes(StandardCharsets.UTF_8);
+        send(status, MockPersoniumServer.JSON, content);
+    }
+}
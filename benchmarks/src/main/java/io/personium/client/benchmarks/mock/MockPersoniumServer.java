@@ -0,0 +1,337 @@
+package io.personium.client.benchmarks.mock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.RequestLine;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.impl.DefaultBHttpServerConnectionFactory;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.impl.io.DefaultHttpRequestParserFactory;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * An in-process stand-in for a Personium unit, on the blocking server of HttpCore, so that the client can be load
+ * tested without a live unit. It keeps everything in memory and implements enough of the protocol for the client:
+ * <ul>
+ * <li>{@code /{cell}/__token}: any credentials get a token, except the password "bad" (401);</li>
+ * <li>{@code /{cell}/__ctl/{EntitySet}} and the OData collections: create, retrieve, update, merge and delete with
+ * ETags, and queries with $top, $skip and $inlinecount ($filter and $orderby are ignored), see {@link ODataHandler};
+ * </li>
+ * <li>{@code $batch} on an OData collection, with changesets;</li>
+ * <li>WebDAV GET, PUT, DELETE, MKCOL, PROPFIND and ACL with ETags, see {@link DavHandler};</li>
+ * <li>{@code /{cell}/__log/current/default.log}, {@code /{cell}/__log/archive} and {@code /{cell}/__event}.</li>
+ * </ul>
+ * The cell and Box levels always exist. A collection is an OData collection when it was created by an extended
+ * MKCOL or by {@link #addODataCollection(String)}. A latency and a rate of injected errors can be set at any time.
+ * <p>
+ * It is not built on the JDK HttpServer, which sends "ETag" as "Etag": the client looks some response headers up in
+ * case-sensitive maps.
+ * <pre>
+ * try (MockPersoniumServer server = MockPersoniumServer.start()) {
+ *     server.addODataCollection("/cell/box/odata");
+ *     PersoniumContext context = new PersoniumContext(server.getBaseUrl(), "cell", "", "box", true);
+ *     ...
+ * }
+ * </pre>
+ */
+public final class MockPersoniumServer implements AutoCloseable {
+
+    /** Content-Type of the JSON responses. */
+    static final String JSON = "application/json";
+    /** Content-Type of the XML responses. */
+    static final String XML = "application/xml; charset=utf-8";
+
+    /** Every request may have a body, whatever its method: PROPFIND, MKCOL, ACL, MERGE... */
+    private static final HttpRequestFactory REQUEST_FACTORY = new HttpRequestFactory() {
+        @Override
+        public HttpRequest newHttpRequest(RequestLine requestLine) {
+            return new BasicHttpEntityEnclosingRequest(requestLine);
+        }
+
+        @Override
+        public HttpRequest newHttpRequest(String method, String uri) {
+            return new BasicHttpEntityEnclosingRequest(method, uri);
+        }
+    };
+
+    private final HttpServer server;
+    private final ODataHandler odata = new ODataHandler();
+    private final DavHandler dav = new DavHandler(odata);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong injectedErrorCount = new AtomicLong();
+    private final AtomicLong tokenCount = new AtomicLong();
+    private final AtomicLong eventCount = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+
+    private MockPersoniumServer(int port) throws IOException {
+        this.server = ServerBootstrap.bootstrap()
+                .setLocalAddress(InetAddress.getLoopbackAddress())
+                .setListenerPort(port)
+                .setServerInfo("MockPersonium/1.0")
+                .setSocketConfig(SocketConfig.custom().setTcpNoDelay(true).build())
+                .setConnectionFactory(new DefaultBHttpServerConnectionFactory(null, null, null,
+                        new DefaultHttpRequestParserFactory(null, REQUEST_FACTORY), null))
+                .registerHandler("*", this::handle)
+                .create();
+        this.server.start();
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     * @return started server
+     * @throws IOException if the port cannot be bound
+     */
+    public static MockPersoniumServer start() throws IOException {
+        return start(0);
+    }
+
+    /**
+     * Starts a server on the given port of the loopback interface.
+     * @param port port, 0 for a free one
+     * @return started server
+     * @throws IOException if the port cannot be bound
+     */
+    public static MockPersoniumServer start(int port) throws IOException {
+        return new MockPersoniumServer(port);
+    }
+
+    /**
+     * Returns the URL of the unit, ending with a slash.
+     * @return base URL
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/";
+    }
+
+    /**
+     * Declares an OData collection, as an extended MKCOL would.
+     * @param path path of the collection, such as /cell/box/odata
+     */
+    public void addODataCollection(String path) {
+        dav.mkcol(DavHandler.normalize(path), true);
+    }
+
+    /**
+     * Delays every response.
+     * @param latency fixed delay in milliseconds
+     * @param jitter maximum random delay added to the fixed one, in milliseconds
+     */
+    public void setLatency(long latency, long jitter) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("latency must not be negative");
+        }
+        this.latencyMillis = latency;
+        this.jitterMillis = jitter;
+    }
+
+    /**
+     * Answers a share of the requests with an error instead of processing them.
+     * @param rate share of the requests, from 0 (default) to 1
+     * @param status status of the injected errors, such as 500 or 503 (default)
+     */
+    public void setErrorRate(double rate, int status) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        }
+        this.errorRate = rate;
+        this.errorStatus = status;
+    }
+
+    /**
+     * Returns the number of requests received.
+     * @return number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered with an injected error.
+     * @return number of requests
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrorCount.get();
+    }
+
+    /**
+     * Returns the number of tokens issued.
+     * @return number of tokens
+     */
+    public long getTokenCount() {
+        return tokenCount.get();
+    }
+
+    /**
+     * Returns the number of events received by __event.
+     * @return number of events
+     */
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    /**
+     * Removes all the entities and WebDAV resources, keeping the OData collections empty.
+     */
+    public void reset() {
+        odata.clear();
+        dav.clearFiles();
+    }
+
+    @Override
+    public void close() {
+        server.shutdown(0, TimeUnit.SECONDS);
+    }
+
+    private void handle(HttpRequest request, HttpResponse response, HttpContext context) throws IOException {
+        requestCount.incrementAndGet();
+        Exchange ex = new Exchange(request, response);
+        delay();
+        double rate = errorRate;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            injectedErrorCount.incrementAndGet();
+            ex.sendError(errorStatus, "PR" + errorStatus + "-MOCK-0001", "injected error");
+            return;
+        }
+        try {
+            dispatch(ex);
+        } catch (RuntimeException e) {
+            ex.sendError(500, "PR500-MOCK-0000", String.valueOf(e));
+        }
+    }
+
+    private void dispatch(Exchange ex) {
+        String path = DavHandler.normalize(ex.getPath());
+        byte[] body = ex.getBody();
+        String[] segments = path.substring(1).split("/");
+        String method = ex.getMethod();
+        if (segments.length >= 2) {
+            switch (segments[1]) {
+            case "__token":
+                token(ex, body);
+                return;
+            case "__event":
+                eventCount.incrementAndGet();
+                ex.send(200, null, null);
+                return;
+            case "__log":
+                log(ex, segments, method);
+                return;
+            case "__ctl":
+                odata.handle(ex, method, "/" + segments[0] + "/__ctl", path, body);
+                return;
+            default:
+                break;
+            }
+        }
+        String collection = dav.odataCollectionOf(path);
+        if (collection != null && !collection.equals(path)) {
+            if (path.equals(collection + "/$batch")) {
+                odata.batch(ex, collection, body);
+            } else {
+                odata.handle(ex, method, collection, path, body);
+            }
+            return;
+        }
+        dav.handle(ex, method, path, body);
+    }
+
+    private void token(Exchange ex, byte[] body) {
+        Map<String, String> form = parseForm(new String(body, StandardCharsets.UTF_8));
+        if ("bad".equals(form.get("password"))) {
+            ex.sendError(401, "PR401-AN-0001", "authentication failed");
+            return;
+        }
+        long n = tokenCount.incrementAndGet();
+        String json = "{\"access_token\":\"AA~mock-access-" + n + "\",\"token_type\":\"Bearer\",\"expires_in\":3600,"
+                + "\"refresh_token\":\"RA~mock-refresh-" + n + "\",\"refresh_token_expires_in\":86400}";
+        ex.send(200, JSON, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void log(Exchange ex, String[] segments, String method) {
+        String kind = segments.length > 2 ? segments[2] : "";
+        if ("PROPFIND".equals(method) && "archive".equals(kind)) {
+            String base = "/" + segments[0] + "/__log/archive";
+            StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>")
+                    .append("<multistatus xmlns=\"DAV:\">");
+            DavHandler.appendResponse(sb, base, true, 0, null, null);
+            for (int i = 1; i <= 2; i++) {
+                DavHandler.appendResponse(sb, base + "/default.log." + i, false, 1024, "text/csv", null);
+            }
+            sb.append("</multistatus>");
+            ex.send(207, XML, sb.toString().getBytes(StandardCharsets.UTF_8));
+        } else if ("GET".equals(method) && ("current".equals(kind) || "archive".equals(kind))) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                sb.append("\"2017-07-14T02:40:").append(i < 10 ? "0" : "").append(i)
+                        .append(".000Z\",\"[INFO ]\",\"mock-request-key\",\"mock\",\"object\",\"info\",")
+                        .append("\"https://unit.example/cell/\",\"https://unit.example/cell/#me\",\"0\"\n");
+            }
+            ex.send(200, "text/csv", sb.toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            ex.sendError(404, "PR404-MOCK-0001", "log not found");
+        }
+    }
+
+    private void delay() {
+        long latency = latencyMillis;
+        long jitter = jitterMillis;
+        if (jitter > 0) {
+            latency += ThreadLocalRandom.current().nextLong(jitter + 1);
+        }
+        if (latency > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the body of a Personium error.
+     * @param code Personium error code
+     * @param message message
+     * @return JSON body
+     */
+    static String errorBody(String code, String message) {
+        return "{\"code\":\"" + code + "\",\"message\":{\"lang\":\"en\",\"value\":\""
+                + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}}";
+    }
+
+    /**
+     * Parses an application/x-www-form-urlencoded body or query.
+     * @param form encoded form
+     * @return decoded parameters
+     */
+    static Map<String, String> parseForm(String form) {
+        Map<String, String> params = new HashMap<String, String>();
+        if (form == null || form.isEmpty()) {
+            return params;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,400 @@
+package io.personium.client.benchmarks.mock;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The OData part of MockPersoniumServer: entity sets kept in memory, by collection path and entity set name. The
+ * entities are returned in the order of their creation. Each write gives a new ETag, checked against If-Match, and
+ * a retrieval with the current ETag in If-None-Match gets a 304.
+ */
+final class ODataHandler {
+
+    /** Default $top of Personium. */
+    private static final int DEFAULT_TOP = 25;
+    /** Max $top of Personium. */
+    private static final int MAX_TOP = 10000;
+    /** Entity set, key and navigation property of a path relative to a collection. */
+    private static final Pattern RESOURCE = Pattern.compile("^([^/(]+)(?:\\((.*?)\\))?(?:/(.*))?$");
+    /** Request line of a $batch part. */
+    private static final Pattern REQUEST_LINE = Pattern.compile("^(GET|POST|PUT|MERGE|DELETE) (\\S+) HTTP/1\\.1$");
+
+    /** Entity sets by collection path and name. */
+    private final Map<String, Map<String, Entity>> sets = new ConcurrentHashMap<String, Map<String, Entity>>();
+
+    /**
+     * An entity with its version.
+     */
+    private static final class Entity {
+        private final JSONObject properties;
+        private final int version;
+        private final long updated;
+
+        Entity(JSONObject properties, int version, long updated) {
+            this.properties = properties;
+            this.version = version;
+            this.updated = updated;
+        }
+
+        String etag() {
+            return "W/\"" + version + "-" + updated + "\"";
+        }
+    }
+
+    /**
+     * The response to a request, sent directly or as a part of a $batch response.
+     */
+    static final class Result {
+        final int status;
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        final String body;
+
+        Result(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        Result header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    void clear() {
+        sets.clear();
+    }
+
+    void clear(String collection) {
+        sets.keySet().removeIf(key -> key.startsWith(collection + "/"));
+    }
+
+    /**
+     * Handles a request on an OData resource.
+     * @param ex exchange
+     * @param method method
+     * @param collection path of the collection, such as /cell/box/odata or /cell/__ctl
+     * @param path path of the request
+     * @param body request body
+     */
+    void handle(Exchange ex, String method, String collection, String path, byte[] body) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (String name : new String[] {"If-Match", "If-None-Match"}) {
+            String value = ex.getRequestHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        Result result = execute(method, collection, path, ex.getRawQuery(), headers,
+                new String(body, StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> header : result.headers.entrySet()) {
+            ex.setResponseHeader(header.getKey(), header.getValue());
+        }
+        byte[] bytes = result.body == null ? null : result.body.getBytes(StandardCharsets.UTF_8);
+        ex.send(result.status, bytes == null ? null : MockPersoniumServer.JSON, bytes);
+    }
+
+    /**
+     * Handles a $batch request: the commands are run in order and answered in the same structure, the commands of a
+     * changeset in a changeset.
+     * @param ex exchange
+     * @param collection path of the OData collection
+     * @param body request body
+     */
+    void batch(Exchange ex, String collection, byte[] body) {
+        String boundary = "batch_" + UUID.randomUUID();
+        StringBuilder out = new StringBuilder();
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\r\n", -1);
+        String changeset = null;
+        int i = 0;
+        while (i < lines.length) {
+            String line = lines[i];
+            if (line.startsWith("--") && line.contains("changeset")) {
+                if (line.endsWith("--")) {
+                    out.append("--").append(changeset).append("--\r\n");
+                    changeset = null;
+                } else if (changeset == null) {
+                    changeset = "changeset_" + UUID.randomUUID();
+                    out.append("--").append(boundary).append("\r\n")
+                            .append("Content-Type: multipart/mixed; boundary=").append(changeset).append("\r\n\r\n");
+                }
+                i++;
+                continue;
+            }
+            Matcher request = REQUEST_LINE.matcher(line);
+            if (!request.matches()) {
+                i++;
+                continue;
+            }
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            for (i++; i < lines.length && !lines[i].isEmpty(); i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+                }
+            }
+            StringBuilder content = new StringBuilder();
+            String method = request.group(1);
+            if ("POST".equals(method) || "PUT".equals(method) || "MERGE".equals(method)) {
+                for (i++; i < lines.length && !lines[i].startsWith("--"); i++) {
+                    if (content.length() > 0) {
+                        content.append("\r\n");
+                    }
+                    content.append(lines[i]);
+                }
+            }
+            String url = request.group(2);
+            String query = null;
+            int question = url.indexOf('?');
+            if (question >= 0) {
+                query = url.substring(question + 1);
+                url = url.substring(0, question);
+            }
+            Result result = execute(method, collection, resolve(collection, url), query, headers, content.toString());
+            out.append("--").append(changeset != null ? changeset : boundary).append("\r\n")
+                    .append("Content-Type: application/http\r\nContent-Transfer-Encoding: binary\r\n\r\n")
+                    .append("HTTP/1.1 ").append(result.status).append(' ').append(reason(result.status)).append("\r\n");
+            if (result.body != null) {
+                out.append("Content-Type: ").append(MockPersoniumServer.JSON).append("\r\n");
+            }
+            out.append("DataServiceVersion: 2.0\r\n");
+            for (Map.Entry<String, String> header : result.headers.entrySet()) {
+                out.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            out.append("\r\n");
+            if (result.body != null) {
+                out.append(result.body).append("\r\n");
+            }
+        }
+        out.append("--").append(boundary).append("--\r\n");
+        ex.send(202, "multipart/mixed; boundary=" + boundary,
+                out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Result execute(String method, String collection, String path, String query, Map<String, String> headers,
+            String body) {
+        String relative = path.length() > collection.length() ? path.substring(collection.length() + 1) : "";
+        if (relative.isEmpty()) {
+            return new Result(200, "{\"d\":{\"EntitySets\":" + JSONArray.toJSONString(setNames(collection)) + "}}");
+        }
+        Matcher resource = RESOURCE.matcher(relative);
+        if (!resource.matches() || relative.startsWith("$")) {
+            return error(404, "PR404-OD-0001", "resource not found: " + relative);
+        }
+        String setName = resource.group(1);
+        String key = resource.group(2) == null ? null : decodeKey(resource.group(2));
+        Map<String, Entity> set = sets.computeIfAbsent(collection + "/" + setName,
+                k -> new LinkedHashMap<String, Entity>());
+        String type = (collection.endsWith("/__ctl") ? "CellCtl." : "UserData.") + setName;
+        String uri = "/" + setName;
+        if (resource.group(3) != null) {
+            if (key == null || !"GET".equals(method)) {
+                return error(501, "PR501-MOCK-0001", "navigation property not implemented");
+            }
+            return new Result(200, "{\"d\":{\"results\":[]}}");
+        }
+        synchronized (set) {
+            if (key == null) {
+                switch (method) {
+                case "GET":
+                    return query(set, collection + uri, type, MockPersoniumServer.parseForm(query));
+                case "POST":
+                    JSONObject json = parse(body);
+                    if (json == null) {
+                        return error(400, "PR400-OD-0001", "invalid JSON");
+                    }
+                    Object id = json.get("__id") != null ? json.get("__id") : json.get("Name");
+                    String newKey = id != null ? id.toString() : UUID.randomUUID().toString().replace("-", "");
+                    if (set.containsKey(newKey)) {
+                        return error(409, "PR409-OD-0003", "entity already exists");
+                    }
+                    long now = System.currentTimeMillis();
+                    json.put("__id", newKey);
+                    json.put("__published", "/Date(" + now + ")/");
+                    json.put("__updated", "/Date(" + now + ")/");
+                    Entity created = new Entity(json, 1, now);
+                    set.put(newKey, created);
+                    return new Result(201, "{\"d\":{\"results\":" + toJson(created, collection + uri, newKey, type)
+                            + "}}").header("ETag", created.etag())
+                            .header("Location", collection + uri + keySuffix(newKey));
+                default:
+                    return error(405, "PR405-MC-0001", "method not allowed");
+                }
+            }
+            Entity entity = set.get(key);
+            if (entity == null) {
+                return error(404, "PR404-OD-0002", "entity not found");
+            }
+            if ("GET".equals(method)) {
+                if (entity.etag().equals(headers.get("If-None-Match"))) {
+                    return new Result(304, null).header("ETag", entity.etag());
+                }
+                return new Result(200, "{\"d\":{\"results\":" + toJson(entity, collection + uri, key, type) + "}}")
+                        .header("ETag", entity.etag());
+            }
+            String ifMatch = headers.get("If-Match");
+            if (ifMatch != null && !"*".equals(ifMatch) && !entity.etag().equals(ifMatch)) {
+                return error(412, "PR412-OD-0003", "ETag does not match");
+            }
+            switch (method) {
+            case "DELETE":
+                set.remove(key);
+                return new Result(204, null);
+            case "PUT":
+            case "MERGE":
+                JSONObject json = parse(body);
+                if (json == null) {
+                    return error(400, "PR400-OD-0001", "invalid JSON");
+                }
+                JSONObject properties = new JSONObject();
+                if ("MERGE".equals(method)) {
+                    properties.putAll(entity.properties);
+                }
+                properties.putAll(json);
+                long now = System.currentTimeMillis();
+                properties.put("__id", key);
+                properties.put("__published", entity.properties.get("__published"));
+                properties.put("__updated", "/Date(" + now + ")/");
+                Entity updated = new Entity(properties, entity.version + 1, now);
+                set.put(key, updated);
+                return new Result(204, null).header("ETag", updated.etag());
+            default:
+                return error(405, "PR405-MC-0001", "method not allowed");
+            }
+        }
+    }
+
+    private Result query(Map<String, Entity> set, String setUrl, String type, Map<String, String> params) {
+        int skip = intParam(params.get("$skip"), 0);
+        int top = Math.min(intParam(params.get("$top"), DEFAULT_TOP), MAX_TOP);
+        StringBuilder sb = new StringBuilder("{\"d\":{\"results\":[");
+        int index = 0;
+        int written = 0;
+        for (Map.Entry<String, Entity> entry : set.entrySet()) {
+            if (index++ < skip) {
+                continue;
+            }
+            if (written == top) {
+                break;
+            }
+            if (written++ > 0) {
+                sb.append(',');
+            }
+            sb.append(toJson(entry.getValue(), setUrl, entry.getKey(), type));
+        }
+        sb.append(']');
+        if ("allpages".equals(params.get("$inlinecount"))) {
+            sb.append(",\"__count\":\"").append(set.size()).append('"');
+        }
+        sb.append("}}");
+        return new Result(200, sb.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toJson(Entity entity, String setUrl, String key, String type) {
+        JSONObject metadata = new JSONObject();
+        metadata.put("uri", setUrl + keySuffix(key));
+        metadata.put("etag", entity.etag());
+        metadata.put("type", type);
+        JSONObject json = new JSONObject();
+        json.put("__metadata", metadata);
+        json.putAll(entity.properties);
+        return json.toJSONString();
+    }
+
+    private List<String> setNames(String collection) {
+        List<String> names = new ArrayList<String>();
+        for (String key : sets.keySet()) {
+            if (key.startsWith(collection + "/")) {
+                names.add(key.substring(collection.length() + 1));
+            }
+        }
+        return names;
+    }
+
+    private static String resolve(String collection, String url) {
+        String path = url;
+        int scheme = path.indexOf("://");
+        if (scheme >= 0) {
+            int slash = path.indexOf('/', scheme + "://".length());
+            path = slash < 0 ? "/" : path.substring(slash);
+        } else if (!path.startsWith("/")) {
+            path = collection + "/" + path;
+        }
+        return DavHandler.normalize(path);
+    }
+
+    private static String keySuffix(String key) {
+        return "('" + key.replace("'", "''") + "')";
+    }
+
+    private static String decodeKey(String raw) {
+        String key = URLDecoder.decode(raw.replace("+", "%2B"), StandardCharsets.UTF_8);
+        if (key.length() >= 2 && key.startsWith("'") && key.endsWith("'")) {
+            key = key.substring(1, key.length() - 1).replace("''", "'");
+        }
+        return key;
+    }
+
+    private static JSONObject parse(String body) {
+        try {
+            Object json = new JSONParser().parse(body);
+            return json instanceof JSONObject ? (JSONObject) json : null;
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static int intParam(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Result error(int status, String code, String message) {
+        return new Result(status, MockPersoniumServer.errorBody(code, message));
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+        case 200:
+            return "OK";
+        case 201:
+            return "Created";
+        case 204:
+            return "No Content";
+        case 304:
+            return "Not Modified";
+        case 400:
+            return "Bad Request";
+        case 404:
+            return "Not Found";
+        case 405:
+            return "Method Not Allowed";
+        case 409:
+            return "Conflict";
+        case 412:
+            return "Precondition Failed";
+        default:
+            return "Status";
+        }
+    }
+}
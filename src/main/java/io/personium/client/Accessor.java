@@ -447,7 +447,7 @@ public class Accessor implements Cloneable {
      * This method gets the base URL value.
      * @return BaseURL value
      */
-    String getBaseUrl() {
+    public String getBaseUrl() {
         return this.baseUrl;
     }
 
@@ -617,7 +617,7 @@ public class Accessor implements Cloneable {
      * This method sets the response headers that are retrieved from the server response.
      * @param headers Response headers set
      */
-    public void setResHeaders(Header[] headers) {
+    public synchronized void setResHeaders(Header[] headers) {
         for (Header header : headers) {
             this.resHeaders.put(header.getName(), header.getValue());
             if (header.getName().equals(PersoniumContext.PERSONIUM_VERSION)) {
@@ -635,7 +635,8 @@ public class Accessor implements Cloneable {
     }
 
     /**
-     * This method performs authentication of user credentails based on token type etc.
+     * This method performs authentication of user credentails based on token type etc. When the PersoniumContext has a
+     * TokenManager, the token is shared with the Accessor objects having the same credentials.
      * @throws DaoException Exception thrown
      */
     protected void certification() throws DaoException {
@@ -645,26 +646,99 @@ public class Accessor implements Cloneable {
             return;
         }
 
+        TokenEvent event = new TokenEvent();
+        event.begin();
+        try {
+            this.certification(event);
+        } catch (DaoException | RuntimeException e) {
+            event.error = e.getMessage();
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * This method obtains a token, from the TokenManager of the PersoniumContext if any, and records it in an event.
+     * @param event Event of the token acquisition
+     * @throws DaoException Exception thrown
+     */
+    private void certification(TokenEvent event) throws DaoException {
+        final TokenManager manager = this.context.getTokenManager();
+        if (manager == null) {
+            JSONObject json = this.requestToken(null, event);
+            this.setToken(json, this.schemaAuth);
+            return;
+        }
+        final String authUrl = createCertificatUrl();
+        event.authUrl = authUrl;
+        if (this.schemaUserId != null && this.schemaPassword != null && !this.schema.endsWith("/")) {
+            this.schema += "/";
+        }
+        String key = TokenManager.key(authUrl, this.targetCellUrl, this.transCellToken, this.transCellRefreshToken,
+                this.userId, this.password, this.schema, this.schemaUserId, this.schemaPassword, this.owner);
+        TokenManager.Token token = manager.get(key, refresh -> {
+            if (refresh != null && this.schemaUserId != null && this.schemaPassword != null) {
+                // The client secret is a schema token which may have expired: authenticate again.
+                return null;
+            }
+            JSONObject json = this.requestToken(refresh, event);
+            return manager.newToken(json, this.schemaAuth);
+        });
+        this.setToken(token.getJson(), token.getSchemaAuth());
+    }
+
+    /**
+     * This method sets the token of a __token response.
+     * @param json Body of the __token response
+     * @param schemaJson Body of the __token response of the schema authentication, may be null
+     */
+    private void setToken(JSONObject json, JSONObject schemaJson) {
+        this.schemaAuth = schemaJson;
+        this.accessToken = (String) json.get("access_token");
+        this.expiresIn = (Number) json.get("expires_in");
+        this.refreshToken = (String) json.get("refresh_token");
+        this.refreshExpiresIn = (Number) json.get("refresh_token_expires_in");
+        this.tokenType = (String) json.get("token_type");
+    }
+
+    /**
+     * This method requests a token to the __token endpoint of the authentication cell.
+     * @param refresh Refresh token to renew, or null to authenticate with the credentials
+     * @param event Event of the token acquisition
+     * @return Body of the __token response
+     * @throws DaoException Exception thrown
+     */
+    private JSONObject requestToken(String refresh, TokenEvent event) throws DaoException {
         RestAdapter rest = (RestAdapter) RestAdapterFactory.create(this);
         /** Create a url to authenticate. */
         String authUrl = createCertificatUrl();
+        event.authUrl = authUrl;
 
         /** Make a request body to authenticate. */
         StringBuilder requestBody = new StringBuilder();
-        if (this.transCellToken != null) {
+        if (refresh != null) {
+            /** Renewal of a token obtained before. */
+            requestBody.append("grant_type=refresh_token&refresh_token=");
+            requestBody.append(refresh);
+            event.grantType = "refresh_token";
+        } else if (this.transCellToken != null) {
             /** Transformer cell token authentication. */
             requestBody.append("grant_type=urn:ietf:params:oauth:grant-type:saml2-bearer&assertion=");
             requestBody.append(this.transCellToken);
+            event.grantType = "saml2-bearer";
         } else if (this.transCellRefreshToken != null) {
             /** Refresh token authentication. */
             requestBody.append("grant_type=refresh_token&refresh_token=");
             requestBody.append(this.transCellRefreshToken);
+            event.grantType = "refresh_token";
         } else if (userId != null) {
             /** Password authentication. */
             requestBody.append("grant_type=password&username=");
             requestBody.append(this.userId);
             requestBody.append("&password=");
             requestBody.append(this.password);
+            event.grantType = "password";
         }
 
         /** Create Target URL. */
@@ -688,6 +762,7 @@ public class Accessor implements Cloneable {
                 this.schema += "/";
             }
 
+            event.requests++;
             PersoniumResponse res = rest.post(UrlUtils.append(this.schema, "__token"), schemaRequestBody.toString(),
                     RestAdapter.CONTENT_FORMURLENCODE, false);
             this.schemaAuth = res.bodyAsJson();
@@ -701,14 +776,10 @@ public class Accessor implements Cloneable {
             requestBody.append("&cell_owner=true");
         }
         /** To hold the token to authenticate. */
+        event.requests++;
         PersoniumResponse res = rest.post(UrlUtils.append(authUrl, "__token"), requestBody.toString(),
                 RestAdapter.CONTENT_FORMURLENCODE, false);
-        JSONObject json = res.bodyAsJson();
-        this.accessToken = (String) json.get("access_token");
-        this.expiresIn = (Number) json.get("expires_in");
-        this.refreshToken = (String) json.get("refresh_token");
-        this.refreshExpiresIn = (Number) json.get("refresh_token_expires_in");
-        this.tokenType = (String) json.get("token_type");
+        return res.bodyAsJson();
     }
 
     /**
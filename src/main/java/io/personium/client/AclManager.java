@@ -16,6 +16,9 @@
  */
 package io.personium.client;
 
+import java.util.concurrent.CompletableFuture;
+
+import io.personium.client.http.AsyncRestAdapter;
 import io.personium.client.http.PersoniumResponse;
 import io.personium.client.http.RestAdapter;
 import io.personium.client.http.RestAdapterFactory;
@@ -124,6 +127,27 @@ public class AclManager {
         return Acl.parse(res.bodyAsString());
     }
 
+    /**
+     * This method registers the ACL as ACL object asynchronously.
+     * @param obj Acl object
+     * @return Future completed when the ACL is registered
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> setAsync(Acl obj) throws DaoException {
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return rest.acl(this.getUrl(), obj.toXmlString()).thenApply(res -> null);
+    }
+
+    /**
+     * This method gets ACL information as ACL object asynchronously.
+     * @return Future of the Acl object
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Acl> getAsync() throws DaoException {
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return AsyncRestAdapter.thenHandle(rest.propfind(this.getUrl(), "0"), res -> Acl.parse(res.bodyAsString()));
+    }
+
     // /**
     // * URLを生成.
     // * @return 現在のコレクションへのURL
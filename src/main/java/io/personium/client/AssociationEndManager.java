@@ -142,4 +142,12 @@ public class AssociationEndManager extends ODataManager {
         String key = String.format("Name='%s',_EntityType.Name='%s'", name, entityTypeName);
         internalDelMultiKey(key, "*");
     }
+
+    /**
+     * This method invalidates the schema kept by the collection after a schema write.
+     */
+    @Override
+    void afterWrite() {
+        ODataSchemaCache.invalidate(this.collection);
+    }
 }
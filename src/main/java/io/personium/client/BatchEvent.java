@@ -0,0 +1,97 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is the Java Flight Recorder event of {@link ODataBatch#send(java.util.function.Consumer)}, from the
+ * encoding of the commands to the handling of the last response.
+ */
+@Name("io.personium.client.Batch")
+@Label("Personium Batch")
+@Category({"Personium", "OData"})
+@Description("Commands sent by ODataBatch.send")
+final class BatchEvent extends Event {
+    /** URL of the collection. */
+    @Label("URL")
+    String url;
+
+    /** Number of $batch requests. */
+    @Label("Requests")
+    int requests;
+
+    /** Number of requests sent at the same time. */
+    @Label("Concurrency")
+    int concurrency;
+
+    /** Size of the request bodies. */
+    @Label("Bytes Sent")
+    @Description("Total size of the request bodies, -1 if one of them is unknown")
+    @DataAmount
+    long bytes;
+
+    /** Number of responses received. */
+    @Label("Operations")
+    @Description("Number of commands whose response was received")
+    int operations;
+
+    /** Number of responses with a 4xx or 5xx status. */
+    @Label("Failed Operations")
+    int failedOperations;
+
+    /** Error message. */
+    @Label("Error")
+    String error;
+
+    /**
+     * This method records the request bodies.
+     * @param entities Request bodies
+     */
+    void sending(List<HttpEntity> entities) {
+        this.requests = entities.size();
+        for (HttpEntity entity : entities) {
+            long length = entity.getContentLength();
+            if (length < 0) {
+                this.bytes = -1;
+                return;
+            }
+            this.bytes += length;
+        }
+    }
+
+    /**
+     * This method records a response.
+     * @param response Response of a command
+     */
+    void received(ODataResponse response) {
+        this.operations++;
+        if (response.getStatusCode() >= HttpStatus.SC_BAD_REQUEST) {
+            this.failedOperations++;
+        }
+    }
+}
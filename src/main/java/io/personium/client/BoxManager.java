@@ -126,7 +126,26 @@ public class BoxManager extends ODataManager {
         Map<String, String> headers = new HashMap<String, String>();
         headers.put("X-Personium-Recursive", "true");
         RestAdapter rest = (RestAdapter) RestAdapterFactory.create(this.accessor);
-        return rest.del(url, headers);
+        PersoniumResponse res = rest.del(url, headers);
+        this.afterWrite();
+        return res;
+    }
+
+    /**
+     * This method removes the Box names of the cell kept by the BoxNameCache of the context after a create, update or
+     * delete of a Box, since a schema may now resolve to another Box.
+     */
+    @Override
+    void afterWrite() {
+        BoxNameCache cache = this.accessor.getContext().getBoxNameCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.invalidateCell(accessor.getCurrentCell().getUrl());
+        } catch (DaoException e) {
+            cache.clear();
+        }
     }
 
 }
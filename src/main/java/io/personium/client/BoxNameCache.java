@@ -0,0 +1,204 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.personium.client.utils.UrlUtils;
+import io.personium.client.utils.Utils;
+
+/**
+ * It creates a new object of BoxNameCache. This class keeps the names of the Box installed from a schema in a cell,
+ * so that {@link Cell#box()} and {@link Cell#box(String)} with a schema URL request the __box endpoint once per cell
+ * and schema instead of on each call. A name is kept for a limited time, and the names of a cell are removed when a
+ * Box is deleted through its BoxManager. It is enabled by {@link PersoniumContext#setBoxNameCache(BoxNameCache)}. All
+ * the methods are thread-safe.
+ */
+public class BoxNameCache {
+    /** Default time a name is kept, in milliseconds. */
+    public static final long DEFAULT_TTL = 300000;
+    /** Separator of the cell URL and the schema URL in a key. */
+    private static final String SEPARATOR = "\n";
+
+    /** Time a name is kept, in nanoseconds. */
+    private final long ttl;
+    /** Names by key. */
+    private final ConcurrentHashMap<String, Entry> names = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * This is the default constructor, keeping the names {@link #DEFAULT_TTL} milliseconds.
+     */
+    public BoxNameCache() {
+        this(DEFAULT_TTL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This is the parameterized constructor.
+     * @param time Time a name is kept
+     * @param unit Unit of the time
+     */
+    public BoxNameCache(long time, TimeUnit unit) {
+        if (time <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.ttl = unit.toNanos(time);
+    }
+
+    /**
+     * This method returns the name of the Box installed from a schema in a cell.
+     * @param cellUrl Cell URL
+     * @param schemaUrl Schema URL
+     * @return Box name, or null if not kept or expired
+     */
+    public String get(String cellUrl, String schemaUrl) {
+        String key = key(cellUrl, schemaUrl);
+        Entry entry = this.names.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            this.names.remove(key, entry);
+            return null;
+        }
+        return entry.boxName;
+    }
+
+    /**
+     * This method keeps the name of the Box installed from a schema in a cell.
+     * @param cellUrl Cell URL
+     * @param schemaUrl Schema URL
+     * @param boxName Box name
+     */
+    public void put(String cellUrl, String schemaUrl, String boxName) {
+        this.names.put(key(cellUrl, schemaUrl), new Entry(boxName, System.nanoTime() + this.ttl));
+    }
+
+    /**
+     * This method removes the name of the Box installed from a schema in a cell.
+     * @param cellUrl Cell URL
+     * @param schemaUrl Schema URL
+     */
+    public void invalidate(String cellUrl, String schemaUrl) {
+        this.names.remove(key(cellUrl, schemaUrl));
+    }
+
+    /**
+     * This method removes the names of all the Box of a cell.
+     * @param cellUrl Cell URL
+     */
+    public void invalidateCell(String cellUrl) {
+        String prefix = normalize(cellUrl) + SEPARATOR;
+        this.names.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * This method removes all the names.
+     */
+    public void clear() {
+        this.names.clear();
+    }
+
+    /**
+     * This method returns the number of names kept, including the expired ones not removed yet.
+     * @return Number of names
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+    /**
+     * This method resolves the names of the Box installed from a schema in many cells at the same time, on the
+     * executor of the context, and keeps them. A cell where the Box can't be resolved, for example because it is not
+     * installed, is skipped.
+     * @param accessor Accessor sending the requests
+     * @param cellUrls Cell URLs
+     * @param schemaUrl Schema URL
+     * @return Box names by cell URL, for the resolved cells
+     * @throws DaoException Exception thrown in batch mode
+     */
+    public Map<String, String> prewarm(Accessor accessor, Collection<String> cellUrls, String schemaUrl)
+            throws DaoException {
+        if (accessor.isBatchMode()) {
+            throw new DaoException("Concurrent requests are not supported in batch mode");
+        }
+        PersoniumExecutor executor = accessor.getDaoConfig().getExecutor();
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<String, CompletableFuture<String>>();
+        for (final String cellUrl : cellUrls) {
+            final String boxAccessUrl = UrlUtils.append(cellUrl, "__box?schema=" + Utils.escapeURI(schemaUrl));
+            futures.put(cellUrl, executor.submit(() -> Cell.fetchBoxName(accessor, boxAccessUrl)));
+        }
+        Map<String, String> resolved = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, CompletableFuture<String>> future : futures.entrySet()) {
+            String boxName;
+            try {
+                boxName = future.getValue().join();
+            } catch (RuntimeException e) {
+                continue;
+            }
+            this.put(future.getKey(), schemaUrl, boxName);
+            resolved.put(future.getKey(), boxName);
+        }
+        return resolved;
+    }
+
+    /**
+     * This method returns the key of a cell and a schema.
+     * @param cellUrl Cell URL
+     * @param schemaUrl Schema URL
+     * @return Key
+     */
+    private static String key(String cellUrl, String schemaUrl) {
+        return normalize(cellUrl) + SEPARATOR + normalize(schemaUrl);
+    }
+
+    /**
+     * This method removes the trailing slash of a URL, so that both forms share their names.
+     * @param url URL
+     * @return URL without the trailing slash
+     */
+    private static String normalize(String url) {
+        if (url != null && url.endsWith("/")) {
+            return url.substring(0, url.length() - 1);
+        }
+        return url;
+    }
+
+    /**
+     * This class is a name kept by the cache.
+     */
+    private static final class Entry {
+        /** Box name. */
+        private final String boxName;
+        /** Time in System.nanoTime() when the name expires. */
+        private final long expiresAt;
+
+        /**
+         * This is the parameterized constructor.
+         * @param name Box name
+         * @param expires Time in System.nanoTime() when the name expires
+         */
+        Entry(String name, long expires) {
+            this.boxName = name;
+            this.expiresAt = expires;
+        }
+    }
+}
@@ -376,18 +376,7 @@ public class Cell extends AbstractODataContext {
         } else {
             throw new DaoException("Cannot specify the box.");
         }
-        Accessor tmpAccessor = this.accessor.clone();
-        IRestAdapter rest = RestAdapterFactory.create(tmpAccessor);
-        PersoniumResponse resp = rest.get(boxAccessUrl, RestAdapter.CONTENT_TYPE_JSON);
-        String locationHeader = resp.getHeader(HttpHeaders.LOCATION);
-        /** Extract the box name from box URL */
-        String[] params = locationHeader.split("/");
-        String boxName = null;
-        if (locationHeader.endsWith("/")) {
-            boxName = params[params.length - 2];
-        } else {
-            boxName = params[params.length - 1];
-        }
+        String boxName = this.resolveBoxName(boxAccessUrl, schemaUrl);
         return box(boxName, schemaUrl);
     }
 
@@ -409,16 +398,7 @@ public class Cell extends AbstractODataContext {
             // SchemaからBox名を引く
             /** Fetch Box name from Box schema. */
             String boxAccessUrl = UrlUtils.append(this.getUrl(), "__box?schema=" + Utils.escapeURI(param));
-            Accessor tmpAccessor = this.accessor.clone();
-            IRestAdapter rest = RestAdapterFactory.create(tmpAccessor);
-            PersoniumResponse resp = rest.get(boxAccessUrl, RestAdapter.CONTENT_TYPE_JSON);
-            String locationHeader = resp.getHeader(HttpHeaders.LOCATION);
-            String[] params = locationHeader.split("/");
-            if (locationHeader.endsWith("/")) {
-                boxName = params[params.length - 2];
-            } else {
-                boxName = params[params.length - 1];
-            }
+            boxName = this.resolveBoxName(boxAccessUrl, param);
         }
 
         this.accessor.setBoxName(boxName);
@@ -426,6 +406,49 @@ public class Cell extends AbstractODataContext {
         return new Box(this.accessor, boxName, "", boxAccessUrl);
     }
 
+    /**
+     * This method returns the name of the Box installed from a schema in this cell, from the BoxNameCache of the
+     * context if any.
+     * @param boxAccessUrl URL of the __box endpoint
+     * @param schemaUrl Schema URL
+     * @return Box name
+     * @throws DaoException Exception thrown
+     */
+    private String resolveBoxName(String boxAccessUrl, String schemaUrl) throws DaoException {
+        BoxNameCache cache = this.accessor.getContext().getBoxNameCache();
+        if (cache != null) {
+            String boxName = cache.get(this.getUrl(), schemaUrl);
+            if (boxName != null) {
+                return boxName;
+            }
+        }
+        String boxName = fetchBoxName(this.accessor, boxAccessUrl);
+        if (cache != null) {
+            cache.put(this.getUrl(), schemaUrl, boxName);
+        }
+        return boxName;
+    }
+
+    /**
+     * This method requests the __box endpoint of a cell and extracts the Box name from the Location header.
+     * @param accessor Accessor
+     * @param boxAccessUrl URL of the __box endpoint
+     * @return Box name
+     * @throws DaoException Exception thrown
+     */
+    static String fetchBoxName(Accessor accessor, String boxAccessUrl) throws DaoException {
+        Accessor tmpAccessor = accessor.clone();
+        IRestAdapter rest = RestAdapterFactory.create(tmpAccessor);
+        PersoniumResponse resp = rest.get(boxAccessUrl, RestAdapter.CONTENT_TYPE_JSON);
+        String locationHeader = resp.getHeader(HttpHeaders.LOCATION);
+        /** Extract the box name from box URL */
+        String[] params = locationHeader.split("/");
+        if (locationHeader.endsWith("/")) {
+            return params[params.length - 2];
+        }
+        return params[params.length - 1];
+    }
+
     // /**
     // * Boxへアクセスするためのクラスを生成.
     // * @param boxName Box Name
@@ -505,7 +528,8 @@ public class Cell extends AbstractODataContext {
      * @throws DaoException thrown when installation is rejected for some reason.
      */
     public Box installBox(String boxName, String barFileUrl) throws DaoException {
-        PersoniumResponse res = RestAdapterFactory.create(this.accessor).get(barFileUrl, "application/octet-stream");
+        PersoniumResponse res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).getStream(barFileUrl,
+                "application/octet-stream", null);
         InputStream barFile = res.bodyAsStream();
         return this.installBox(boxName, barFile);
     }
@@ -136,4 +136,12 @@ public class ComplexTypeManager extends ODataManager {
         String key = String.format("Name='%s'", name);
         internalDelMultiKey(key, "*");
     }
+
+    /**
+     * This method invalidates the schema kept by the collection after a schema write.
+     */
+    @Override
+    void afterWrite() {
+        ODataSchemaCache.invalidate(this.collection);
+    }
 }
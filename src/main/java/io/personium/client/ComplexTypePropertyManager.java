@@ -146,4 +146,12 @@ public class ComplexTypePropertyManager extends ODataManager {
         String key = String.format("Name='%s',_ComplexType.Name='%s'", name, complexTypeName);
         internalDelMultiKey(key, "*");
     }
+
+    /**
+     * This method invalidates the schema kept by the collection after a schema write.
+     */
+    @Override
+    void afterWrite() {
+        ODataSchemaCache.invalidate(this.collection);
+    }
 }
@@ -16,9 +16,23 @@
  */
 package io.personium.client;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
+import io.personium.client.http.CircuitBreaker;
+import io.personium.client.http.ConcurrencyLimiter;
+import io.personium.client.http.HttpClientFactory;
+import io.personium.client.http.PersoniumConnectionPool;
+import io.personium.client.http.RequestCoalescer;
+import io.personium.client.http.RequestListener;
+import io.personium.client.http.ResponseCache;
 import io.personium.client.http.RestAdapter;
+import io.personium.client.http.RetryPolicy;
 
 ///**
 // * DAO動作のためのカスタマイズ可能な情報を管理するクラス.
@@ -29,9 +43,29 @@ import io.personium.client.http.RestAdapter;
  */
 public class DaoConfig {
 
+    /**
+     * Execution mode of the tasks submitted to {@link PersoniumContext#executor()}.
+     */
+    public enum ExecutionMode {
+        /** Bounded pool of platform threads, one thread per pooled connection. */
+        PLATFORM_THREADS,
+        /** One virtual thread per task (Java 21 or later), falls back to PLATFORM_THREADS on older runtimes. */
+        VIRTUAL_THREADS
+    }
+
     // /** デフォルトのProxyポート. */
     /** Default proxy Port. */
     public static final int DEFAULT_PROXY_PORT = 8080;
+    /** Default max number of pooled connections. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    /** Default max number of pooled connections per route (host). */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+    /** Default time (milliseconds) after which idle pooled connections are evicted. */
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+    /** Default max time (milliseconds) to keep a connection alive when the server does not specify it. */
+    public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 30000;
+    /** Default inactivity time (milliseconds) after which pooled connections are validated before reuse. */
+    public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
 
     // /** HTTPタイムアウト値. */
     /** HTTP time-out value. */
@@ -58,6 +92,40 @@ public class DaoConfig {
     private String proxyUsername = null;
     /** Proxy password. */
     private String proxyPassword = null;
+    /** Max number of pooled connections. */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    /** Max number of pooled connections per route. */
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    /** Idle connection timeout (milliseconds). 0 disables the eviction of idle connections. */
+    private int idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+    /** Keep-alive timeout (milliseconds). 0 keeps connections alive as long as the server allows. */
+    private int keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+    /** Validate-after-inactivity time (milliseconds). */
+    private int validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    /** Connection pool shared by the RestAdapter, created on first use. */
+    private PersoniumConnectionPool connectionPool = null;
+    /** Number of I/O threads of the non-blocking client. 0 uses the number of available processors. */
+    private int asyncIoThreadCount = 0;
+    /** Non-blocking HttpClient shared by the AsyncRestAdapter, created on first use. */
+    private CloseableHttpAsyncClient asyncHttpClient = null;
+    /** Execution mode of the executor. */
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    /** Executor running the blocking client calls, created on first use. */
+    private PersoniumExecutor executor = null;
+    /** Cache of the GET and PROPFIND responses, null if disabled. */
+    private ResponseCache httpCache = null;
+    /** Age in milliseconds under which a cached WebDAV string is returned before revalidation, 0 if disabled. */
+    private long staleWhileRevalidate = 0;
+    /** Coalescer of the identical requests in flight, null if disabled. */
+    private RequestCoalescer requestCoalescer = null;
+    /** Retry policy of the failed requests, null if disabled. */
+    private RetryPolicy retryPolicy = null;
+    /** Circuit breaker of the hosts, null if disabled. */
+    private CircuitBreaker circuitBreaker = null;
+    /** Limiter of the requests in flight per host, null if disabled. */
+    private ConcurrencyLimiter concurrencyLimiter = null;
+    /** Listeners of the requests. */
+    private final List<RequestListener> requestListeners = new CopyOnWriteArrayList<RequestListener>();
 
     // /**
     // * HTTPタイムアウト値を習得.
@@ -76,7 +144,9 @@ public class DaoConfig {
     // * @param value タイムアウト値(ミリ秒)
     // */
     /**
-     * This method sets the HTTP timeout value.
+     * This method sets the HTTP timeout value, used both as the connect timeout and as the socket timeout. It is
+     * applied to the connection pool and the non-blocking client created after the call: the ones already created
+     * keep the value they were created with until {@link #close()}.
      * @param value Time-out
      */
     public final void setConnectionTimeout(final int value) {
@@ -238,6 +308,371 @@ public class DaoConfig {
         this.proxyPassword = value;
     }
 
+    /**
+     * This method returns the max number of pooled connections.
+     * @return Max number of pooled connections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * This method sets the max number of pooled connections. It is applied to the pool immediately.
+     * @param value Max number of pooled connections
+     */
+    public synchronized void setMaxConnections(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("max connections must be positive");
+        }
+        this.maxConnections = value;
+        if (this.connectionPool != null) {
+            this.connectionPool.getConnectionManager().setMaxTotal(value);
+        }
+    }
+
+    /**
+     * This method returns the max number of pooled connections per route.
+     * @return Max number of pooled connections per route
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * This method sets the max number of pooled connections per route. It is applied to the pool immediately.
+     * @param value Max number of pooled connections per route
+     */
+    public synchronized void setMaxConnectionsPerRoute(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("max connections per route must be positive");
+        }
+        this.maxConnectionsPerRoute = value;
+        if (this.connectionPool != null) {
+            this.connectionPool.getConnectionManager().setDefaultMaxPerRoute(value);
+        }
+    }
+
+    /**
+     * This method returns the time after which idle pooled connections are evicted.
+     * @return Idle connection timeout (milliseconds)
+     */
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * This method sets the time after which idle pooled connections are evicted. 0 disables the eviction. It is
+     * applied to the pool created after the call, see {@link #close()}.
+     * @param value Idle connection timeout (milliseconds)
+     */
+    public void setIdleConnectionTimeout(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("idle connection timeout can't be negative");
+        }
+        this.idleConnectionTimeout = value;
+    }
+
+    /**
+     * This method returns the max time to keep a connection alive.
+     * @return Keep-alive timeout (milliseconds)
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * This method sets the max time to keep a connection alive. A shorter Keep-Alive given by the server is honored.
+     * 0 keeps connections alive as long as the server allows.
+     * @param value Keep-alive timeout (milliseconds)
+     */
+    public void setKeepAliveTimeout(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("keep alive timeout can't be negative");
+        }
+        this.keepAliveTimeout = value;
+    }
+
+    /**
+     * This method returns the inactivity time after which pooled connections are validated before reuse.
+     * @return Validate-after-inactivity time (milliseconds)
+     */
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * This method sets the inactivity time after which pooled connections are validated before reuse. It is applied
+     * to the pool immediately.
+     * @param value Validate-after-inactivity time (milliseconds)
+     */
+    public synchronized void setValidateAfterInactivity(int value) {
+        this.validateAfterInactivity = value;
+        if (this.connectionPool != null) {
+            this.connectionPool.getConnectionManager().setValidateAfterInactivity(value);
+        }
+    }
+
+    /**
+     * This method returns the connection pool shared by the RestAdapter, creating it on first use. Returns null for
+     * the platforms that do not support pooling.
+     * @return PersoniumConnectionPool object
+     */
+    public synchronized PersoniumConnectionPool getConnectionPool() {
+        if (this.connectionPool == null) {
+            this.connectionPool = HttpClientFactory.createPool(PersoniumContext.getPlatform(), this);
+        }
+        return this.connectionPool;
+    }
+
+    /**
+     * This method returns the number of I/O threads of the non-blocking client.
+     * @return Number of I/O threads
+     */
+    public int getAsyncIoThreadCount() {
+        return asyncIoThreadCount;
+    }
+
+    /**
+     * This method sets the number of I/O threads of the non-blocking client. 0 uses the number of available
+     * processors. It is applied to the client created after the call, see {@link #close()}.
+     * @param value Number of I/O threads
+     */
+    public void setAsyncIoThreadCount(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("io thread count can't be negative");
+        }
+        this.asyncIoThreadCount = value;
+    }
+
+    /**
+     * This method returns the non-blocking HttpClient shared by the AsyncRestAdapter, creating and starting it on
+     * first use. Returns null for the platforms that do not support it.
+     * @return CloseableHttpAsyncClient object
+     */
+    public synchronized CloseableHttpAsyncClient getAsyncHttpClient() {
+        if (this.asyncHttpClient == null) {
+            this.asyncHttpClient = HttpClientFactory.createAsync(PersoniumContext.getPlatform(), this);
+        }
+        return this.asyncHttpClient;
+    }
+
+    /**
+     * This method returns the execution mode of the executor.
+     * @return Execution mode
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * This method sets the execution mode of the executor. It is applied to the executor created after the call, see
+     * {@link #close()}.
+     * @param value Execution mode
+     */
+    public void setExecutionMode(ExecutionMode value) {
+        if (value == null) {
+            throw new IllegalArgumentException("execution mode can't be null");
+        }
+        this.executionMode = value;
+    }
+
+    /**
+     * This method returns the executor running the blocking client calls, creating it on first use. The number of
+     * tasks running at the same time is bounded by the max number of pooled connections.
+     * @return PersoniumExecutor object
+     */
+    public synchronized PersoniumExecutor getExecutor() {
+        if (this.executor == null) {
+            this.executor = new PersoniumExecutor(this.executionMode, this.maxConnections);
+        }
+        return this.executor;
+    }
+
+    /**
+     * This method returns the cache of the GET and PROPFIND responses.
+     * @return ResponseCache object, null if disabled
+     */
+    public ResponseCache getHttpCache() {
+        return httpCache;
+    }
+
+    /**
+     * This method enables the HTTP cache of the GET and PROPFIND responses. A cached response is returned without a
+     * request while it is fresh according to Cache-Control, and is revalidated with If-None-Match or
+     * If-Modified-Since afterwards, so that a 304 response returns the cached body. Responses are cached per
+     * Authorization and Vary headers, and a request with another method removes the responses of its URL. The cache
+     * may be shared, for instance with {@link PersoniumContext#getResponseCache()}.
+     * @param value ResponseCache object, null (default) to disable the HTTP cache
+     */
+    public void setHttpCache(ResponseCache value) {
+        this.httpCache = value;
+    }
+
+    /**
+     * This method returns the coalescer of the identical GET and HEAD requests.
+     * @return RequestCoalescer object, null if disabled
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * This method enables the coalescing of the identical GET and HEAD requests: the requests sent at the same time
+     * with the same URL, credentials and headers share one HTTP exchange, and each one gets its own copy of the
+     * response. It reduces the load of the server when many threads read the same resource at once.
+     * @param value RequestCoalescer object, null (default) to disable
+     */
+    public void setRequestCoalescer(RequestCoalescer value) {
+        this.requestCoalescer = value;
+    }
+
+    /**
+     * This method returns the retry policy of the requests.
+     * @return RetryPolicy object, null if disabled
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * This method enables the retry of the requests failing with an I/O error or a busy server status. Only the
+     * idempotent requests are retried, see {@link RetryPolicy}. The policy keeps the counters of its retries, and may
+     * be shared by several DaoConfig objects.
+     * @param value RetryPolicy object, null (default) to disable
+     */
+    public void setRetryPolicy(RetryPolicy value) {
+        this.retryPolicy = value;
+    }
+
+    /**
+     * This method returns the circuit breaker of the hosts.
+     * @return CircuitBreaker object, null if disabled
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * This method enables the circuit breaker of the hosts: the requests to a host failing or slow for most of its
+     * last requests fail at once with the code {@link DaoException#CIRCUIT_OPEN} for a while. The breaker may be
+     * shared by several DaoConfig objects.
+     * @param value CircuitBreaker object, null (default) to disable
+     */
+    public void setCircuitBreaker(CircuitBreaker value) {
+        this.circuitBreaker = value;
+    }
+
+    /**
+     * This method returns the limiter of the requests in flight per host.
+     * @return ConcurrencyLimiter object, null if disabled
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * This method enables the adaptive limit of the requests in flight per host: a request over the limit fails at
+     * once with the code {@link DaoException#CONCURRENCY_LIMITED}, and the limit shrinks when the host fails or slows
+     * down. As the requests without timeout never fail by themselves, a connection timeout should also be set, see
+     * {@link #setConnectionTimeout(int)}. The limiter may be shared by several DaoConfig objects.
+     * @param value ConcurrencyLimiter object, null (default) to disable
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter value) {
+        this.concurrencyLimiter = value;
+    }
+
+    /**
+     * This method registers a listener notified of each request sent by RestAdapter once it has completed, to collect
+     * metrics or traces. A listener may be shared by several DaoConfig objects.
+     * @param listener RequestListener object
+     */
+    public void addRequestListener(RequestListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can't be null");
+        }
+        this.requestListeners.add(listener);
+    }
+
+    /**
+     * This method unregisters a listener of the requests.
+     * @param listener RequestListener object
+     */
+    public void removeRequestListener(RequestListener listener) {
+        this.requestListeners.remove(listener);
+    }
+
+    /**
+     * This method returns the listeners of the requests.
+     * @return Unmodifiable list of the listeners, empty if none
+     */
+    public List<RequestListener> getRequestListeners() {
+        return Collections.unmodifiableList(this.requestListeners);
+    }
+
+    /**
+     * This method returns the age under which a cached WebDAV string is returned before being revalidated.
+     * @return Age in milliseconds, 0 if disabled
+     */
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * This method enables the stale-while-revalidate mode of {@link DavCollection#getStringWebDAV(String, String)}.
+     * A response of the cache of the PersoniumContext younger than the given age is returned at once, and revalidated
+     * with If-None-Match by a task of the executor, see {@link #getExecutor()}. The revalidations of a URL running at
+     * the same time are collapsed into one. An older response is revalidated before being returned, as when the mode
+     * is disabled. A response is only returned at once to an Accessor holding the token it was got with: the other
+     * ones send the conditional request with their own token, so that the server checks their privileges. The PUT
+     * and DELETE of DavCollection remove the cached response of their URL.
+     * @param value Age in milliseconds, 0 (default) to disable
+     */
+    public void setStaleWhileRevalidate(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("stale-while-revalidate age can't be negative");
+        }
+        this.staleWhileRevalidate = value;
+    }
+
+    /**
+     * This method closes the connection pool, the non-blocking client and the executor. They are created again with
+     * the current settings on the next request. Tasks of the executor still running at that time may fail. The
+     * HttpClient set by {@link #setHttpClient(HttpClient)} is not closed.
+     */
+    public synchronized void close() {
+        PersoniumExecutor oldExecutor = this.executor;
+        PersoniumConnectionPool oldPool = this.connectionPool;
+        CloseableHttpAsyncClient oldAsync = this.asyncHttpClient;
+        this.connectionPool = null;
+        this.asyncHttpClient = null;
+        this.executor = null;
+        IOException failure = null;
+        if (oldExecutor != null) {
+            oldExecutor.close();
+        }
+        if (oldPool != null) {
+            try {
+                oldPool.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (oldAsync != null) {
+            try {
+                oldAsync.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
     // /**
     // * RestAdapterのモッククラスを取得.
     // * @return RestAdapterモッククラス
@@ -25,6 +25,10 @@ package io.personium.client;
 public class DaoException extends Exception {
     /** Final and unique serial version random ID. */
     private static final long serialVersionUID = 1L;
+    /** Code of a request refused because the circuit of its host is open, see CircuitBreaker. */
+    public static final int CIRCUIT_OPEN = -1;
+    /** Code of a request refused because too many requests are in flight to its host, see ConcurrencyLimiter. */
+    public static final int CONCURRENCY_LIMITED = -2;
     /** Status Code. */
     private int code = 0;
 
@@ -20,18 +20,25 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.http.Header;
 import org.apache.http.HttpStatus;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import io.personium.client.http.AsyncRestAdapter;
 import io.personium.client.http.CacheEntry;
-import io.personium.client.http.CacheMap;
 import io.personium.client.http.IRestAdapter;
 import io.personium.client.http.PersoniumResponse;
+import io.personium.client.http.ResponseCache;
 import io.personium.client.http.RestAdapter;
 import io.personium.client.http.RestAdapterFactory;
 import io.personium.client.utils.UrlUtils;
@@ -329,7 +336,8 @@ public class DavCollection extends PersoniumCollection {
         String url = UrlUtils.append(this.getPath(), pathValue);
         // リクエスト
         /** Request. */
-        PersoniumResponse res = RestAdapterFactory.create(this.accessor).get(url, "application/octet-stream");
+        PersoniumResponse res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).getStream(url,
+                "application/octet-stream", null);
         // レスポンスボディをストリームとして返却
         /** Return stream as the response body. */
         return res.bodyAsStream();
@@ -359,7 +367,10 @@ public class DavCollection extends PersoniumCollection {
     // * @throws DaoException DAO例外
     // */
     /**
-     * This method requests the GET method for the DAV and retruns in WebDAV object.
+     * This method requests the GET method for the DAV and retruns in WebDAV object. A cached response is revalidated
+     * with If-None-Match and returned with the status 304 if not modified. In the stale-while-revalidate mode, see
+     * {@link DaoConfig#setStaleWhileRevalidate(long)}, a recent cached response is returned without waiting for the
+     * revalidation.
      * @param pathValue Path
      * @param charset Character Code
      * @return WebDAV GET WebDAV object that contains a string
@@ -372,10 +383,51 @@ public class DavCollection extends PersoniumCollection {
             url = this.getPath();
         }
 
+        WebDavCacheEvent event = new WebDavCacheEvent();
+        event.begin();
+        try {
+            WebDAV webDAV = this.getStringWebDAV(url, charset, event);
+            event.status = webDAV.getStatusCode();
+            if (webDAV.getStringBody() != null) {
+                event.length = webDAV.getStringBody().length();
+            }
+            return webDAV;
+        } catch (DaoException | RuntimeException e) {
+            event.error = e.getMessage();
+            throw e;
+        } finally {
+            event.url = url;
+            event.commit();
+        }
+    }
+
+    /**
+     * This method requests the GET method for the DAV through the cache, and records the use of the cache in an
+     * event.
+     * @param url URL
+     * @param charset Character Code
+     * @param event Event of the cache lookup
+     * @return WebDAV GET WebDAV object that contains a string
+     * @throws DaoException Exception thrown
+     */
+    private WebDAV getStringWebDAV(String url, String charset, WebDavCacheEvent event) throws DaoException {
         // まずはキャッシュから検索する
         /** First search from cache. */
-        CacheMap cm = this.accessor.getContext().getCacheMap();
-        CacheEntry ce = cm.search(url);
+        ResponseCache cm = this.accessor.getContext().getResponseCache();
+        CacheEntry ce = cm.get(url);
+        event.result = WebDavCacheEvent.MISS;
+        if (ce != null) {
+            event.age = ce.getAge();
+        }
+
+        long softTtl = this.accessor.getDaoConfig().getStaleWhileRevalidate();
+        if (ce != null && softTtl > 0 && ce.getAge() < softTtl && !this.accessor.isBatchMode()
+                && ce.hasCredentials(this.accessor.getAccessToken())) {
+            /** Young enough and got with the same token: return the cached value and revalidate it in the background. */
+            event.result = WebDavCacheEvent.FRESH;
+            this.refreshInBackground(cm, ce, charset);
+            return cachedWebDAV(ce);
+        }
 
         IRestAdapter rest = RestAdapterFactory.create(this.accessor);
         PersoniumResponse res;
@@ -393,15 +445,18 @@ public class DavCollection extends PersoniumCollection {
             // 304 NOT_MODIFIEDの場合は、キャッシュの値を返却する
             /** In the case of 304 NOT_MODIFIED, to return the value of the cache. */
             if (Integer.parseInt(e.getCode()) == HttpStatus.SC_NOT_MODIFIED && ce != null) {
-                WebDAV webDAVCache = new WebDAV();
-                webDAVCache.setStringBody(ce.getBody());
-                webDAVCache.setResHeaders(ce.getHeaders());
-                webDAVCache.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
-                return webDAVCache;
+                if (softTtl > 0) {
+                    cm.put(this.revalidated(ce));
+                }
+                event.result = WebDavCacheEvent.NOT_MODIFIED;
+                return cachedWebDAV(ce);
             }
             throw e;
         }
 
+        if (ce != null) {
+            event.result = WebDavCacheEvent.MODIFIED;
+        }
         // レスポンスボディを取得
         /** Get the response body. */
         String body = res.bodyAsString(charset);
@@ -411,19 +466,97 @@ public class DavCollection extends PersoniumCollection {
         webDAV.setResHeaders(res.getHeaderList());
         webDAV.setStatusCode(res.getStatusCode());
 
-        if (ce == null) {
-            // キャッシュになければ新規にキャッシュに保存
-            /** Save the new one to cache. */
-            cm.appendEntry(new CacheEntry(url, res.getHeaderList(), body));
-        } else {
-            // キャッシュにあれば、キャッシュ情報を更新
-            /** If was present on the cache, then update its new value. */
-            ce.setHeaders(res.getHeaderList());
-            ce.setBody(body);
-        }
+        // キャッシュに保存(キャッシュにあれば置き換え)
+        /** Save to cache, replacing the cached value if any. */
+        cm.put(this.entry(url, res.getHeaderList(), body));
         return webDAV;
     }
 
+    /**
+     * This method revalidates a cached response with a task of the executor, unless it is already being revalidated.
+     * The cache is updated with the new response, the entry is renewed by a 304 response and removed by an error
+     * response. The entry is kept when the server can't be reached.
+     * @param cm Cache
+     * @param ce Cached response
+     * @param charset Character Code
+     */
+    private void refreshInBackground(final ResponseCache cm, final CacheEntry ce, final String charset) {
+        final PersoniumContext context = this.accessor.getContext();
+        final String url = ce.getUrl();
+        if (!context.startRefresh(url)) {
+            return;
+        }
+        Callable<Void> task = () -> {
+            try {
+                PersoniumResponse res = RestAdapterFactory.create(this.accessor).get(url, "text/plain", ce.getEtag());
+                // Not kept if replaced or removed by a write meanwhile.
+                cm.replace(ce, this.entry(url, res.getHeaderList(), res.bodyAsString(charset)));
+            } catch (DaoException e) {
+                int code = Integer.parseInt(e.getCode());
+                if (code == HttpStatus.SC_NOT_MODIFIED) {
+                    cm.replace(ce, this.revalidated(ce));
+                } else if (code >= HttpStatus.SC_BAD_REQUEST) {
+                    cm.invalidate(url);
+                }
+            } finally {
+                context.endRefresh(url);
+            }
+            return null;
+        };
+        try {
+            this.accessor.getDaoConfig().getExecutor().submit(task);
+        } catch (RejectedExecutionException e) {
+            // The executor is closed: the entry is revalidated by a later call.
+            context.endRefresh(url);
+        }
+    }
+
+    /**
+     * This method creates a new cache entry for a response confirmed by a 304 response, so that its age restarts.
+     * @param ce Cached response
+     * @return CacheEntry object
+     */
+    private CacheEntry revalidated(CacheEntry ce) {
+        CacheEntry entry = new CacheEntry(ce.getUrl(), new Header[0], ce.getBody());
+        entry.setHeaders(new HashMap<String, String>(ce.getHeaders()));
+        entry.setCredentials(this.accessor.getAccessToken());
+        return entry;
+    }
+
+    /**
+     * This method creates the cache entry of a response got with the token of the accessor.
+     * @param url URL
+     * @param headers Response headers
+     * @param body Response body
+     * @return CacheEntry object
+     */
+    private CacheEntry entry(String url, Header[] headers, String body) {
+        CacheEntry entry = new CacheEntry(url, headers, body);
+        entry.setCredentials(this.accessor.getAccessToken());
+        return entry;
+    }
+
+    /**
+     * This method removes the cached response of a URL after a write, so that the next read gets the new content.
+     * @param url URL
+     */
+    private void forget(String url) {
+        this.accessor.getContext().getResponseCache().invalidate(url);
+    }
+
+    /**
+     * This method creates the WebDAV object of a cached response.
+     * @param ce Cached response
+     * @return WebDAV object with the status 304
+     */
+    private static WebDAV cachedWebDAV(CacheEntry ce) {
+        WebDAV webDAVCache = new WebDAV();
+        webDAVCache.setStringBody(ce.getBody());
+        webDAVCache.setResHeaders(ce.getHeaders());
+        webDAVCache.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+        return webDAVCache;
+    }
+
     // /**
     // * DAVに対するGETメソッドをリクエストする<br>
     // * ETag値がnull以外の場合は、If-None-Matchヘッダを付加する.
@@ -496,7 +629,8 @@ public class DavCollection extends PersoniumCollection {
      */
     public WebDAV getStreamWebDAV(String pathValue) throws DaoException {
         String url = UrlUtils.append(this.getPath(), pathValue);
-        PersoniumResponse res = RestAdapterFactory.create(this.accessor).get(url, "application/octet-stream");
+        PersoniumResponse res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).getStream(url,
+                "application/octet-stream", null);
 
         // レスポンスボディのストリームを持つWebDAVを返却
         /** Return WebDAV with a stream of the response body. */
@@ -528,7 +662,8 @@ public class DavCollection extends PersoniumCollection {
         PersoniumResponse res = null;
         int statusCode = 0;
         try {
-            res = RestAdapterFactory.create(this.accessor).get(url, "application/octet-stream", eTag);
+            res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).getStream(url, "application/octet-stream",
+                    eTag);
             statusCode = res.getStatusCode();
         } catch (DaoException e) {
             // TODO 300系をエラーとして処理することの可否は検討が必要
@@ -601,8 +736,12 @@ public class DavCollection extends PersoniumCollection {
      */
     public WebDAV put(String pathValue, String contentType, InputStream is, String etagValue) throws DaoException {
         String url = UrlUtils.append(this.getPath(), pathValue);
-        PersoniumResponse res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).putStream(url, contentType, is,
-                etagValue);
+        PersoniumResponse res;
+        try {
+            res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).putStream(url, contentType, is, etagValue);
+        } finally {
+            this.forget(url);
+        }
         WebDAV webDAV = new WebDAV();
         webDAV.setResHeaders(res.getHeaderList());
         webDAV.setStatusCode(res.getStatusCode());
@@ -636,8 +775,12 @@ public class DavCollection extends PersoniumCollection {
         }
         InputStream is = new ByteArrayInputStream(bs);
         String url = UrlUtils.append(this.getPath(), pathValue);
-        PersoniumResponse res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).putStream(url, contentType, is,
-                etagValue);
+        PersoniumResponse res;
+        try {
+            res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).putStream(url, contentType, is, etagValue);
+        } finally {
+            this.forget(url);
+        }
         WebDAV webDAV = new WebDAV();
         webDAV.setResHeaders(res.getHeaderList());
         webDAV.setStatusCode(res.getStatusCode());
@@ -677,8 +820,12 @@ public class DavCollection extends PersoniumCollection {
         }
         InputStream is = new ByteArrayInputStream(bs);
         String url = UrlUtils.append(this.getPath(), pathValue);
-        PersoniumResponse res =
-                ((RestAdapter) RestAdapterFactory.create(this.accessor)).putStream(url, contentType, is, etag);
+        PersoniumResponse res;
+        try {
+            res = ((RestAdapter) RestAdapterFactory.create(this.accessor)).putStream(url, contentType, is, etag);
+        } finally {
+            this.forget(url);
+        }
         WebDAV webDAV = new WebDAV();
         webDAV.setResHeaders(res.getHeaderList());
         webDAV.setStatusCode(res.getStatusCode());
@@ -697,7 +844,11 @@ public class DavCollection extends PersoniumCollection {
      */
     public void del(String pathValue) throws DaoException {
         String url = UrlUtils.append(this.getPath(), pathValue);
-        RestAdapterFactory.create(this.accessor).del(url, "*");
+        try {
+            RestAdapterFactory.create(this.accessor).del(url, "*");
+        } finally {
+            this.forget(url);
+        }
     }
 
     // /**
@@ -714,6 +865,125 @@ public class DavCollection extends PersoniumCollection {
      */
     public void del(String pathValue, String etagValue) throws DaoException {
         String url = UrlUtils.append(this.getPath(), pathValue);
-        RestAdapterFactory.create(this.accessor).del(url, etagValue);
+        try {
+            RestAdapterFactory.create(this.accessor).del(url, etagValue);
+        } finally {
+            this.forget(url);
+        }
+    }
+
+    /**
+     * This method creates a Collection asynchronously.
+     * @param name CollectionName
+     * @return Future completed when the collection is created
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> mkColAsync(String name) throws DaoException {
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(this.accessor);
+        return rest.mkcol(UrlUtils.append(this.getPath(), name)).thenApply(res -> null);
+    }
+
+    /**
+     * This method requests the GET method for the DAV asynchronously and returns in WebDAV object. The response is not
+     * stored in the cache of the PersoniumContext.
+     * @param pathValue Path
+     * @param charset Character Code
+     * @return Future of the WebDAV object that contains a string
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<WebDAV> getStringWebDAVAsync(String pathValue, String charset) throws DaoException {
+        String url = UrlUtils.append(this.getPath(), pathValue);
+        if (pathValue == null || "".equals(pathValue)) {
+            url = this.getPath();
+        }
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(this.accessor);
+        return AsyncRestAdapter.thenHandle(rest.get(url, "text/plain"), res -> {
+            WebDAV webDAV = new WebDAV();
+            webDAV.setStringBody(res.bodyAsString(charset));
+            webDAV.setResHeaders(res.getHeaderList());
+            webDAV.setStatusCode(res.getStatusCode());
+            return webDAV;
+        });
+    }
+
+    /**
+     * This method requests the GET method for the DAV asynchronously and returns in string format.
+     * @param pathValue Path
+     * @return Future of the GET Response in string form
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<String> getStringAsync(String pathValue) throws DaoException {
+        return this.getStringWebDAVAsync(pathValue, "utf-8").thenApply(webDAV -> webDAV.getStringBody());
+    }
+
+    /**
+     * The purpose of this method is to PUT a string of data to any specified Path asynchronously.
+     * @param pathValue DAV Path
+     * @param contentType Media Type
+     * @param data PUT data
+     * @param etagValue Etag, specify "*" for forcing new or updated
+     * @return Future of the WebDAV object
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<WebDAV> putAsync(String pathValue, String contentType, String data, String etagValue)
+            throws DaoException {
+        String url = UrlUtils.append(this.getPath(), pathValue);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(this.accessor);
+        return rest.put(url, data, etagValue, contentType).whenComplete((res, e) -> this.forget(url)).thenApply(res -> {
+            WebDAV webDAV = new WebDAV();
+            webDAV.setResHeaders(res.getHeaderList());
+            webDAV.setStatusCode(res.getStatusCode());
+            return webDAV;
+        });
+    }
+
+    /**
+     * The purpose of this method is to Delete the data in the specified Path asynchronously.
+     * @param pathValue DAV Path
+     * @return Future completed when the deletion is done
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> delAsync(String pathValue) throws DaoException {
+        String url = UrlUtils.append(this.getPath(), pathValue);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(this.accessor);
+        return rest.del(url, "*").whenComplete((res, e) -> this.forget(url)).thenApply(res -> null);
+    }
+
+    /**
+     * This method submits a task calling the blocking API to the executor of the context, see
+     * {@link PersoniumContext#executor()}. It is used for fanning out the requests of this collection, for example
+     * {@code submit(() -> dav.getString(path))}.
+     * @param task Task to run
+     * @param <T> Type of the result
+     * @return Future of the result
+     * @throws DaoException Exception thrown in batch mode
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) throws DaoException {
+        return executor().submit(task);
+    }
+
+    /**
+     * This method runs all the tasks calling the blocking API on the executor of the context and waits for them to
+     * complete, see {@link PersoniumExecutor#invokeAll(Collection)}.
+     * @param tasks Tasks to run
+     * @param <T> Type of the results
+     * @return Results in the order of the tasks
+     * @throws DaoException Exception thrown by a task, or in batch mode
+     */
+    public <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks) throws DaoException {
+        return executor().invokeAll(tasks);
+    }
+
+    /**
+     * This method returns the executor of the context. The requests of a batch are accumulated by the Accessor, so
+     * they can't be run concurrently.
+     * @return PersoniumExecutor object
+     * @throws DaoException Exception thrown in batch mode
+     */
+    private PersoniumExecutor executor() throws DaoException {
+        if (this.accessor.isBatchMode()) {
+            throw new DaoException("Concurrent requests are not supported in batch mode");
+        }
+        return this.accessor.getDaoConfig().getExecutor();
     }
 }
@@ -17,14 +17,15 @@
 package io.personium.client;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.simple.JSONObject;
 
+import io.personium.client.http.AsyncRestAdapter;
 import io.personium.client.http.PersoniumResponse;
 import io.personium.client.http.IRestAdapter;
 import io.personium.client.http.RestAdapter;
 import io.personium.client.http.RestAdapterFactory;
-import io.personium.client.utils.Utils;
 
 ///**
 // * OData関連の各機能を生成/削除するためのクラスの抽象クラス.
@@ -91,7 +92,7 @@ public class EntitySet extends ODataManager {
      * @throws DaoException Exception thrown
      */
     private void internalMerge(String id, HashMap<String, Object> body, String etag) throws DaoException {
-        String url = this.getUrl() + "('" + id + "')";
+        String url = this.entityUrl(id);
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         rest.merge(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON);
     }
@@ -132,7 +133,7 @@ public class EntitySet extends ODataManager {
      */
     @SuppressWarnings("unchecked")
     public Entity mergeAsEntity(String id, HashMap<String, Object> body, String etag) throws DaoException {
-        String url = this.getUrl() + "('" + id + "')";
+        String url = this.entityUrl(id);
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         PersoniumResponse res = rest.merge(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON);
         JSONObject json = new JSONObject();
@@ -183,8 +184,7 @@ public class EntitySet extends ODataManager {
      */
     @SuppressWarnings("unchecked")
     public Entity updateAsEntity(String key, HashMap<String, Object> body, String etag) throws DaoException {
-        String escapekey = "'" + Utils.escapeURI(key) + "'";
-        String url = this.getUrl() + "(" + escapekey + ")";
+        String url = this.entityUrl(key);
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         PersoniumResponse res = rest.put(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON);
         JSONObject json = new JSONObject();
@@ -213,4 +213,77 @@ public class EntitySet extends ODataManager {
         entity.setResHeaders(res.getHeaderList());
         return entity;
     }
+
+    /**
+     * This method is used for the partial update of user data asynchronously.
+     * @param id ID value of the data
+     * @param body Request body
+     * @param etag ETag value
+     * @return Future completed when the update is done
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> mergeAsync(String id, HashMap<String, Object> body, String etag)
+            throws DaoException {
+        String url = this.entityUrl(id);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return rest.merge(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON)
+                .thenApply(res -> null);
+    }
+
+    /**
+     * This method is used to create the user data asynchronously.
+     * @param body Request body
+     * @return Future of the Entity object that is created
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Entity> createAsEntityAsync(HashMap<String, Object> body) throws DaoException {
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return AsyncRestAdapter.thenHandle(
+                rest.post(this.getUrl(), JSONObject.toJSONString(body), RestAdapter.CONTENT_TYPE_JSON), res -> {
+                    JSONObject resbody = (JSONObject) ((JSONObject) res.bodyAsJson().get("d")).get("results");
+                    Entity entity = new Entity(accessor, resbody);
+                    entity.setBody(resbody);
+                    entity.setResHeaders(res.getHeaderList());
+                    return entity;
+                });
+    }
+
+    /**
+     * This method is used to update the user data asynchronously.
+     * @param key ID value of the user data
+     * @param body Request body
+     * @param etag Etag value
+     * @return Future of the Entity object that is updated
+     * @throws DaoException Exception thrown
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Entity> updateAsEntityAsync(String key, HashMap<String, Object> body, String etag)
+            throws DaoException {
+        String url = this.entityUrl(key);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return rest.put(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON).thenApply(res -> {
+            JSONObject json = new JSONObject();
+            json.putAll(body);
+            Entity entity = new Entity(accessor, json);
+            entity.setResHeaders(res.getHeaderList());
+            return entity;
+        });
+    }
+
+    /**
+     * This method is used to retrieve the specified user data asynchronously.
+     * @param id ID value of the user data
+     * @return Future of the Entity object
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Entity> retrieveAsEntityAsync(String id) throws DaoException {
+        String url = this.entityUrl(id);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return AsyncRestAdapter.thenHandle(rest.get(url, RestAdapter.CONTENT_TYPE_JSON), res -> {
+            JSONObject json = (JSONObject) ((JSONObject) res.bodyAsJson().get("d")).get("results");
+            Entity entity = new Entity(accessor, json);
+            entity.setResHeaders(res.getHeaderList());
+            return entity;
+        });
+    }
 }
@@ -108,4 +108,12 @@ public class EntityTypeManager extends ODataManager {
         JSONObject json = internalRetrieve(name);
         return new EntityType(accessor, json);
     }
+
+    /**
+     * This method invalidates the schema kept by the collection after a schema write.
+     */
+    @Override
+    void afterWrite() {
+        ODataSchemaCache.invalidate(this.collection);
+    }
 }
@@ -20,6 +20,7 @@ import java.util.HashMap;
 
 import io.personium.client.http.IRestAdapter;
 import io.personium.client.http.PersoniumResponse;
+import io.personium.client.http.RestAdapter;
 import io.personium.client.http.RestAdapterFactory;
 
 ///**
@@ -136,7 +137,7 @@ public abstract class LogManager {
      * @throws DaoException Exception thrown
      */
     private WebDAV getStreamEventLog(String url, String personiumKey) throws DaoException {
-        IRestAdapter rest = RestAdapterFactory.create(accessor);
+        RestAdapter rest = (RestAdapter) RestAdapterFactory.create(accessor);
         HashMap<String, String> headers = new HashMap<String, String>();
         if (personiumKey != null) {
             headers.put("X-Personium-RequestKey", personiumKey);
@@ -144,7 +145,7 @@ public abstract class LogManager {
 
         PersoniumResponse res;
         try {
-            res = rest.get(url, headers, "application/octet-stream");
+            res = rest.getStream(url, headers, "application/octet-stream");
         } catch (DaoException e) {
             throw e;
         }
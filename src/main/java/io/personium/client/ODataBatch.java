@@ -16,7 +16,19 @@
  */
 package io.personium.client;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 
 import io.personium.client.http.PersoniumResponse;
 import io.personium.client.http.RestAdapter;
@@ -31,6 +43,12 @@ import io.personium.client.utils.UrlUtils;
 public class ODataBatch extends ODataCollection {
 
     private List<ODataResponse> oDataResponses;
+    /** Max number of commands of a request, 0 if unlimited. */
+    private int maxOperations = 0;
+    /** Max length of a request body in bytes, 0 if unlimited. */
+    private long maxBytes = 0;
+    /** Number of requests sent at the same time when the commands are split. */
+    private int concurrency = 1;
 
     // /**
     // * コンストラクタ.
@@ -52,19 +70,227 @@ public class ODataBatch extends ODataCollection {
     // * @throws DaoException DAO例外
     // */
     /**
-     * This method is ued for Batch execution of commands.
+     * This method is ued for Batch execution of commands. The commands are sent in several requests when they exceed
+     * {@link #setMaxOperations(int)} or {@link #setMaxBytes(long)}, and the responses are kept in the order of the
+     * commands.
      * @throws DaoException Exception thrown
      */
     public void send() throws DaoException {
-        String url = UrlUtils.append(super.getPath(), "$batch");
-        String boundary = accessor.getBatchAdapter().getBatchBoundary();
-        String contentType = "multipart/mixed; boundary=" + boundary;
+        List<ODataResponse> responses = new ArrayList<ODataResponse>();
+        this.send(responses::add);
+        this.oDataResponses = responses;
+    }
+
+    /**
+     * This method is used for Batch execution of commands, passing each response to the handler as soon as it has
+     * been received. The responses are not kept, so {@link #getResponses()} returns an empty array.
+     * @param handler Handler of the responses
+     * @throws DaoException Exception thrown
+     */
+    public void send(Consumer<ODataResponse> handler) throws DaoException {
+        BatchEvent event = new BatchEvent();
+        event.begin();
+        try {
+            this.send(handler, event);
+        } catch (DaoException | RuntimeException e) {
+            event.error = e.getMessage();
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * This method sends the commands and records them in an event, if it is enabled.
+     * @param handler Handler of the responses
+     * @param event Event of the commands
+     * @throws DaoException Exception thrown
+     */
+    private void send(Consumer<ODataResponse> handler, BatchEvent event) throws DaoException {
+        List<HttpEntity> entities = accessor.getBatchAdapter().getEntities(this.maxOperations, this.maxBytes);
+        Consumer<ODataResponse> h = handler;
+        if (event.isEnabled()) {
+            event.url = super.getPath();
+            event.concurrency = Math.max(1, Math.min(this.concurrency, entities.size()));
+            event.sending(entities);
+            h = response -> {
+                event.received(response);
+                handler.accept(response);
+            };
+        }
+        if (entities.size() == 1 || this.concurrency <= 1) {
+            for (HttpEntity entity : entities) {
+                receive(this.post(entity), h);
+            }
+        } else {
+            this.sendPipelined(entities, h);
+        }
+        this.oDataResponses = new ArrayList<ODataResponse>();
+    }
+
+    /**
+     * This method is used for Batch execution of commands, returning the responses as they are received. All the
+     * commands are sent in a single request, regardless of the limits. The response body is read while iterating, so
+     * the reader must be closed to release the connection.
+     * @return Reader of the responses
+     * @throws DaoException Exception thrown
+     */
+    public ODataBatchResponseReader sendStream() throws DaoException {
+        return this.post(accessor.getBatchAdapter().getEntity());
+    }
+
+    /**
+     * This method sets the max number of commands of a request. When the commands exceed it, they are sent in
+     * several requests, split at ChangeSet boundaries only. A ChangeSet over the limit is not split, since it is
+     * committed as a whole, and is sent in a request of its own.
+     * @param value Max number of commands of a request, 0 (default) if unlimited
+     */
+    public void setMaxOperations(int value) {
+        this.maxOperations = value;
+    }
+
+    /**
+     * This method returns the max number of commands of a request.
+     * @return Max number of commands, 0 if unlimited
+     */
+    public int getMaxOperations() {
+        return this.maxOperations;
+    }
+
+    /**
+     * This method sets the max length of a request body. When the commands exceed it, they are sent in several
+     * requests, split at ChangeSet boundaries only. A ChangeSet or a command larger than the limit is not split, and
+     * is sent in a request of its own.
+     * @param value Max length of a request body in bytes, 0 (default) if unlimited
+     * @throws IllegalArgumentException if the value does not exceed the framing of a request body
+     */
+    public void setMaxBytes(long value) {
+        long framing = accessor.getBatchAdapter().getFramingLength();
+        if (value > 0 && value <= framing) {
+            throw new IllegalArgumentException("max bytes must be 0 or more than " + framing);
+        }
+        this.maxBytes = value;
+    }
+
+    /**
+     * This method returns the max length of a request body.
+     * @return Max length in bytes, 0 if unlimited
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * This method sets the number of requests sent at the same time when the commands are split. The requests run on
+     * the executor of the context, and the responses are still returned in the order of the commands. When a request
+     * fails, the requests not yet sent are not sent.
+     * @param value Number of requests sent at the same time, 1 (default) to send them one after another
+     */
+    public void setConcurrency(int value) {
+        this.concurrency = value;
+    }
+
+    /**
+     * This method returns the number of requests sent at the same time when the commands are split.
+     * @return Number of requests sent at the same time
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * This method sends the requests on the executor of the context, with at most {@link #concurrency} requests in
+     * flight. The responses of a request are passed to the handler once the responses of the previous requests have
+     * been.
+     * @param entities Request bodies
+     * @param handler Handler of the responses
+     * @throws DaoException Exception thrown
+     */
+    private void sendPipelined(List<HttpEntity> entities, Consumer<ODataResponse> handler) throws DaoException {
+        PersoniumExecutor executor = accessor.getDaoConfig().getExecutor();
+        Iterator<HttpEntity> pending = entities.iterator();
+        Deque<CompletableFuture<List<ODataResponse>>> inFlight = new ArrayDeque<>();
+        try {
+            while (inFlight.size() < this.concurrency && pending.hasNext()) {
+                inFlight.add(this.submit(executor, pending.next()));
+            }
+            while (!inFlight.isEmpty()) {
+                List<ODataResponse> responses = await(inFlight.poll());
+                if (pending.hasNext()) {
+                    inFlight.add(this.submit(executor, pending.next()));
+                }
+                responses.forEach(handler);
+            }
+        } finally {
+            for (CompletableFuture<List<ODataResponse>> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * This method sends a request on the executor and collects its responses.
+     * @param executor Executor
+     * @param entity Request body
+     * @return Future of the responses
+     */
+    private CompletableFuture<List<ODataResponse>> submit(PersoniumExecutor executor, final HttpEntity entity) {
+        return executor.submit(() -> {
+            List<ODataResponse> responses = new ArrayList<ODataResponse>();
+            receive(this.post(entity), responses::add);
+            return responses;
+        });
+    }
+
+    /**
+     * This method waits for the responses of a request.
+     * @param future Future of the responses
+     * @return Responses
+     * @throws DaoException Exception thrown
+     */
+    private static List<ODataResponse> await(CompletableFuture<List<ODataResponse>> future) throws DaoException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaoException("interrupted while waiting for a $batch response", e);
+        } catch (ExecutionException | CancellationException e) {
+            throw PersoniumExecutor.toDaoException(e);
+        }
+    }
 
+    /**
+     * This method sends a $batch request.
+     * @param entity Request body
+     * @return Reader of the responses
+     * @throws DaoException Exception thrown
+     */
+    private ODataBatchResponseReader post(HttpEntity entity) throws DaoException {
+        String url = UrlUtils.append(super.getPath(), "$batch");
         RestAdapter rest = new RestAdapter(accessor);
-        PersoniumResponse res = rest.post(url, accessor.getBatchAdapter().get(), contentType);
-        ODataBatchResponseParser parser = new ODataBatchResponseParser();
+        PersoniumResponse res = rest.postStream(url, entity);
+        String boundary = ODataBatchResponseReader.boundaryOf(res.getHeader(HttpHeaders.CONTENT_TYPE));
+        return new ODataBatchResponseReader(res.bodyAsStream(), boundary);
+    }
 
-        this.oDataResponses = parser.parse(res.bodyAsString(), boundary);
+    /**
+     * This method reads all the responses and closes the reader.
+     * @param reader Reader of the responses
+     * @param handler Handler of the responses
+     * @throws DaoException Exception thrown
+     */
+    private static void receive(ODataBatchResponseReader reader, Consumer<ODataResponse> handler)
+            throws DaoException {
+        try (ODataBatchResponseReader r = reader) {
+            r.forEachRemaining(handler);
+        } catch (IOException e) {
+            throw DaoException.create("io exception : " + e.getMessage(), 0);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof DaoException) {
+                throw (DaoException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     // /**
@@ -16,21 +16,20 @@
  */
 package io.personium.client;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-
-import org.apache.http.HttpHeaders;
+import java.util.function.Consumer;
 
 ///**
 // * $Batchのレスポンスを解析するクラス.
 // */
 /**
- * This class is used to analyze the response of $ Batch.
+ * This class is used to analyze the response of $ Batch. The parsing is done by {@link ODataBatchResponseReader}.
  */
 public class ODataBatchResponseParser {
     /** Variable BOUNDARY_KEY. */
@@ -40,13 +39,15 @@ public class ODataBatchResponseParser {
     /** Variable HTTP. */
     static final String HTTP = "HTTP/1.1";
     /** Variable CRLF. */
-    static final String CRLF = System.getProperty("line.separator");
+    static final String CRLF = "\r\n";
     /** Variable BLANK_LINE. */
     static final String BLANK_LINE = CRLF + CRLF;
     /** Variable CONTENTTYPE_HTTP. */
     static final String CONTENTTYPE_HTTP = "application/http";
     /** Variable CONTENTTYPE_MULTIPART. */
     static final String CONTENTTYPE_MULTIPART = "application/http";
+    /** Size of the buffer used to read a Reader. */
+    private static final int READ_BUFFER_SIZE = 8192;
 
     // /** レスポンス情報の一覧. */
     /** List of response information. */
@@ -59,14 +60,26 @@ public class ODataBatchResponseParser {
     // * @return ODataResponseの配列
     // */
     /**
-     * This method performs analysis on response using Reader.
+     * This method performs analysis on response using Reader. The boundary is taken from the first delimiter of the
+     * body.
      * @param reader Reader object
-     * @param boudaryKey BoundaryKey
+     * @param boudaryKey BoundaryKey (not used)
      * @return ODataResponse Array
      */
     public List<ODataResponse> parse(Reader reader, String boudaryKey) {
-        parseBoundary(reader, BOUNDARY_KEY);
-        return resList;
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[READ_BUFFER_SIZE];
+        try {
+            int n = reader.read(buf);
+            while (n >= 0) {
+                sb.append(buf, 0, n);
+                n = reader.read(buf);
+            }
+            reader.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return parse(sb.toString(), boudaryKey);
     }
 
     // /**
@@ -76,111 +89,39 @@ public class ODataBatchResponseParser {
     // * @return ODataResponseの配列
     // */
     /**
-     * This method performs analysis on response using StringReader.
+     * This method performs analysis on response using StringReader. The boundary is taken from the first delimiter
+     * of the body.
      * @param in Response Body String
-     * @param boudaryKey BoundaryKey
+     * @param boudaryKey BoundaryKey (not used)
      * @return ODataResponse Array
      */
     public List<ODataResponse> parse(String in, String boudaryKey) {
-        parseBoundary(new StringReader(in), BOUNDARY_KEY);
-        return resList;
-    }
-
-    /**
-     * This method parses the boundary.
-     * @param reader Reader object
-     * @param boudaryKey BoundaryKey
-     */
-    void parseBoundary(Reader reader, String boudaryKey) {
-        BufferedReader br = new BufferedReader(reader);
-        StringBuilder sb = new StringBuilder();
-        try {
-            String str = br.readLine();
-            while (str != null) {
-                if (str.startsWith(boudaryKey)) {
-                    if (sb.length() > 0) {
-                        parseBodyBlock(sb.toString());
-                        sb = new StringBuilder();
-                    }
-                    str = br.readLine();
-                    continue;
-                }
-                sb.append(str);
-                sb.append(CRLF);
-                str = br.readLine();
-            }
-            br.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return parse(new ByteArrayInputStream(in.getBytes(StandardCharsets.UTF_8)), null);
     }
 
     /**
-     * This method parses the body.
-     * @param body Response Body String
+     * This method parses the response body read from a stream. The stream is closed.
+     * @param in Response body
+     * @param boundary Boundary of the response, or null to take the first delimiter of the body
+     * @return ODataResponse Array
      */
-    void parseBodyBlock(String body) {
-        // 空行で分割する
-        /** To separate by a blank line. */
-        String[] blocks = body.split(BLANK_LINE);
-
-        // ブロックが2個以上存在しなければHttpレスポンス型ではない
-        /** It is not a Http response type block unless there are two or more. */
-        if (blocks.length < 2) {
-            return;
-        }
-
-        // ブロックのヘッダ部を取得
-        /** Get the header portion of the block. */
-        HashMap<String, String> boundaryHeaders = parseHeaders(blocks[0]);
-
-        // ブロックヘッダのContent-Typeを取得
-        /** Get the Content-Type header of the block. */
-        String contentType = boundaryHeaders.get(HttpHeaders.CONTENT_TYPE);
-
-        if (contentType != null) {
-            if (contentType.startsWith(CONTENTTYPE_HTTP)) {
-                // application/http ならば １つのリクエスト
-                /** one request if application / http. */
-                StringBuilder responseBody = new StringBuilder();
-                // ボディ内に空行がふくまれている場合、２個目以降を連結する
-                /** If a blank line is included in the body, connect the second and subsequent lines. */
-                for (int i = 2; i < blocks.length; i++) {
-                    responseBody.append(blocks[i]);
-                }
-                resList.add(new ODataResponse(blocks[1], responseBody.toString()));
-            } else {
-                // multipart/mixed ばらばマルチパート(複数のブロックで構成)
-                /** (consist of blocks) multipart / mixed multipart Barabbas. */
-                parseBoundary(new StringReader(body), CHARSET_KEY);
-            }
-        }
+    public List<ODataResponse> parse(InputStream in, String boundary) {
+        parse(in, boundary, resList::add);
+        return resList;
     }
 
-    // /**
-    // * 複数行の塊となっているレスポンスヘッダーを分解してハッシュマップにセットする.
-    // * @param value レスポンスヘッダ文字列
-    // * @return １つ１つに分解されたハッシュマップ
-    // */
     /**
-     * This method parses the headers by setting the hash map by decomposing the response header if it is of more than
-     * one line.
-     * @param value Response Header String
-     * @return Hash map that has been broken down into one single value
+     * This method parses the response body read from a stream, and passes each response to the handler as soon as
+     * it has been read. The responses are not kept. The stream is closed.
+     * @param in Response body
+     * @param boundary Boundary of the response, or null to take the first delimiter of the body
+     * @param handler Handler of the responses
      */
-    HashMap<String, String> parseHeaders(String value) {
-        // 改行コードで分解する
-        /** Decompose with a new line code. */
-        String[] lines = value.split(CRLF);
-        HashMap<String, String> map = new HashMap<String, String>();
-        for (String line : lines) {
-            String[] key = line.split(":");
-            if (key.length > 1) {
-                // 前後に空白が含まれている可能性があるため、トリムしてからセットする
-                /** Because there is a possibility of spaces in front and rear, so sets it after trim. */
-                map.put(key[0].trim(), key[1].trim());
-            }
+    public void parse(InputStream in, String boundary, Consumer<ODataResponse> handler) {
+        try (ODataBatchResponseReader reader = new ODataBatchResponseReader(in, boundary)) {
+            reader.forEachRemaining(handler);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return map;
     }
 }
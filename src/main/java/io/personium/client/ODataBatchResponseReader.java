@@ -0,0 +1,495 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import org.apache.http.HttpHeaders;
+
+/**
+ * It creates a new object of ODataBatchResponseReader. This class reads the multipart response of $batch from a
+ * stream as it arrives, and returns the responses one by one. Only the part being read is held in memory, so the
+ * first responses can be used before the whole response is received. Changesets (nested multipart/mixed parts) are
+ * flattened in the order of the response. Lines may end with CRLF or LF.
+ */
+public class ODataBatchResponseReader implements Iterator<ODataResponse>, AutoCloseable {
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Initial size of the line buffer. */
+    private static final int LINE_SIZE = 256;
+    /** Carriage return. */
+    private static final byte CR = '\r';
+    /** Line feed. */
+    private static final byte LF = '\n';
+    /** Hyphen of the delimiters. */
+    private static final byte HYPHEN = '-';
+    /** Line feed code of the raw headers. */
+    private static final String CRLF = "\r\n";
+    /** Name of the boundary parameter of Content-Type. */
+    private static final String BOUNDARY_PARAM = "boundary=";
+    /** Prefix of the multipart media types. */
+    private static final String MULTIPART = "multipart/";
+
+    /** Response body. */
+    private final InputStream in;
+    /** Read buffer. */
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    /** Position of the next byte in the read buffer. */
+    private int pos;
+    /** Number of bytes in the read buffer. */
+    private int count;
+    /** Bytes of the current line, without the line feed code. */
+    private byte[] line = new byte[LINE_SIZE];
+    /** Length of the current line. */
+    private int lineLength;
+    /** Length of the line feed code of the current line, 0 at the end of the stream. */
+    private int eolLength;
+    /** Delimiters ("--" and the boundary) of the open multiparts, the innermost last. Null until detected. */
+    private final List<byte[]> delimiters = new ArrayList<byte[]>();
+    /** Response read ahead by hasNext(), null if none. */
+    private ODataResponse next;
+    /** Whether the preamble has been skipped. */
+    private boolean started;
+    /** Whether the end of the outer multipart or of the stream has been reached. */
+    private boolean done;
+
+    /**
+     * This is the parameterized constructor. Nothing is read until the first call to {@link #hasNext()}.
+     * @param in Response body, closed by {@link #close()}
+     * @param boundary Boundary of the response, or null to take the first delimiter of the body
+     */
+    public ODataBatchResponseReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiters.add(toDelimiter(boundary));
+    }
+
+    /**
+     * This method extracts the boundary parameter of a multipart Content-Type.
+     * @param contentType Content-Type value, may be null
+     * @return Boundary, or null if none
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int start = contentType.toLowerCase(Locale.ROOT).indexOf(BOUNDARY_PARAM);
+        if (start < 0) {
+            return null;
+        }
+        String value = contentType.substring(start + BOUNDARY_PARAM.length());
+        int end = value.indexOf(';');
+        if (end >= 0) {
+            value = value.substring(0, end);
+        }
+        value = value.trim();
+        if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if (value.isEmpty()) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * This method checks whether a response remains, reading the body up to the end of the next response.
+     * @return true if a response remains
+     */
+    @Override
+    public boolean hasNext() {
+        if (this.next == null && !this.done) {
+            try {
+                this.next = this.readResponse();
+            } catch (IOException e) {
+                this.done = true;
+                throw new RuntimeException(DaoException.create("io exception : " + e.getMessage(), 0));
+            }
+        }
+        return this.next != null;
+    }
+
+    /**
+     * This method returns the next response.
+     * @return ODataResponse object
+     */
+    @Override
+    public ODataResponse next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ODataResponse res = this.next;
+        this.next = null;
+        return res;
+    }
+
+    /**
+     * This method closes the response body. The responses that have not been read are discarded.
+     * @throws IOException Exception thrown
+     */
+    @Override
+    public void close() throws IOException {
+        this.done = true;
+        this.next = null;
+        this.in.close();
+    }
+
+    /**
+     * This method reads up to the end of the next response. Apart from the first call, the body is positioned after
+     * a delimiter, at the headers of a part.
+     * @return ODataResponse object, or null at the end of the body
+     * @throws IOException Exception thrown
+     */
+    private ODataResponse readResponse() throws IOException {
+        if (!this.started) {
+            // Skip the preamble up to the first delimiter.
+            this.started = true;
+            if (!this.skipToDelimiter()) {
+                return null;
+            }
+        }
+        while (!this.done) {
+            String contentType = this.readPartHeaders();
+            if (contentType == null) {
+                // Not a part holding a response: move to the next part.
+                if (!this.atDelimiter() && !this.skipToDelimiter()) {
+                    return null;
+                }
+            } else if (contentType.toLowerCase(Locale.ROOT).startsWith(MULTIPART)) {
+                // Changeset: read its parts up to its closing delimiter.
+                this.delimiters.add(toDelimiter(boundaryOf(contentType)));
+                if (!this.skipToDelimiter()) {
+                    return null;
+                }
+            } else {
+                ODataResponse res = this.readHttpPart();
+                if (res != null) {
+                    return res;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method reads the headers of a part up to the blank line.
+     * @return Content-Type of the part, or null if none or if the headers are not terminated by a blank line
+     * @throws IOException Exception thrown
+     */
+    private String readPartHeaders() throws IOException {
+        String contentType = null;
+        while (this.readLine() && this.lineLength > 0) {
+            if (this.isDelimiterLine()) {
+                return null;
+            }
+            String header = this.lineAsString();
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase(HttpHeaders.CONTENT_TYPE)) {
+                contentType = header.substring(colon + 1).trim();
+            }
+        }
+        if (this.eolLength == 0) {
+            this.done = true;
+            return null;
+        }
+        return contentType;
+    }
+
+    /**
+     * This method reads an application/http part, after the headers of the part, up to the next delimiter.
+     * @return ODataResponse object, or null if the part does not hold an HTTP response
+     * @throws IOException Exception thrown
+     */
+    private ODataResponse readHttpPart() throws IOException {
+        StringBuilder headers = new StringBuilder();
+        while (this.readLine() && this.lineLength > 0) {
+            if (this.atDelimiter()) {
+                return null;
+            }
+            if (headers.length() > 0) {
+                headers.append(CRLF);
+            }
+            headers.append(this.lineAsString());
+        }
+        if (this.eolLength == 0) {
+            this.done = true;
+            return null;
+        }
+        if (headers.length() == 0) {
+            this.skipToDelimiter();
+            return null;
+        }
+        // The line feed code before a delimiter belongs to the delimiter.
+        ByteBuilder body = new ByteBuilder();
+        int pendingEol = 0;
+        boolean delimited = false;
+        while (!delimited && this.readLine()) {
+            delimited = this.atDelimiter();
+            if (!delimited) {
+                body.appendEol(pendingEol);
+                body.append(this.line, this.lineLength);
+                pendingEol = this.eolLength;
+            }
+        }
+        if (!delimited) {
+            this.done = true;
+        }
+        return new ODataResponse(headers.toString(), body.toString());
+    }
+
+    /**
+     * This method skips the lines up to the next delimiter, and moves past it.
+     * @return false if the end of the body has been reached
+     * @throws IOException Exception thrown
+     */
+    private boolean skipToDelimiter() throws IOException {
+        while (this.readLine()) {
+            if (this.atDelimiter()) {
+                return !this.done;
+            }
+            if (this.eolLength == 0) {
+                break;
+            }
+        }
+        this.done = true;
+        return false;
+    }
+
+    /**
+     * This method checks whether the current line is a delimiter of an open multipart. On a delimiter, the
+     * multiparts it closes are removed, and the end of the body is reached when the outer multipart is closed.
+     * @return true if the current line is a delimiter
+     */
+    private boolean atDelimiter() {
+        if (this.lineLength < 2 || this.line[0] != HYPHEN || this.line[1] != HYPHEN) {
+            return false;
+        }
+        for (int level = this.delimiters.size() - 1; level >= 0; level--) {
+            byte[] delimiter = this.delimiters.get(level);
+            if (delimiter == null) {
+                // Undetected boundary: the first line starting with "--" is the delimiter.
+                delimiter = Arrays.copyOf(this.line, this.trimmedLength());
+                this.delimiters.set(level, delimiter);
+            }
+            if (!this.startsWith(delimiter)) {
+                continue;
+            }
+            int rest = this.trimmedLength() - delimiter.length;
+            boolean closing = rest == 2 && this.line[delimiter.length] == HYPHEN
+                    && this.line[delimiter.length + 1] == HYPHEN;
+            if (rest != 0 && !closing) {
+                continue;
+            }
+            // Close the nested multiparts that have not been closed, and this one on a closing delimiter.
+            int keep = level + 1;
+            if (closing) {
+                keep = level;
+            }
+            while (this.delimiters.size() > keep) {
+                this.delimiters.remove(this.delimiters.size() - 1);
+            }
+            if (this.delimiters.isEmpty()) {
+                this.done = true;
+            } else if (closing) {
+                // The rest of the closed changeset is the epilogue up to the next delimiter of the parent.
+                return this.skipEpilogue();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This method checks whether the current line starts with a known delimiter, without moving past it.
+     * @return true if the current line may be a delimiter
+     */
+    private boolean isDelimiterLine() {
+        for (byte[] delimiter : this.delimiters) {
+            if (delimiter != null && this.startsWith(delimiter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method skips the epilogue of a closed changeset up to the next delimiter of the parent multipart.
+     * @return true if a delimiter has been reached
+     */
+    private boolean skipEpilogue() {
+        try {
+            return this.skipToDelimiter() || this.done;
+        } catch (IOException e) {
+            throw new RuntimeException(DaoException.create("io exception : " + e.getMessage(), 0));
+        }
+    }
+
+    /**
+     * This method reads the next line into the line buffer.
+     * @return false if the end of the stream has been reached before any byte
+     * @throws IOException Exception thrown
+     */
+    private boolean readLine() throws IOException {
+        this.lineLength = 0;
+        this.eolLength = 0;
+        boolean read = false;
+        while (true) {
+            if (this.pos == this.count) {
+                this.count = this.in.read(this.buf, 0, this.buf.length);
+                this.pos = 0;
+                if (this.count <= 0) {
+                    this.count = 0;
+                    return read;
+                }
+            }
+            read = true;
+            int start = this.pos;
+            while (this.pos < this.count && this.buf[this.pos] != LF) {
+                this.pos++;
+            }
+            this.appendToLine(start, this.pos - start);
+            if (this.pos < this.count) {
+                this.pos++;
+                this.eolLength = 1;
+                if (this.lineLength > 0 && this.line[this.lineLength - 1] == CR) {
+                    this.lineLength--;
+                    this.eolLength = 2;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * This method appends bytes of the read buffer to the line buffer.
+     * @param start Start of the bytes in the read buffer
+     * @param length Number of bytes
+     */
+    private void appendToLine(int start, int length) {
+        if (this.lineLength + length > this.line.length) {
+            this.line = Arrays.copyOf(this.line, Math.max(this.line.length * 2, this.lineLength + length));
+        }
+        System.arraycopy(this.buf, start, this.line, this.lineLength, length);
+        this.lineLength += length;
+    }
+
+    /**
+     * This method returns the current line as a string.
+     * @return Line
+     */
+    private String lineAsString() {
+        return new String(this.line, 0, this.lineLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method returns the length of the current line without the trailing white spaces.
+     * @return Length of the line
+     */
+    private int trimmedLength() {
+        int length = this.lineLength;
+        while (length > 0 && (this.line[length - 1] == ' ' || this.line[length - 1] == '\t')) {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * This method checks whether the current line starts with the bytes.
+     * @param prefix Bytes
+     * @return true if the line starts with the bytes
+     */
+    private boolean startsWith(byte[] prefix) {
+        if (this.lineLength < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.line[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method converts a boundary to the bytes of its delimiter.
+     * @param boundary Boundary, may be null
+     * @return Delimiter, or null if the boundary is null
+     */
+    private static byte[] toDelimiter(String boundary) {
+        if (boundary == null) {
+            return null;
+        }
+        return ("--" + boundary).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This class accumulates the bytes of a body.
+     */
+    private static final class ByteBuilder {
+        /** Bytes. */
+        private byte[] bytes = new byte[LINE_SIZE];
+        /** Number of bytes. */
+        private int length;
+
+        /**
+         * This method appends bytes.
+         * @param src Bytes
+         * @param len Number of bytes to append
+         */
+        void append(byte[] src, int len) {
+            this.ensure(len);
+            System.arraycopy(src, 0, this.bytes, this.length, len);
+            this.length += len;
+        }
+
+        /**
+         * This method appends a line feed code.
+         * @param eolLength 2 for CRLF, 1 for LF, 0 for none
+         */
+        void appendEol(int eolLength) {
+            this.ensure(eolLength);
+            if (eolLength == 2) {
+                this.bytes[this.length++] = CR;
+            }
+            if (eolLength > 0) {
+                this.bytes[this.length++] = LF;
+            }
+        }
+
+        /**
+         * This method grows the bytes.
+         * @param len Number of bytes to append
+         */
+        private void ensure(int len) {
+            if (this.length + len > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + len));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.bytes, 0, this.length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -43,6 +43,9 @@ public class ODataCollection extends PersoniumCollection {
 
     // CHECKSTYLE:ON
 
+    /** Schema of the collection kept in memory. */
+    private final ODataSchemaCache schemaCache = new ODataSchemaCache(this);
+
     // /**
     // * コンストラクタ.
     // * @param as アクセス主体
@@ -89,6 +92,15 @@ public class ODataCollection extends PersoniumCollection {
         return new EntitySet(this.accessor, this, name);
     }
 
+    /**
+     * This method returns the schema of the collection kept in memory, loaded on first use. It is used to look up
+     * the EntityType, Property, ComplexType, ComplexTypeProperty and AssociationEnd without a request per lookup.
+     * @return ODataSchemaCache object
+     */
+    public ODataSchemaCache getSchemaCache() {
+        return this.schemaCache;
+    }
+
     // /**
     // * Batch生成.
     // * @param sync 非同期指定
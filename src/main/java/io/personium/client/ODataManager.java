@@ -16,10 +16,15 @@
  */
 package io.personium.client;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.simple.JSONObject;
 
+import io.personium.client.http.AsyncRestAdapter;
 import io.personium.client.http.IRestAdapter;
 import io.personium.client.http.PersoniumResponse;
 import io.personium.client.http.RestAdapter;
@@ -152,6 +157,7 @@ public class ODataManager implements IODataManager {
         String url = this.getUrl();
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         PersoniumResponse res = rest.post(url, JSONObject.toJSONString(body), RestAdapter.CONTENT_TYPE_JSON);
+        this.afterWrite();
         JSONObject json = (JSONObject) ((JSONObject) res.bodyAsJson().get("d")).get("results");
         return json;
     }
@@ -174,6 +180,7 @@ public class ODataManager implements IODataManager {
         String url = this.getUrl();
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         PersoniumResponse res = rest.post(url, headers, JSONObject.toJSONString(body), RestAdapter.CONTENT_TYPE_JSON);
+        this.afterWrite();
         JSONObject json = (JSONObject) ((JSONObject) res.bodyAsJson().get("d")).get("results");
         return json;
     }
@@ -191,7 +198,7 @@ public class ODataManager implements IODataManager {
      * @throws DaoException Exception thrown
      */
     JSONObject internalRetrieve(String id) throws DaoException {
-        return this.internalRetrieveMultikey("'" + Utils.escapeURI(id) + "'");
+        return this.internalRetrieveMultikey(singleKey(id));
     }
 
     // /**
@@ -227,7 +234,7 @@ public class ODataManager implements IODataManager {
      * @throws DaoException Exception thrown
      */
     PersoniumResponse internalRetrieveAsPersoniumResponse(String id) throws DaoException {
-        return this.internalRetrieveMultikeyAsPersoniumResponse("'" + Utils.escapeURI(id) + "'");
+        return this.internalRetrieveMultikeyAsPersoniumResponse(singleKey(id));
     }
 
     // /**
@@ -265,7 +272,7 @@ public class ODataManager implements IODataManager {
      * @throws DaoException Exception thrown
      */
     void internalUpdate(String id, HashMap<String, Object> body, String etag) throws DaoException {
-        this.internalUpdateMultiKey("'" + Utils.escapeURI(id) + "'", body, etag);
+        this.internalUpdateMultiKey(singleKey(id), body, etag);
     }
 
     // /**
@@ -285,9 +292,10 @@ public class ODataManager implements IODataManager {
      * @throws DaoException DAO例外
      */
     void internalUpdate(String id, JSONObject body, String etag, HashMap<String, String> headers) throws DaoException {
-        String url = this.getUrl() + "('" + id + "')";
+        String url = this.entityUrl(id);
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         rest.put(url, body.toJSONString(), etag, headers, RestAdapter.CONTENT_TYPE_JSON);
+        this.afterWrite();
     }
 
     // /**
@@ -309,6 +317,7 @@ public class ODataManager implements IODataManager {
         String url = this.getUrl() + "(" + multiKey + ")";
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         rest.put(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON);
+        this.afterWrite();
     }
 
     // /**
@@ -324,7 +333,7 @@ public class ODataManager implements IODataManager {
      * @throws DaoException Exception thrown
      */
     void internalDel(String id, String etag) throws DaoException {
-        this.internalDelMultiKey("'" + Utils.escapeURI(id) + "'", etag);
+        this.internalDelMultiKey(singleKey(id), etag);
     }
 
     // /**
@@ -344,6 +353,14 @@ public class ODataManager implements IODataManager {
         String url = this.getUrl() + "(" + id + ")";
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         rest.del(url, etag);
+        this.afterWrite();
+    }
+
+    /**
+     * This method is called after a create, update or delete request sent through this manager. The managers of the
+     * schema override it to invalidate the schema kept by their collection, and BoxManager to forget the Box names.
+     */
+    void afterWrite() {
     }
 
     // /**
@@ -428,6 +445,81 @@ public class ODataManager implements IODataManager {
         this.internalDel(id, "*");
     }
 
+    /**
+     * This method registers the OData data asynchronously.
+     * @param json JSON object
+     * @return Future of the response of the registration result
+     * @throws DaoException Exception thrown
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<HashMap<String, Object>> createAsJsonAsync(HashMap<String, Object> json)
+            throws DaoException {
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return AsyncRestAdapter.thenHandle(
+                rest.post(this.getUrl(), JSONObject.toJSONString(json), RestAdapter.CONTENT_TYPE_JSON), res -> {
+                    this.afterWrite();
+                    return (HashMap<String, Object>) ((JSONObject) res.bodyAsJson().get("d")).get("results");
+                });
+    }
+
+    /**
+     * This method retrieves data in JSON form asynchronously.
+     * @param id ID value
+     * @return Future of the JSON object
+     * @throws DaoException Exception thrown
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<HashMap<String, Object>> retrieveAsJsonAsync(String id) throws DaoException {
+        String url = this.entityUrl(id);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return AsyncRestAdapter.thenHandle(rest.get(url, RestAdapter.CONTENT_TYPE_JSON),
+                res -> (HashMap<String, Object>) ((JSONObject) res.bodyAsJson().get("d")).get("results"));
+    }
+
+    /**
+     * This method performs update operation asynchronously.
+     * @param id ID value
+     * @param body PUT Request Body
+     * @param etag ETag value
+     * @return Future completed when the update is done
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> updateAsync(String id, HashMap<String, Object> body, String etag)
+            throws DaoException {
+        String url = this.entityUrl(id);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return rest.put(url, JSONObject.toJSONString(body), etag, RestAdapter.CONTENT_TYPE_JSON).thenApply(res -> {
+            this.afterWrite();
+            return null;
+        });
+    }
+
+    /**
+     * This method performs delete operation with etag specified asynchronously.
+     * @param id ID value
+     * @param etag ETag value
+     * @return Future completed when the deletion is done
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> delAsync(String id, String etag) throws DaoException {
+        String url = this.entityUrl(id);
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return rest.del(url, etag).thenApply(res -> {
+            this.afterWrite();
+            return null;
+        });
+    }
+
+    /**
+     * This method performs delete operation without etag specified asynchronously.
+     * @param id ID value
+     * @return Future completed when the deletion is done
+     * @throws DaoException Exception thrown
+     */
+    public CompletableFuture<Void> delAsync(String id) throws DaoException {
+        return this.delAsync(id, "*");
+    }
+
     /**
      * This method appends query string to execute Query for Search.
      * @param query Query object
@@ -443,10 +535,72 @@ public class ODataManager implements IODataManager {
             sb.append("?" + qry);
         }
         IRestAdapter rest = RestAdapterFactory.create(accessor);
-        PersoniumResponse res = rest.get(sb.toString(), RestAdapter.CONTENT_TYPE_JSON);
+        PersoniumResponse res;
+        if (rest instanceof RestAdapter) {
+            // Parse large pages as they arrive instead of buffering the whole body
+            res = ((RestAdapter) rest).getStream(sb.toString(), RestAdapter.CONTENT_TYPE_JSON, null);
+        } else {
+            res = rest.get(sb.toString(), RestAdapter.CONTENT_TYPE_JSON);
+        }
         return (HashMap<String, Object>) ((JSONObject) res.bodyAsJson());
     }
 
+    /**
+     * This method executes the Query for Search asynchronously.
+     * @param query Query object
+     * @return Future of the JSON response
+     * @throws DaoException Exception thrown
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<HashMap<String, Object>> doSearchAsync(Query query) throws DaoException {
+        StringBuilder sb = new StringBuilder(this.getUrl());
+        String qry = query.makeQueryString();
+        if (qry != null && !"".equals(qry)) {
+            sb.append("?" + qry);
+        }
+        AsyncRestAdapter rest = RestAdapterFactory.createAsync(accessor);
+        return AsyncRestAdapter.thenHandle(rest.get(sb.toString(), RestAdapter.CONTENT_TYPE_JSON),
+                res -> (HashMap<String, Object>) res.bodyAsJson());
+    }
+
+    /**
+     * This method submits a task calling the blocking API to the executor of the context, see
+     * {@link PersoniumContext#executor()}. It is used for fanning out the requests of this manager, for example
+     * {@code submit(() -> manager.retrieveAsJson(id))}.
+     * @param task Task to run
+     * @param <T> Type of the result
+     * @return Future of the result
+     * @throws DaoException Exception thrown in batch mode
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) throws DaoException {
+        return executor().submit(task);
+    }
+
+    /**
+     * This method runs all the tasks calling the blocking API on the executor of the context and waits for them to
+     * complete, see {@link PersoniumExecutor#invokeAll(Collection)}.
+     * @param tasks Tasks to run
+     * @param <T> Type of the results
+     * @return Results in the order of the tasks
+     * @throws DaoException Exception thrown by a task, or in batch mode
+     */
+    public <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks) throws DaoException {
+        return executor().invokeAll(tasks);
+    }
+
+    /**
+     * This method returns the executor of the context. The requests of a batch are accumulated by the Accessor, so
+     * they can't be run concurrently.
+     * @return PersoniumExecutor object
+     * @throws DaoException Exception thrown in batch mode
+     */
+    private PersoniumExecutor executor() throws DaoException {
+        if (accessor.isBatchMode()) {
+            throw new DaoException("Concurrent requests are not supported in batch mode");
+        }
+        return accessor.getDaoConfig().getExecutor();
+    }
+
     // /**
     // * クエリを生成.
     // * @return 生成したQueryオブジェクト
@@ -459,6 +613,30 @@ public class ODataManager implements IODataManager {
         return new Query(this);
     }
 
+    /**
+     * This method creates a scan of all the results of the query split into $skip windows of the result count, see
+     * {@link ParallelScan}.
+     * @param query Query to scan
+     * @param partitions Number of partitions fetched concurrently
+     * @return ParallelScan object
+     */
+    public ParallelScan parallelScan(Query query, int partitions) {
+        return new ParallelScan(query, partitions);
+    }
+
+    /**
+     * This method creates a scan of all the results of the query split into $filter ranges of a key property, see
+     * {@link ParallelScan}.
+     * @param query Query to scan
+     * @param keyProperty Key property
+     * @param boundaries Boundaries of the ranges in ascending order (String or Number), N boundaries make N + 1
+     *        partitions
+     * @return ParallelScan object
+     */
+    public ParallelScan parallelScan(Query query, String keyProperty, Object... boundaries) {
+        return new ParallelScan(query, keyProperty, boundaries);
+    }
+
     // /**
     // * ODataデータの生存確認.
     // * @param id 対象となるODataデータのID
@@ -471,7 +649,7 @@ public class ODataManager implements IODataManager {
      * @throws DaoException DaoException
      */
     public Boolean exists(String id) throws DaoException {
-        String url = this.getUrl() + "('" + id + "')";
+        String url = this.entityUrl(id);
         IRestAdapter rest = RestAdapterFactory.create(accessor);
         try {
             rest.head(url);
@@ -481,6 +659,26 @@ public class ODataManager implements IODataManager {
         }
     }
 
+    /**
+     * This method generates the URL of the entity with a single key. Every operation on a single key uses it, so that
+     * the key is escaped the same way by the synchronous and asynchronous operations.
+     * @param id ID value
+     * @return URL value
+     * @throws DaoException DaoException
+     */
+    String entityUrl(String id) throws DaoException {
+        return this.getUrl() + "(" + singleKey(id) + ")";
+    }
+
+    /**
+     * This method generates the key predicate of a single key.
+     * @param id ID value
+     * @return Escaped and quoted key
+     */
+    static String singleKey(String id) {
+        return "'" + Utils.escapeURI(id) + "'";
+    }
+
     /**
      * This method generates the URL for executing API calls.
      * @return URL value
@@ -19,6 +19,7 @@ package io.personium.client;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.HashMap;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -26,11 +27,11 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
+import io.personium.client.utils.JsonUtils;
+
 ///**
 // * ODataリクエストによるレスポンス情報を保持するクラス.
 // */
@@ -140,11 +141,10 @@ public class ODataResponse {
      * @throws DaoException Exception thrown
      */
     public final JSONObject bodyAsJson() throws DaoException {
-        String res = bodyAsString();
         try {
-            return (JSONObject) new JSONParser().parse(res);
-        } catch (ParseException e) {
-            throw DaoException.create("parse exception: " + e.getMessage(), 0);
+            return (JSONObject) JsonUtils.getCodec().parse(new StringReader(bodyAsString()));
+        } catch (IOException e) {
+            throw DaoException.create("io exception", 0);
         }
     }
 
@@ -178,7 +178,7 @@ public class ODataResponse {
     }
 
     HashMap<String, String> parseHeaders(String value) {
-        String[] lines = value.split(ODataBatchResponseParser.CRLF);
+        String[] lines = value.split("\\r?\\n");
         // １行目がから ステータスコードを取得
         /** Get the status code from the first line. */
         if (lines[0].startsWith("HTTP")) {
@@ -188,7 +188,7 @@ public class ODataResponse {
         /** Set the hash map the response header from the second row. */
         HashMap<String, String> map = new HashMap<String, String>();
         for (String line : lines) {
-            String[] key = line.split(":");
+            String[] key = line.split(":", 2);
             if (key.length > 1) {
                 // 前後に空白が含まれている可能性があるため、トリムしてからセットする
                 /** Because there is a possibility of spaces in front and rear, so sets it after trim. */
@@ -0,0 +1,369 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.simple.JSONObject;
+
+/**
+ * It creates a new object of ODataSchemaCache. This class keeps the schema of an ODataCollection in memory: the
+ * EntityType, Property, ComplexType, ComplexTypeProperty and AssociationEnd are loaded on first use by one query per
+ * kind, whose first pages are fetched at the same time on the executor of the context, and looked up by name
+ * afterwards. The schema is loaded again after a schema write through the managers of the collection, or after
+ * {@link #invalidate()}. The returned objects are shared and should not be modified. All the methods are thread-safe.
+ */
+public class ODataSchemaCache {
+    /** Collection of the schema. */
+    private final ODataCollection collection;
+    /** Loaded schema, null until loaded or after invalidation. */
+    private final AtomicReference<Schema> schema = new AtomicReference<Schema>();
+    /** Number of invalidations, so that a load overtaken by an invalidation is not kept. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * This is the parameterized constructor.
+     * @param col Collection of the schema
+     */
+    ODataSchemaCache(ODataCollection col) {
+        this.collection = col;
+    }
+
+    /**
+     * This method checks whether the schema is loaded.
+     * @return true if the lookups don't send requests
+     */
+    public boolean isLoaded() {
+        return this.schema.get() != null;
+    }
+
+    /**
+     * This method removes the loaded schema, so that it is loaded again on the next lookup.
+     */
+    public void invalidate() {
+        this.generation.incrementAndGet();
+        this.schema.set(null);
+    }
+
+    /**
+     * This method loads the schema again.
+     * @throws DaoException Exception thrown
+     */
+    public void load() throws DaoException {
+        this.invalidate();
+        this.schema();
+    }
+
+    /**
+     * This method returns all the EntityType.
+     * @return EntityType in the order of the server
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public List<EntityType> getEntityTypes() throws DaoException {
+        return values(this.schema().entityTypes);
+    }
+
+    /**
+     * This method returns an EntityType.
+     * @param name EntityType name
+     * @return EntityType, or null if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public EntityType getEntityType(String name) throws DaoException {
+        return this.schema().entityTypes.get(name);
+    }
+
+    /**
+     * This method returns the Property of an EntityType.
+     * @param entityTypeName EntityType name
+     * @return Property in the order of the server, empty if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public List<Property> getProperties(String entityTypeName) throws DaoException {
+        return values(this.schema().properties.get(entityTypeName));
+    }
+
+    /**
+     * This method returns a Property of an EntityType.
+     * @param entityTypeName EntityType name
+     * @param name Property name
+     * @return Property, or null if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public Property getProperty(String entityTypeName, String name) throws DaoException {
+        return value(this.schema().properties.get(entityTypeName), name);
+    }
+
+    /**
+     * This method returns all the ComplexType.
+     * @return ComplexType in the order of the server
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public List<ComplexType> getComplexTypes() throws DaoException {
+        return values(this.schema().complexTypes);
+    }
+
+    /**
+     * This method returns a ComplexType.
+     * @param name ComplexType name
+     * @return ComplexType, or null if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public ComplexType getComplexType(String name) throws DaoException {
+        return this.schema().complexTypes.get(name);
+    }
+
+    /**
+     * This method returns the ComplexTypeProperty of a ComplexType.
+     * @param complexTypeName ComplexType name
+     * @return ComplexTypeProperty in the order of the server, empty if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public List<ComplexTypeProperty> getComplexTypeProperties(String complexTypeName) throws DaoException {
+        return values(this.schema().complexTypeProperties.get(complexTypeName));
+    }
+
+    /**
+     * This method returns a ComplexTypeProperty of a ComplexType.
+     * @param complexTypeName ComplexType name
+     * @param name ComplexTypeProperty name
+     * @return ComplexTypeProperty, or null if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public ComplexTypeProperty getComplexTypeProperty(String complexTypeName, String name) throws DaoException {
+        return value(this.schema().complexTypeProperties.get(complexTypeName), name);
+    }
+
+    /**
+     * This method returns the AssociationEnd of an EntityType.
+     * @param entityTypeName EntityType name
+     * @return AssociationEnd in the order of the server, empty if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public List<AssociationEnd> getAssociationEnds(String entityTypeName) throws DaoException {
+        return values(this.schema().associationEnds.get(entityTypeName));
+    }
+
+    /**
+     * This method returns an AssociationEnd of an EntityType.
+     * @param entityTypeName EntityType name
+     * @param name AssociationEnd name
+     * @return AssociationEnd, or null if none
+     * @throws DaoException Exception thrown while loading the schema
+     */
+    public AssociationEnd getAssociationEnd(String entityTypeName, String name) throws DaoException {
+        return value(this.schema().associationEnds.get(entityTypeName), name);
+    }
+
+    /**
+     * This method removes the loaded schema of the collection of a manager, after a schema write through it.
+     * @param col Collection of the manager
+     */
+    static void invalidate(PersoniumCollection col) {
+        if (col instanceof ODataCollection) {
+            ((ODataCollection) col).getSchemaCache().invalidate();
+        }
+    }
+
+    /**
+     * This method returns the loaded schema, loading it if needed. The callers asking for the schema while it is
+     * loaded wait for the same load. A schema loaded while the cache was invalidated is returned but not kept, as it
+     * may predate the write.
+     * @return Schema
+     * @throws DaoException Exception thrown
+     */
+    private Schema schema() throws DaoException {
+        Schema loaded = this.schema.get();
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (this) {
+            loaded = this.schema.get();
+            if (loaded != null) {
+                return loaded;
+            }
+            long started = this.generation.get();
+            loaded = this.fetch();
+            this.schema.set(loaded);
+            if (this.generation.get() != started) {
+                // Invalidated during the load: drop the result unless a later invalidation already did.
+                this.schema.compareAndSet(loaded, null);
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * This method queries all the kinds of schema objects at the same time and indexes them.
+     * @return Schema
+     * @throws DaoException Exception thrown
+     */
+    private Schema fetch() throws DaoException {
+        Accessor accessor = this.collection.accessor;
+        if (accessor.isBatchMode()) {
+            throw new DaoException("The schema can't be loaded in batch mode");
+        }
+        // The iterators are consumed on this thread: a task of the executor must not wait for the pages they fetch
+        // on the same executor. Starting them first fetches the first page of each kind at the same time.
+        QueryIterator entityTypes = start(this.collection.entityType);
+        QueryIterator properties = start(this.collection.property);
+        QueryIterator complexTypes = start(this.collection.complexType);
+        QueryIterator complexTypeProperties = start(this.collection.complexTypeProperty);
+        QueryIterator associationEnds = start(this.collection.associationEnd);
+        try {
+            return index(accessor, list(entityTypes), list(properties), list(complexTypes),
+                    list(complexTypeProperties), list(associationEnds));
+        } finally {
+            entityTypes.close();
+            properties.close();
+            complexTypes.close();
+            complexTypeProperties.close();
+            associationEnds.close();
+        }
+    }
+
+    /**
+     * This method indexes the schema objects by name.
+     * @param accessor Accessor of the objects
+     * @param entityTypes EntityType
+     * @param properties Property
+     * @param complexTypes ComplexType
+     * @param complexTypeProperties ComplexTypeProperty
+     * @param associationEnds AssociationEnd
+     * @return Schema
+     */
+    private static Schema index(Accessor accessor, List<JSONObject> entityTypes, List<JSONObject> properties,
+            List<JSONObject> complexTypes, List<JSONObject> complexTypeProperties, List<JSONObject> associationEnds) {
+        Schema loaded = new Schema();
+        for (JSONObject json : entityTypes) {
+            EntityType obj = new EntityType(accessor, json);
+            loaded.entityTypes.put(obj.getName(), obj);
+        }
+        for (JSONObject json : properties) {
+            Property obj = new Property(accessor, json);
+            group(loaded.properties, obj.getEntityTypeName()).put(obj.getName(), obj);
+        }
+        for (JSONObject json : complexTypes) {
+            ComplexType obj = new ComplexType(accessor, json);
+            loaded.complexTypes.put(obj.getName(), obj);
+        }
+        for (JSONObject json : complexTypeProperties) {
+            ComplexTypeProperty obj = new ComplexTypeProperty(accessor, json);
+            group(loaded.complexTypeProperties, obj.getComplexTypeName()).put(obj.getName(), obj);
+        }
+        for (JSONObject json : associationEnds) {
+            AssociationEnd obj = new AssociationEnd(accessor, json);
+            group(loaded.associationEnds, obj.getEntityTypeName()).put(obj.getName(), obj);
+        }
+        return loaded;
+    }
+
+    /**
+     * This method creates the iterator over all the objects of a manager and starts fetching its first page.
+     * @param manager Manager
+     * @return Iterator
+     */
+    private static QueryIterator start(ODataManager manager) {
+        QueryIterator it = new QueryIterator(manager.query(), Query.DEFAULT_PAGE_SIZE);
+        it.start();
+        return it;
+    }
+
+    /**
+     * This method reads all the results of an iterator, page by page.
+     * @param it Iterator
+     * @return Results
+     * @throws DaoException Exception thrown
+     */
+    private static List<JSONObject> list(QueryIterator it) throws DaoException {
+        List<JSONObject> results = new ArrayList<JSONObject>();
+        try {
+            while (it.hasNext()) {
+                results.add(it.next());
+            }
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof DaoException) {
+                throw (DaoException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * This method returns the objects of a group, creating the group if needed.
+     * @param groups Objects by group name, then by name
+     * @param name Group name
+     * @param <T> Type of the objects
+     * @return Objects of the group by name
+     */
+    private static <T> Map<String, T> group(Map<String, Map<String, T>> groups, String name) {
+        return groups.computeIfAbsent(name, k -> new LinkedHashMap<String, T>());
+    }
+
+    /**
+     * This method returns the objects of a map as an unmodifiable list.
+     * @param map Objects by name, may be null
+     * @param <T> Type of the objects
+     * @return List of the objects
+     */
+    private static <T> List<T> values(Map<String, T> map) {
+        if (map == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<T>(map.values()));
+    }
+
+    /**
+     * This method returns an object of a map.
+     * @param map Objects by name, may be null
+     * @param name Name
+     * @param <T> Type of the objects
+     * @return Object, or null if none
+     */
+    private static <T> T value(Map<String, T> map, String name) {
+        if (map == null) {
+            return null;
+        }
+        return map.get(name);
+    }
+
+    /**
+     * This class is a loaded schema, not modified once loaded.
+     */
+    private static final class Schema {
+        /** EntityType by name. */
+        private final Map<String, EntityType> entityTypes = new LinkedHashMap<String, EntityType>();
+        /** Property by EntityType name, then by name. */
+        private final Map<String, Map<String, Property>> properties =
+                new LinkedHashMap<String, Map<String, Property>>();
+        /** ComplexType by name. */
+        private final Map<String, ComplexType> complexTypes = new LinkedHashMap<String, ComplexType>();
+        /** ComplexTypeProperty by ComplexType name, then by name. */
+        private final Map<String, Map<String, ComplexTypeProperty>> complexTypeProperties =
+                new LinkedHashMap<String, Map<String, ComplexTypeProperty>>();
+        /** AssociationEnd by EntityType name, then by name. */
+        private final Map<String, Map<String, AssociationEnd>> associationEnds =
+                new LinkedHashMap<String, Map<String, AssociationEnd>>();
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.json.simple.JSONObject;
+
+/**
+ * It creates a new object of ParallelScan. This class reads all the results of a Query as several partitions fetched
+ * concurrently on the pooled client. The partitions are either $skip windows of the result count given by
+ * $inlinecount=allpages, or $filter ranges of a key property. The results are merged into a Spliterator, so that
+ * {@code stream().parallel()} consumes the partitions on several threads. Each partition pages through its results
+ * like {@link Query#iterator()}, and its first page is requested as soon as the scan starts.
+ * <p>
+ * Range partitions should be preferred for big EntitySets: a $skip window still makes the server skip all the
+ * preceding results, and the server limits the value of $skip.
+ */
+public class ParallelScan {
+    /** Query to scan. */
+    private final Query query;
+    /** Number of $skip windows, 0 for range partitions. */
+    private final int partitions;
+    /** Key property of the range partitions. */
+    private final String keyProperty;
+    /** Boundaries of the range partitions, in ascending order. */
+    private final Object[] boundaries;
+    /** Number of results fetched at a time by a partition. */
+    private int pageSize;
+
+    /**
+     * This is the constructor of a scan split into $skip windows.
+     * @param query Query to scan, its $skip is the start of the scan
+     * @param partitions Number of partitions
+     */
+    ParallelScan(Query query, int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive");
+        }
+        this.query = query;
+        this.partitions = partitions;
+        this.keyProperty = null;
+        this.boundaries = null;
+        this.pageSize = query.pageSize();
+    }
+
+    /**
+     * This is the constructor of a scan split into ranges of a key property. N boundaries make N + 1 partitions:
+     * key lt b0, b0 le key lt b1, ..., key ge bN-1.
+     * @param query Query to scan, its $filter is combined with the ranges
+     * @param keyProperty Key property
+     * @param boundaries Boundaries in ascending order (String or Number)
+     */
+    ParallelScan(Query query, String keyProperty, Object... boundaries) {
+        if (keyProperty == null || boundaries == null || boundaries.length == 0) {
+            throw new IllegalArgumentException("key property and boundaries are required");
+        }
+        this.query = query;
+        this.partitions = 0;
+        this.keyProperty = keyProperty;
+        this.boundaries = boundaries.clone();
+        this.pageSize = query.pageSize();
+    }
+
+    /**
+     * This method sets the number of results fetched at a time by a partition. It defaults to the $top of the query,
+     * or {@link Query#DEFAULT_PAGE_SIZE}.
+     * @param value Page size
+     * @return Own ParallelScan object
+     */
+    public ParallelScan pageSize(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        this.pageSize = value;
+        return this;
+    }
+
+    /**
+     * This method starts the scan and returns the merged results. For $skip windows, the result count is requested
+     * first. A DaoException thrown while fetching a page is thrown as the cause of a RuntimeException.
+     * @return Spliterator over the results
+     * @throws DaoException Exception thrown
+     */
+    public Spliterator<JSONObject> spliterator() throws DaoException {
+        List<QueryIterator> parts;
+        if (this.keyProperty != null) {
+            parts = this.rangePartitions();
+        } else {
+            parts = this.skipPartitions();
+        }
+        for (QueryIterator part : parts) {
+            part.start();
+        }
+        return new PartitionSpliterator(parts);
+    }
+
+    /**
+     * This method starts the scan and returns the merged results as a stream of Entity. Call {@code parallel()} on it
+     * to consume the partitions on several threads, and close it to cancel the pages being fetched when it is not
+     * consumed to the end.
+     * @return Stream of the results
+     * @throws DaoException Exception thrown
+     */
+    public Stream<Entity> stream() throws DaoException {
+        final PartitionSpliterator spliterator = (PartitionSpliterator) this.spliterator();
+        final Accessor accessor = this.accessor();
+        return StreamSupport.stream(spliterator, false).map(json -> new Entity(accessor, json))
+                .onClose(spliterator::close);
+    }
+
+    /**
+     * This method creates the $skip windows from the result count.
+     * @return Partitions
+     * @throws DaoException Exception thrown
+     */
+    private List<QueryIterator> skipPartitions() throws DaoException {
+        long count = this.count() - this.query.skip();
+        long window = Math.max(1, (count + this.partitions - 1) / this.partitions);
+        List<QueryIterator> parts = new ArrayList<QueryIterator>(this.partitions);
+        for (int i = 0; i < this.partitions; i++) {
+            long start = this.query.skip() + window * i;
+            if (start > Integer.MAX_VALUE) {
+                break;
+            }
+            Query part = this.query.page((int) start, this.pageSize);
+            // The last window is unbounded, so that results added during the scan are not lost
+            long limit = window;
+            if (i == this.partitions - 1) {
+                limit = -1;
+            }
+            parts.add(new QueryIterator(part, this.pageSize, limit));
+        }
+        return parts;
+    }
+
+    /**
+     * This method creates the $filter ranges of the key property.
+     * @return Partitions
+     */
+    private List<QueryIterator> rangePartitions() {
+        List<QueryIterator> parts = new ArrayList<QueryIterator>(this.boundaries.length + 1);
+        for (int i = 0; i <= this.boundaries.length; i++) {
+            StringBuilder range = new StringBuilder();
+            if (i > 0) {
+                range.append(this.keyProperty).append(" ge ").append(literal(this.boundaries[i - 1]));
+            }
+            if (i < this.boundaries.length) {
+                if (range.length() > 0) {
+                    range.append(" and ");
+                }
+                range.append(this.keyProperty).append(" lt ").append(literal(this.boundaries[i]));
+            }
+            String filter = range.toString();
+            if (this.query.filter() != null && !"".equals(this.query.filter())) {
+                filter = "(" + this.query.filter() + ") and " + filter;
+            }
+            Query part = this.query.page(0, this.pageSize).filter(filter);
+            parts.add(new QueryIterator(part, this.pageSize));
+        }
+        return parts;
+    }
+
+    /**
+     * This method requests the result count of the query with $inlinecount=allpages.
+     * @return Result count
+     * @throws DaoException Exception thrown
+     */
+    private long count() throws DaoException {
+        Query countQuery = this.query.page(0, 1).inlinecount("allpages");
+        HashMap<String, Object> json = countQuery.run();
+        Object d = json.get("d");
+        Object count = null;
+        if (d instanceof JSONObject) {
+            count = ((JSONObject) d).get("__count");
+        }
+        if (count instanceof Number) {
+            return ((Number) count).longValue();
+        }
+        if (count instanceof String) {
+            try {
+                return Long.parseLong((String) count);
+            } catch (NumberFormatException e) {
+                throw DaoException.create("invalid __count: " + count, 0);
+            }
+        }
+        throw DaoException.create("__count is missing from the response", 0);
+    }
+
+    /**
+     * This method returns the Accessor of the target, used to create the Entity.
+     * @return Accessor object, null if the target is not an ODataManager
+     */
+    private Accessor accessor() {
+        if (this.query.target() instanceof ODataManager) {
+            return ((ODataManager) this.query.target()).accessor;
+        }
+        return null;
+    }
+
+    /**
+     * This method formats a boundary as an OData literal.
+     * @param value Boundary
+     * @return Literal
+     */
+    private static String literal(Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value);
+        }
+        return "'" + String.valueOf(value).replace("'", "''") + "'";
+    }
+
+    /**
+     * This class merges the partitions. A split hands over half of the remaining partitions.
+     */
+    private static final class PartitionSpliterator implements Spliterator<JSONObject> {
+        /** Partitions, consumed in order. */
+        private final List<QueryIterator> parts;
+        /** Index of the partition being consumed. */
+        private int current;
+
+        /**
+         * This is the parameterized constructor.
+         * @param parts Partitions
+         */
+        PartitionSpliterator(List<QueryIterator> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super JSONObject> action) {
+            while (this.current < this.parts.size()) {
+                QueryIterator part = this.parts.get(this.current);
+                if (part.hasNext()) {
+                    action.accept(part.next());
+                    return true;
+                }
+                this.parts.set(this.current++, null);
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<JSONObject> trySplit() {
+            int left = this.parts.size() - this.current;
+            if (left < 2) {
+                return null;
+            }
+            int mid = this.current + left / 2;
+            List<QueryIterator> prefix = new ArrayList<QueryIterator>(this.parts.subList(this.current, mid));
+            this.current = mid;
+            return new PartitionSpliterator(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        /**
+         * This method cancels the pages being fetched by the partitions.
+         */
+        void close() {
+            for (QueryIterator part : this.parts) {
+                if (part != null) {
+                    part.close();
+                }
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.net.URLCodec;
@@ -28,13 +30,14 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
 import io.personium.client.http.CacheMap;
+import io.personium.client.http.ResponseCache;
 import io.personium.client.utils.UrlUtils;
 
 /**
  * It creates a new object of personiumContext.
  * This class is the Data cloud context used as the package for all the files.
  */
-public class PersoniumContext {
+public class PersoniumContext implements AutoCloseable {
     // /** 基底URL. */
     /** Base URL. */
     private String baseUrl;
@@ -85,7 +88,13 @@ public class PersoniumContext {
     private DaoConfig config;
     // /** キャッシュ用クラス. */
     /** Cache for class. */
-    private CacheMap cacheMap;
+    private ResponseCache responseCache;
+    /** Tokens shared by the Accessor objects, null if disabled. */
+    private volatile TokenManager tokenManager;
+    /** Names of the Box resolved from a schema, null if disabled. */
+    private volatile BoxNameCache boxNameCache;
+    /** URLs of the cached responses being revalidated in the background. */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
     // /** 動作対象プラットフォーム. */
     /** Operating platforms. */
     private static String platform = "insecure";
@@ -129,7 +138,7 @@ public class PersoniumContext {
             this.boxName = "";
         }
         this.config = new DaoConfig();
-        this.cacheMap = new CacheMap();
+        this.responseCache = new CacheMap();
     }
 
     // /**
@@ -351,7 +360,7 @@ public class PersoniumContext {
      * @param value CacheMap object
      */
     public final void setCacheMap(final CacheMap value) {
-        this.cacheMap = value;
+        this.responseCache = value;
     }
 
     // /**
@@ -360,10 +369,83 @@ public class PersoniumContext {
     // */
     /**
      * This method gets cache of objects (CacheMap).
-     * @return CacheMap object
+     * @return CacheMap object, or null if the cache set by {@link #setResponseCache(ResponseCache)} is not a CacheMap
+     * @deprecated Use {@link #getResponseCache()}
      */
+    @Deprecated
     public final CacheMap getCacheMap() {
-        return this.cacheMap;
+        if (this.responseCache instanceof CacheMap) {
+            return (CacheMap) this.responseCache;
+        }
+        return null;
+    }
+
+    /**
+     * This method sets the cache of the responses. The cache is shared by all the threads using the context.
+     * @param value ResponseCache object
+     */
+    public final void setResponseCache(final ResponseCache value) {
+        this.responseCache = value;
+    }
+
+    /**
+     * This method gets the cache of the responses. By default it is a {@link CacheMap} with the default limits.
+     * @return ResponseCache object
+     */
+    public final ResponseCache getResponseCache() {
+        return this.responseCache;
+    }
+
+    /**
+     * This method sets the manager of the tokens shared by the Accessor objects of the context. When it is set, the
+     * Accessor objects with the same credentials authenticate once per token lifetime, and their tokens are renewed
+     * with the refresh token before they expire.
+     * @param value TokenManager object, null (default) to authenticate on each call as before
+     */
+    public final void setTokenManager(final TokenManager value) {
+        this.tokenManager = value;
+    }
+
+    /**
+     * This method gets the manager of the tokens shared by the Accessor objects of the context.
+     * @return TokenManager object, null if disabled
+     */
+    public final TokenManager getTokenManager() {
+        return this.tokenManager;
+    }
+
+    /**
+     * This method sets the cache of the names of the Box resolved from a schema by {@link Cell#box()} and
+     * {@link Cell#box(String)}.
+     * @param value BoxNameCache object, null (default) to request the __box endpoint on each call
+     */
+    public final void setBoxNameCache(final BoxNameCache value) {
+        this.boxNameCache = value;
+    }
+
+    /**
+     * This method gets the cache of the names of the Box resolved from a schema.
+     * @return BoxNameCache object, null if disabled
+     */
+    public final BoxNameCache getBoxNameCache() {
+        return this.boxNameCache;
+    }
+
+    /**
+     * This method marks a cached response as being revalidated in the background.
+     * @param url URL of the response
+     * @return true if it was not already being revalidated
+     */
+    boolean startRefresh(final String url) {
+        return this.refreshing.add(url);
+    }
+
+    /**
+     * This method marks the end of the revalidation of a cached response.
+     * @param url URL of the response
+     */
+    void endRefresh(final String url) {
+        this.refreshing.remove(url);
     }
 
     // /**
@@ -390,6 +472,25 @@ public class PersoniumContext {
         config.setHttpClient(value);
     }
 
+    /**
+     * This method returns the executor running the blocking client calls of this context on background threads. The
+     * threads used depend on {@link DaoConfig#setExecutionMode(DaoConfig.ExecutionMode)}, and the number of calls
+     * running at the same time is bounded by {@link DaoConfig#getMaxConnections()}.
+     * @return PersoniumExecutor object
+     */
+    public PersoniumExecutor executor() {
+        return config.getExecutor();
+    }
+
+    /**
+     * This method releases the connection pool of this context. Pooled connections are closed and a new pool is created
+     * if the context is used again.
+     */
+    @Override
+    public void close() {
+        config.close();
+    }
+
     /**
      * This method gets the version of the API that is retrieved from the server response. Returns null until you send a
      * request.
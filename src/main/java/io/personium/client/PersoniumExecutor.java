@@ -0,0 +1,276 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * It creates a new object of PersoniumExecutor. This class runs the blocking client calls on background threads, so
+ * that the synchronous API can be fanned out without managing a thread pool. In the virtual-thread mode every task
+ * gets its own virtual thread, and the number of tasks running at the same time is bounded by the max number of
+ * pooled connections instead of the number of threads. Tasks waiting for a permit do not hold a connection. A task
+ * must not wait for another task submitted to the same executor, since it holds a permit while waiting. The futures of
+ * the non-blocking client are completed on the threads of {@link #complete(Runnable)}, which hold no permit.
+ */
+public class PersoniumExecutor implements AutoCloseable {
+    /** Thread name prefix of the platform threads. */
+    private static final String THREAD_NAME_PREFIX = "personium-executor-";
+    /** Thread name prefix of the platform threads completing the futures. */
+    private static final String COMPLETION_THREAD_NAME_PREFIX = "personium-completion-";
+    /** Seconds an idle platform thread completing the futures is kept alive. */
+    private static final long COMPLETION_KEEP_ALIVE_SECONDS = 60L;
+    /** Max number of completions waiting for a platform thread. */
+    private static final int COMPLETION_QUEUE_CAPACITY = 1024;
+
+    /** Executor running the tasks. */
+    private final ExecutorService executor;
+    /** Executor completing the futures of the non-blocking client. */
+    private final ExecutorService completion;
+    /** Permits bounding the number of running tasks. */
+    private final Semaphore permits;
+    /** Max number of running tasks. */
+    private final int concurrency;
+    /** Whether the current thread is running a task of this executor. */
+    private final ThreadLocal<Boolean> inTask = new ThreadLocal<Boolean>();
+    /** Whether the tasks run on virtual threads. */
+    private final boolean virtual;
+
+    /**
+     * This is the parameterized constructor used to initialize the executor.
+     * @param mode Execution mode
+     * @param concurrency Max number of tasks running at the same time
+     */
+    PersoniumExecutor(DaoConfig.ExecutionMode mode, int concurrency) {
+        ExecutorService service = null;
+        if (mode == DaoConfig.ExecutionMode.VIRTUAL_THREADS) {
+            service = newVirtualThreadPerTaskExecutor();
+        }
+        this.virtual = service != null;
+        if (service == null) {
+            service = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory(THREAD_NAME_PREFIX));
+        }
+        this.executor = service;
+        if (this.virtual) {
+            this.completion = service;
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, COMPLETION_KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(COMPLETION_QUEUE_CAPACITY),
+                    new DaemonThreadFactory(COMPLETION_THREAD_NAME_PREFIX));
+            pool.allowCoreThreadTimeOut(true);
+            this.completion = pool;
+        }
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency, true);
+    }
+
+    /**
+     * This method returns whether the tasks run on virtual threads. It is false in the virtual-thread mode when the
+     * runtime does not support virtual threads (before Java 21), in which case a bounded pool of platform threads is
+     * used instead.
+     * @return true if the tasks run on virtual threads
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * This method returns the max number of tasks running at the same time.
+     * @return Max number of running tasks
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * This method submits a task. The returned future completes with the result of the task, or exceptionally with
+     * the exception thrown by the task (a DaoException for the client calls).
+     * @param task Task to run
+     * @param <T> Type of the result
+     * @return Future of the result
+     */
+    public <T> CompletableFuture<T> submit(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                    return;
+                }
+                inTask.set(Boolean.TRUE);
+                try {
+                    future.complete(task.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inTask.remove();
+                    permits.release();
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * This method checks whether the current thread is running a task of this executor. Such a task must do its work
+     * in its own thread rather than submit it and wait for it.
+     * @return true if called from a task of this executor
+     */
+    boolean isInTask() {
+        return Boolean.TRUE.equals(this.inTask.get());
+    }
+
+    /**
+     * This method runs the completion of a future of the non-blocking client, so that the dependent stages do not run
+     * on an I/O thread of the shared client. The completion takes no permit and does not queue behind the submitted
+     * tasks, so a task may wait for a future completed here. In the platform-thread mode the completions run on at
+     * most {@link #getConcurrency()} threads of their own, and a completion runs in the calling thread when too many
+     * are waiting. It also runs in the calling thread once the executor is closed.
+     * @param action Action completing the future
+     */
+    public void complete(Runnable action) {
+        try {
+            this.completion.execute(action);
+        } catch (RejectedExecutionException e) {
+            action.run();
+        }
+    }
+
+    /**
+     * This method runs all the tasks and waits for them to complete. The results are returned in the order of the
+     * tasks. When a task fails, the exception of the first failed task in that order is thrown after all the tasks
+     * have completed.
+     * @param tasks Tasks to run
+     * @param <T> Type of the results
+     * @return Results of the tasks
+     * @throws DaoException Exception thrown by a task, or wrapping any other failure
+     */
+    public <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks) throws DaoException {
+        List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(submit(task));
+        }
+        List<T> results = new ArrayList<T>(futures.size());
+        DaoException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (CompletableFuture<T> f : futures) {
+                    f.cancel(false);
+                }
+                throw new DaoException("interrupted while waiting for tasks", e);
+            } catch (ExecutionException | CancellationException e) {
+                results.add(null);
+                if (failure == null) {
+                    failure = toDaoException(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * This method stops accepting new tasks. Tasks already submitted are run to completion.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        this.completion.shutdown();
+    }
+
+    /**
+     * This method converts the failure of a task to a DaoException.
+     * @param e Exception thrown while waiting for the task
+     * @return DaoException object
+     */
+    static DaoException toDaoException(Exception e) {
+        Throwable cause = e.getCause();
+        if (cause == null) {
+            cause = e;
+        }
+        if (cause instanceof DaoException) {
+            return (DaoException) cause;
+        }
+        return new DaoException("task failed : " + cause.getMessage(), cause);
+    }
+
+    /**
+     * This method creates a virtual-thread-per-task executor if the runtime supports it.
+     * @return ExecutorService object, or null before Java 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * This class creates the daemon platform threads, so that an executor that is not closed does not keep the JVM
+     * alive.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        /** Prefix of the thread names. */
+        private final String prefix;
+        /** Sequence of the thread names. */
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        /**
+         * This is the parameterized constructor.
+         * @param namePrefix Prefix of the thread names
+         */
+        DaemonThreadFactory(String namePrefix) {
+            this.prefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, this.prefix + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
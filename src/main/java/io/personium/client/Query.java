@@ -18,6 +18,13 @@ package io.personium.client;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.json.simple.JSONObject;
 
 import io.personium.client.utils.StringUtils;
 import io.personium.client.utils.Utils;
@@ -63,6 +70,8 @@ public class Query {
     // /** デフォルトの$skip値. */
     /** The default value for $skip. */
     private static final int DEFAULT_SKIP = 0;
+    /** The default page size of {@link #iterator()} when $top is not specified. */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
 
     // /**
     // * ODataの$filter指定. 検索条件 を指定します。文法については、OData Documentを参照してください。
@@ -156,6 +165,91 @@ public class Query {
         return this.target.doSearch(this);
     }
 
+    /**
+     * This method iterates over all the results of the search, starting at $skip. The results are fetched lazily in
+     * pages of $top results (or {@link #DEFAULT_PAGE_SIZE} when $top is not specified), and the next page is fetched
+     * in the background while the current one is consumed. Specify $orderby so that the pages are stable. A
+     * DaoException thrown while fetching a page is thrown as the cause of a RuntimeException.
+     * @return Iterator over the results
+     */
+    public final Iterator<JSONObject> iterator() {
+        return this.iterator(this.pageSize());
+    }
+
+    /**
+     * This method iterates over all the results of the search with the given page size, see {@link #iterator()}.
+     * @param pageSize Number of results fetched at a time
+     * @return Iterator over the results
+     */
+    public final Iterator<JSONObject> iterator(final int pageSize) {
+        return new QueryIterator(this, pageSize);
+    }
+
+    /**
+     * This method returns all the results of the search as a lazy stream of Entity, see {@link #iterator()}. Close the
+     * stream to cancel the page being fetched when it is not consumed to the end.
+     * @return Stream of the results
+     */
+    public final Stream<Entity> stream() {
+        return this.stream(this.pageSize());
+    }
+
+    /**
+     * This method returns all the results of the search as a lazy stream of Entity with the given page size, see
+     * {@link #stream()}.
+     * @param pageSize Number of results fetched at a time
+     * @return Stream of the results
+     */
+    public final Stream<Entity> stream(final int pageSize) {
+        final QueryIterator it = new QueryIterator(this, pageSize);
+        Accessor as = null;
+        if (this.target instanceof ODataManager) {
+            as = ((ODataManager) this.target).accessor;
+        }
+        final Accessor accessor = as;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).map(json -> new Entity(accessor, json)).onClose(it::close);
+    }
+
+    /**
+     * This method returns the target of the search.
+     * @return OData operation object
+     */
+    final IODataManager target() {
+        return this.target;
+    }
+
+    /**
+     * This method creates a copy of this query for a page of the results.
+     * @param skipValue $skip of the page
+     * @param topValue $top of the page
+     * @return Query of the page
+     */
+    final Query page(final int skipValue, final int topValue) {
+        Query page = new Query(this.target);
+        page.filter = this.filter;
+        page.top = topValue;
+        page.skip = skipValue;
+        page.select = this.select;
+        page.expand = this.expand;
+        page.orderby = this.orderby;
+        page.q = this.q;
+        page.parentType = this.parentType;
+        page.parentId = this.parentId;
+        return page;
+    }
+
+    /**
+     * This method returns the page size of the iteration.
+     * @return $top, or {@link #DEFAULT_PAGE_SIZE} when it is not specified
+     */
+    final int pageSize() {
+        if (this.top > 0) {
+            return this.top;
+        }
+        return DEFAULT_PAGE_SIZE;
+    }
+
     // /**
     // * 各クエリを連携し、クエリ文字列を生成します.
     // * @return 生成したクエリ文字列
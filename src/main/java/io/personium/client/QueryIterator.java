@@ -0,0 +1,225 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * This class iterates over all the results of a Query, fetching them page by page with $skip/$top. While a page is
+ * consumed, the next one is fetched in the background on the executor of the context, unless the iterator is used by
+ * a task of that executor, which must not wait for another task. Each result is released once it
+ * has been returned, so only two pages are held in memory at a time.
+ */
+class QueryIterator implements Iterator<JSONObject>, AutoCloseable {
+    /** Query to iterate over. */
+    private final Query query;
+    /** Number of results of a page. */
+    private final int pageSize;
+    /** $skip of the next page to request. */
+    private int nextSkip;
+    /** Number of results still to request, negative if unlimited. */
+    private long remaining;
+    /** Page being consumed, null before the first page. */
+    private JSONArray page;
+    /** Index of the next result in the page. */
+    private int index;
+    /** Whether the page being consumed is the last one. */
+    private boolean last;
+    /** Next page being fetched in the background, null if none. */
+    private CompletableFuture<JSONArray> prefetch;
+
+    /**
+     * This is the parameterized constructor. Nothing is fetched until the first call to {@link #hasNext()}.
+     * @param query Query to iterate over, starting at its $skip
+     * @param pageSize Number of results of a page
+     */
+    QueryIterator(Query query, int pageSize) {
+        this(query, pageSize, -1);
+    }
+
+    /**
+     * This is the parameterized constructor for a window of the results. Nothing is fetched until the first call to
+     * {@link #hasNext()} or {@link #start()}.
+     * @param query Query to iterate over, starting at its $skip
+     * @param pageSize Number of results of a page
+     * @param limit Max number of results, negative if unlimited
+     */
+    QueryIterator(Query query, int pageSize, long limit) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        this.query = query;
+        this.pageSize = pageSize;
+        this.nextSkip = query.skip();
+        this.remaining = limit;
+        this.last = limit == 0;
+    }
+
+    /**
+     * This method starts fetching the first page in the background, if the target supports it.
+     */
+    void start() {
+        if (this.page == null && this.prefetch == null && !this.last) {
+            this.prefetch = this.submitNextPage();
+        }
+    }
+
+    /**
+     * This method checks whether a result remains, fetching the next page if the current one is consumed.
+     * @return true if a result remains
+     */
+    @Override
+    public boolean hasNext() {
+        while (this.page == null || this.index >= this.page.size()) {
+            if (this.last) {
+                this.page = null;
+                return false;
+            }
+            if (this.prefetch != null) {
+                this.page = await(this.prefetch);
+                this.prefetch = null;
+            } else {
+                this.page = fetch(this.nextPage());
+            }
+            this.index = 0;
+            if (this.page.size() < this.pageSize || this.remaining == 0) {
+                this.last = true;
+            } else {
+                this.prefetch = this.submitNextPage();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method returns the next result and releases it from the page.
+     * @return Next result
+     */
+    @Override
+    public JSONObject next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        @SuppressWarnings("unchecked")
+        Object result = this.page.set(this.index++, null);
+        return (JSONObject) result;
+    }
+
+    /**
+     * This method stops the iteration and cancels the page being fetched in the background.
+     */
+    @Override
+    public void close() {
+        this.last = true;
+        this.page = null;
+        if (this.prefetch != null) {
+            this.prefetch.cancel(false);
+            this.prefetch = null;
+        }
+    }
+
+    /**
+     * This method creates the query of the next page and advances $skip.
+     * @return Query of the next page
+     */
+    private Query nextPage() {
+        int top = this.pageSize;
+        if (this.remaining >= 0 && this.remaining < top) {
+            top = (int) this.remaining;
+        }
+        Query next = this.query.page(this.nextSkip, top);
+        this.nextSkip += top;
+        if (this.remaining >= 0) {
+            this.remaining -= top;
+        }
+        return next;
+    }
+
+    /**
+     * This method fetches the next page on the executor of the context. Returns null when the target can't run
+     * requests in the background, or when the current thread is a task of the executor, in which case the page is
+     * fetched when it is needed.
+     * @return Future of the page, or null
+     */
+    private CompletableFuture<JSONArray> submitNextPage() {
+        IODataManager target = this.query.target();
+        if (!(target instanceof ODataManager) || ((ODataManager) target).accessor.isBatchMode()) {
+            return null;
+        }
+        PersoniumExecutor executor = ((ODataManager) target).accessor.getDaoConfig().getExecutor();
+        if (executor.isInTask()) {
+            return null;
+        }
+        final Query pageQuery = this.nextPage();
+        return executor.submit(() -> fetchPage(pageQuery));
+    }
+
+    /**
+     * This method fetches the page in the foreground.
+     * @param pageQuery Query of the page
+     * @return Results of the page
+     */
+    private static JSONArray fetch(Query pageQuery) {
+        try {
+            return fetchPage(pageQuery);
+        } catch (DaoException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method waits for the page fetched in the background.
+     * @param future Future of the page
+     * @return Results of the page
+     */
+    private static JSONArray await(CompletableFuture<JSONArray> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(new DaoException("interrupted while fetching a page", e));
+        } catch (ExecutionException | CancellationException e) {
+            throw new RuntimeException(PersoniumExecutor.toDaoException(e));
+        }
+    }
+
+    /**
+     * This method runs the query of a page and extracts d.results.
+     * @param pageQuery Query of the page
+     * @return Results of the page
+     * @throws DaoException Exception thrown
+     */
+    private static JSONArray fetchPage(Query pageQuery) throws DaoException {
+        HashMap<String, Object> json = pageQuery.run();
+        Object d = json.get("d");
+        if (d instanceof JSONObject) {
+            Object results = ((JSONObject) d).get("results");
+            if (results instanceof JSONArray) {
+                return (JSONArray) results;
+            }
+        }
+        return new JSONArray();
+    }
+}
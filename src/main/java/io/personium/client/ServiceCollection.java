@@ -280,6 +280,7 @@ public class ServiceCollection extends PersoniumCollection {
         try {
             HttpUriRequest req = drb.build();
             response = rest.getHttpClient().execute(req);
+            RestAdapter.bufferEntity(response);
         } catch (DaoException e) {
             throw new RuntimeException(e);
         } catch (ClientProtocolException e) {
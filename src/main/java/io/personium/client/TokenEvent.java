@@ -0,0 +1,50 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is the Java Flight Recorder event of the acquisition of a token by an Accessor, including the schema
+ * authentication and the wait for a token shared by the TokenManager.
+ */
+@Name("io.personium.client.Token")
+@Label("Personium Token")
+@Category({"Personium", "Authentication"})
+@Description("Acquisition of a token by an Accessor")
+final class TokenEvent extends Event {
+    /** URL of the authentication cell. */
+    @Label("Authentication URL")
+    String authUrl;
+
+    /** Grant type of the last __token request. */
+    @Label("Grant Type")
+    String grantType;
+
+    /** Number of __token requests. */
+    @Label("Requests")
+    @Description("Number of __token requests sent, 0 if the token was shared by the TokenManager")
+    int requests;
+
+    /** Error message. */
+    @Label("Error")
+    String error;
+}
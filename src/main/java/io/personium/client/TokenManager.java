@@ -0,0 +1,328 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+/**
+ * It creates a new object of TokenManager. This class keeps the tokens obtained by the Accessor objects of a
+ * PersoniumContext, so that the Accessor objects with the same credentials, including their clones used by the
+ * managers, authenticate once per token lifetime instead of once per call. A token is renewed with its refresh token
+ * shortly before it expires, and the callers asking for a token being obtained wait for the same __token request.
+ * It is enabled by {@link PersoniumContext#setTokenManager(TokenManager)}. All the methods are thread-safe.
+ */
+public class TokenManager {
+    /** Default time before the expiration at which a token is renewed, in milliseconds. */
+    public static final long DEFAULT_REFRESH_MARGIN = 60000;
+    /** Separator of the parts of a key. */
+    private static final char SEPARATOR = '\n';
+    /** Marker of a missing part of a key. */
+    private static final char MISSING = '\0';
+
+    /** Time before the expiration at which a token is renewed, in nanoseconds. */
+    private final long refreshMargin;
+    /** Tokens by key. */
+    private final ConcurrentHashMap<String, Token> tokens = new ConcurrentHashMap<String, Token>();
+    /** __token requests in flight by key. */
+    private final ConcurrentHashMap<String, CompletableFuture<Token>> inFlight =
+            new ConcurrentHashMap<String, CompletableFuture<Token>>();
+    /** Number of __token requests sent. */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * This is the default constructor, renewing the tokens {@link #DEFAULT_REFRESH_MARGIN} before they expire.
+     */
+    public TokenManager() {
+        this(DEFAULT_REFRESH_MARGIN, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This is the parameterized constructor. A token whose lifetime is shorter than twice the margin is renewed at
+     * half of its lifetime.
+     * @param margin Time before the expiration at which a token is renewed
+     * @param unit Unit of the time
+     */
+    public TokenManager(long margin, TimeUnit unit) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("refresh margin can't be negative");
+        }
+        this.refreshMargin = unit.toNanos(margin);
+    }
+
+    /**
+     * This method returns the number of tokens kept.
+     * @return Number of tokens
+     */
+    public int size() {
+        return this.tokens.size();
+    }
+
+    /**
+     * This method returns the number of __token requests sent through the manager.
+     * @return Number of requests
+     */
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * This method removes all the tokens, so that the next calls authenticate again.
+     */
+    public void clear() {
+        this.tokens.clear();
+    }
+
+    /**
+     * This method returns the token of a key, obtaining it if it is missing or expired, and renewing it if it
+     * expires soon. While a token is renewed, the other callers keep using the current one if it is still valid, and
+     * wait for the new one otherwise. When it can't be renewed with its refresh token, a new token is requested with
+     * the credentials. A caller which starts a renewal after another one has completed uses the renewed token instead of
+     * renewing it again, since a rotated refresh token can be used only once.
+     * @param key Key of the credentials, see {@link #key(Object...)}
+     * @param grant Grant requesting a token
+     * @return Token
+     * @throws DaoException Exception thrown by the __token request
+     */
+    Token get(String key, Grant grant) throws DaoException {
+        Token current = this.tokens.get(key);
+        long now = System.nanoTime();
+        if (current != null && !current.needsRefresh(now)) {
+            return current;
+        }
+        boolean usable = current != null && current.isValid(now);
+        CompletableFuture<Token> mine = new CompletableFuture<Token>();
+        CompletableFuture<Token> flight = this.inFlight.putIfAbsent(key, mine);
+        if (flight != null) {
+            if (usable) {
+                return current;
+            }
+            return await(flight);
+        }
+        try {
+            // Another leader may have renewed the token since it was read.
+            Token latest = this.tokens.get(key);
+            if (latest != current) {
+                current = latest;
+                now = System.nanoTime();
+                if (current != null && !current.needsRefresh(now)) {
+                    mine.complete(current);
+                    return current;
+                }
+                usable = current != null && current.isValid(now);
+            }
+            Token next = null;
+            if (current != null && current.refreshToken != null && current.isRefreshValid(now)) {
+                try {
+                    this.requestCount.incrementAndGet();
+                    next = grant.request(current.refreshToken);
+                } catch (DaoException e) {
+                    // The refresh token has been revoked: authenticate again.
+                    next = null;
+                }
+            }
+            if (next == null) {
+                this.requestCount.incrementAndGet();
+                next = grant.request(null);
+            }
+            this.tokens.put(key, next);
+            mine.complete(next);
+            return next;
+        } catch (DaoException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            if (usable) {
+                return current;
+            }
+            throw e;
+        } finally {
+            this.inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * This method creates the token of a __token response.
+     * @param json Body of the __token response
+     * @param schemaAuth Body of the __token response of the schema authentication, may be null
+     * @return Token object
+     */
+    Token newToken(JSONObject json, JSONObject schemaAuth) {
+        long now = System.nanoTime();
+        long lifetime = seconds(json.get("expires_in"));
+        long refreshLifetime = seconds(json.get("refresh_token_expires_in"));
+        long refreshAt = now + Math.max(lifetime - this.refreshMargin, lifetime / 2);
+        return new Token(json, schemaAuth, now + lifetime, refreshAt, now + refreshLifetime);
+    }
+
+    /**
+     * This method computes the key of credentials from their parts, keeping only a digest of them.
+     * @param parts Parts of the credentials, may be null
+     * @return Key
+     */
+    static String key(Object... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (part == null) {
+                sb.append(MISSING);
+            } else {
+                sb.append(part);
+            }
+            sb.append(SEPARATOR);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * This method waits for a __token request in flight.
+     * @param flight Future of the token
+     * @return Token
+     * @throws DaoException Exception thrown by the request
+     */
+    private static Token await(CompletableFuture<Token> flight) throws DaoException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw DaoException.create("interrupted while waiting for a token", 0);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DaoException) {
+                throw (DaoException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * This method converts a lifetime of a __token response to nanoseconds.
+     * @param value Lifetime in seconds, may be null
+     * @return Lifetime in nanoseconds, 0 if missing
+     */
+    private static long seconds(Object value) {
+        if (!(value instanceof Number)) {
+            return 0;
+        }
+        return TimeUnit.SECONDS.toNanos(((Number) value).longValue());
+    }
+
+    /**
+     * This interface requests a token to the __token endpoint.
+     */
+    interface Grant {
+        /**
+         * This method requests a token.
+         * @param refreshToken Refresh token to renew, or null to authenticate with the credentials
+         * @return Token, or null if it can't be renewed with a refresh token
+         * @throws DaoException Exception thrown by the request
+         */
+        Token request(String refreshToken) throws DaoException;
+    }
+
+    /**
+     * This class is a token kept by the manager.
+     */
+    static final class Token {
+        /** Body of the __token response. */
+        private final JSONObject json;
+        /** Body of the __token response of the schema authentication, may be null. */
+        private final JSONObject schemaAuth;
+        /** Refresh token. */
+        private final String refreshToken;
+        /** Time in System.nanoTime() when the token expires. */
+        private final long expiresAt;
+        /** Time in System.nanoTime() from which the token is renewed. */
+        private final long refreshAt;
+        /** Time in System.nanoTime() when the refresh token expires. */
+        private final long refreshExpiresAt;
+
+        /**
+         * This is the parameterized constructor.
+         * @param value Body of the __token response
+         * @param schema Body of the __token response of the schema authentication
+         * @param expires Time in System.nanoTime() when the token expires
+         * @param refresh Time in System.nanoTime() from which the token is renewed
+         * @param refreshExpires Time in System.nanoTime() when the refresh token expires
+         */
+        Token(JSONObject value, JSONObject schema, long expires, long refresh, long refreshExpires) {
+            this.json = value;
+            this.schemaAuth = schema;
+            this.refreshToken = (String) value.get("refresh_token");
+            this.expiresAt = expires;
+            this.refreshAt = refresh;
+            this.refreshExpiresAt = refreshExpires;
+        }
+
+        /**
+         * This method returns the body of the __token response.
+         * @return JSONObject
+         */
+        JSONObject getJson() {
+            return this.json;
+        }
+
+        /**
+         * This method returns the body of the __token response of the schema authentication.
+         * @return JSONObject, or null if none
+         */
+        JSONObject getSchemaAuth() {
+            return this.schemaAuth;
+        }
+
+        /**
+         * This method checks whether the token can still be used.
+         * @param now Current System.nanoTime()
+         * @return true if not expired
+         */
+        boolean isValid(long now) {
+            return this.expiresAt - now > 0;
+        }
+
+        /**
+         * This method checks whether the token should be renewed.
+         * @param now Current System.nanoTime()
+         * @return true if the token expires soon
+         */
+        boolean needsRefresh(long now) {
+            return this.refreshAt - now <= 0;
+        }
+
+        /**
+         * This method checks whether the refresh token can still be used.
+         * @param now Current System.nanoTime()
+         * @return true if not expired
+         */
+        boolean isRefreshValid(long now) {
+            return this.refreshExpiresAt - now > 0;
+        }
+    }
+}
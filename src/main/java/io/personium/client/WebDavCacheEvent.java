@@ -0,0 +1,71 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is the Java Flight Recorder event of {@link DavCollection#getStringWebDAV(String, String)}, describing
+ * the use of the ResponseCache of the PersoniumContext.
+ */
+@Name("io.personium.client.WebDavCache")
+@Label("Personium WebDAV Cache")
+@Category({"Personium", "WebDAV"})
+@Description("GET of a WebDAV file through the response cache")
+final class WebDavCacheEvent extends Event {
+    /** The file was not in the cache. */
+    static final String MISS = "MISS";
+    /** The cached file was returned without request (stale-while-revalidate). */
+    static final String FRESH = "FRESH";
+    /** The cached file was revalidated by the server (304). */
+    static final String NOT_MODIFIED = "NOT_MODIFIED";
+    /** The cached file was replaced by the one returned by the server. */
+    static final String MODIFIED = "MODIFIED";
+
+    /** URL of the file. */
+    @Label("URL")
+    String url;
+
+    /** Use of the cache. */
+    @Label("Result")
+    @Description("MISS, FRESH, NOT_MODIFIED or MODIFIED")
+    String result;
+
+    /** Age of the cached file. */
+    @Label("Age")
+    @Description("Age of the cached file, -1 if it was not in the cache")
+    @Timespan(Timespan.MILLISECONDS)
+    long age = -1;
+
+    /** Status code. */
+    @Label("Status")
+    int status;
+
+    /** Length of the body. */
+    @Label("Length")
+    @Description("Number of characters of the body")
+    int length;
+
+    /** Error message. */
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,298 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+
+import io.personium.client.Accessor;
+import io.personium.client.DaoException;
+
+/**
+ * It creates a new object of AsyncRestAdapter. This class is used for non-blocking REST access. Every method returns
+ * a CompletableFuture with the same response or DaoException the corresponding RestAdapter method would return or
+ * throw. The future is completed on the executor of DaoConfig rather than on an I/O thread of the shared client, so
+ * the dependent stages may block without stalling the other requests. Like RestAdapter, a request which may change a
+ * resource removes the responses it makes stale from the HTTP cache of DaoConfig, and every request is passed to the
+ * RequestListener objects once it has completed. The responses are not looked up in nor kept by the HTTP cache.
+ */
+public class AsyncRestAdapter {
+    /** Non-blocking HttpClient. */
+    private HttpAsyncClient httpClient;
+    /** Reference to Accessor. */
+    private Accessor accessor;
+
+    /**
+     * This is the parameterized constructor to initialize various fields.
+     * @param as Accessor
+     * @param client Non-blocking HttpClient
+     */
+    public AsyncRestAdapter(Accessor as, HttpAsyncClient client) {
+        this.accessor = as;
+        this.httpClient = client;
+    }
+
+    /**
+     * This is the GET method to receive the response body.
+     * @param url Target Request URL
+     * @param accept Accept Header Value
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> get(String url, String accept) {
+        return get(url, accept, null);
+    }
+
+    /**
+     * This is the GET method to receive the response body (If-None-Match specified).
+     * @param url Target Request URL
+     * @param accept Accept Header Value
+     * @param etag Etag value
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> get(String url, String accept, String etag) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.GET).acceptEncoding("gzip")
+                .accept(accept).token(getToken()).ifNoneMatch(etag).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the PUT method that receives the response body and uses Etag value.
+     * @param url Target Request URL
+     * @param data Data to be sent
+     * @param etag ETag value
+     * @param contentType CONTENT-TYPE value
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> put(String url, String data, String etag, String contentType) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.PUT).contentType(contentType)
+                .ifMatch(etag).body(data).token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the POST method that receives the request body.
+     * @param url Target URL
+     * @param data Data to be written
+     * @param contentType CONTENT-TYPE value
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> post(String url, String data, String contentType) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.POST).contentType(contentType)
+                .body(data).token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the MERGE method that receives the response body.
+     * @param url Target URL
+     * @param data Data to be written
+     * @param etag ETag value
+     * @param contentType CONTENT-TYPE value
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> merge(String url, String data, String etag, String contentType) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.MERGE).contentType(contentType)
+                .ifMatch(etag).body(data).token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the DELETE method.
+     * @param url Target URL
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> del(String url) {
+        return del(url, null);
+    }
+
+    /**
+     * This is the DELETE method that uses Etag value.
+     * @param url Target URL
+     * @param etag ETag value
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> del(String url, String etag) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.DELETE).ifMatch(etag)
+                .token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the PROPFIND method.
+     * @param url Target URL
+     * @param depth Depth header
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> propfind(String url, String depth) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.PROPFIND)
+                .contentType(IRestAdapter.CONTENT_TYPE_XML).token(getToken()).accept(IRestAdapter.CONTENT_TYPE_XML)
+                .depth(depth).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the ACL method for setting the ACL.
+     * @param url Target URL
+     * @param body Request Body
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> acl(String url, String body) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.ACL)
+                .contentType(IRestAdapter.CONTENT_TYPE_XML).accept(IRestAdapter.CONTENT_TYPE_XML).body(body)
+                .token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This is the MKCOL method to create a collection.
+     * @param url Target URL
+     * @return Future of the PersoniumResponse
+     */
+    public CompletableFuture<PersoniumResponse> mkcol(String url) {
+        return this.request(new PersoniumRequestBuilder().url(url).method(HttpMethods.MKCOL)
+                .contentType(IRestAdapter.CONTENT_TYPE_XML).accept(IRestAdapter.CONTENT_TYPE_XML)
+                .body(IRestAdapter.REQUEST_BODY_MKCOL_XML).token(getToken())
+                .defaultHeaders(this.accessor.getDefaultHeaders()));
+    }
+
+    /**
+     * This method converts the response of a future with the handler. A DaoException thrown by the handler completes
+     * the returned future exceptionally with the DaoException as the cause.
+     * @param future Future of the PersoniumResponse
+     * @param handler Handler converting the response
+     * @param <T> Type of the result
+     * @return Future of the result
+     */
+    public static <T> CompletableFuture<T> thenHandle(CompletableFuture<PersoniumResponse> future,
+            final PersoniumResponseHandler<T> handler) {
+        return future.thenApply(res -> {
+            try {
+                return handler.handle(res);
+            } catch (DaoException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * This method builds the request and executes it on the non-blocking client.
+     * @param builder Request builder
+     * @return Future of the PersoniumResponse
+     */
+    private CompletableFuture<PersoniumResponse> request(PersoniumRequestBuilder builder) {
+        final CompletableFuture<PersoniumResponse> future = new CompletableFuture<PersoniumResponse>();
+        final HttpUriRequest httpReq;
+        try {
+            httpReq = builder.build();
+        } catch (DaoException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        final HttpCache cache = this.httpCache(httpReq);
+        if (cache != null) {
+            cache.invalidate(httpReq);
+        }
+        final List<RequestListener> listeners = this.accessor.getDaoConfig().getRequestListeners();
+        final RequestEvent event;
+        if (listeners.isEmpty()) {
+            event = null;
+        } else {
+            event = new RequestEvent(httpReq, this.accessor.getBaseUrl());
+        }
+        this.httpClient.execute(httpReq, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse objResponse) {
+                PersoniumResponse dcRes;
+                try {
+                    RestAdapter.bufferEntity(objResponse);
+                    dcRes = new PersoniumResponse(objResponse);
+                } catch (IOException e) {
+                    failed(e);
+                    return;
+                }
+                if (cache != null) {
+                    // A response read while the request was in flight may have been kept.
+                    cache.invalidate(httpReq);
+                }
+                if (event != null) {
+                    event.complete(objResponse);
+                    RestAdapter.fireRequest(listeners, event);
+                }
+                accessor.setResHeaders(objResponse.getAllHeaders());
+                final int statusCode = objResponse.getStatusLine().getStatusCode();
+                complete(() -> {
+                    if (statusCode >= IRestAdapter.STATUS300 && statusCode != HttpStatus.SC_MOVED_TEMPORARILY) {
+                        try {
+                            future.completeExceptionally(DaoException.create(dcRes.bodyAsString(), statusCode));
+                        } catch (DaoException e) {
+                            future.completeExceptionally(e);
+                        }
+                    } else {
+                        future.complete(dcRes);
+                    }
+                });
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                final DaoException e = DaoException.create("io exception : " + ex.getMessage(), 0);
+                if (event != null) {
+                    event.fail(e);
+                    RestAdapter.fireRequest(listeners, event);
+                }
+                complete(() -> future.completeExceptionally(e));
+            }
+
+            @Override
+            public void cancelled() {
+                complete(() -> future.cancel(false));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * This method completes a future on the executor of DaoConfig, so that the dependent stages do not run on an I/O
+     * thread of the shared client.
+     * @param completion Action completing the future
+     */
+    private void complete(Runnable completion) {
+        this.accessor.getDaoConfig().getExecutor().complete(completion);
+    }
+
+    /**
+     * This method returns the HTTP cache of the DaoConfig for a request which may change a resource.
+     * @param httpReq Request
+     * @return HttpCache object, or null if disabled or if the request does not change a resource
+     */
+    private HttpCache httpCache(HttpUriRequest httpReq) {
+        ResponseCache store = this.accessor.getDaoConfig().getHttpCache();
+        if (store == null || HttpCache.isCacheable(httpReq)) {
+            return null;
+        }
+        return new HttpCache(store);
+    }
+
+    /**
+     * This method gets the token from Accessor.
+     * @return Token value
+     */
+    private String getToken() {
+        return this.accessor.getAccessToken();
+    }
+}
@@ -16,12 +16,21 @@
  */
 package io.personium.client.http;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
 import io.personium.client.Accessor;
 import io.personium.client.DaoException;
 
@@ -47,12 +56,26 @@ public class BatchAdapter implements IRestAdapter {
     // /** 改行コード. */
     /** Line feed code. */
     private static final String CRLF = "\r\n";
+    /** Encoded line feed code. */
+    private static final byte[] CRLF_BYTES = utf8(CRLF);
+    /** Max initial size of the buffer used by {@link HttpEntity#getContent()}. */
+    private static final int MAX_BUFFER = 1024 * 1024;
 
     // /**
     // * コマンドを$Batchフォーマットに生成する.
     // */
     /**
-     * This is the inner class used to generate the $Batch format command.
+     * This method encodes a part of the $Batch body.
+     * @param value String value
+     * @return UTF-8 bytes
+     */
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This is the inner class used to generate the $Batch format command. The command is encoded once when it is
+     * queued, and its length in bytes is known from then on.
      */
     private class Command {
         /** Variable for URL. */
@@ -62,23 +85,18 @@ public class BatchAdapter implements IRestAdapter {
         /** Variable for Etag. */
         private String etag = null;
         /** Variable for Body. */
-        private StringBuilder body = null;
-        /** Variable for ContentLength. */
-        private int contentLength = 0;
+        private byte[] body = null;
         /** Variable for Headers. */
         private ArrayList<String> headers = new ArrayList<String>();
+        /** Encoded request line and headers, set by {@link #encode()}. */
+        private byte[] head = null;
 
         /**
-         * This method is used to set Content Length.
+         * This method is used to set the body.
          * @param value the body to set.
          */
         void setBody(String value) {
-            body = new StringBuilder(value);
-            try {
-                this.contentLength = value.getBytes("UTF-8").length;
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
-            }
+            this.body = utf8(value);
         }
 
         /**
@@ -91,10 +109,10 @@ public class BatchAdapter implements IRestAdapter {
         }
 
         /**
-         * This method is used to get the $batch format command.
-         * @return $batch format command
+         * This method encodes the request line and headers of the $batch format command.
+         * @return Own Command object
          */
-        String get() {
+        Command encode() {
             StringBuilder sb = new StringBuilder();
             /** GET. */
             if (this.method.equals(HttpMethods.GET)) {
@@ -113,138 +131,282 @@ public class BatchAdapter implements IRestAdapter {
                 sb.append(header).append(CRLF);
             }
             /** Content-Length. */
-            sb.append("Content-Length: " + Integer.toString(this.contentLength)).append(CRLF);
+            int contentLength = 0;
+            if (this.body != null) {
+                contentLength = this.body.length;
+            }
+            sb.append("Content-Length: " + Integer.toString(contentLength)).append(CRLF);
             /** If-Match. */
             if (null != this.etag) {
                 sb.append("If-Match: " + this.etag).append(CRLF);
             }
-            if (HttpMethods.POST.equals(this.method) || HttpMethods.PUT.equals(this.method)) {
-                sb.append(CRLF);
-                sb.append(this.body.toString()).append(CRLF);
+            this.head = utf8(sb.toString());
+            this.headers = null;
+            return this;
+        }
+
+        /**
+         * This method checks whether the body is written after the headers.
+         * @return true for POST and PUT
+         */
+        private boolean hasBody() {
+            return HttpMethods.POST.equals(this.method) || HttpMethods.PUT.equals(this.method);
+        }
+
+        /**
+         * This method returns the length of the $batch format command.
+         * @return Length in bytes
+         */
+        long length() {
+            long length = this.head.length;
+            if (this.hasBody()) {
+                length += CRLF_BYTES.length + CRLF_BYTES.length;
+                if (this.body != null) {
+                    length += this.body.length;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * This method writes the $batch format command.
+         * @param out Output stream
+         * @throws IOException Exception thrown
+         */
+        void writeTo(OutputStream out) throws IOException {
+            out.write(this.head);
+            if (this.hasBody()) {
+                out.write(CRLF_BYTES);
+                if (this.body != null) {
+                    out.write(this.body);
+                }
+                out.write(CRLF_BYTES);
             }
-            return sb.toString();
         }
     }
 
-    // /**
-    // * $Batchの複数ChangeSetをまとめる.
-    // */
     /**
      * This is the inner class used to put together a multiple ChangeSet of $Batch.
      */
     private class ChangeSet {
         /** Variable for Changeset Boundary. */
         private String changesetBoundary = null;
-        /** Variable for Body. */
-        private StringBuilder body = null;
+        /** Commands of the ChangeSet. */
+        private ArrayList<Command> commands = new ArrayList<Command>();
+        /** Header written before each command. */
+        private byte[] partHeader;
+        /** Length of the ChangeSet body in bytes, without the final CRLF. */
+        private long bodyLength = 0;
+        /** Encoded ChangeSet header, set by {@link #close()}. */
+        private byte[] head;
+        /** Encoded ChangeSet footer. */
+        private byte[] footer;
 
-        // private int contentLength = 0;
         /**
          * This is the parameterized constructor to initialize changesetBoundary.
          * @param value changesetBoundary Value
          */
         ChangeSet(final String value) {
             this.changesetBoundary = value;
+            this.partHeader = utf8("--" + value + CRLF + "Content-Type: application/http" + CRLF
+                    + "Content-Transfer-Encoding: binary" + CRLF + CRLF);
+            this.footer = utf8("--" + value + "--");
         }
 
         /**
-         * This method is used to create the body for ChangeSet.
-         * @param value Value
-         * @throws DaoException Exception thrown
+         * This method is used to add a command to the ChangeSet.
+         * @param cmd Command
          */
-        void append(final String value) throws DaoException {
-            if (body == null) {
-                body = new StringBuilder();
-            } else {
-                body.append(CRLF);
+        void append(final Command cmd) {
+            if (!this.commands.isEmpty()) {
+                this.bodyLength += CRLF_BYTES.length;
             }
-            /** ChangeSetHeader. */
-            body.append("--" + this.changesetBoundary).append(CRLF);
-            body.append("Content-Type: application/http").append(CRLF);
-            body.append("Content-Transfer-Encoding: binary").append(CRLF);
-            body.append(CRLF);
+            this.bodyLength += this.partHeader.length + cmd.length();
+            this.commands.add(cmd);
+        }
 
-            body.append(value);
-            // try {
-            // this.contentLength += body.toString().getBytes("UTF-8").length;
-            // } catch (UnsupportedEncodingException e) {
-            // throw new DaoException(e.getMessage());
-            // }
+        /**
+         * This method closes the ChangeSet and encodes its header.
+         * @return Own ChangeSet object
+         */
+        ChangeSet close() {
+            this.head = this.encodeHead(this.bodyLength);
+            return this;
         }
 
         /**
-         * This method is used to get the $Batch ChangeSet command.
-         * @return $Batch ChangeSet command
-         * @throws DaoException Exception thrown
+         * This method encodes the ChangeSet header.
+         * @param length Length of the ChangeSet body in bytes, without the final CRLF
+         * @return Encoded header
          */
-        String get() throws DaoException {
-            this.body.append(CRLF);
+        private byte[] encodeHead(long length) {
             StringBuilder sb = new StringBuilder();
-            String changeSetFooter = "--" + this.changesetBoundary + "--";
             sb.append("--" + batchBoundary).append(CRLF);
             sb.append("Content-Type: multipart/mixed; boundary=").append(this.changesetBoundary).append(CRLF);
-            // Content-Length
-            try {
-                sb.append(
-                        "Content-Length: "
-                                + Integer.toString(this.body.toString().getBytes("UTF-8").length
-                                        + changeSetFooter.getBytes("UTF-8").length)).append(CRLF);
-            } catch (UnsupportedEncodingException e) {
-                throw new DaoException(e.getMessage());
-            }
+            sb.append("Content-Length: " + Long.toString(length + CRLF_BYTES.length + this.footer.length))
+                    .append(CRLF);
             sb.append(CRLF);
-            /** ChangeSetBody. */
-            sb.append(this.body);
-            sb.append(changeSetFooter).append(CRLF);
-            return sb.toString();
+            return utf8(sb.toString());
+        }
+
+        /**
+         * This method returns the length of the $Batch ChangeSet command.
+         * @return Length in bytes
+         */
+        long length() {
+            return this.head.length + this.bodyLength + CRLF_BYTES.length + this.footer.length + CRLF_BYTES.length;
+        }
+
+        /**
+         * This method returns the number of commands of the ChangeSet.
+         * @return Number of commands
+         */
+        int size() {
+            return this.commands.size();
+        }
+
+        /**
+         * This method writes the $Batch ChangeSet command.
+         * @param out Output stream
+         * @throws IOException Exception thrown
+         */
+        void writeTo(OutputStream out) throws IOException {
+            out.write(this.head);
+            for (int i = 0; i < this.commands.size(); i++) {
+                if (i > 0) {
+                    out.write(CRLF_BYTES);
+                }
+                out.write(this.partHeader);
+                this.commands.get(i).writeTo(out);
+            }
+            out.write(CRLF_BYTES);
+            out.write(this.footer);
+            out.write(CRLF_BYTES);
         }
     }
 
-    // /**
-    // * コマンドを$Batchフォーマットに生成する.
-    // */
     /**
      * This is the inner class used to generate the $Batch format command.
      */
     private class Batch {
-        /** Variable for Batch. */
-        private StringBuilder batch = null;
+        /** Parts of the Batch, Command or ChangeSet. */
+        private ArrayList<Object> parts = new ArrayList<Object>();
+        /** Length of the parts in bytes, with the CRLF between them. */
+        private long length = 0;
 
         /**
-         * This is the default constructor to initialize Batch.
+         * This method is used to append a GET command to Batch.
+         * @param cmd Command
          */
-        Batch() {
-            batch = new StringBuilder();
-            // batch.append("--" + batchBoundary).append(BR);
-            // batch.append("Content-Type: application/http").append(BR);
+        void append(Command cmd) {
+            this.add(cmd, cmd.length());
         }
 
         /**
-         * This method is used to append value to Batch.
-         * @param value the body to set.
+         * This method is used to append a ChangeSet to Batch.
+         * @param cs ChangeSet
+         */
+        void append(ChangeSet cs) {
+            this.add(cs, cs.length());
+        }
+
+        /**
+         * This method is used to add a part.
+         * @param part Part
+         * @param partLength Length of the part in bytes
          */
-        void append(String value) {
-            if (batch.length() > 0) {
-                batch.append(CRLF);
+        private void add(Object part, long partLength) {
+            if (!this.parts.isEmpty()) {
+                this.length += CRLF_BYTES.length;
             }
-            batch.append(value);
+            this.length += partLength;
+            this.parts.add(part);
         }
 
         /**
-         * This method is used to get the Batch value.
-         * @return Batch value in String form
+         * This method returns the length of the Batch body.
+         * @return Length in bytes
          */
-        String get() {
-            batch.append(CRLF);
-            batch.append("--" + batchBoundary + "--");
-            return batch.toString();
+        long length() {
+            return this.length + CRLF_BYTES.length + this.footer().length;
+        }
+
+        /**
+         * This method writes the Batch body.
+         * @param out Output stream
+         * @throws IOException Exception thrown
+         */
+        void writeTo(OutputStream out) throws IOException {
+            for (int i = 0; i < this.parts.size(); i++) {
+                if (i > 0) {
+                    out.write(CRLF_BYTES);
+                }
+                Object part = this.parts.get(i);
+                if (part instanceof ChangeSet) {
+                    ((ChangeSet) part).writeTo(out);
+                } else {
+                    ((Command) part).writeTo(out);
+                }
+            }
+            out.write(CRLF_BYTES);
+            out.write(this.footer());
+        }
+
+        /**
+         * This method returns the closing boundary of the Batch.
+         * @return Encoded closing boundary
+         */
+        private byte[] footer() {
+            return utf8("--" + batchBoundary + "--");
+        }
+    }
+
+    /**
+     * This is the inner class used to write the Batch body to the connection. It is repeatable, so that the request
+     * can be retried.
+     */
+    private class BatchEntity extends AbstractHttpEntity {
+        /** Batch to write. */
+        private final Batch body;
+
+        /**
+         * This is the parameterized constructor.
+         * @param value Batch to write
+         */
+        BatchEntity(Batch value) {
+            this.body = value;
+            setContentType("multipart/mixed; boundary=" + batchBoundary);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.body.length();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(getContentLength(), MAX_BUFFER));
+            this.body.writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            this.body.writeTo(out);
+            out.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
         }
     }
 
-    // /**
-    // * コンストラクタ.
-    // * @param as アクセス主体
-    // */
     /**
      * This is the parameterized constructor used to initialize various class variables.
      * @param as Accessor object
@@ -271,14 +433,22 @@ public class BatchAdapter implements IRestAdapter {
         return batchBoundary;
     }
 
+    /**
+     * This method creates a new ChangeSet boundary.
+     * @return ChangeSet boundary
+     */
+    private static String newChangesetBoundary() {
+        return "changeset_" + UUID.randomUUID().toString();
+    }
+
     /**
      * This method is used to append value to the ChangeSet.
      * @param value ChangeSet value
      * @throws DaoException Exception thrown
      */
-    private void appendChangeSet(String value) throws DaoException {
+    private void appendChangeSet(Command value) throws DaoException {
         if (null == this.changeSet) {
-            this.changeSet = new ChangeSet("changeset_" + UUID.randomUUID().toString());
+            this.changeSet = new ChangeSet(newChangesetBoundary());
         }
         this.changeSet.append(value);
     }
@@ -289,7 +459,7 @@ public class BatchAdapter implements IRestAdapter {
      */
     private void writeChangeSet() throws DaoException {
         if (null != this.changeSet) {
-            batch.append(changeSet.get());
+            batch.append(changeSet.close());
             this.changeSet = null;
         }
     }
@@ -337,7 +507,7 @@ public class BatchAdapter implements IRestAdapter {
         cmd.addHeader("Accept-Encoding", "gzip");
         cmd.addHeader("Accept", accept);
         cmd.etag = etag;
-        batch.append(cmd.get());
+        batch.append(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -385,7 +555,7 @@ public class BatchAdapter implements IRestAdapter {
         cmd.addHeader("Content-Type", contentType);
         cmd.etag = etag;
         cmd.setBody(data);
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -411,7 +581,7 @@ public class BatchAdapter implements IRestAdapter {
         for (Map.Entry<String, String> entry : map.entrySet()) {
             cmd.addHeader(entry.getKey(), entry.getValue());
         }
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -430,7 +600,7 @@ public class BatchAdapter implements IRestAdapter {
         cmd.url = url;
         cmd.addHeader("Content-Type", contentType);
         cmd.setBody(data);
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -454,7 +624,7 @@ public class BatchAdapter implements IRestAdapter {
         for (Map.Entry<String, String> entry : map.entrySet()) {
             cmd.addHeader(entry.getKey(), entry.getValue());
         }
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -469,7 +639,7 @@ public class BatchAdapter implements IRestAdapter {
         Command cmd = new Command();
         cmd.method = HttpMethods.DELETE;
         cmd.url = url;
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -486,7 +656,7 @@ public class BatchAdapter implements IRestAdapter {
         cmd.method = HttpMethods.DELETE;
         cmd.url = url;
         cmd.etag = etag;
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 
@@ -501,10 +671,87 @@ public class BatchAdapter implements IRestAdapter {
      * @throws DaoException Exception thrown
      */
     public String get() throws DaoException {
+        HttpEntity entity = this.getEntity();
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(entity.getContentLength(), MAX_BUFFER));
+        try {
+            entity.writeTo(out);
+        } catch (IOException e) {
+            throw new DaoException(e.getMessage());
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method is used to get the body of information $ Batch as an entity that writes the commands straight to the
+     * connection, without building the body in memory. Its Content-Length is computed from the queued commands, and it
+     * is sent chunked when {@link io.personium.client.DaoConfig#getChunked()} is true.
+     * @return Batch Registration Body
+     * @throws DaoException Exception thrown
+     */
+    public HttpEntity getEntity() throws DaoException {
         // 溜めたChangeSetを吐き出す
         /** Update ChangeSet. */
         this.writeChangeSet();
-        return this.batch.get();
+        return this.newEntity(this.batch);
+    }
+
+    /**
+     * This method returns the queued commands as $Batch request bodies within the limits, in the order of the
+     * commands. The commands are split at ChangeSet boundaries only, since a ChangeSet is committed as a whole. A
+     * ChangeSet or a single command over the limits is sent whole in a request body of its own.
+     * @param maxOperations Max number of commands of a request body, 0 or less if unlimited
+     * @param maxBytes Max length in bytes of a request body, 0 or less if unlimited
+     * @return Request bodies, at least one
+     * @throws DaoException Exception thrown
+     */
+    public List<HttpEntity> getEntities(int maxOperations, long maxBytes) throws DaoException {
+        this.writeChangeSet();
+        List<HttpEntity> entities = new ArrayList<HttpEntity>();
+        Batch current = new Batch();
+        int operations = 0;
+        for (Object part : this.batch.parts) {
+            int partOperations = 1;
+            long partLength;
+            if (part instanceof ChangeSet) {
+                partOperations = ((ChangeSet) part).size();
+                partLength = ((ChangeSet) part).length();
+            } else {
+                partLength = ((Command) part).length();
+            }
+            boolean tooMany = maxOperations > 0 && operations + partOperations > maxOperations;
+            boolean tooLarge = maxBytes > 0 && current.length() + CRLF_BYTES.length + partLength > maxBytes;
+            if (!current.parts.isEmpty() && (tooMany || tooLarge)) {
+                entities.add(this.newEntity(current));
+                current = new Batch();
+                operations = 0;
+            }
+            current.add(part, partLength);
+            operations += partOperations;
+        }
+        if (!current.parts.isEmpty() || entities.isEmpty()) {
+            entities.add(this.newEntity(current));
+        }
+        return entities;
+    }
+
+    /**
+     * This method returns the length of the framing of a $Batch request body, the closing boundary and the CRLF before
+     * it. A request body is always longer than this.
+     * @return Length in bytes
+     */
+    public long getFramingLength() {
+        return new Batch().length();
+    }
+
+    /**
+     * This method creates the entity writing a Batch.
+     * @param value Batch
+     * @return HttpEntity object
+     */
+    private HttpEntity newEntity(Batch value) {
+        BatchEntity entity = new BatchEntity(value);
+        entity.setChunked(Boolean.TRUE.equals(this.accessor.getDaoConfig().getChunked()));
+        return entity;
     }
 
     // /**
@@ -547,7 +794,7 @@ public class BatchAdapter implements IRestAdapter {
         for (Map.Entry<String, String> entry : map.entrySet()) {
             cmd.addHeader(entry.getKey(), entry.getValue());
         }
-        appendChangeSet(cmd.get());
+        appendChangeSet(cmd.encode());
         return new PersoniumBatchRespose();
     }
 }
@@ -0,0 +1,67 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+
+/**
+ * This interface is implemented by the ResponseCache which can store a response body while it is streamed to the
+ * caller, without reading it into memory. The HTTP cache uses it for the streamed GET responses. Storing the body is
+ * best effort: the caller keeps reading the response when the body can't be stored.
+ */
+interface BodyStore {
+    /**
+     * This method checks whether a body of a length is stored while it is streamed.
+     * @param length Length of the body, negative if unknown
+     * @return true if {@link #openBody(HttpCacheEntry)} should be used
+     */
+    boolean acceptsBody(long length);
+
+    /**
+     * This method starts storing a response whose body is written to the returned sink as it is read.
+     * @param head Response without its body
+     * @return Sink of the body
+     * @throws IOException Exception thrown when the body can't be stored
+     */
+    Sink openBody(HttpCacheEntry head) throws IOException;
+
+    /**
+     * This interface receives a response body being stored. Exactly one of {@link #commit()} and {@link #abort()} is
+     * called at the end.
+     */
+    interface Sink {
+        /**
+         * This method writes a part of the body.
+         * @param b Bytes
+         * @param off Offset of the part
+         * @param len Length of the part
+         * @throws IOException Exception thrown when the body is too large or can't be written
+         */
+        void write(byte[] b, int off, int len) throws IOException;
+
+        /**
+         * This method keeps the response once the whole body has been written.
+         * @throws IOException Exception thrown when the response can't be kept
+         */
+        void commit() throws IOException;
+
+        /**
+         * This method drops the part of the body already written.
+         */
+        void abort();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+
+/**
+ * This class holds a response body read in memory. PersoniumResponse reads the body directly from its buffer.
+ */
+final class BufferedBodyEntity extends ByteArrayEntity {
+    /** Buffer of the body. */
+    private final ByteBuffer body;
+
+    /**
+     * This is the parameterized constructor that reads the entity. The Content-Type and Content-Encoding of the
+     * entity are kept.
+     * @param entity Entity to read
+     * @throws IOException Exception thrown
+     */
+    BufferedBodyEntity(HttpEntity entity) throws IOException {
+        this(ResponseBodyReader.read(entity), entity);
+    }
+
+    /**
+     * This is the parameterized constructor used to initialize the buffer.
+     * @param buf Buffer of the body
+     * @param entity Original entity
+     */
+    private BufferedBodyEntity(ByteBuffer buf, HttpEntity entity) {
+        this(buf, entity.getContentType(), entity.getContentEncoding());
+    }
+
+    /**
+     * This is the parameterized constructor used to wrap a body already in memory.
+     * @param buf Buffer of the body, not copied
+     * @param contentType Content-Type header, may be null
+     * @param contentEncoding Content-Encoding header, may be null
+     */
+    BufferedBodyEntity(ByteBuffer buf, Header contentType, Header contentEncoding) {
+        super(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        this.body = buf;
+        setContentType(contentType);
+        setContentEncoding(contentEncoding);
+    }
+
+    /**
+     * This method returns the buffer of the body. The buffer must not be modified.
+     * @return Buffer positioned at the start of the body
+     */
+    ByteBuffer getBody() {
+        return this.body.duplicate();
+    }
+}
@@ -16,7 +16,9 @@
  */
 package io.personium.client.http;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.Header;
 import org.apache.http.HttpHeaders;
@@ -37,6 +39,10 @@ public class CacheEntry {
     // /** Body値. */
     /** Body value. */
     private String body;
+    /** Time in System.nanoTime() when the entry was created. */
+    private final long storedAt = System.nanoTime();
+    /** Digest of the token of the request which got the response, null if unknown. */
+    private String credentials;
 
     // /**
     // * コンストラクタ.
@@ -157,4 +163,47 @@ public class CacheEntry {
         this.body = value;
     }
 
+    /**
+     * This method returns the time elapsed since the entry was created, that is since the response was received or
+     * last revalidated.
+     * @return Age in milliseconds
+     */
+    public long getAge() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.storedAt);
+    }
+
+    /**
+     * This method returns the weight of the entry in a ResponseCache, the size of the body held in memory.
+     * @return Weight in bytes
+     */
+    public long getWeight() {
+        if (this.body == null) {
+            return 0;
+        }
+        return (long) this.body.length() * Character.BYTES;
+    }
+
+    /**
+     * This method records the token of the request which got the response, as a digest. It is set before the entry
+     * is put in the cache.
+     * @param token Access token, null if none
+     */
+    public void setCredentials(String token) {
+        if (token == null) {
+            this.credentials = null;
+        } else {
+            this.credentials = HttpCache.digest(token.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * This method checks whether the response was got with a token, so that it can be returned to its holder
+     * without asking the server.
+     * @param token Access token
+     * @return true if the token is the one recorded by {@link #setCredentials(String)}
+     */
+    public boolean hasCredentials(String token) {
+        return token != null && this.credentials != null
+                && this.credentials.equals(HttpCache.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
 }
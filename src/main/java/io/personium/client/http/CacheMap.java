@@ -16,27 +16,78 @@
  */
 package io.personium.client.http;
 
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
 
 ///**
 // * CacheMapクラス.
 // */
 /**
- * It creates a new object of CacheMap.
+ * It creates a new object of CacheMap. This class is the default ResponseCache. It is bounded by a number of entries
+ * and by the total size of the bodies, and entries may expire after a time to live. Eviction is segmented LRU: a new
+ * entry starts in a probation segment and moves to a protected segment when it is read again, so entries read once
+ * are evicted before the entries read repeatedly. All the methods are thread-safe.
  */
-public class CacheMap {
-    // /** キャッシュハッシュ. */
-    /** Cache hash. */
-    private HashMap<String, CacheEntry> map;
+public class CacheMap implements ResponseCache {
+    /** Default max number of entries. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    /** Default max total size of the bodies in bytes. */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    /** Share of the max number of entries kept in the protected segment, in percent. */
+    private static final int PROTECTED_PERCENT = 80;
+    /** Percentage base. */
+    private static final int PERCENT = 100;
+
+    /** Entries read once, the least recently used first. */
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<String, Node>();
+    /** Entries read more than once, the least recently used first. */
+    private final LinkedHashMap<String, Node> protectedSegment = new LinkedHashMap<String, Node>();
+    /** Max number of entries. */
+    private final int maxEntries;
+    /** Max number of entries of the protected segment. */
+    private final int maxProtected;
+    /** Max total size of the bodies in bytes. */
+    private final long maxBytes;
+    /** Time to live of the entries in nanoseconds, 0 or less if they do not expire. */
+    private final long ttlNanos;
+    /** Total size of the bodies in bytes. */
+    private long bytes;
+    /** Hit count. */
+    private long hits;
+    /** Miss count. */
+    private long misses;
+    /** Eviction count. */
+    private long evictions;
+    /** Expiration count. */
+    private long expirations;
 
     // /**
     // * コンストラクタ.
     // */
     /**
-     * This is the default constructor used to initialize map.
+     * This is the default constructor. The cache holds {@link #DEFAULT_MAX_ENTRIES} entries and
+     * {@link #DEFAULT_MAX_BYTES} bytes at most, and the entries do not expire.
      */
     public CacheMap() {
-        map = new HashMap<String, CacheEntry>();
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This is the parameterized constructor used to initialize the limits.
+     * @param entries Max number of entries
+     * @param size Max total size of the bodies in bytes
+     * @param ttl Time to live of the entries, 0 if they do not expire
+     * @param unit Unit of the time to live
+     */
+    public CacheMap(int entries, long size, long ttl, TimeUnit unit) {
+        if (entries <= 0 || size <= 0) {
+            throw new IllegalArgumentException("cache limits must be positive");
+        }
+        this.maxEntries = entries;
+        this.maxProtected = (int) ((long) entries * PROTECTED_PERCENT / PERCENT);
+        this.maxBytes = size;
+        this.ttlNanos = unit.toNanos(ttl);
     }
 
     // /**
@@ -50,7 +101,7 @@ public class CacheMap {
      * @return CacheEntry as the extracted object
      */
     public final CacheEntry search(final String key) {
-        return map.get(key);
+        return get(key);
     }
 
     // /**
@@ -58,16 +109,178 @@ public class CacheMap {
     // * @param value CacheEntryオブジェクト
     // */
     /**
-     * This method is used to add an entry to the cache hash.
+     * This method is used to add an entry to the cache hash. The entry of the same URL is replaced.
      * @param value CacheEntry object
      */
     public final void appendEntry(final CacheEntry value) {
-        CacheEntry ce = map.get(value.getUrl());
-        if (ce == null) {
-            map.put(value.getUrl(), value);
+        put(value);
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        Node node = this.probation.get(key);
+        boolean inProbation = node != null;
+        if (node == null) {
+            node = this.protectedSegment.get(key);
+        }
+        if (node == null) {
+            this.misses++;
+            return null;
+        }
+        if (node.isExpired(System.nanoTime())) {
+            this.remove(key);
+            this.expirations++;
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        if (inProbation) {
+            // Read again: promote to the protected segment, demoting its least recently used entry if it is full.
+            this.probation.remove(key);
+            this.protectedSegment.put(key, node);
+            if (this.protectedSegment.size() > this.maxProtected) {
+                Iterator<Node> it = this.protectedSegment.values().iterator();
+                Node demoted = it.next();
+                it.remove();
+                this.probation.put(demoted.entry.getUrl(), demoted);
+            }
+        } else {
+            this.protectedSegment.remove(key);
+            this.protectedSegment.put(key, node);
+        }
+        return node.entry;
+    }
+
+    @Override
+    public synchronized void put(CacheEntry value) {
+        String key = value.getUrl();
+        Node old = this.probation.get(key);
+        LinkedHashMap<String, Node> segment = this.probation;
+        if (old == null) {
+            old = this.protectedSegment.get(key);
+            segment = this.protectedSegment;
+        }
+        if (old != null) {
+            this.remove(key);
         } else {
-            ce.setBody(value.getBody());
-            ce.setHeaders(value.getHeaders());
+            segment = this.probation;
+        }
+        long weight = value.getWeight();
+        if (weight > this.maxBytes) {
+            // Larger than the whole cache: not cached.
+            return;
+        }
+        long expiry = 0;
+        if (this.ttlNanos > 0) {
+            expiry = System.nanoTime() + this.ttlNanos;
+        }
+        segment.put(key, new Node(value, weight, expiry));
+        this.bytes += weight;
+        this.evict();
+    }
+
+    @Override
+    public synchronized boolean replace(CacheEntry expected, CacheEntry value) {
+        Node node = this.probation.get(value.getUrl());
+        if (node == null) {
+            node = this.protectedSegment.get(value.getUrl());
+        }
+        if (node == null || node.entry != expected) {
+            return false;
+        }
+        this.put(value);
+        return true;
+    }
+
+    @Override
+    public synchronized void invalidate(String key) {
+        this.remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.probation.clear();
+        this.protectedSegment.clear();
+        this.bytes = 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.probation.size() + this.protectedSegment.size();
+    }
+
+    @Override
+    public synchronized long weight() {
+        return this.bytes;
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(this.hits, this.misses, this.evictions, this.expirations);
+    }
+
+    /**
+     * This method removes an entry.
+     * @param key URL as Key
+     */
+    private void remove(String key) {
+        Node node = this.probation.remove(key);
+        if (node == null) {
+            node = this.protectedSegment.remove(key);
+        }
+        if (node != null) {
+            this.bytes -= node.weight;
+        }
+    }
+
+    /**
+     * This method evicts the least recently used entries, of the probation segment first, until the cache is within
+     * its limits.
+     */
+    private void evict() {
+        while (this.size() > this.maxEntries || this.bytes > this.maxBytes) {
+            LinkedHashMap<String, Node> segment = this.probation;
+            if (segment.isEmpty()) {
+                segment = this.protectedSegment;
+            }
+            Iterator<Node> it = segment.values().iterator();
+            Node victim = it.next();
+            it.remove();
+            this.bytes -= victim.weight;
+            this.evictions++;
+        }
+    }
+
+    /**
+     * This class holds an entry with its weight and expiry.
+     */
+    private static final class Node {
+        /** Entry. */
+        private final CacheEntry entry;
+        /** Weight of the entry in bytes. */
+        private final long weight;
+        /** Expiry in System.nanoTime(), 0 if the entry does not expire. */
+        private final long expiry;
+
+        /**
+         * This is the parameterized constructor.
+         * @param value Entry
+         * @param entryWeight Weight of the entry in bytes
+         * @param entryExpiry Expiry in System.nanoTime(), 0 if the entry does not expire
+         */
+        Node(CacheEntry value, long entryWeight, long entryExpiry) {
+            this.entry = value;
+            this.weight = entryWeight;
+            this.expiry = entryExpiry;
+        }
+
+        /**
+         * This method checks whether the entry has expired.
+         * @param now Current System.nanoTime()
+         * @return true if expired
+         */
+        boolean isExpired(long now) {
+            return this.expiry != 0 && now - this.expiry >= 0;
         }
     }
 }
@@ -0,0 +1,95 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+/**
+ * It creates a new object of CacheStats. This class is a snapshot of the counters of a ResponseCache.
+ */
+public final class CacheStats {
+    /** Number of lookups that found an entry. */
+    private final long hitCount;
+    /** Number of lookups that found no entry. */
+    private final long missCount;
+    /** Number of entries removed to stay within the limits. */
+    private final long evictionCount;
+    /** Number of entries removed because they expired. */
+    private final long expirationCount;
+
+    /**
+     * This is the parameterized constructor used to initialize the counters.
+     * @param hits Number of lookups that found an entry
+     * @param misses Number of lookups that found no entry
+     * @param evictions Number of entries removed to stay within the limits
+     * @param expirations Number of entries removed because they expired
+     */
+    public CacheStats(long hits, long misses, long evictions, long expirations) {
+        this.hitCount = hits;
+        this.missCount = misses;
+        this.evictionCount = evictions;
+        this.expirationCount = expirations;
+    }
+
+    /**
+     * This method returns the number of lookups that found an entry.
+     * @return Hit count
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * This method returns the number of lookups that found no entry, including the expired ones.
+     * @return Miss count
+     */
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * This method returns the number of entries removed to stay within the limits.
+     * @return Eviction count
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * This method returns the number of entries removed because they expired.
+     * @return Expiration count
+     */
+    public long getExpirationCount() {
+        return this.expirationCount;
+    }
+
+    /**
+     * This method returns the ratio of the lookups that found an entry.
+     * @return Hit rate between 0 and 1, 1 if there has been no lookup
+     */
+    public double getHitRate() {
+        long requests = this.hitCount + this.missCount;
+        if (requests == 0) {
+            return 1.0;
+        }
+        return (double) this.hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats[hits=" + this.hitCount + ", misses=" + this.missCount + ", evictions="
+                + this.evictionCount + ", expirations=" + this.expirationCount + "]";
+    }
+}
@@ -0,0 +1,407 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.personium.client.DaoConfig;
+import io.personium.client.DaoException;
+
+/**
+ * It creates a new object of CircuitBreaker. This class stops sending requests to a host which fails: the outcomes
+ * of the last requests to each host are kept, and when the rate of failed requests (I/O errors, 5xx and 429
+ * statuses) or of slow requests reaches its threshold, the circuit of the host opens. While it is open, the requests
+ * to the host fail at once with a DaoException of code {@link DaoException#CIRCUIT_OPEN}. After a while, a few trial
+ * requests are let through (half-open): the circuit closes again if they all succeed, and opens again otherwise. It
+ * is enabled by {@link DaoConfig#setCircuitBreaker(CircuitBreaker)}. The settings should be changed before use. All
+ * the methods are thread-safe.
+ */
+public class CircuitBreaker {
+    /**
+     * State of the circuit of a host.
+     */
+    public enum State {
+        /** The requests are sent. */
+        CLOSED,
+        /** The requests fail at once. */
+        OPEN,
+        /** A few trial requests are sent. */
+        HALF_OPEN
+    }
+
+    /** Default number of last requests whose outcome is kept per host. */
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+    /** Default min number of requests in the window before the circuit may open. */
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    /** Default rate of failed requests opening the circuit. */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    /** Default duration from which a request is slow, in milliseconds. */
+    public static final long DEFAULT_SLOW_CALL_DURATION = 10000;
+    /** Default rate of slow requests opening the circuit. */
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+    /** Default time the circuit stays open, in milliseconds. */
+    public static final long DEFAULT_OPEN_DURATION = 30000;
+    /** Default number of trial requests in the half-open state. */
+    public static final int DEFAULT_HALF_OPEN_CALLS = 5;
+
+    /** Number of last requests whose outcome is kept per host. */
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    /** Min number of requests in the window before the circuit may open. */
+    private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    /** Rate of failed requests opening the circuit. */
+    private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    /** Duration from which a request is slow, in milliseconds. */
+    private long slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+    /** Rate of slow requests opening the circuit. */
+    private double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    /** Time the circuit stays open, in milliseconds. */
+    private long openDuration = DEFAULT_OPEN_DURATION;
+    /** Number of trial requests in the half-open state. */
+    private int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+    /** Circuits by host. */
+    private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+    /** Number of requests refused. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+    /** Number of times a circuit opened. */
+    private final AtomicLong openCount = new AtomicLong();
+
+    /**
+     * This method sets the number of last requests whose outcome is kept per host.
+     * @param value Number of requests
+     */
+    public void setWindowSize(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("window size must be positive");
+        }
+        this.windowSize = value;
+    }
+
+    /**
+     * This method sets the min number of requests in the window before the circuit may open.
+     * @param value Number of requests
+     */
+    public void setMinimumCalls(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("minimum calls must be positive");
+        }
+        this.minimumCalls = value;
+    }
+
+    /**
+     * This method sets the rate of failed requests opening the circuit.
+     * @param value Rate between 0 and 1
+     */
+    public void setFailureRateThreshold(double value) {
+        checkRate(value);
+        this.failureRateThreshold = value;
+    }
+
+    /**
+     * This method sets the duration from which a request is slow.
+     * @param value Duration in milliseconds
+     */
+    public void setSlowCallDuration(long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("slow call duration must be positive");
+        }
+        this.slowCallDuration = value;
+    }
+
+    /**
+     * This method sets the rate of slow requests opening the circuit.
+     * @param value Rate between 0 and 1
+     */
+    public void setSlowCallRateThreshold(double value) {
+        checkRate(value);
+        this.slowCallRateThreshold = value;
+    }
+
+    /**
+     * This method sets the time the circuit stays open before trial requests are sent.
+     * @param value Time in milliseconds
+     */
+    public void setOpenDuration(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("open duration can't be negative");
+        }
+        this.openDuration = value;
+    }
+
+    /**
+     * This method sets the number of trial requests in the half-open state.
+     * @param value Number of requests
+     */
+    public void setHalfOpenCalls(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("half-open calls must be positive");
+        }
+        this.halfOpenCalls = value;
+    }
+
+    /**
+     * This method returns the state of the circuit of a host.
+     * @param host Host, as scheme://host:port
+     * @return State
+     */
+    public State getState(String host) {
+        Circuit circuit = this.circuits.get(host);
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+        return circuit.state(System.nanoTime());
+    }
+
+    /**
+     * This method returns the number of requests refused because a circuit was open.
+     * @return Number of requests
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * This method returns the number of times a circuit opened.
+     * @return Number of times
+     */
+    public long getOpenCount() {
+        return this.openCount.get();
+    }
+
+    /**
+     * This method closes all the circuits and forgets the outcomes of the requests.
+     */
+    public void reset() {
+        this.circuits.clear();
+    }
+
+    /**
+     * This method checks whether a request to a host may be sent. A request let through must be followed by a call
+     * to {@link #onResult(String, boolean, long)} or {@link #cancel(String)}.
+     * @param host Host, as scheme://host:port
+     * @return true if sent, false if refused
+     */
+    boolean tryAcquire(String host) {
+        boolean acquired = this.circuit(host).tryAcquire(System.nanoTime());
+        if (!acquired) {
+            this.rejectedCount.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    /**
+     * This method records the outcome of a request to a host.
+     * @param host Host, as scheme://host:port
+     * @param failed true if the request failed
+     * @param latency Duration of the request in nanoseconds
+     */
+    void onResult(String host, boolean failed, long latency) {
+        boolean slow = latency >= TimeUnit.MILLISECONDS.toNanos(this.slowCallDuration);
+        if (this.circuit(host).onResult(failed, slow, System.nanoTime())) {
+            this.openCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * This method releases a request let through but not sent.
+     * @param host Host, as scheme://host:port
+     */
+    void cancel(String host) {
+        this.circuit(host).cancel();
+    }
+
+    /**
+     * This method returns the circuit of a host, creating it if needed.
+     * @param host Host
+     * @return Circuit
+     */
+    private Circuit circuit(String host) {
+        Circuit circuit = this.circuits.get(host);
+        if (circuit == null) {
+            circuit = this.circuits.computeIfAbsent(host, k -> new Circuit(this.windowSize));
+        }
+        return circuit;
+    }
+
+    /**
+     * This method checks a rate setting.
+     * @param value Rate
+     */
+    private static void checkRate(double value) {
+        if (value <= 0 || value > 1) {
+            throw new IllegalArgumentException("rate must be greater than 0 and at most 1");
+        }
+    }
+
+    /**
+     * This class is the circuit of a host.
+     */
+    private final class Circuit {
+        /** Whether each request of the window failed. */
+        private final boolean[] failures;
+        /** Whether each request of the window was slow. */
+        private final boolean[] slows;
+        /** Next position in the window. */
+        private int next = 0;
+        /** Number of requests in the window. */
+        private int calls = 0;
+        /** Number of failed requests in the window. */
+        private int failureCount = 0;
+        /** Number of slow requests in the window. */
+        private int slowCount = 0;
+        /** Current state, OPEN meaning open or half-open depending on the time. */
+        private State current = State.CLOSED;
+        /** Time in System.nanoTime() from which trial requests are sent. */
+        private long halfOpenAt;
+        /** Number of trial requests let through. */
+        private int trials = 0;
+        /** Number of successful trial requests. */
+        private int trialSuccesses = 0;
+
+        /**
+         * This is the parameterized constructor.
+         * @param size Size of the window
+         */
+        Circuit(int size) {
+            this.failures = new boolean[size];
+            this.slows = new boolean[size];
+        }
+
+        /**
+         * This method returns the state of the circuit.
+         * @param now Current System.nanoTime()
+         * @return State
+         */
+        synchronized State state(long now) {
+            if (this.current == State.OPEN && now - this.halfOpenAt >= 0) {
+                return State.HALF_OPEN;
+            }
+            return this.current;
+        }
+
+        /**
+         * This method checks whether a request may be sent.
+         * @param now Current System.nanoTime()
+         * @return true if sent
+         */
+        synchronized boolean tryAcquire(long now) {
+            State state = this.state(now);
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN || this.trials >= halfOpenCalls) {
+                return false;
+            }
+            this.trials++;
+            return true;
+        }
+
+        /**
+         * This method records the outcome of a request.
+         * @param failed true if the request failed
+         * @param slow true if the request was slow
+         * @param now Current System.nanoTime()
+         * @return true if the circuit opened
+         */
+        synchronized boolean onResult(boolean failed, boolean slow, long now) {
+            State state = this.state(now);
+            if (state == State.OPEN) {
+                // Sent before the circuit opened.
+                return false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (failed || slow) {
+                    this.open(now);
+                    return true;
+                }
+                this.trialSuccesses++;
+                if (this.trialSuccesses >= halfOpenCalls) {
+                    this.close();
+                }
+                return false;
+            }
+            this.record(failed, slow);
+            if (this.calls >= minimumCalls
+                    && (this.failureCount >= failureRateThreshold * this.calls
+                    || this.slowCount >= slowCallRateThreshold * this.calls)) {
+                this.open(now);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * This method releases a trial request not sent.
+         */
+        synchronized void cancel() {
+            if (this.current == State.OPEN && this.trials > 0) {
+                this.trials--;
+            }
+        }
+
+        /**
+         * This method adds the outcome of a request to the window, replacing the oldest one when it is full.
+         * @param failed true if the request failed
+         * @param slow true if the request was slow
+         */
+        private void record(boolean failed, boolean slow) {
+            if (this.calls == this.failures.length) {
+                if (this.failures[this.next]) {
+                    this.failureCount--;
+                }
+                if (this.slows[this.next]) {
+                    this.slowCount--;
+                }
+            } else {
+                this.calls++;
+            }
+            this.failures[this.next] = failed;
+            this.slows[this.next] = slow;
+            if (failed) {
+                this.failureCount++;
+            }
+            if (slow) {
+                this.slowCount++;
+            }
+            this.next = (this.next + 1) % this.failures.length;
+        }
+
+        /**
+         * This method opens the circuit.
+         * @param now Current System.nanoTime()
+         */
+        private void open(long now) {
+            this.current = State.OPEN;
+            this.halfOpenAt = now + TimeUnit.MILLISECONDS.toNanos(openDuration);
+            this.trials = 0;
+            this.trialSuccesses = 0;
+        }
+
+        /**
+         * This method closes the circuit and empties the window.
+         */
+        private void close() {
+            this.current = State.CLOSED;
+            this.next = 0;
+            this.calls = 0;
+            this.failureCount = 0;
+            this.slowCount = 0;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import io.personium.client.DaoConfig;
+
+/**
+ * It creates a new object of ClientMetrics. This class is a RequestListener keeping, for each endpoint (method and
+ * URL template, see {@link RequestEvent#getUrlTemplate()}), the number of requests, errors, retries and cache hits,
+ * the sizes of the bodies, and the histograms of the total time, time to first byte and connect time, from which the
+ * percentiles are read. It needs HdrHistogram on the class path. It is registered by
+ * {@link DaoConfig#addRequestListener(RequestListener)}. All the methods are thread-safe.
+ */
+public class ClientMetrics implements RequestListener {
+    /** Default max number of endpoints kept. */
+    public static final int DEFAULT_MAX_ENDPOINTS = 500;
+    /** Template of the requests counted once the max number of endpoints is reached. */
+    public static final String OTHER_ENDPOINTS = "*";
+    /** Number of significant decimal digits of the histograms. */
+    private static final int SIGNIFICANT_DIGITS = 3;
+    /** Percentiles of the report. */
+    private static final double[] REPORTED_PERCENTILES = {50.0, 90.0, 99.0};
+    /** Microseconds in a millisecond. */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /** Max number of endpoints kept. */
+    private final int maxEndpoints;
+    /** Endpoints by key. */
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+    /**
+     * This is the default constructor, keeping at most {@link #DEFAULT_MAX_ENDPOINTS} endpoints.
+     */
+    public ClientMetrics() {
+        this(DEFAULT_MAX_ENDPOINTS);
+    }
+
+    /**
+     * This is the parameterized constructor. The requests to other endpoints once the max number is reached are
+     * counted in the endpoint {@link #OTHER_ENDPOINTS} of their method.
+     * @param max Max number of endpoints kept
+     */
+    public ClientMetrics(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max endpoints must be positive");
+        }
+        this.maxEndpoints = max;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRequest(RequestEvent event) {
+        this.endpoint(event.getMethod(), event.getUrlTemplate()).record(event);
+    }
+
+    /**
+     * This method returns the metrics of an endpoint.
+     * @param method Method
+     * @param urlTemplate URL template
+     * @return Endpoint, or null if no request was recorded
+     */
+    public Endpoint getEndpoint(String method, String urlTemplate) {
+        return this.endpoints.get(key(method, urlTemplate));
+    }
+
+    /**
+     * This method returns the metrics of all the endpoints.
+     * @return Endpoints sorted by URL template and method
+     */
+    public List<Endpoint> getEndpoints() {
+        List<Endpoint> list = new ArrayList<Endpoint>(this.endpoints.values());
+        list.sort(Comparator.comparing(Endpoint::getUrlTemplate).thenComparing(Endpoint::getMethod));
+        return list;
+    }
+
+    /**
+     * This method removes all the metrics.
+     */
+    public void reset() {
+        this.endpoints.clear();
+    }
+
+    /**
+     * This method returns a report of the endpoints, one line per endpoint with the number of requests and errors
+     * and the percentiles of the total time in milliseconds.
+     * @return Report
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Endpoint endpoint : this.getEndpoints()) {
+            sb.append(endpoint).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This method returns the endpoint of a request, creating it if needed.
+     * @param method Method
+     * @param urlTemplate URL template
+     * @return Endpoint
+     */
+    private Endpoint endpoint(String method, String urlTemplate) {
+        String key = key(method, urlTemplate);
+        Endpoint endpoint = this.endpoints.get(key);
+        if (endpoint != null) {
+            return endpoint;
+        }
+        if (this.endpoints.size() >= this.maxEndpoints) {
+            return this.endpoints.computeIfAbsent(key(method, OTHER_ENDPOINTS), k -> new Endpoint(method,
+                    OTHER_ENDPOINTS));
+        }
+        return this.endpoints.computeIfAbsent(key, k -> new Endpoint(method, urlTemplate));
+    }
+
+    /**
+     * This method returns the key of an endpoint.
+     * @param method Method
+     * @param urlTemplate URL template
+     * @return Key
+     */
+    private static String key(String method, String urlTemplate) {
+        return method + ' ' + urlTemplate;
+    }
+
+    /**
+     * It creates a new object of Endpoint. This class keeps the metrics of an endpoint. The histograms are in
+     * microseconds.
+     */
+    public static final class Endpoint {
+        /** Method. */
+        private final String method;
+        /** URL template. */
+        private final String urlTemplate;
+        /** Number of requests. */
+        private final LongAdder count = new LongAdder();
+        /** Number of failed requests. */
+        private final LongAdder errorCount = new LongAdder();
+        /** Number of retries. */
+        private final LongAdder retryCount = new LongAdder();
+        /** Number of responses returned by the cache. */
+        private final LongAdder cacheHitCount = new LongAdder();
+        /** Number of responses revalidated by the server. */
+        private final LongAdder cacheRevalidatedCount = new LongAdder();
+        /** Number of cacheable responses not in the cache. */
+        private final LongAdder cacheMissCount = new LongAdder();
+        /** Total size of the known request bodies. */
+        private final LongAdder bytesSent = new LongAdder();
+        /** Total size of the known response bodies. */
+        private final LongAdder bytesReceived = new LongAdder();
+        /** Histogram of the total time. */
+        private final ConcurrentHistogram totalTime = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        /** Histogram of the time to first byte. */
+        private final ConcurrentHistogram timeToFirstByte = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        /** Histogram of the connect time. */
+        private final ConcurrentHistogram connectTime = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+        /**
+         * This is the parameterized constructor.
+         * @param m Method
+         * @param template URL template
+         */
+        Endpoint(String m, String template) {
+            this.method = m;
+            this.urlTemplate = template;
+        }
+
+        /**
+         * This method records a request.
+         * @param event Event of the request
+         */
+        void record(RequestEvent event) {
+            this.count.increment();
+            if (event.isFailed()) {
+                this.errorCount.increment();
+            }
+            this.retryCount.add(event.getRetryCount());
+            switch (event.getCacheResult()) {
+            case HIT:
+                this.cacheHitCount.increment();
+                break;
+            case REVALIDATED:
+                this.cacheRevalidatedCount.increment();
+                break;
+            case MISS:
+                this.cacheMissCount.increment();
+                break;
+            default:
+                break;
+            }
+            if (event.getBytesSent() > 0) {
+                this.bytesSent.add(event.getBytesSent());
+            }
+            if (event.getBytesReceived() > 0) {
+                this.bytesReceived.add(event.getBytesReceived());
+            }
+            recordTime(this.totalTime, event.getTotalTime());
+            recordTime(this.timeToFirstByte, event.getTimeToFirstByte());
+            recordTime(this.connectTime, event.getConnectTime());
+        }
+
+        /**
+         * This method returns the method of the endpoint.
+         * @return Method
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * This method returns the URL template of the endpoint.
+         * @return URL template
+         */
+        public String getUrlTemplate() {
+            return urlTemplate;
+        }
+
+        /**
+         * This method returns the number of requests.
+         * @return Number of requests
+         */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /**
+         * This method returns the number of failed requests: without response or with a 4xx or 5xx status.
+         * @return Number of requests
+         */
+        public long getErrorCount() {
+            return this.errorCount.sum();
+        }
+
+        /**
+         * This method returns the number of retries.
+         * @return Number of retries
+         */
+        public long getRetryCount() {
+            return this.retryCount.sum();
+        }
+
+        /**
+         * This method returns the number of responses returned by the cache without request.
+         * @return Number of responses
+         */
+        public long getCacheHitCount() {
+            return this.cacheHitCount.sum();
+        }
+
+        /**
+         * This method returns the number of cached responses revalidated by the server.
+         * @return Number of responses
+         */
+        public long getCacheRevalidatedCount() {
+            return this.cacheRevalidatedCount.sum();
+        }
+
+        /**
+         * This method returns the number of cacheable responses which were not in the cache.
+         * @return Number of responses
+         */
+        public long getCacheMissCount() {
+            return this.cacheMissCount.sum();
+        }
+
+        /**
+         * This method returns the total size of the request bodies of known length.
+         * @return Size in bytes
+         */
+        public long getBytesSent() {
+            return this.bytesSent.sum();
+        }
+
+        /**
+         * This method returns the total size of the response bodies of known length.
+         * @return Size in bytes
+         */
+        public long getBytesReceived() {
+            return this.bytesReceived.sum();
+        }
+
+        /**
+         * This method returns a copy of the histogram of the total time.
+         * @return Histogram in microseconds
+         */
+        public Histogram getTotalTime() {
+            return this.totalTime.copy();
+        }
+
+        /**
+         * This method returns a copy of the histogram of the time to first byte.
+         * @return Histogram in microseconds
+         */
+        public Histogram getTimeToFirstByte() {
+            return this.timeToFirstByte.copy();
+        }
+
+        /**
+         * This method returns a copy of the histogram of the connect time.
+         * @return Histogram in microseconds
+         */
+        public Histogram getConnectTime() {
+            return this.connectTime.copy();
+        }
+
+        /**
+         * This method returns a percentile of the total time.
+         * @param percentile Percentile, such as 99.0
+         * @return Time in milliseconds
+         */
+        public double getPercentile(double percentile) {
+            return this.totalTime.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+        }
+
+        /**
+         * This method returns a line describing the endpoint.
+         * @return Description
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(this.method).append(' ').append(this.urlTemplate)
+                    .append(" count=").append(this.getCount())
+                    .append(" errors=").append(this.getErrorCount())
+                    .append(" retries=").append(this.getRetryCount());
+            for (double percentile : REPORTED_PERCENTILES) {
+                sb.append(String.format(Locale.ROOT, " p%d=%.2fms", (int) percentile, this.getPercentile(percentile)));
+            }
+            sb.append(String.format(Locale.ROOT, " max=%.2fms", this.totalTime.getMaxValue() / MICROS_PER_MILLI));
+            return sb.toString();
+        }
+
+        /**
+         * This method records a time in a histogram.
+         * @param histogram Histogram
+         * @param nanos Time in nanoseconds, negative if unknown
+         */
+        private static void recordTime(ConcurrentHistogram histogram, long nanos) {
+            if (nanos >= 0) {
+                histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+            }
+        }
+    }
+}
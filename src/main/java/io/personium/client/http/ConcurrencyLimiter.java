@@ -0,0 +1,263 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.personium.client.DaoConfig;
+import io.personium.client.DaoException;
+
+/**
+ * It creates a new object of ConcurrencyLimiter. This class bounds the number of requests in flight to each host,
+ * and adapts the bound to the health of the host (AIMD): it grows by one after a successful request sent while at
+ * least half of the bound was used, and shrinks by a ratio after a failed request (I/O error, 5xx or 429 status) or
+ * a request slower than a threshold. A request over the bound fails at once with a DaoException of code
+ * {@link DaoException#CONCURRENCY_LIMITED} instead of waiting for a connection. It is enabled by
+ * {@link DaoConfig#setConcurrencyLimiter(ConcurrencyLimiter)}. The settings should be changed before use. All the
+ * methods are thread-safe.
+ */
+public class ConcurrencyLimiter {
+    /** Default bound of a host before any request. */
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    /** Default min bound. */
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    /** Default max bound. */
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    /** Default ratio applied to the bound after a failed or slow request. */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    /** Default duration from which a request is slow, in milliseconds. */
+    public static final long DEFAULT_LATENCY_THRESHOLD = 5000;
+
+    /** Bound of a host before any request. */
+    private int initialLimit = DEFAULT_INITIAL_LIMIT;
+    /** Min bound. */
+    private int minLimit = DEFAULT_MIN_LIMIT;
+    /** Max bound. */
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+    /** Ratio applied to the bound after a failed or slow request. */
+    private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+    /** Duration from which a request is slow, in milliseconds. */
+    private long latencyThreshold = DEFAULT_LATENCY_THRESHOLD;
+
+    /** Limits by host. */
+    private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+    /** Number of requests refused. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * This method sets the bound of a host before any request.
+     * @param value Number of requests in flight
+     */
+    public void setInitialLimit(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        this.initialLimit = value;
+    }
+
+    /**
+     * This method sets the min and max bounds.
+     * @param min Min number of requests in flight
+     * @param max Max number of requests in flight
+     */
+    public void setLimitRange(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("invalid limit range");
+        }
+        this.minLimit = min;
+        this.maxLimit = max;
+    }
+
+    /**
+     * This method sets the ratio applied to the bound after a failed or slow request.
+     * @param value Ratio, greater than 0 and less than 1
+     */
+    public void setBackoffRatio(double value) {
+        if (value <= 0 || value >= 1) {
+            throw new IllegalArgumentException("backoff ratio must be greater than 0 and less than 1");
+        }
+        this.backoffRatio = value;
+    }
+
+    /**
+     * This method sets the duration from which a request is slow and shrinks the bound.
+     * @param value Duration in milliseconds
+     */
+    public void setLatencyThreshold(long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("latency threshold must be positive");
+        }
+        this.latencyThreshold = value;
+    }
+
+    /**
+     * This method returns the current bound of a host.
+     * @param host Host, as scheme://host:port
+     * @return Number of requests in flight allowed
+     */
+    public int getLimit(String host) {
+        Limit limit = this.limits.get(host);
+        if (limit == null) {
+            return this.clamp(this.initialLimit);
+        }
+        return limit.getLimit();
+    }
+
+    /**
+     * This method returns the number of requests in flight to a host.
+     * @param host Host, as scheme://host:port
+     * @return Number of requests
+     */
+    public int getInFlight(String host) {
+        Limit limit = this.limits.get(host);
+        if (limit == null) {
+            return 0;
+        }
+        return limit.getInFlight();
+    }
+
+    /**
+     * This method returns the number of requests refused because a bound was reached.
+     * @return Number of requests
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * This method checks whether a request to a host may be sent, and counts it in flight. A request let through
+     * must be followed by a call to {@link #onResult(String, boolean, long)} or {@link #cancel(String)}.
+     * @param host Host, as scheme://host:port
+     * @return true if sent, false if refused
+     */
+    boolean tryAcquire(String host) {
+        boolean acquired = this.limit(host).tryAcquire();
+        if (!acquired) {
+            this.rejectedCount.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    /**
+     * This method records the outcome of a request to a host and adapts its bound.
+     * @param host Host, as scheme://host:port
+     * @param failed true if the request failed
+     * @param latency Duration of the request in nanoseconds
+     */
+    void onResult(String host, boolean failed, long latency) {
+        boolean slow = latency >= TimeUnit.MILLISECONDS.toNanos(this.latencyThreshold);
+        this.limit(host).release(failed || slow);
+    }
+
+    /**
+     * This method releases a request let through but not sent, without adapting the bound.
+     * @param host Host, as scheme://host:port
+     */
+    void cancel(String host) {
+        this.limit(host).cancel();
+    }
+
+    /**
+     * This method returns the limit of a host, creating it if needed.
+     * @param host Host
+     * @return Limit
+     */
+    private Limit limit(String host) {
+        Limit limit = this.limits.get(host);
+        if (limit == null) {
+            limit = this.limits.computeIfAbsent(host, k -> new Limit(this.clamp(this.initialLimit)));
+        }
+        return limit;
+    }
+
+    /**
+     * This method keeps a bound between the min and max bounds.
+     * @param value Bound
+     * @return Bound in the range
+     */
+    private int clamp(int value) {
+        return Math.max(this.minLimit, Math.min(this.maxLimit, value));
+    }
+
+    /**
+     * This class is the limit of a host.
+     */
+    private final class Limit {
+        /** Number of requests in flight allowed. */
+        private int limit;
+        /** Number of requests in flight. */
+        private int inFlight = 0;
+
+        /**
+         * This is the parameterized constructor.
+         * @param initial Initial bound
+         */
+        Limit(int initial) {
+            this.limit = initial;
+        }
+
+        /**
+         * This method returns the bound.
+         * @return Number of requests in flight allowed
+         */
+        synchronized int getLimit() {
+            return this.limit;
+        }
+
+        /**
+         * This method returns the number of requests in flight.
+         * @return Number of requests
+         */
+        synchronized int getInFlight() {
+            return this.inFlight;
+        }
+
+        /**
+         * This method counts a request in flight if the bound allows it.
+         * @return true if counted
+         */
+        synchronized boolean tryAcquire() {
+            if (this.inFlight >= this.limit) {
+                return false;
+            }
+            this.inFlight++;
+            return true;
+        }
+
+        /**
+         * This method ends a request and adapts the bound.
+         * @param dropped true if the request failed or was slow
+         */
+        synchronized void release(boolean dropped) {
+            if (dropped) {
+                this.limit = clamp((int) (this.limit * backoffRatio));
+            } else if (this.inFlight * 2 >= this.limit) {
+                this.limit = clamp(this.limit + 1);
+            }
+            this.inFlight--;
+        }
+
+        /**
+         * This method ends a request not sent.
+         */
+        synchronized void cancel() {
+            this.inFlight--;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+import io.personium.client.DaoException;
+
+/**
+ * It creates a new object of DiskResponseCache. This class is a ResponseCache keeping the responses of the HTTP cache
+ * in a directory, so that they survive restarts. Each body is a file named after the URL and the ETag of the
+ * response, and is mapped in memory when it is read: a body returned by the cache is read from the file, not from
+ * the heap. The metadata of each response is a small properties file. The total size of the bodies is bounded, the
+ * least recently used responses being removed first. Only the responses of the HTTP cache (see
+ * {@link io.personium.client.DaoConfig#setHttpCache(ResponseCache)}) are kept; other entries are ignored. A directory
+ * must be used by a single DiskResponseCache at a time. All the methods are thread-safe.
+ */
+public class DiskResponseCache implements ResponseCache, BodyStore {
+    /** Suffix of the metadata files. */
+    private static final String META_SUFFIX = ".meta";
+    /** Suffix of the body files. */
+    private static final String BODY_SUFFIX = ".body";
+    /** Suffix of the files being written. */
+    private static final String TMP_SUFFIX = ".tmp";
+    /** Version of the metadata format. */
+    private static final String FORMAT_VERSION = "1";
+    /** Initial capacity of the index. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** Load factor of the index. */
+    private static final float LOAD_FACTOR = 0.75f;
+    /** Max length of a body, the max size of a mapped file. */
+    private static final long MAX_BODY = Integer.MAX_VALUE;
+    /** Hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** Bits of a hexadecimal digit. */
+    private static final int HEX_BITS = 4;
+    /** Mask of a hexadecimal digit. */
+    private static final int HEX_MASK = 0xf;
+
+    /** Directory of the files. */
+    private final Path directory;
+    /** Max total size of the bodies in bytes. */
+    private final long maxBytes;
+    /** Responses by key, the least recently used first. */
+    private final LinkedHashMap<String, Slot> index = new LinkedHashMap<String, Slot>(INITIAL_CAPACITY, LOAD_FACTOR,
+            true);
+    /** Total size of the bodies in bytes. */
+    private long bytes;
+    /** Hit count. */
+    private long hits;
+    /** Miss count. */
+    private long misses;
+    /** Eviction count. */
+    private long evictions;
+
+    /**
+     * This is the parameterized constructor. The responses already in the directory are loaded, and the files which
+     * are not complete responses are removed.
+     * @param dir Directory of the files, created if needed
+     * @param size Max total size of the bodies in bytes
+     * @throws DaoException Exception thrown when the directory can't be read
+     */
+    public DiskResponseCache(Path dir, long size) throws DaoException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("cache size must be positive");
+        }
+        this.directory = dir;
+        this.maxBytes = size;
+        try {
+            Files.createDirectories(dir);
+            this.load();
+        } catch (IOException e) {
+            throw DaoException.create("io exception : " + e.getMessage(), 0);
+        }
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        Slot slot = this.index.get(key);
+        if (slot == null) {
+            this.misses++;
+            return null;
+        }
+        if (slot.mapped == null) {
+            try (FileChannel channel = FileChannel.open(slot.body, StandardOpenOption.READ)) {
+                slot.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, slot.length);
+            } catch (IOException e) {
+                // The file has been removed or damaged.
+                this.remove(key);
+                this.misses++;
+                return null;
+            }
+        }
+        this.hits++;
+        return slot.head.withContent(slot.mapped.duplicate());
+    }
+
+    /**
+     * This method adds a response of the HTTP cache, or replaces the response of the same URL. A body already in the
+     * directory for the same URL and ETag is not written again. Other entries, and responses larger than the cache,
+     * are ignored, and a response which can't be written is not kept.
+     * @param value CacheEntry object
+     */
+    @Override
+    public void put(CacheEntry value) {
+        if (!(value instanceof HttpCacheEntry)) {
+            return;
+        }
+        HttpCacheEntry entry = (HttpCacheEntry) value;
+        ByteBuffer content = entry.getContent();
+        if (content.remaining() > this.maxBytes) {
+            this.invalidate(entry.getUrl());
+            return;
+        }
+        Path body = this.bodyPath(entry);
+        try {
+            if (!this.hasBody(entry.getUrl(), body, content.remaining())) {
+                Path tmp = this.tempFile();
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    while (content.hasRemaining()) {
+                        channel.write(content);
+                    }
+                }
+                Files.move(tmp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            this.commit(entry, body, entry.getContent().remaining());
+        } catch (IOException e) {
+            // The cache is best effort: the response is just not kept.
+            this.invalidate(entry.getUrl());
+        }
+    }
+
+    @Override
+    public boolean acceptsBody(long length) {
+        return length <= this.maxBytes;
+    }
+
+    @Override
+    public Sink openBody(HttpCacheEntry head) throws IOException {
+        return new FileSink(head, this.tempFile());
+    }
+
+    @Override
+    public synchronized void invalidate(String key) {
+        this.remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (String key : new ArrayList<String>(this.index.keySet())) {
+            this.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * This method returns the total size of the bodies in the directory.
+     * @return Size in bytes
+     */
+    @Override
+    public synchronized long weight() {
+        return this.bytes;
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(this.hits, this.misses, this.evictions, 0);
+    }
+
+    /**
+     * This method checks whether the body of a response is already in the directory.
+     * @param key Cache key
+     * @param body Body file
+     * @param length Length of the body
+     * @return true if the body file of the response is in the index with the same length
+     */
+    private synchronized boolean hasBody(String key, Path body, long length) {
+        Slot slot = this.index.get(key);
+        return slot != null && slot.body.equals(body) && slot.length == length && Files.exists(body);
+    }
+
+    /**
+     * This method writes the metadata of a response whose body is in the directory, and adds it to the index.
+     * @param head Response
+     * @param body Body file
+     * @param length Length of the body
+     * @throws IOException Exception thrown
+     */
+    private void commit(HttpCacheEntry head, Path body, long length) throws IOException {
+        Path tmp = this.tempFile();
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            toProperties(head, body.getFileName().toString(), length).store(writer, null);
+        }
+        Files.move(tmp, this.metaPath(head.getUrl()), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            Slot old = this.index.remove(head.getUrl());
+            if (old != null) {
+                this.bytes -= old.length;
+                if (!old.body.equals(body)) {
+                    deleteQuietly(old.body);
+                }
+            }
+            this.index.put(head.getUrl(), new Slot(head.withContent(ByteBuffer.allocate(0)), body, length));
+            this.bytes += length;
+            this.evict();
+        }
+    }
+
+    /**
+     * This method removes a response and its files.
+     * @param key Cache key
+     */
+    private void remove(String key) {
+        Slot slot = this.index.remove(key);
+        if (slot != null) {
+            this.bytes -= slot.length;
+            deleteQuietly(slot.body);
+        }
+        deleteQuietly(this.metaPath(key));
+    }
+
+    /**
+     * This method removes the least recently used responses until the bodies fit in the max size.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Slot>> it = this.index.entrySet().iterator();
+        while (this.bytes > this.maxBytes && it.hasNext()) {
+            Map.Entry<String, Slot> eldest = it.next();
+            it.remove();
+            this.bytes -= eldest.getValue().length;
+            deleteQuietly(eldest.getValue().body);
+            deleteQuietly(this.metaPath(eldest.getKey()));
+            this.evictions++;
+        }
+    }
+
+    /**
+     * This method loads the responses of the directory, the least recently written first, and removes the files which
+     * are not part of a complete response.
+     * @throws IOException Exception thrown
+     */
+    private void load() throws IOException {
+        List<Path> metas = new ArrayList<Path>();
+        List<Path> others = new ArrayList<Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(META_SUFFIX)) {
+                    metas.add(file);
+                } else if (name.endsWith(BODY_SUFFIX) || name.endsWith(TMP_SUFFIX)) {
+                    others.add(file);
+                }
+            }
+        }
+        final Map<Path, Long> times = new LinkedHashMap<Path, Long>();
+        for (Path meta : metas) {
+            times.put(meta, Files.getLastModifiedTime(meta).toMillis());
+        }
+        Collections.sort(metas, Comparator.comparing(times::get));
+        Set<Path> bodies = new HashSet<Path>();
+        for (Path meta : metas) {
+            Slot slot = null;
+            try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+                Properties props = new Properties();
+                props.load(reader);
+                slot = this.fromProperties(props);
+            } catch (IOException | RuntimeException e) {
+                slot = null;
+            }
+            if (slot == null || !meta.equals(this.metaPath(slot.head.getUrl())) || !Files.exists(slot.body)
+                    || Files.size(slot.body) != slot.length) {
+                deleteQuietly(meta);
+                continue;
+            }
+            this.index.put(slot.head.getUrl(), slot);
+            this.bytes += slot.length;
+            bodies.add(slot.body);
+        }
+        for (Path file : others) {
+            if (!bodies.contains(file)) {
+                deleteQuietly(file);
+            }
+        }
+        this.evict();
+    }
+
+    /**
+     * This method writes the metadata of a response.
+     * @param head Response
+     * @param bodyName Name of the body file
+     * @param length Length of the body
+     * @return Properties object
+     */
+    private static Properties toProperties(HttpCacheEntry head, String bodyName, long length) {
+        Properties props = new Properties();
+        props.setProperty("format", FORMAT_VERSION);
+        props.setProperty("key", head.getUrl());
+        props.setProperty("body", bodyName);
+        props.setProperty("length", Long.toString(length));
+        long freshMillis = TimeUnit.NANOSECONDS.toMillis(head.getFreshUntil() - System.nanoTime());
+        props.setProperty("expires", Long.toString(System.currentTimeMillis() + freshMillis));
+        ProtocolVersion version = head.getStatusLine().getProtocolVersion();
+        props.setProperty("status.protocol", version.getProtocol());
+        props.setProperty("status.major", Integer.toString(version.getMajor()));
+        props.setProperty("status.minor", Integer.toString(version.getMinor()));
+        props.setProperty("status.code", Integer.toString(head.getStatusLine().getStatusCode()));
+        if (head.getStatusLine().getReasonPhrase() != null) {
+            props.setProperty("status.reason", head.getStatusLine().getReasonPhrase());
+        }
+        props.setProperty("variant", head.getVariant());
+        int i = 0;
+        for (Map.Entry<String, String> vary : head.getVaryValues().entrySet()) {
+            props.setProperty("vary." + i + ".name", vary.getKey());
+            if (vary.getValue() != null) {
+                props.setProperty("vary." + i + ".value", vary.getValue());
+            }
+            i++;
+        }
+        props.setProperty("vary.count", Integer.toString(i));
+        Header[] headers = head.getHeaderList();
+        for (int h = 0; h < headers.length; h++) {
+            props.setProperty("header." + h + ".name", headers[h].getName());
+            props.setProperty("header." + h + ".value", headers[h].getValue());
+        }
+        props.setProperty("header.count", Integer.toString(headers.length));
+        return props;
+    }
+
+    /**
+     * This method reads the metadata of a response.
+     * @param props Properties object
+     * @return Slot of the response, or null if the format is not supported
+     */
+    private Slot fromProperties(Properties props) {
+        if (!FORMAT_VERSION.equals(props.getProperty("format"))) {
+            return null;
+        }
+        String key = props.getProperty("key");
+        long length = Long.parseLong(props.getProperty("length"));
+        long freshMillis = Long.parseLong(props.getProperty("expires")) - System.currentTimeMillis();
+        long freshUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(freshMillis);
+        ProtocolVersion version = new ProtocolVersion(props.getProperty("status.protocol"),
+                Integer.parseInt(props.getProperty("status.major")),
+                Integer.parseInt(props.getProperty("status.minor")));
+        BasicStatusLine status = new BasicStatusLine(version, Integer.parseInt(props.getProperty("status.code")),
+                props.getProperty("status.reason"));
+        Map<String, String> vary = new LinkedHashMap<String, String>();
+        int varyCount = Integer.parseInt(props.getProperty("vary.count"));
+        for (int i = 0; i < varyCount; i++) {
+            vary.put(props.getProperty("vary." + i + ".name"), props.getProperty("vary." + i + ".value"));
+        }
+        int headerCount = Integer.parseInt(props.getProperty("header.count"));
+        Header[] headers = new Header[headerCount];
+        for (int h = 0; h < headerCount; h++) {
+            headers[h] = new BasicHeader(props.getProperty("header." + h + ".name"),
+                    props.getProperty("header." + h + ".value"));
+        }
+        HttpCacheEntry head = new HttpCacheEntry(key, status, headers, ByteBuffer.allocate(0), vary,
+                props.getProperty("variant"), freshUntil);
+        return new Slot(head, this.directory.resolve(props.getProperty("body")), length);
+    }
+
+    /**
+     * This method returns the metadata file of a key.
+     * @param key Cache key
+     * @return Path of the file
+     */
+    private Path metaPath(String key) {
+        return this.directory.resolve(sha256Hex(key) + META_SUFFIX);
+    }
+
+    /**
+     * This method returns the body file of a response, named after its key and ETag.
+     * @param entry Response
+     * @return Path of the file
+     */
+    private Path bodyPath(HttpCacheEntry entry) {
+        String etag = entry.getFirstHeader(HttpHeaders.ETAG);
+        if (etag == null) {
+            etag = "";
+        }
+        return this.directory.resolve(sha256Hex(entry.getUrl() + "\n" + etag) + BODY_SUFFIX);
+    }
+
+    /**
+     * This method creates a file to be written and then moved.
+     * @return Path of the file
+     * @throws IOException Exception thrown
+     */
+    private Path tempFile() throws IOException {
+        return Files.createTempFile(this.directory, "cache", TMP_SUFFIX);
+    }
+
+    /**
+     * This method deletes a file, ignoring the failures such as a file still mapped on some platforms.
+     * @param file File
+     */
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * This method computes the SHA-256 digest of a string in hexadecimal.
+     * @param value String
+     * @return Digest
+     */
+    private static String sha256Hex(String value) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> HEX_BITS) & HEX_MASK];
+            hex[i * 2 + 1] = HEX[digest[i] & HEX_MASK];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * This class writes a body being streamed to a file, and keeps the response once the whole body has been written.
+     */
+    private final class FileSink implements Sink {
+        /** Response without its body. */
+        private final HttpCacheEntry head;
+        /** File being written. */
+        private final Path tmp;
+        /** Stream of the file. */
+        private final OutputStream out;
+        /** Length written. */
+        private long length;
+
+        /**
+         * This is the parameterized constructor.
+         * @param response Response without its body
+         * @param file File being written
+         * @throws IOException Exception thrown when the file can't be opened
+         */
+        FileSink(HttpCacheEntry response, Path file) throws IOException {
+            this.head = response;
+            this.tmp = file;
+            try {
+                this.out = Files.newOutputStream(file);
+            } catch (IOException e) {
+                deleteQuietly(file);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.length += len;
+            if (this.length > Math.min(maxBytes, MAX_BODY)) {
+                throw new IOException("response body too large for the disk cache");
+            }
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            try {
+                this.out.close();
+                Path path = bodyPath(this.head);
+                Files.move(this.tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                DiskResponseCache.this.commit(this.head, path, this.length);
+            } finally {
+                deleteQuietly(this.tmp);
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                // The file is removed below.
+            }
+            deleteQuietly(this.tmp);
+        }
+    }
+
+    /**
+     * This class is a response of the index.
+     */
+    private static final class Slot {
+        /** Response without its body. */
+        private final HttpCacheEntry head;
+        /** Body file. */
+        private final Path body;
+        /** Length of the body. */
+        private final long length;
+        /** Body file mapped in memory, null until read. */
+        private MappedByteBuffer mapped;
+
+        /**
+         * This is the parameterized constructor.
+         * @param value Response without its body
+         * @param file Body file
+         * @param size Length of the body
+         */
+        Slot(HttpCacheEntry value, Path file, long size) {
+            this.head = value;
+            this.body = file;
+            this.length = size;
+        }
+    }
+}
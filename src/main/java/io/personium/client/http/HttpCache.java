@@ -0,0 +1,485 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * This class implements the HTTP cache of RestAdapter on top of a ResponseCache. GET and PROPFIND responses with a
+ * validator (ETag or Last-Modified) or a max-age are kept. A kept response is returned without a request while it is
+ * fresh, and is revalidated with a conditional request afterwards. Responses are kept per Authorization, Accept,
+ * Accept-Encoding and the request headers listed in Vary; PROPFIND responses also per Depth and request body. A
+ * response kept for other request headers is revalidated with its ETag before it is used. Requests with other methods remove the kept responses of their URL and the PROPFIND responses of its parent.
+ */
+final class HttpCache {
+    /** Status code of a multi-status response. */
+    static final int SC_MULTI_STATUS = 207;
+    /** Max length of a streamed body read into memory to be cached. */
+    static final long MAX_STREAMED_BODY = 1024 * 1024;
+    /** Request headers every response varies on. */
+    private static final String[] ALWAYS_VARY = {HttpHeaders.AUTHORIZATION, HttpHeaders.ACCEPT,
+            HttpHeaders.ACCEPT_ENCODING};
+    /** Request headers making a request conditional, which the cache does not handle. */
+    private static final String[] CONDITIONAL_HEADERS = {HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_UNMODIFIED_SINCE, HttpHeaders.IF_RANGE, HttpHeaders.RANGE};
+    /** Methods which do not change the resources. */
+    private static final String[] SAFE_METHODS = {HttpMethods.GET, "HEAD", HttpMethods.PROPFIND, "OPTIONS",
+            "TRACE"};
+    /** Key of the Authorization header in the vary values. */
+    private static final String AUTHORIZATION_KEY = HttpHeaders.AUTHORIZATION.toLowerCase(Locale.ROOT);
+    /** Depth header of WebDAV. */
+    private static final String DEPTH = "Depth";
+
+    /** Store of the responses. */
+    private final ResponseCache store;
+
+    /**
+     * This is the parameterized constructor.
+     * @param value Store of the responses
+     */
+    HttpCache(ResponseCache value) {
+        this.store = value;
+    }
+
+    /**
+     * This method checks whether the response of a request may be taken from the cache.
+     * @param req Request
+     * @return true for a GET or PROPFIND which is not conditional
+     */
+    static boolean isCacheable(HttpUriRequest req) {
+        String method = req.getMethod();
+        if (!HttpMethods.GET.equals(method) && !HttpMethods.PROPFIND.equals(method)) {
+            return false;
+        }
+        for (String name : CONDITIONAL_HEADERS) {
+            if (req.containsHeader(name)) {
+                return false;
+            }
+        }
+        HttpEntity entity = requestEntity(req);
+        return entity == null || entity.isRepeatable();
+    }
+
+    /**
+     * This method returns the response kept for a request. A response kept for other request headers is returned if
+     * it has an ETag, so that it can be revalidated: a 304 response means that it is valid for this request too.
+     * @param req Cacheable request
+     * @return Kept response, or null if none
+     */
+    HttpCacheEntry lookup(HttpUriRequest req) {
+        CacheEntry entry = this.store.get(key(req.getMethod(), req.getURI()));
+        if (!(entry instanceof HttpCacheEntry)) {
+            return null;
+        }
+        HttpCacheEntry cached = (HttpCacheEntry) entry;
+        if (!cached.getVariant().equals(variant(req))) {
+            return null;
+        }
+        if (!matches(req, cached) && cached.getFirstHeader(HttpHeaders.ETAG) == null) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * This method checks whether a kept response was received for the same request headers, in which case it can be
+     * returned without revalidation while it is fresh.
+     * @param req Cacheable request
+     * @param entry Kept response
+     * @return true if the request headers match
+     */
+    static boolean matches(HttpUriRequest req, HttpCacheEntry entry) {
+        return entry.matches(varyValues(req, entry.getHeaderList()));
+    }
+
+    /**
+     * This method makes the request conditional on the validators of the kept response.
+     * @param req Cacheable request
+     * @param entry Kept response
+     */
+    static void addValidators(HttpUriRequest req, HttpCacheEntry entry) {
+        String etag = entry.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null) {
+            req.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        String lastModified = entry.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        if (lastModified != null) {
+            req.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * This method checks whether a streamed response should be read into memory to be kept. A body which the store
+     * takes from its stream is not read into memory.
+     * @param res Response
+     * @return true if the response can be kept and its body is small enough
+     */
+    boolean shouldBuffer(HttpResponse res) {
+        HttpEntity entity = res.getEntity();
+        if (entity == null || !isStorable(res)) {
+            return false;
+        }
+        long length = entity.getContentLength();
+        if (this.store instanceof BodyStore && ((BodyStore) this.store).acceptsBody(length)) {
+            return false;
+        }
+        return length >= 0 && length <= MAX_STREAMED_BODY;
+    }
+
+    /**
+     * This method keeps the response of a request, if it can be kept. The body must have been read into memory,
+     * unless the store takes it from its stream, in which case the body of the response is replaced by one which is
+     * stored while the caller reads it. The response is not kept when its body can't be stored, and the request never
+     * fails because of the cache.
+     * @param req Cacheable request
+     * @param res Response
+     * @param requestTime System.nanoTime() when the request was sent
+     */
+    void store(HttpUriRequest req, HttpResponse res, long requestTime) {
+        if (!isStorable(res)) {
+            return;
+        }
+        ByteBuffer content = null;
+        HttpEntity entity = res.getEntity();
+        if (entity == null) {
+            content = ByteBuffer.allocate(0);
+        } else if (entity instanceof BufferedBodyEntity) {
+            content = ((BufferedBodyEntity) entity).getBody();
+        } else if (!(this.store instanceof BodyStore) || !((BodyStore) this.store).acceptsBody(
+                entity.getContentLength())) {
+            return;
+        }
+        Header[] headers = res.getAllHeaders();
+        String key = key(req.getMethod(), req.getURI());
+        HttpCacheEntry entry = new HttpCacheEntry(key, res.getStatusLine(), headers, ByteBuffer.allocate(0),
+                varyValues(req, headers), variant(req), freshUntil(headers, requestTime));
+        if (content != null) {
+            this.store.put(entry.withContent(content));
+            return;
+        }
+        try {
+            res.setEntity(new StoringBodyEntity(entity, ((BodyStore) this.store).openBody(entry)));
+        } catch (IOException e) {
+            // The cache is best effort: the response is just not kept.
+            this.store.invalidate(key);
+        }
+    }
+
+    /**
+     * This method updates the kept response with the headers of a 304 response, and returns the updated response.
+     * @param req Request
+     * @param entry Kept response
+     * @param notModified 304 response
+     * @param requestTime System.nanoTime() when the request was sent
+     * @return Updated response
+     */
+    HttpCacheEntry revalidate(HttpUriRequest req, HttpCacheEntry entry, HttpResponse notModified, long requestTime) {
+        // The body is the kept one: keep the headers describing its length.
+        List<Header> updates = new ArrayList<Header>();
+        Set<String> names = new HashSet<String>();
+        for (Header header : notModified.getAllHeaders()) {
+            String name = header.getName().toLowerCase(Locale.ROOT);
+            if (!name.equals("content-length") && !name.equals("transfer-encoding")) {
+                updates.add(header);
+                names.add(name);
+            }
+        }
+        List<Header> merged = new ArrayList<Header>();
+        for (Header header : entry.getHeaderList()) {
+            if (!names.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                merged.add(header);
+            }
+        }
+        merged.addAll(updates);
+        Header[] headers = merged.toArray(new Header[0]);
+        HttpCacheEntry updated = new HttpCacheEntry(entry.getUrl(), entry.getStatusLine(), headers,
+                entry.getContent(), varyValues(req, headers), entry.getVariant(), freshUntil(headers, requestTime));
+        if (hasNoStore(notModified.getHeaders(HttpHeaders.CACHE_CONTROL))) {
+            this.store.invalidate(entry.getUrl());
+        } else {
+            this.store.put(updated);
+        }
+        return updated;
+    }
+
+    /**
+     * This method removes the responses made stale by a request which may change a resource.
+     * @param req Request
+     */
+    void invalidate(HttpUriRequest req) {
+        String method = req.getMethod();
+        for (String safe : SAFE_METHODS) {
+            if (safe.equals(method)) {
+                return;
+            }
+        }
+        URI uri = req.getURI();
+        this.store.invalidate(key(HttpMethods.GET, uri));
+        this.store.invalidate(key(HttpMethods.PROPFIND, uri));
+        String path = uri.getPath();
+        if (path != null && path.length() > 1) {
+            String trimmed = path;
+            if (trimmed.endsWith("/")) {
+                trimmed = trimmed.substring(0, trimmed.length() - 1);
+            }
+            String parent = trimmed.substring(0, trimmed.lastIndexOf('/') + 1);
+            URI parentUri = uri.resolve(parent);
+            this.store.invalidate(key(HttpMethods.PROPFIND, parentUri));
+            this.store.invalidate(key(HttpMethods.PROPFIND, URI.create(stripSlash(parentUri.toString()))));
+        }
+    }
+
+    /**
+     * This method checks whether a response can be kept.
+     * @param res Response
+     * @return true for a 200 or 207 response with a validator or a max-age, and without no-store or Vary: *
+     */
+    private static boolean isStorable(HttpResponse res) {
+        int status = res.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_OK && status != SC_MULTI_STATUS) {
+            return false;
+        }
+        Header[] cacheControl = res.getHeaders(HttpHeaders.CACHE_CONTROL);
+        if (hasNoStore(cacheControl)) {
+            return false;
+        }
+        for (Header vary : res.getHeaders(HttpHeaders.VARY)) {
+            if (vary.getValue().trim().equals("*")) {
+                return false;
+            }
+        }
+        return res.containsHeader(HttpHeaders.ETAG) || res.containsHeader(HttpHeaders.LAST_MODIFIED)
+                || maxAge(cacheControl) > 0;
+    }
+
+    /**
+     * This method computes until when a response is fresh, from the max-age of Cache-Control and the Age header.
+     * Without max-age, or with no-cache, the response must be revalidated before each use.
+     * @param headers Headers of the response
+     * @param requestTime System.nanoTime() when the request was sent
+     * @return Time in System.nanoTime() until which the response is fresh
+     */
+    private static long freshUntil(Header[] headers, long requestTime) {
+        List<Header> cacheControl = new ArrayList<Header>();
+        long age = 0;
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(HttpHeaders.CACHE_CONTROL)) {
+                cacheControl.add(header);
+            } else if (header.getName().equalsIgnoreCase(HttpHeaders.AGE)) {
+                age = parseSeconds(header.getValue().trim());
+            }
+        }
+        long maxAge = maxAge(cacheControl.toArray(new Header[0]));
+        if (maxAge <= age) {
+            return requestTime;
+        }
+        return requestTime + TimeUnit.SECONDS.toNanos(maxAge - age);
+    }
+
+    /**
+     * This method returns the max-age of Cache-Control.
+     * @param cacheControl Cache-Control headers
+     * @return max-age in seconds, 0 if none or if no-cache is specified
+     */
+    private static long maxAge(Header[] cacheControl) {
+        long maxAge = 0;
+        for (Header header : cacheControl) {
+            for (String directive : header.getValue().split(",")) {
+                String d = directive.trim().toLowerCase(Locale.ROOT);
+                if (d.equals("no-cache") || d.startsWith("no-cache=")) {
+                    return 0;
+                }
+                if (d.startsWith("max-age=")) {
+                    maxAge = parseSeconds(d.substring("max-age=".length()));
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    /**
+     * This method checks whether Cache-Control forbids keeping the response.
+     * @param cacheControl Cache-Control headers
+     * @return true if no-store is specified
+     */
+    private static boolean hasNoStore(Header[] cacheControl) {
+        for (Header header : cacheControl) {
+            for (String directive : header.getValue().split(",")) {
+                if (directive.trim().equalsIgnoreCase("no-store")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method parses a number of seconds.
+     * @param value Value
+     * @return Seconds, 0 if invalid
+     */
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.replace("\"", "")));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * This method collects the values of the request headers a response varies on.
+     * @param req Request
+     * @param responseHeaders Headers of the response
+     * @return Values by lower-case name
+     */
+    private static Map<String, String> varyValues(HttpUriRequest req, Header[] responseHeaders) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (String name : ALWAYS_VARY) {
+            values.put(name.toLowerCase(Locale.ROOT), headerValue(req, name));
+        }
+        // Keep a digest of the credentials only, since the entries may be written to disk.
+        String authorization = values.get(AUTHORIZATION_KEY);
+        if (authorization != null) {
+            values.put(AUTHORIZATION_KEY, digest(authorization.getBytes(StandardCharsets.UTF_8)));
+        }
+        for (Header vary : responseHeaders) {
+            if (vary.getName().equalsIgnoreCase(HttpHeaders.VARY)) {
+                for (String name : vary.getValue().split(",")) {
+                    String n = name.trim();
+                    if (!n.isEmpty()) {
+                        values.put(n.toLowerCase(Locale.ROOT), headerValue(req, n));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * This method returns the values of a request header, joined by commas.
+     * @param req Request
+     * @param name Header name
+     * @return Value, or null if none
+     */
+    private static String headerValue(HttpUriRequest req, String name) {
+        Header[] headers = req.getHeaders(name);
+        if (headers.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(headers[0].getValue());
+        for (int i = 1; i < headers.length; i++) {
+            sb.append(',').append(headers[i].getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This method computes the variant of a request not carried by the vary headers: the Depth and a digest of the
+     * body of a PROPFIND.
+     * @param req Request
+     * @return Variant, empty for a GET
+     */
+    private static String variant(HttpUriRequest req) {
+        if (!HttpMethods.PROPFIND.equals(req.getMethod())) {
+            return "";
+        }
+        HttpEntity entity = requestEntity(req);
+        StringBuilder sb = new StringBuilder();
+        sb.append(headerValue(req, DEPTH)).append(' ');
+        if (entity != null) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                entity.writeTo(out);
+                sb.append(digest(out.toByteArray()));
+            } catch (IOException e) {
+                // Can't tell the variant: don't share the response with another body.
+                sb.append(System.identityHashCode(req));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This method computes the SHA-256 digest of bytes.
+     * @param bytes Bytes
+     * @return Digest in Base64
+     */
+    static String digest(byte[] bytes) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * This method returns the body of a request.
+     * @param req Request
+     * @return HttpEntity, or null if none
+     */
+    private static HttpEntity requestEntity(HttpUriRequest req) {
+        if (req instanceof HttpEntityEnclosingRequest) {
+            return ((HttpEntityEnclosingRequest) req).getEntity();
+        }
+        return null;
+    }
+
+    /**
+     * This method returns the cache key of a request.
+     * @param method Method
+     * @param uri URI
+     * @return Key
+     */
+    private static String key(String method, URI uri) {
+        return method + " " + uri;
+    }
+
+    /**
+     * This method removes the trailing slash of a URL.
+     * @param url URL
+     * @return URL without the trailing slash
+     */
+    private static String stripSlash(String url) {
+        if (url.endsWith("/")) {
+            return url.substring(0, url.length() - 1);
+        }
+        return url;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * This class is a response held by the HTTP cache of RestAdapter. It is immutable: a revalidated response is put as a
+ * new entry. The body is either in the heap or, for the disk cache, in a file mapped in memory.
+ */
+final class HttpCacheEntry extends CacheEntry {
+    /** Estimated size of a header in memory besides its name and value. */
+    private static final int HEADER_OVERHEAD = 32;
+
+    /** Status line of the response. */
+    private final StatusLine statusLine;
+    /** Headers of the response. */
+    private final Header[] headerList;
+    /** Body of the response as received, possibly compressed. */
+    private final ByteBuffer content;
+    /** Values of the request headers the response varies on, by lower-case name. */
+    private final Map<String, String> varyValues;
+    /** Variant of the request not carried by headers, such as the body of a PROPFIND. */
+    private final String variant;
+    /** Time in System.nanoTime() until which the response is fresh. */
+    private final long freshUntil;
+
+    /**
+     * This is the parameterized constructor.
+     * @param key Cache key
+     * @param status Status line of the response
+     * @param headers Headers of the response
+     * @param body Body of the response
+     * @param vary Values of the request headers the response varies on
+     * @param requestVariant Variant of the request not carried by headers
+     * @param fresh Time in System.nanoTime() until which the response is fresh
+     */
+    HttpCacheEntry(String key, StatusLine status, Header[] headers, ByteBuffer body, Map<String, String> vary,
+            String requestVariant, long fresh) {
+        super(key, headers, null);
+        this.statusLine = status;
+        this.headerList = headers;
+        this.content = body;
+        this.varyValues = vary;
+        this.variant = requestVariant;
+        this.freshUntil = fresh;
+    }
+
+    /**
+     * This method returns the status line of the response.
+     * @return Status line
+     */
+    StatusLine getStatusLine() {
+        return this.statusLine;
+    }
+
+    /**
+     * This method returns the headers of the response.
+     * @return Headers
+     */
+    Header[] getHeaderList() {
+        return this.headerList.clone();
+    }
+
+    /**
+     * This method returns the body of the response.
+     * @return Buffer positioned at the start of the body
+     */
+    ByteBuffer getContent() {
+        return this.content.duplicate();
+    }
+
+    /**
+     * This method returns the values of the request headers the response varies on.
+     * @return Values by lower-case name
+     */
+    Map<String, String> getVaryValues() {
+        return this.varyValues;
+    }
+
+    /**
+     * This method returns the variant of the request not carried by headers.
+     * @return Variant
+     */
+    String getVariant() {
+        return this.variant;
+    }
+
+    /**
+     * This method checks whether the response can be returned without revalidation.
+     * @param now Current System.nanoTime()
+     * @return true if fresh
+     */
+    boolean isFresh(long now) {
+        return this.freshUntil - now > 0;
+    }
+
+    /**
+     * This method returns until when the response is fresh.
+     * @return Time in System.nanoTime()
+     */
+    long getFreshUntil() {
+        return this.freshUntil;
+    }
+
+    /**
+     * This method returns the first header of a name.
+     * @param name Header name
+     * @return Value, or null if none
+     */
+    String getFirstHeader(String name) {
+        Header header = this.findHeader(name);
+        if (header == null) {
+            return null;
+        }
+        return header.getValue();
+    }
+
+    /**
+     * This method checks whether the response was received for the same request headers.
+     * @param vary Values of the request headers the response varies on
+     * @return true if the response can be used for the request without revalidation
+     */
+    boolean matches(Map<String, String> vary) {
+        return Objects.equals(this.varyValues, vary);
+    }
+
+    /**
+     * This method creates a response with the status, headers and body of the entry.
+     * @return HttpResponse object
+     */
+    HttpResponse toResponse() {
+        BasicHttpResponse res = new BasicHttpResponse(this.statusLine);
+        res.setHeaders(this.headerList);
+        Header contentType = findHeader(HttpHeaders.CONTENT_TYPE);
+        Header contentEncoding = findHeader(HttpHeaders.CONTENT_ENCODING);
+        if (this.content.hasArray()) {
+            res.setEntity(new BufferedBodyEntity(this.getContent(), contentType, contentEncoding));
+        } else {
+            res.setEntity(new MappedBodyEntity(this.getContent(), contentType, contentEncoding));
+        }
+        return res;
+    }
+
+    /**
+     * This method creates a copy of the entry with another body.
+     * @param body Body of the response
+     * @return HttpCacheEntry object
+     */
+    HttpCacheEntry withContent(ByteBuffer body) {
+        return new HttpCacheEntry(this.getUrl(), this.statusLine, this.headerList, body, this.varyValues, this.variant,
+                this.freshUntil);
+    }
+
+    /**
+     * This method returns the weight of the entry, the size of the body and of the headers.
+     * @return Weight in bytes
+     */
+    @Override
+    public long getWeight() {
+        long weight = this.content.remaining();
+        for (Header header : this.headerList) {
+            weight += HEADER_OVERHEAD + (long) (header.getName().length() + header.getValue().length())
+                    * Character.BYTES;
+        }
+        return weight;
+    }
+
+    /**
+     * This method returns the first header object of a name.
+     * @param name Header name
+     * @return Header, or null if none
+     */
+    private Header findHeader(String name) {
+        for (Header header : this.headerList) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+}
@@ -20,15 +20,21 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.params.HttpClientParams;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
@@ -39,15 +45,30 @@ import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.conn.SingleClientConnManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContextBuilder;
 
+import io.personium.client.DaoConfig;
+
 ///**
 // * HttpClientの実装を切り替えてNewする.
 // */
@@ -136,6 +157,169 @@ public class HttpClientFactory {
         return hc;
     }
 
+    /**
+     * This method is used to create a connection pool shared by the RestAdapter of a DaoConfig. Both the default and
+     * the insecure type use PoolingHttpClientConnectionManager. The android type is not supported. The timeout of
+     * the DaoConfig is read once: the pool keeps it until it is closed.
+     * @param type Type of communication
+     * @param config DaoConfig holding the timeout, pool and proxy settings
+     * @return PersoniumConnectionPool that is created, null if the type is not supported
+     * @throws IllegalStateException if the SSL socket factory of the insecure type can't be created
+     */
+    public static PersoniumConnectionPool createPool(final String type, final DaoConfig config) {
+        RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.INSTANCE);
+        if (TYPE_DEFAULT.equalsIgnoreCase(type)) {
+            registryBuilder.register("https", SSLConnectionSocketFactory.getSystemSocketFactory());
+        } else if (TYPE_INSECURE.equalsIgnoreCase(type)) {
+            try {
+                registryBuilder.register("https", createInsecureSSLConnectionSocketFactory());
+            } catch (Exception e) {
+                throw new IllegalStateException("can't create the insecure SSL socket factory : " + e.getMessage(), e);
+            }
+        } else {
+            return null;
+        }
+
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(registryBuilder.build());
+        cm.setMaxTotal(config.getMaxConnections());
+        cm.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        cm.setValidateAfterInactivity(config.getValidateAfterInactivity());
+
+        int timeout = TIMEOUT;
+        if (config.getConnectionTimeout() != 0) {
+            timeout = config.getConnectionTimeout();
+        }
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setRedirectsEnabled(false)
+                .build();
+
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(cm)
+                .setKeepAliveStrategy(createKeepAliveStrategy(config))
+                .setRequestExecutor(new TimingRequestExecutor())
+                .evictExpiredConnections()
+                .useSystemProperties();
+        if (config.getIdleConnectionTimeout() > 0) {
+            builder.evictIdleConnections((long) config.getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+        }
+
+        String proxyHost = config.getProxyHostname();
+        if (proxyHost != null) {
+            int proxyPort = config.getProxyPort();
+            builder.setProxy(new HttpHost(proxyHost, proxyPort));
+            String proxyUsername = config.getProxyUsername();
+            String proxyPassword = config.getProxyPassword();
+            if (proxyUsername != null && proxyPassword != null) {
+                BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(new AuthScope(proxyHost, proxyPort),
+                        new UsernamePasswordCredentials(proxyUsername, proxyPassword));
+                builder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+        }
+
+        return new PersoniumConnectionPool(cm, builder.build());
+    }
+
+    /**
+     * This method is used to create a non-blocking HttpClient shared by the AsyncRestAdapter of a DaoConfig. The
+     * client is returned started. The android type is not supported. The timeout of the DaoConfig is read once: the
+     * client keeps it until it is closed.
+     * @param type Type of communication
+     * @param config DaoConfig holding the timeout, pool and proxy settings
+     * @return CloseableHttpAsyncClient that is created, null if the type is not supported
+     */
+    public static CloseableHttpAsyncClient createAsync(final String type, final DaoConfig config) {
+        RegistryBuilder<SchemeIOSessionStrategy> registryBuilder = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE);
+        if (TYPE_DEFAULT.equalsIgnoreCase(type)) {
+            registryBuilder.register("https", SSLIOSessionStrategy.getSystemDefaultStrategy());
+        } else if (TYPE_INSECURE.equalsIgnoreCase(type)) {
+            try {
+                SSLContext sslContext = SSLContextBuilder.create()
+                        .loadTrustMaterial(TrustSelfSignedStrategy.INSTANCE)
+                        .build();
+                registryBuilder.register("https", new SSLIOSessionStrategy(sslContext, NoopHostnameVerifier.INSTANCE));
+            } catch (Exception e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        int timeout = TIMEOUT;
+        if (config.getConnectionTimeout() != 0) {
+            timeout = config.getConnectionTimeout();
+        }
+        IOReactorConfig.Builder reactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSoTimeout(timeout);
+        if (config.getAsyncIoThreadCount() > 0) {
+            reactorConfig.setIoThreadCount(config.getAsyncIoThreadCount());
+        }
+        PoolingNHttpClientConnectionManager cm;
+        try {
+            cm = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig.build()),
+                    registryBuilder.build());
+        } catch (IOReactorException e) {
+            return null;
+        }
+        cm.setMaxTotal(config.getMaxConnections());
+        cm.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setRedirectsEnabled(false)
+                .build();
+        HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(cm)
+                .setKeepAliveStrategy(createKeepAliveStrategy(config))
+                .useSystemProperties();
+
+        String proxyHost = config.getProxyHostname();
+        if (proxyHost != null) {
+            int proxyPort = config.getProxyPort();
+            builder.setProxy(new HttpHost(proxyHost, proxyPort));
+            String proxyUsername = config.getProxyUsername();
+            String proxyPassword = config.getProxyPassword();
+            if (proxyUsername != null && proxyPassword != null) {
+                BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(new AuthScope(proxyHost, proxyPort),
+                        new UsernamePasswordCredentials(proxyUsername, proxyPassword));
+                builder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+        }
+
+        CloseableHttpAsyncClient client = builder.build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * This method is used to create the keep-alive strategy of the pool. The Keep-Alive header of the server is
+     * honored, but never longer than the keep-alive timeout of the DaoConfig, which is read on every response.
+     * @param config DaoConfig holding the keep-alive timeout
+     * @return ConnectionKeepAliveStrategy that is generated
+     */
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy(final DaoConfig config) {
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long serverValue = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                long limit = config.getKeepAliveTimeout();
+                if (serverValue > 0 && (limit <= 0 || serverValue < limit)) {
+                    return serverValue;
+                }
+                return limit;
+            }
+        };
+    }
+
     @SuppressWarnings("deprecation")
     private static HttpClient createForAndroid(final int connectionTimeout) {
         SSLSocketFactory sf = null;
@@ -0,0 +1,104 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is the Java Flight Recorder event of a request sent by RestAdapter, from the lookup in the HTTP cache to
+ * the reading of the response body when it is not streamed. It is only filled and committed when the event is
+ * enabled in the recording.
+ */
+@Name("io.personium.client.HttpExchange")
+@Label("Personium HTTP Exchange")
+@Category({"Personium", "HTTP"})
+@Description("A request sent by RestAdapter")
+final class HttpExchangeEvent extends Event {
+    /** Method. */
+    @Label("Method")
+    String method;
+
+    /** URL. */
+    @Label("URL")
+    String url;
+
+    /** URL template. */
+    @Label("URL Template")
+    String urlTemplate;
+
+    /** Status code. */
+    @Label("Status")
+    @Description("Status code of the response, 0 if none")
+    int status;
+
+    /** Error message. */
+    @Label("Error")
+    String error;
+
+    /** Size of the request body. */
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+
+    /** Size of the response body. */
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+
+    /** Time to first byte. */
+    @Label("Time To First Byte")
+    @Timespan
+    long timeToFirstByte;
+
+    /** Number of retries. */
+    @Label("Retries")
+    int retries;
+
+    /** Use of the HTTP cache. */
+    @Label("Cache")
+    String cache;
+
+    /**
+     * This method ends the event and commits it with the description of a request, if it is enabled.
+     * @param event Description of the request
+     */
+    void commit(RequestEvent event) {
+        this.end();
+        if (!this.shouldCommit()) {
+            return;
+        }
+        this.method = event.getMethod();
+        this.url = event.getUrl();
+        this.urlTemplate = event.getUrlTemplate();
+        this.status = event.getStatusCode();
+        if (event.getError() != null) {
+            this.error = event.getError().getMessage();
+        }
+        this.bytesSent = event.getBytesSent();
+        this.bytesReceived = event.getBytesReceived();
+        this.timeToFirstByte = event.getTimeToFirstByte();
+        this.retries = event.getRetryCount();
+        this.cache = event.getCacheResult().name();
+        this.commit();
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.Header;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * This class is a response body held in a buffer without a backing array, such as a file of the disk cache mapped in
+ * memory. The body is read directly from the buffer, without being copied to the heap first.
+ */
+final class MappedBodyEntity extends AbstractHttpEntity {
+    /** Buffer of the body. */
+    private final ByteBuffer body;
+
+    /**
+     * This is the parameterized constructor.
+     * @param buf Buffer of the body, not copied
+     * @param contentType Content-Type header, may be null
+     * @param contentEncoding Content-Encoding header, may be null
+     */
+    MappedBodyEntity(ByteBuffer buf, Header contentType, Header contentEncoding) {
+        this.body = buf;
+        setContentType(contentType);
+        setContentEncoding(contentEncoding);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return this.body.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new BufferInputStream(this.body.duplicate());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buf = this.body.duplicate();
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * This class reads a buffer as a stream.
+     */
+    private static final class BufferInputStream extends InputStream {
+        /** Mask of a byte. */
+        private static final int BYTE_MASK = 0xff;
+        /** Buffer to read. */
+        private final ByteBuffer buf;
+
+        /**
+         * This is the parameterized constructor.
+         * @param value Buffer to read
+         */
+        BufferInputStream(ByteBuffer value) {
+            this.buf = value;
+        }
+
+        @Override
+        public int read() {
+            if (!this.buf.hasRemaining()) {
+                return -1;
+            }
+            return this.buf.get() & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, this.buf.remaining());
+            this.buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, this.buf.remaining()));
+            this.buf.position(this.buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return this.buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * It creates a new object of PersoniumConnectionPool. This class holds the HttpClient and the pooling connection
+ * manager shared by all the RestAdapter created from the same DaoConfig, so that connections and TLS sessions are
+ * reused across requests.
+ */
+public class PersoniumConnectionPool implements Closeable {
+    /** Pooling connection manager. */
+    private final PoolingHttpClientConnectionManager connectionManager;
+    /** HttpClient bound to the connection manager. */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * This is the parameterized constructor used to initialize the pool.
+     * @param cm Pooling connection manager
+     * @param hc HttpClient using the connection manager
+     */
+    PersoniumConnectionPool(PoolingHttpClientConnectionManager cm, CloseableHttpClient hc) {
+        this.connectionManager = cm;
+        this.httpClient = hc;
+    }
+
+    /**
+     * This method returns the shared HttpClient.
+     * @return HttpClient object
+     */
+    public HttpClient getHttpClient() {
+        return this.httpClient;
+    }
+
+    /**
+     * This method returns the pooling connection manager.
+     * @return PoolingHttpClientConnectionManager object
+     */
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return this.connectionManager;
+    }
+
+    /**
+     * This method returns the total statistics of the pool (leased, pending, available and max connections).
+     * @return PoolStats object
+     */
+    public PoolStats getTotalStats() {
+        return this.connectionManager.getTotalStats();
+    }
+
+    /**
+     * This method closes the HttpClient, stops the idle connection evictor and shuts down all the pooled connections.
+     * @throws IOException Exception thrown
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.httpClient.close();
+        } finally {
+            this.connectionManager.shutdown();
+        }
+    }
+}
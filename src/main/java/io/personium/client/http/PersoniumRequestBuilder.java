@@ -42,7 +42,7 @@ import io.personium.client.utils.Log;
 public class PersoniumRequestBuilder {
     // /** ログオブジェクト. */
     /** Log object. */
-    private Log log = new Log(PersoniumRequestBuilder.class);
+    private static final Log LOG = new Log(PersoniumRequestBuilder.class);
     // /** URL文字列. */
     /** URL string. */
     private String urlValue = null;
@@ -60,6 +60,8 @@ public class PersoniumRequestBuilder {
     // /** Body(InputStream)値. */
     /** Body(InputStream) Value. */
     private InputStream bodyStream = null;
+    /** Body(HttpEntity) Value. */
+    private HttpEntity bodyEntity = null;
     // /** デフォルトヘッダ. */
     /** Default Headers. */
     private HashMap<String, String> defaultHeaders;
@@ -419,6 +421,16 @@ public class PersoniumRequestBuilder {
         return this;
     }
 
+    /**
+     * This method is used to set the Body entity, written to the connection as is.
+     * @param entity Body entity
+     * @return DcRequestBuilder Its own object
+     */
+    public PersoniumRequestBuilder body(HttpEntity entity) {
+        this.bodyEntity = entity;
+        return this;
+    }
+
     // /**
     // * デフォルトヘッダをセットする.
     // * @param value デフォルトヘッダ
@@ -523,14 +535,18 @@ public class PersoniumRequestBuilder {
             this.bodyValue = "[stream]";
             ((HttpEntityEnclosingRequest) req).setEntity(body);
         }
-        if (req != null) {
-            log.debug("");
-            log.debug("【Request】 " + req.getMethod() + "  " + req.getURI());
+        if (this.bodyEntity != null) {
+            this.bodyValue = "[entity]";
+            ((HttpEntityEnclosingRequest) req).setEntity(this.bodyEntity);
+        }
+        if (req != null && LOG.isDebugEnabled()) {
+            LOG.debug("");
+            LOG.debug("【Request】 {}  {}", req.getMethod(), req.getURI());
             Header[] allheaders = req.getAllHeaders();
             for (int i = 0; i < allheaders.length; i++) {
-                log.debug("RequestHeader[" + allheaders[i].getName() + "] : " + allheaders[i].getValue());
+                LOG.debug("RequestHeader[{}] : {}", allheaders[i].getName(), allheaders[i].getValue());
             }
-            log.debug("RequestBody : " + bodyValue);
+            LOG.debug("RequestBody : {}", bodyValue);
         }
         return req;
     }
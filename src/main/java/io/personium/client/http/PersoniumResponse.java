@@ -16,11 +16,11 @@
  */
 package io.personium.client.http;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -31,12 +31,11 @@ import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import io.personium.client.DaoException;
+import io.personium.client.utils.JsonUtils;
 import io.personium.client.utils.Log;
 
 ///**
@@ -48,12 +47,15 @@ import io.personium.client.utils.Log;
 public class PersoniumResponse {
     // /** ログオブジェクト. */
     /** Log object. */
-    private Log log = new Log(PersoniumResponse.class);
+    private static final Log LOG = new Log(PersoniumResponse.class);
 
     // /** レスポンスオブジェクト. */
     /** Response object. */
     private HttpResponse response;
 
+    /** Response body read in memory, null until it is read. */
+    private ByteBuffer body;
+
     // /**
     // * コンストラクタ.
     // */
@@ -164,58 +166,27 @@ public class PersoniumResponse {
      * @throws DaoException Exception thrown
      */
     public final String bodyAsString(final String enc) throws DaoException {
-        InputStream is = null;
-        InputStreamReader isr = null;
-        BufferedReader reader = null;
-        try {
-            is = this.getResponseBodyInputStream(response);
-            if (is == null) {
-                return "";
-            }
-            isr = new InputStreamReader(is, enc);
-            reader = new BufferedReader(isr);
-            StringBuffer sb = new StringBuffer();
-            int chr;
-            while ((chr = reader.read()) != -1) {
-                sb.append((char) chr);
-            }
-            return sb.toString();
-        } catch (IOException e) {
-            throw DaoException.create("io exception", 0);
-        } finally {
-            try {
-                if (is != null) {
-                    is.close();
-                }
-                if (isr != null) {
-                    isr.close();
-                }
-                if (reader != null) {
-                    reader.close();
-                }
-            } catch (Exception e) {
-                throw DaoException.create("io exception", 0);
-            } finally {
-                try {
-                    if (isr != null) {
-                        isr.close();
-                    }
-                    if (reader != null) {
-                        reader.close();
-                    }
-                } catch (Exception e2) {
-                    throw DaoException.create("io exception", 0);
-                } finally {
-                    try {
-                        if (reader != null) {
-                            reader.close();
-                        }
-                    } catch (Exception e3) {
-                        throw DaoException.create("io exception", 0);
-                    }
-                }
-            }
-        }
+        return ResponseBodyReader.decode(this.body(), enc);
+    }
+
+    /**
+     * This method is used to get the response body as a byte array.
+     * @return Body bytes
+     * @throws DaoException Exception thrown
+     */
+    public final byte[] bodyAsBytes() throws DaoException {
+        ByteBuffer buf = this.body();
+        return Arrays.copyOfRange(buf.array(), buf.arrayOffset() + buf.position(),
+                buf.arrayOffset() + buf.limit());
+    }
+
+    /**
+     * This method is used to get the response body as a read-only buffer without copying it.
+     * @return Read-only buffer of the body
+     * @throws DaoException Exception thrown
+     */
+    public final ByteBuffer bodyAsByteBuffer() throws DaoException {
+        return this.body().asReadOnlyBuffer();
     }
 
     // /**
@@ -224,16 +195,29 @@ public class PersoniumResponse {
     // * @throws DaoException DAO例外
     // */
     /**
-     * This method is used to the response body in JSON format.
+     * This method is used to the response body in JSON format. The body is parsed from the stream with
+     * {@link JsonUtils#getCodec()}, without building a String. A body received by
+     * {@link RestAdapter#getStream(String, String, String)} is parsed as it arrives and can't be read again.
      * @return JSONObject
      * @throws DaoException Exception thrown
      */
     public JSONObject bodyAsJson() throws DaoException {
-        String res = bodyAsString();
+        HttpEntity he = response.getEntity();
         try {
-            return (JSONObject) new JSONParser().parse(res);
-        } catch (ParseException e) {
-            throw DaoException.create("parse exception: " + e.getMessage(), 0);
+            if (this.body != null || he == null || he instanceof BufferedBodyEntity) {
+                ByteBuffer buf = this.body();
+                return (JSONObject) JsonUtils.getCodec().parse(
+                        new ByteArrayInputStream(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining()));
+            }
+            // Parse the streamed body as it arrives, it can't be read again.
+            InputStream is = this.getResponseBodyInputStream(response);
+            try {
+                return (JSONObject) JsonUtils.getCodec().parse(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw DaoException.create("io exception", 0);
         }
     }
 
@@ -246,9 +230,9 @@ public class PersoniumResponse {
      * @return XML DOM Object
      */
     public final Document bodyAsXml() {
-        String str = "";
+        ByteBuffer buf;
         try {
-            str = bodyAsString();
+            buf = this.body();
         } catch (DaoException e1) {
             throw new RuntimeException(e1);
         }
@@ -261,7 +245,7 @@ public class PersoniumResponse {
             throw new RuntimeException(e);
         }
         Document document = null;
-        InputStream is = new ByteArrayInputStream(str.getBytes());
+        InputStream is = new ByteArrayInputStream(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
         try {
             document = builder.parse(is);
         } catch (SAXException e) {
@@ -272,6 +256,35 @@ public class PersoniumResponse {
         return document;
     }
 
+    /**
+     * This method returns the response body read in memory. The body is read once and kept, so that it can be
+     * decoded several times. A body already buffered by RestAdapter is not copied.
+     * @return Buffer of the body, not to be modified
+     * @throws DaoException Exception thrown
+     */
+    private ByteBuffer body() throws DaoException {
+        if (this.body == null) {
+            HttpEntity he = response.getEntity();
+            try {
+                if (he instanceof BufferedBodyEntity && !isGzip(response)) {
+                    this.body = ((BufferedBodyEntity) he).getBody();
+                } else if (he == null) {
+                    this.body = ByteBuffer.allocate(0);
+                } else {
+                    InputStream is = this.getResponseBodyInputStream(response);
+                    try {
+                        this.body = ResponseBodyReader.read(is, he.getContentLength());
+                    } finally {
+                        is.close();
+                    }
+                }
+            } catch (IOException e) {
+                throw DaoException.create("io exception", 0);
+            }
+        }
+        return this.body.duplicate();
+    }
+
     // /**
     // * レスポンスボディのストリームを受け取る.
     // * @param res Responseオブジェクト
@@ -287,8 +300,7 @@ public class PersoniumResponse {
     protected final InputStream getResponseBodyInputStream(final HttpResponse res) throws IOException {
         // GZip 圧縮されていたら解凍する。
         /** thaw if it is GZip compression. */
-        Header[] contentEncodingHeaders = res.getHeaders("Content-Encoding");
-        if (contentEncodingHeaders.length > 0 && "gzip".equalsIgnoreCase(contentEncodingHeaders[0].getValue())) {
+        if (isGzip(res)) {
             return new GZIPInputStream(res.getEntity().getContent());
         } else {
             HttpEntity he = res.getEntity();
@@ -300,6 +312,16 @@ public class PersoniumResponse {
         }
     }
 
+    /**
+     * This method checks whether the response body is GZip compressed.
+     * @param res Response object
+     * @return true if compressed
+     */
+    private static boolean isGzip(final HttpResponse res) {
+        Header[] contentEncodingHeaders = res.getHeaders("Content-Encoding");
+        return contentEncodingHeaders.length > 0 && "gzip".equalsIgnoreCase(contentEncodingHeaders[0].getValue());
+    }
+
     // /**
     // * デバッグ用.
     // * @param res デバッグ出力するResponseオブジェクト
@@ -309,11 +331,11 @@ public class PersoniumResponse {
      * @param res Response object with debugging output
      */
     private void debugHttpResponse(HttpResponse res) {
-        if (res != null) {
-            log.debug("【Response】 ResponseCode: " + res.getStatusLine().getStatusCode());
+        if (res != null && LOG.isDebugEnabled()) {
+            LOG.debug("【Response】 ResponseCode: {}", res.getStatusLine().getStatusCode());
             Header[] headers = res.getAllHeaders();
             for (int i = 0; i < headers.length; i++) {
-                log.debug("ResponseHeader[" + headers[i].getName() + "] : " + headers[i].getValue());
+                LOG.debug("ResponseHeader[{}] : {}", headers[i].getName(), headers[i].getValue());
             }
         }
     }
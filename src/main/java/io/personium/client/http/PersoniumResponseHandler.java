@@ -0,0 +1,34 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import io.personium.client.DaoException;
+
+/**
+ * This interface converts a PersoniumResponse to a result when an asynchronous request completes.
+ * @param <T> Type of the result
+ */
+@FunctionalInterface
+public interface PersoniumResponseHandler<T> {
+    /**
+     * This is the method signature for converting the response.
+     * @param res PersoniumResponse object
+     * @return Result
+     * @throws DaoException Exception thrown
+     */
+    T handle(PersoniumResponse res) throws DaoException;
+}
@@ -0,0 +1,48 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+
+/**
+ * It creates a new object of RejectedRequestException. This class represents a request refused by the client before
+ * being sent, by the CircuitBreaker or the ConcurrencyLimiter. It is not retried.
+ */
+final class RejectedRequestException extends IOException {
+    /** Final and unique serial version random ID. */
+    private static final long serialVersionUID = 1L;
+    /** Code of the DaoException thrown to the caller. */
+    private final int code;
+
+    /**
+     * This is the parameterized constructor.
+     * @param msg Error Message
+     * @param c Code of the DaoException thrown to the caller
+     */
+    RejectedRequestException(String msg, int c) {
+        super(msg);
+        this.code = c;
+    }
+
+    /**
+     * This method returns the code of the DaoException thrown to the caller.
+     * @return Code
+     */
+    int getCode() {
+        return this.code;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * It creates a new object of ReplayableEntity. This class makes a request body read from a stream repeatable: the
+ * bytes read from the stream are kept in memory up to a limit, so that the body can be sent again by a retry. A
+ * retry sends the kept bytes, then reads the rest of the stream. When the body is larger than the limit, the kept
+ * bytes are dropped and the entity is no longer repeatable.
+ */
+final class ReplayableEntity extends HttpEntityWrapper {
+    /** Size of the copy buffer. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Mask of the value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Stream of the wrapped entity. */
+    private final InputStream source;
+    /** Max number of bytes kept. */
+    private final int limit;
+    /** Bytes read from the stream, null once the limit is exceeded. */
+    private ByteArrayOutputStream kept = new ByteArrayOutputStream();
+    /** Whether the end of the stream has been read. */
+    private boolean eof = false;
+
+    /**
+     * This is the parameterized constructor.
+     * @param entity Entity wrapped, not repeatable
+     * @param max Max number of bytes kept
+     * @throws IOException Exception thrown while opening the stream
+     */
+    ReplayableEntity(HttpEntity entity, int max) throws IOException {
+        super(entity);
+        this.source = entity.getContent();
+        this.limit = max;
+    }
+
+    /**
+     * This method makes the body of a request repeatable, if it is read from a stream.
+     * @param req Request
+     * @param max Max number of bytes kept
+     * @throws IOException Exception thrown while opening the stream
+     */
+    static void wrap(HttpUriRequest req, int max) throws IOException {
+        if (!(req instanceof HttpEntityEnclosingRequest)) {
+            return;
+        }
+        HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) req;
+        HttpEntity entity = enclosing.getEntity();
+        if (entity != null && !entity.isRepeatable()) {
+            enclosing.setEntity(new ReplayableEntity(entity, max));
+        }
+    }
+
+    /**
+     * This method checks whether the body of a request can be sent again.
+     * @param req Request
+     * @return true if the request has no body or a repeatable one
+     */
+    static boolean isReplayable(HttpUriRequest req) {
+        if (!(req instanceof HttpEntityEnclosingRequest)) {
+            return true;
+        }
+        HttpEntity entity = ((HttpEntityEnclosingRequest) req).getEntity();
+        return entity == null || entity.isRepeatable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isRepeatable() {
+        return this.kept != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized InputStream getContent() throws IOException {
+        if (this.kept == null) {
+            throw new IOException("the request body is too large to be sent again");
+        }
+        return new Replay(this.kept.toByteArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        InputStream in = this.getContent();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * This method reads the stream of the wrapped entity, keeping the bytes read. The stream is closed at its end.
+     * @param b Buffer
+     * @param off Offset in the buffer
+     * @param len Max number of bytes read
+     * @return Number of bytes read, or -1 at the end of the stream
+     * @throws IOException Exception thrown
+     */
+    private synchronized int readSource(byte[] b, int off, int len) throws IOException {
+        if (this.eof) {
+            return -1;
+        }
+        int n = this.source.read(b, off, len);
+        if (n < 0) {
+            this.eof = true;
+            this.source.close();
+        } else if (this.kept != null) {
+            if (this.kept.size() + n > this.limit) {
+                this.kept = null;
+            } else {
+                this.kept.write(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * This class reads the kept bytes, then the rest of the stream of the wrapped entity.
+     */
+    private final class Replay extends InputStream {
+        /** Bytes kept when the stream was opened. */
+        private final byte[] head;
+        /** Position in the kept bytes. */
+        private int pos = 0;
+
+        /**
+         * This is the parameterized constructor.
+         * @param bytes Bytes kept when the stream is opened
+         */
+        Replay(byte[] bytes) {
+            this.head = bytes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = this.read(b, 0, 1);
+            if (n < 0) {
+                return -1;
+            }
+            return b[0] & BYTE_MASK;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (this.pos < this.head.length) {
+                int n = Math.min(len, this.head.length - this.pos);
+                System.arraycopy(this.head, this.pos, b, off, n);
+                this.pos += n;
+                return n;
+            }
+            return readSource(b, off, len);
+        }
+    }
+}
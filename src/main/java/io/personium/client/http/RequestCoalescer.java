@@ -0,0 +1,187 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import io.personium.client.DaoConfig;
+
+/**
+ * It creates a new object of RequestCoalescer. This class makes the identical GET and HEAD requests sent at the same
+ * time share one HTTP exchange: the first request is sent, and the others wait for its response and get their own
+ * copy of it. Requests are identical when they have the same method, URL and headers, including the Authorization.
+ * The coalescer is enabled by {@link DaoConfig#setRequestCoalescer(RequestCoalescer)}, and may be shared by several
+ * DaoConfig objects. A response whose body is not read into memory, such as a large streamed download, is not
+ * shared: the waiting requests are then sent on their own. All the methods are thread-safe.
+ */
+public final class RequestCoalescer {
+    /** Exchanges in flight by request key. */
+    private final ConcurrentHashMap<String, CompletableFuture<HttpCacheEntry>> inFlight =
+            new ConcurrentHashMap<String, CompletableFuture<HttpCacheEntry>>();
+    /** Number of requests which got a shared response. */
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * This method returns the number of requests which got the response of another request instead of being sent.
+     * @return Number of requests
+     */
+    public long getSharedCount() {
+        return this.sharedCount.get();
+    }
+
+    /**
+     * This method returns the number of exchanges in flight which other requests may join.
+     * @return Number of exchanges
+     */
+    public int getInFlightCount() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * This method checks whether a request may share its exchange: a GET or HEAD request without a body.
+     * @param req Request
+     * @return true if the request may be coalesced
+     */
+    static boolean isCoalescable(HttpUriRequest req) {
+        String method = req.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        return !(req instanceof HttpEntityEnclosingRequest)
+                || ((HttpEntityEnclosingRequest) req).getEntity() == null;
+    }
+
+    /**
+     * This method sends a request, or waits for the response of an identical request in flight. The response of the
+     * sent request is shared if its body has been read into memory by the exchange.
+     * @param req Request, see {@link #isCoalescable(HttpUriRequest)}
+     * @param exchange Exchange sending the request
+     * @return Response, a copy of the shared response for the waiting requests
+     * @throws IOException Exception thrown by the exchange
+     */
+    HttpResponse execute(HttpUriRequest req, Exchange exchange) throws IOException {
+        String key = key(req);
+        CompletableFuture<HttpCacheEntry> mine = new CompletableFuture<HttpCacheEntry>();
+        CompletableFuture<HttpCacheEntry> leader = this.inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            HttpCacheEntry shared = await(leader);
+            if (shared == null) {
+                return exchange.execute();
+            }
+            this.sharedCount.incrementAndGet();
+            return shared.toResponse();
+        }
+        try {
+            HttpResponse res = exchange.execute();
+            mine.complete(snapshot(key, res));
+            return res;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * This method waits for the response of an exchange in flight.
+     * @param leader Future of the shared response
+     * @return Shared response, or null if it can't be shared
+     * @throws IOException Exception thrown by the exchange
+     */
+    private static HttpCacheEntry await(CompletableFuture<HttpCacheEntry> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a coalesced request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * This method copies a response to share it, if its body has been read into memory.
+     * @param key Request key
+     * @param res Response
+     * @return Copy of the response, or null if it can't be shared
+     */
+    private static HttpCacheEntry snapshot(String key, HttpResponse res) {
+        HttpEntity entity = res.getEntity();
+        ByteBuffer body;
+        if (entity == null) {
+            body = ByteBuffer.allocate(0);
+        } else if (entity instanceof BufferedBodyEntity) {
+            body = ((BufferedBodyEntity) entity).getBody();
+        } else {
+            return null;
+        }
+        return new HttpCacheEntry(key, res.getStatusLine(), res.getAllHeaders(), body,
+                Collections.<String, String>emptyMap(), "", 0);
+    }
+
+    /**
+     * This method computes the key of a request from its method, URL and headers. The credentials are kept as a
+     * digest.
+     * @param req Request
+     * @return Key
+     */
+    private static String key(HttpUriRequest req) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(req.getMethod()).append(' ').append(req.getURI());
+        for (Header header : req.getAllHeaders()) {
+            String value = header.getValue();
+            if (HttpHeaders.AUTHORIZATION.equalsIgnoreCase(header.getName()) && value != null) {
+                value = HttpCache.digest(value.getBytes(StandardCharsets.UTF_8));
+            }
+            sb.append('\n').append(header.getName().toLowerCase(Locale.ROOT)).append(": ").append(value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This interface sends a request.
+     */
+    interface Exchange {
+        /**
+         * This method sends the request and returns its response.
+         * @return Response
+         * @throws IOException Exception thrown
+         */
+        HttpResponse execute() throws IOException;
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * It creates a new object of RequestEvent. This class describes a request sent by RestAdapter, passed to the
+ * RequestListener objects once it has completed. The times are in nanoseconds, and the sizes are the ones of the
+ * bodies, in bytes. The connect time and the time to first byte are the ones of the last attempt, and are only known
+ * for the requests sent by the connection pool of the DaoConfig.
+ */
+public final class RequestEvent {
+    /**
+     * Use of the HTTP cache of the DaoConfig by a request.
+     */
+    public enum CacheResult {
+        /** The request is not cacheable or the cache is disabled. */
+        NONE,
+        /** The response was returned by the cache without sending the request. */
+        HIT,
+        /** The response kept by the cache was revalidated by the server (304). */
+        REVALIDATED,
+        /** The response was not in the cache. */
+        MISS
+    }
+
+    /** Key of the event in the HttpContext of the request. */
+    static final String ATTRIBUTE = "io.personium.client.http.RequestEvent";
+
+    /** Method. */
+    private final String method;
+    /** URL. */
+    private final String url;
+    /** Base URL of the unit, used to compute the URL template. */
+    private final String baseUrl;
+    /** URL template, computed on first use. */
+    private String urlTemplate;
+    /** System.nanoTime() at the start of the request. */
+    private final long startTime;
+    /** System.nanoTime() at the start of the last attempt. */
+    private long attemptTime;
+    /** System.nanoTime() when the last attempt got a connection, 0 if unknown. */
+    private long connectedTime;
+    /** System.nanoTime() when the last attempt received the response header, 0 if unknown. */
+    private long firstByteTime;
+    /** Total time in nanoseconds. */
+    private long totalTime;
+    /** Status code, 0 if none. */
+    private int statusCode;
+    /** Error thrown, null if none. */
+    private Exception error;
+    /** Size of the request body, -1 if unknown. */
+    private long bytesSent;
+    /** Size of the response body, -1 if unknown. */
+    private long bytesReceived;
+    /** Number of retries. */
+    private int retryCount;
+    /** Use of the HTTP cache. */
+    private CacheResult cacheResult = CacheResult.NONE;
+
+    /**
+     * This is the parameterized constructor.
+     * @param req Request
+     * @param base Base URL of the unit, may be null
+     */
+    RequestEvent(HttpUriRequest req, String base) {
+        this.method = req.getMethod();
+        this.url = req.getURI().toString();
+        this.baseUrl = base;
+        this.startTime = System.nanoTime();
+        this.attemptTime = this.startTime;
+        this.bytesSent = 0;
+        if (req instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) req).getEntity();
+            if (entity != null) {
+                this.bytesSent = entity.getContentLength();
+            }
+        }
+    }
+
+    /**
+     * This method returns the method of the request.
+     * @return Method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * This method returns the URL of the request.
+     * @return URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * This method returns the URL of the request with the names and the keys replaced by placeholders, such as
+     * /{cell}/{box}/{collection}/{entitySet}({id}), to group the requests by endpoint. The names of the __ctl entity
+     * sets and of the reserved paths, such as __token or $batch, are kept.
+     * @return URL template
+     */
+    public String getUrlTemplate() {
+        if (this.urlTemplate == null) {
+            this.urlTemplate = UrlTemplate.of(this.url, this.baseUrl);
+        }
+        return this.urlTemplate;
+    }
+
+    /**
+     * This method returns the status code of the response.
+     * @return Status code, 0 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * This method returns the error thrown by the request.
+     * @return Exception, null if a response was received
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * This method returns the size of the request body.
+     * @return Size in bytes, 0 if none, -1 if unknown (streamed)
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * This method returns the size of the response body.
+     * @return Size in bytes, -1 if unknown (streamed without Content-Length)
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * This method returns the time to get a connection, from the pool or by connecting to the server.
+     * @return Time in nanoseconds, -1 if unknown
+     */
+    public long getConnectTime() {
+        if (this.connectedTime == 0) {
+            return -1;
+        }
+        return this.connectedTime - this.attemptTime;
+    }
+
+    /**
+     * This method returns the time from the start of the last attempt to the reception of the response header.
+     * @return Time in nanoseconds, -1 if unknown
+     */
+    public long getTimeToFirstByte() {
+        if (this.firstByteTime == 0) {
+            return -1;
+        }
+        return this.firstByteTime - this.attemptTime;
+    }
+
+    /**
+     * This method returns the total time of the request, including the retries and the reading of the response body
+     * when it is not streamed.
+     * @return Time in nanoseconds
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * This method returns the number of retries of the request.
+     * @return Number of retries
+     */
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * This method returns the use of the HTTP cache by the request.
+     * @return CacheResult
+     */
+    public CacheResult getCacheResult() {
+        return cacheResult;
+    }
+
+    /**
+     * This method returns whether the request failed: no response or a 4xx or 5xx status.
+     * @return true if failed
+     */
+    public boolean isFailed() {
+        return this.error != null || this.statusCode >= HttpStatus.SC_BAD_REQUEST;
+    }
+
+    /**
+     * This method records the start of an attempt.
+     */
+    void attempt() {
+        this.attemptTime = System.nanoTime();
+        this.connectedTime = 0;
+        this.firstByteTime = 0;
+    }
+
+    /**
+     * This method records a retry.
+     */
+    void retried() {
+        this.retryCount++;
+    }
+
+    /**
+     * This method records the time when the connection was obtained.
+     */
+    void connected() {
+        this.connectedTime = System.nanoTime();
+    }
+
+    /**
+     * This method records the time when the response header was received.
+     */
+    void firstByte() {
+        this.firstByteTime = System.nanoTime();
+    }
+
+    /**
+     * This method records the use of the HTTP cache.
+     * @param value CacheResult
+     */
+    void setCacheResult(CacheResult value) {
+        this.cacheResult = value;
+    }
+
+    /**
+     * This method records the end of a request which received a response.
+     * @param res Response
+     */
+    void complete(HttpResponse res) {
+        this.statusCode = res.getStatusLine().getStatusCode();
+        HttpEntity entity = res.getEntity();
+        if (entity == null) {
+            this.bytesReceived = 0;
+        } else {
+            this.bytesReceived = entity.getContentLength();
+        }
+        this.totalTime = System.nanoTime() - this.startTime;
+    }
+
+    /**
+     * This method records the end of a request which failed. Nothing is recorded if a response was received.
+     * @param e Exception
+     */
+    void fail(Exception e) {
+        if (this.statusCode != 0) {
+            // An error status, already recorded.
+            return;
+        }
+        this.error = e;
+        this.bytesReceived = 0;
+        this.totalTime = System.nanoTime() - this.startTime;
+    }
+}
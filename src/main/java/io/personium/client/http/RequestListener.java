@@ -0,0 +1,33 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import io.personium.client.DaoConfig;
+
+/**
+ * This interface is notified of each request sent by RestAdapter, including the $batch requests, once it has
+ * completed. It is registered by {@link DaoConfig#addRequestListener(RequestListener)}, and is used to collect
+ * metrics or traces, see {@link ClientMetrics}. It is called on the thread which sent the request, so it must be
+ * thread-safe and should return quickly. An exception thrown by a listener is ignored.
+ */
+public interface RequestListener {
+    /**
+     * This method is called when a request has completed, successfully or not.
+     * @param event Description of the request
+     */
+    void onRequest(RequestEvent event);
+}
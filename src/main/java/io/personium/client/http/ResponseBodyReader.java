@@ -0,0 +1,127 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+import org.apache.http.HttpEntity;
+
+import io.personium.client.DaoException;
+
+/**
+ * This class reads a response body in bulk into a single byte array and decodes it.
+ */
+final class ResponseBodyReader {
+    /** Initial buffer size when the length of the body is unknown. */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    /** Max size of a Java array. */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * This is the private constructor, the class only has static methods.
+     */
+    private ResponseBodyReader() {
+    }
+
+    /**
+     * This method reads the content of the entity. The buffer is presized from Content-Length when it is known.
+     * @param entity HttpEntity object
+     * @return Buffer of the body, positioned at 0 and limited to the length of the body
+     * @throws IOException Exception thrown
+     */
+    static ByteBuffer read(HttpEntity entity) throws IOException {
+        InputStream is = entity.getContent();
+        if (is == null) {
+            return ByteBuffer.allocate(0);
+        }
+        try {
+            return read(is, entity.getContentLength());
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * This method reads the stream to the end. The stream is not closed.
+     * @param is Stream
+     * @param sizeHint Expected length of the body, negative if unknown
+     * @return Buffer of the body, positioned at 0 and limited to the length of the body
+     * @throws IOException Exception thrown
+     */
+    static ByteBuffer read(InputStream is, long sizeHint) throws IOException {
+        int size = DEFAULT_BUFFER_SIZE;
+        if (sizeHint >= 0 && sizeHint <= MAX_ARRAY_SIZE) {
+            size = (int) sizeHint;
+        }
+        byte[] buf = new byte[size];
+        int len = 0;
+        while (true) {
+            if (len == buf.length) {
+                // The buffer is full. Probe one byte so that a body of the announced length is not copied.
+                int b = is.read();
+                if (b < 0) {
+                    break;
+                }
+                buf = Arrays.copyOf(buf, grow(buf.length));
+                buf[len++] = (byte) b;
+            }
+            int n = is.read(buf, len, buf.length - len);
+            if (n < 0) {
+                break;
+            }
+            len += n;
+        }
+        return ByteBuffer.wrap(buf, 0, len);
+    }
+
+    /**
+     * This method decodes the body. The buffer is not modified.
+     * @param body Buffer of the body
+     * @param enc Character code
+     * @return Body text
+     * @throws DaoException Exception thrown when the character code is not supported
+     */
+    static String decode(ByteBuffer body, String enc) throws DaoException {
+        Charset charset;
+        try {
+            charset = Charset.forName(enc);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw DaoException.create("io exception : unsupported encoding " + enc, 0);
+        }
+        return new String(body.array(), body.arrayOffset() + body.position(), body.remaining(), charset);
+    }
+
+    /**
+     * This method computes the size of the grown buffer.
+     * @param current Current size
+     * @return New size
+     * @throws IOException Exception thrown when the body does not fit in an array
+     */
+    private static int grow(int current) throws IOException {
+        if (current >= MAX_ARRAY_SIZE) {
+            throw new IOException("response body too large");
+        }
+        long next = Math.max((long) current * 2, DEFAULT_BUFFER_SIZE);
+        return (int) Math.min(next, MAX_ARRAY_SIZE);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+/**
+ * This interface is the cache of the responses, keyed by URL. Implementations must be thread-safe, since the cache of
+ * a context is shared by all the threads using it. The entries must not be modified once they are in the cache; a
+ * new entry is put to update them.
+ */
+public interface ResponseCache {
+    /**
+     * This method returns the entry of a URL.
+     * @param key URL as Key
+     * @return CacheEntry object, or null if none or expired
+     */
+    CacheEntry get(String key);
+
+    /**
+     * This method adds an entry, or replaces the entry of the same URL.
+     * @param value CacheEntry object
+     */
+    void put(CacheEntry value);
+
+    /**
+     * This method replaces the entry of a URL only if it is still the expected one, so that an entry removed or
+     * replaced meanwhile is not overwritten. The default implementation is atomic with respect to the methods
+     * synchronized on the cache; implementations locking otherwise should override it.
+     * @param expected Entry expected in the cache
+     * @param value New entry of the same URL
+     * @return true if the entry has been replaced
+     */
+    default boolean replace(CacheEntry expected, CacheEntry value) {
+        synchronized (this) {
+            if (this.get(value.getUrl()) != expected) {
+                return false;
+            }
+            this.put(value);
+            return true;
+        }
+    }
+
+    /**
+     * This method removes the entry of a URL.
+     * @param key URL as Key
+     */
+    void invalidate(String key);
+
+    /**
+     * This method removes all the entries.
+     */
+    void clear();
+
+    /**
+     * This method returns the number of entries.
+     * @return Number of entries
+     */
+    int size();
+
+    /**
+     * This method returns the total weight of the entries.
+     * @return Weight in bytes
+     */
+    long weight();
+
+    /**
+     * This method returns a snapshot of the counters of the cache.
+     * @return CacheStats object
+     */
+    CacheStats stats();
+}
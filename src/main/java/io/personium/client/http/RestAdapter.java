@@ -18,11 +18,14 @@ package io.personium.client.http;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -30,8 +33,12 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
 import io.personium.client.Accessor;
 import io.personium.client.DaoConfig;
@@ -48,6 +55,9 @@ public class RestAdapter implements IRestAdapter {
     // /** ログオブジェクト. */
     // private static Log log = LogFactory.getLog(RestAdapter.class);
 
+    /** Status code of Too Many Requests. */
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
     /** HTTPClient. */
     private HttpClient httpClient;
     // /** アクセス主体. */
@@ -66,12 +76,23 @@ public class RestAdapter implements IRestAdapter {
         this.accessor = as;
         DaoConfig config = accessor.getDaoConfig();
         httpClient = config.getHttpClient();
+        boolean pooled = false;
         if (httpClient == null) {
-            httpClient = HttpClientFactory.create(PersoniumContext.getPlatform(), config.getConnectionTimeout());
+            PersoniumConnectionPool pool = null;
+            if (!HttpClientFactory.TYPE_ANDROID.equalsIgnoreCase(PersoniumContext.getPlatform())) {
+                pool = config.getConnectionPool();
+            }
+            if (pool != null) {
+                // The pool is configured with the proxy settings when it is created.
+                httpClient = pool.getHttpClient();
+                pooled = true;
+            } else {
+                httpClient = HttpClientFactory.create(PersoniumContext.getPlatform(), config.getConnectionTimeout());
+            }
         }
         String proxyHost = config.getProxyHostname();
         int proxyPort = config.getProxyPort();
-        if (proxyHost != null) {
+        if (proxyHost != null && !pooled) {
             HttpHost proxy = new HttpHost(proxyHost, proxyPort);
             httpClient.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
             // ID/Passが共にnullでなければ認証Proxyをセット
@@ -175,6 +196,40 @@ public class RestAdapter implements IRestAdapter {
         return this.request(req);
     }
 
+    /**
+     * This is the GET method to receive the response body as a stream (If-None-Match specified). The response body is
+     * not buffered, so the caller must consume or close the stream to release the connection.
+     * @param url Target Request URL
+     * @param accept Accept Header Value
+     * @param etag Etag value
+     * @return PersoniumResponse object
+     * @throws DaoException Exception thrown
+     */
+    public PersoniumResponse getStream(String url, String accept, String etag) throws DaoException {
+        HttpUriRequest req = new PersoniumRequestBuilder().url(url).method(HttpMethods.GET).acceptEncoding("gzip")
+                .accept(accept).token(getToken()).ifNoneMatch(etag).defaultHeaders(this.accessor.getDefaultHeaders())
+                .build();
+        return this.request(req, true);
+    }
+
+    /**
+     * This is the GET method to receive the response body as a stream using headers (If-None-Match specified). The
+     * response body is not buffered, so the caller must consume or close the stream to release the connection.
+     * @param url Target Request URL
+     * @param headers Request header
+     * @param etag Etag value
+     * @return PersoniumResponse object
+     * @throws DaoException Exception thrown
+     */
+    public PersoniumResponse getStream(String url, Map<String, String> headers, String etag) throws DaoException {
+        HttpUriRequest req = new PersoniumRequestBuilder().url(url).method(HttpMethods.GET).acceptEncoding("gzip")
+                .token(getToken()).ifNoneMatch(etag).defaultHeaders(this.accessor.getDefaultHeaders()).build();
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            req.setHeader(entry.getKey(), entry.getValue());
+        }
+        return this.request(req, true);
+    }
+
     // /**
     // * HEADメソッド.
     // * @param url リクエスト対象URL
@@ -344,6 +399,42 @@ public class RestAdapter implements IRestAdapter {
         return this.request(req);
     }
 
+    /**
+     * This is the POST method that writes the entity as the request body. The Content-Type header is taken from the
+     * entity.
+     * @param url Target URL
+     * @param entity Request body
+     * @return PersoniumResponse object
+     * @throws DaoException Exception thrown
+     */
+    public PersoniumResponse post(String url, HttpEntity entity) throws DaoException {
+        String contentType = null;
+        if (entity.getContentType() != null) {
+            contentType = entity.getContentType().getValue();
+        }
+        HttpUriRequest req = new PersoniumRequestBuilder().url(url).method(HttpMethods.POST).contentType(contentType)
+                .body(entity).token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()).build();
+        return this.request(req);
+    }
+
+    /**
+     * This is the POST method that writes the entity as the request body and receives the response body as a stream.
+     * The response body is not buffered, so the caller must consume or close the stream to release the connection.
+     * @param url Target URL
+     * @param entity Request body
+     * @return PersoniumResponse object
+     * @throws DaoException Exception thrown
+     */
+    public PersoniumResponse postStream(String url, HttpEntity entity) throws DaoException {
+        String contentType = null;
+        if (entity.getContentType() != null) {
+            contentType = entity.getContentType().getValue();
+        }
+        HttpUriRequest req = new PersoniumRequestBuilder().url(url).method(HttpMethods.POST).contentType(contentType)
+                .body(entity).token(getToken()).defaultHeaders(this.accessor.getDefaultHeaders()).build();
+        return this.request(req, true);
+    }
+
     // /**
     // * リクエストヘッダを指定するPOSTメソッド.
     // * @param url リクエスト対象URL
@@ -662,21 +753,377 @@ public class RestAdapter implements IRestAdapter {
      * @throws DaoException Exception thrown
      */
     private PersoniumResponse request(HttpUriRequest httpReq) throws DaoException {
+        return request(httpReq, false);
+    }
+
+    /**
+     * This method is used to make HTTP requests may be subject to response body. Unless streaming is requested, the
+     * response body is read into memory so that the connection goes back to the pool even if the body is never read.
+     * The request is only described by a RequestEvent when a RequestListener is registered or when the flight
+     * recorder event io.personium.client.HttpExchange is enabled.
+     * @param httpReq HTTPRequest
+     * @param streaming true to leave the response body unread on the connection
+     * @return PersoniumResponse object
+     * @throws DaoException Exception thrown
+     */
+    private PersoniumResponse request(HttpUriRequest httpReq, boolean streaming) throws DaoException {
+        List<RequestListener> listeners = this.accessor.getDaoConfig().getRequestListeners();
+        HttpExchangeEvent jfr = new HttpExchangeEvent();
+        if (listeners.isEmpty() && !jfr.isEnabled()) {
+            return this.exchange(httpReq, streaming, null);
+        }
+        RequestEvent event = new RequestEvent(httpReq, this.accessor.getBaseUrl());
+        jfr.begin();
+        try {
+            return this.exchange(httpReq, streaming, event);
+        } catch (DaoException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            jfr.commit(event);
+            fireRequest(listeners, event);
+        }
+    }
+
+    /**
+     * This method passes a completed request to the listeners. A listener throwing an exception does not break the
+     * request nor the other listeners.
+     * @param listeners RequestListener objects
+     * @param event Event of the request
+     */
+    static void fireRequest(List<RequestListener> listeners, RequestEvent event) {
+        for (RequestListener listener : listeners) {
+            try {
+                listener.onRequest(event);
+            } catch (RuntimeException e) {
+                // A listener must not break the request.
+                continue;
+            }
+        }
+    }
+
+    /**
+     * This method sends a request through the HTTP cache of the DaoConfig, if enabled, and records it in an event.
+     * @param httpReq HTTPRequest
+     * @param streaming true to leave the response body unread on the connection
+     * @param event Event of the request, null if not recorded
+     * @return PersoniumResponse object
+     * @throws DaoException Exception thrown
+     */
+    private PersoniumResponse exchange(HttpUriRequest httpReq, boolean streaming, RequestEvent event)
+            throws DaoException {
+        HttpCache cache = this.httpCache();
+        HttpCacheEntry cached = null;
+        boolean cacheable = false;
+        if (cache != null) {
+            cacheable = HttpCache.isCacheable(httpReq);
+            if (cacheable) {
+                cached = cache.lookup(httpReq);
+                if (cached != null && cached.isFresh(System.nanoTime()) && HttpCache.matches(httpReq, cached)) {
+                    return this.cachedResponse(cached, event, RequestEvent.CacheResult.HIT);
+                }
+                if (cached != null) {
+                    HttpCache.addValidators(httpReq, cached);
+                }
+            } else {
+                cache.invalidate(httpReq);
+            }
+        }
         try {
-            HttpResponse objResponse = httpClient.execute(httpReq);
+            long requestTime = System.nanoTime();
+            HttpResponse objResponse = this.executeWithRetry(httpReq, streaming, event);
+            int statusCode = objResponse.getStatusLine().getStatusCode();
+            if (cached != null && statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                // The kept response is still valid.
+                EntityUtils.consume(objResponse.getEntity());
+                return this.cachedResponse(cache.revalidate(httpReq, cached, objResponse, requestTime), event,
+                        RequestEvent.CacheResult.REVALIDATED);
+            }
+            if (!streaming || (cacheable && cache.shouldBuffer(objResponse))) {
+                bufferEntity(objResponse);
+            }
+            if (cacheable) {
+                cache.store(httpReq, objResponse, requestTime);
+            }
+            if (event != null) {
+                if (cacheable) {
+                    event.setCacheResult(RequestEvent.CacheResult.MISS);
+                }
+                event.complete(objResponse);
+            }
             PersoniumResponse dcRes = new PersoniumResponse(objResponse);
 
             this.accessor.setResHeaders(objResponse.getAllHeaders());
-            int statusCode = objResponse.getStatusLine().getStatusCode();
             if (statusCode >= STATUS300 && statusCode != HttpStatus.SC_MOVED_TEMPORARILY) {
                 throw DaoException.create(dcRes.bodyAsString(), statusCode);
             }
             return dcRes;
+        } catch (RejectedRequestException rre) {
+            throw DaoException.create(rre.getMessage(), rre.getCode());
         } catch (IOException ioe) {
             throw DaoException.create("io exception : " + ioe.getMessage(), 0);
         }
     }
 
+    /**
+     * This method sends a request, and sends it again after an I/O error or a busy server status as long as the
+     * RetryPolicy of the DaoConfig allows it. A request body read from a stream is kept in memory to be sent again.
+     * Unless streaming is requested, the response body is read by the attempt, so that a truncated body is retried. A
+     * request refused by the CircuitBreaker or the ConcurrencyLimiter is not retried.
+     * @param httpReq HTTPRequest
+     * @param streaming true to leave the response body unread on the connection
+     * @param event Event of the request, null if not recorded
+     * @return HTTP response, the last one received when no more retry is allowed
+     * @throws IOException Exception thrown by the last attempt
+     */
+    private HttpResponse executeWithRetry(HttpUriRequest httpReq, boolean streaming, RequestEvent event)
+            throws IOException {
+        RetryPolicy policy = this.accessor.getDaoConfig().getRetryPolicy();
+        if (policy == null || !policy.isRetryable(httpReq.getMethod())) {
+            return this.attempt(httpReq, streaming, event);
+        }
+        ReplayableEntity.wrap(httpReq, policy.getMaxReplayBytes());
+        long startTime = System.nanoTime();
+        for (int retry = 1;; retry++) {
+            HttpResponse res;
+            try {
+                res = this.attempt(httpReq, streaming, event);
+            } catch (IOException e) {
+                if (e instanceof RejectedRequestException || !policy.isRetryable(e)) {
+                    throw e;
+                }
+                long delay = nextDelay(policy, httpReq, retry, startTime, null);
+                if (delay < 0) {
+                    policy.gaveUp();
+                    throw e;
+                }
+                pause(policy, delay, event);
+                continue;
+            }
+            if (!policy.isRetryable(res.getStatusLine().getStatusCode())) {
+                if (retry > 1) {
+                    policy.recovered();
+                }
+                return res;
+            }
+            long delay = nextDelay(policy, httpReq, retry, startTime, res);
+            if (delay < 0) {
+                policy.gaveUp();
+                return res;
+            }
+            EntityUtils.consume(res.getEntity());
+            pause(policy, delay, event);
+        }
+    }
+
+    /**
+     * This method sends a request once, through the CircuitBreaker and the ConcurrencyLimiter of the DaoConfig when
+     * they are enabled, and records its outcome for the host. Unless streaming is requested, the response body is
+     * read into memory.
+     * @param httpReq HTTPRequest
+     * @param streaming true to leave the response body unread on the connection
+     * @param event Event of the request, null if not recorded
+     * @return HTTP response
+     * @throws IOException Exception thrown, RejectedRequestException if the request is refused
+     */
+    private HttpResponse attempt(HttpUriRequest httpReq, boolean streaming, RequestEvent event) throws IOException {
+        DaoConfig config = this.accessor.getDaoConfig();
+        CircuitBreaker breaker = config.getCircuitBreaker();
+        ConcurrencyLimiter limiter = config.getConcurrencyLimiter();
+        if (breaker == null && limiter == null) {
+            return this.send(httpReq, streaming, event);
+        }
+        String host = hostOf(httpReq);
+        if (limiter != null && !limiter.tryAcquire(host)) {
+            throw new RejectedRequestException("too many requests in flight to " + host,
+                    DaoException.CONCURRENCY_LIMITED);
+        }
+        if (breaker != null && !breaker.tryAcquire(host)) {
+            if (limiter != null) {
+                limiter.cancel(host);
+            }
+            throw new RejectedRequestException("circuit open for " + host, DaoException.CIRCUIT_OPEN);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            HttpResponse res = this.send(httpReq, streaming, event);
+            failed = isServerFailure(res.getStatusLine().getStatusCode());
+            return res;
+        } finally {
+            long latency = System.nanoTime() - start;
+            if (breaker != null) {
+                breaker.onResult(host, failed, latency);
+            }
+            if (limiter != null) {
+                limiter.onResult(host, failed, latency);
+            }
+        }
+    }
+
+    /**
+     * This method sends a request once and, unless streaming is requested, reads the response body into memory.
+     * @param httpReq HTTPRequest
+     * @param streaming true to leave the response body unread on the connection
+     * @param event Event of the request, null if not recorded
+     * @return HTTP response
+     * @throws IOException Exception thrown
+     */
+    private HttpResponse send(HttpUriRequest httpReq, boolean streaming, RequestEvent event) throws IOException {
+        if (event != null) {
+            event.attempt();
+        }
+        HttpResponse res = this.execute(httpReq, streaming, event);
+        if (!streaming) {
+            bufferEntity(res);
+        }
+        return res;
+    }
+
+    /**
+     * This method returns the host of a request, as scheme://host:port.
+     * @param httpReq HTTPRequest
+     * @return Host
+     */
+    private static String hostOf(HttpUriRequest httpReq) {
+        HttpHost host = URIUtils.extractHost(httpReq.getURI());
+        if (host == null) {
+            return "";
+        }
+        return host.toURI();
+    }
+
+    /**
+     * This method checks whether a response status tells that the server fails or is overloaded.
+     * @param statusCode Status code
+     * @return true for a 5xx or 429 status
+     */
+    private static boolean isServerFailure(int statusCode) {
+        return statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR || statusCode == STATUS_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * This method computes the delay before the next attempt of a request.
+     * @param policy Retry policy
+     * @param httpReq HTTPRequest
+     * @param retry Number of the retry, 1 for the first one
+     * @param startTime System.nanoTime() of the first attempt
+     * @param res Response retried, null after an I/O error
+     * @return Delay in milliseconds, or -1 not to retry
+     */
+    private static long nextDelay(RetryPolicy policy, HttpUriRequest httpReq, int retry, long startTime,
+            HttpResponse res) {
+        if (!ReplayableEntity.isReplayable(httpReq)) {
+            return -1;
+        }
+        return policy.nextDelay(retry, startTime, res);
+    }
+
+    /**
+     * This method waits before a retry.
+     * @param policy Retry policy
+     * @param delay Delay in milliseconds
+     * @param event Event of the request, null if not recorded
+     * @throws InterruptedIOException Exception thrown if the thread is interrupted
+     */
+    private static void pause(RetryPolicy policy, long delay, RequestEvent event) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a retry");
+        }
+        policy.retried();
+        if (event != null) {
+            event.retried();
+        }
+    }
+
+    /**
+     * This method sends a request, sharing the exchange with the identical requests in flight when the
+     * RequestCoalescer of the DaoConfig is enabled. A shared response body is read into memory, unless streaming is
+     * requested and the body is large or of unknown length.
+     * @param httpReq HTTPRequest
+     * @param streaming true to leave the response body unread on the connection
+     * @param event Event of the request, null if not recorded
+     * @return HTTP response
+     * @throws IOException Exception thrown
+     */
+    private HttpResponse execute(final HttpUriRequest httpReq, final boolean streaming, final RequestEvent event)
+            throws IOException {
+        RequestCoalescer coalescer = this.accessor.getDaoConfig().getRequestCoalescer();
+        if (coalescer == null || !RequestCoalescer.isCoalescable(httpReq)) {
+            return this.execute(httpReq, event);
+        }
+        return coalescer.execute(httpReq, () -> {
+            HttpResponse res = this.execute(httpReq, event);
+            HttpEntity entity = res.getEntity();
+            if (!streaming || (entity != null && entity.getContentLength() >= 0
+                    && entity.getContentLength() <= HttpCache.MAX_STREAMED_BODY)) {
+                bufferEntity(res);
+            }
+            return res;
+        });
+    }
+
+    /**
+     * This method returns the HTTP cache of the DaoConfig.
+     * @return HttpCache object, or null if disabled
+     */
+    private HttpCache httpCache() {
+        ResponseCache store = this.accessor.getDaoConfig().getHttpCache();
+        if (store == null) {
+            return null;
+        }
+        return new HttpCache(store);
+    }
+
+    /**
+     * This method sends a request with the HttpClient, recording its timing in the event.
+     * @param httpReq HTTPRequest
+     * @param event Event of the request, null if not recorded
+     * @return HTTP response
+     * @throws IOException Exception thrown
+     */
+    private HttpResponse execute(HttpUriRequest httpReq, RequestEvent event) throws IOException {
+        if (event == null) {
+            return httpClient.execute(httpReq);
+        }
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(RequestEvent.ATTRIBUTE, event);
+        return httpClient.execute(httpReq, context);
+    }
+
+    /**
+     * This method returns a response kept by the HTTP cache.
+     * @param cached Kept response
+     * @param event Event of the request, null if not recorded
+     * @param result Use of the cache recorded in the event
+     * @return PersoniumResponse object
+     */
+    private PersoniumResponse cachedResponse(HttpCacheEntry cached, RequestEvent event,
+            RequestEvent.CacheResult result) {
+        HttpResponse objResponse = cached.toResponse();
+        if (event != null) {
+            event.setCacheResult(result);
+            event.complete(objResponse);
+        }
+        this.accessor.setResHeaders(objResponse.getAllHeaders());
+        return new PersoniumResponse(objResponse);
+    }
+
+    /**
+     * This method reads the response body into memory and releases the connection.
+     * @param response HTTP response
+     * @throws IOException Exception thrown
+     */
+    public static void bufferEntity(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.isStreaming()) {
+            response.setEntity(new BufferedBodyEntity(entity));
+        }
+    }
+
     // /**
     // * Accessorからトークンを取得する.
     // * @return トークン
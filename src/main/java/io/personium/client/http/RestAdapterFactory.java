@@ -16,7 +16,11 @@
  */
 package io.personium.client.http;
 
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
 import io.personium.client.Accessor;
+import io.personium.client.DaoException;
+import io.personium.client.PersoniumContext;
 
 ///**
 // * RestAdapterを生成するクラス.
@@ -52,4 +56,22 @@ public class RestAdapterFactory {
             return (IRestAdapter) new RestAdapter(accessor);
         }
     }
+
+    /**
+     * It generates an AsyncRestAdapter using the non-blocking client of the DaoConfig.
+     * @param accessor Accessor
+     * @return AsyncRestAdapter
+     * @throws DaoException The accessor is in batch mode, or the platform does not support non-blocking requests
+     */
+    public static AsyncRestAdapter createAsync(Accessor accessor) throws DaoException {
+        if (accessor.isBatchMode()) {
+            throw new DaoException("Asynchronous requests are not supported in batch mode");
+        }
+        CloseableHttpAsyncClient client = accessor.getDaoConfig().getAsyncHttpClient();
+        if (client == null) {
+            throw new DaoException(
+                    "Asynchronous requests are not supported on platform " + PersoniumContext.getPlatform());
+        }
+        return new AsyncRestAdapter(accessor, client);
+    }
 }
@@ -0,0 +1,354 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+
+import io.personium.client.DaoConfig;
+
+/**
+ * It creates a new object of RetryPolicy. This class decides whether and when RestAdapter sends a request again after
+ * an I/O error or a response telling the server is busy (429 and 503 by default). The delay before a retry grows
+ * exponentially with a random jitter, unless the response has a Retry-After header. The retries of a request are
+ * bounded by a number of attempts and by the time elapsed since the first attempt. Only the idempotent methods (GET,
+ * HEAD, OPTIONS, PUT, DELETE, PROPFIND) are retried, POST when {@link #setRetryPost(boolean)} is set. A request body
+ * read from a stream is kept in memory up to {@link #getMaxReplayBytes()} bytes so that it can be sent again. It is
+ * enabled by {@link DaoConfig#setRetryPolicy(RetryPolicy)}, and the decisions can be changed by overriding
+ * {@link #isRetryable(String)}, {@link #isRetryable(int)}, {@link #isRetryable(IOException)} and
+ * {@link #backoff(int)}. The counters are thread-safe.
+ */
+public class RetryPolicy {
+    /** Default max number of attempts of a request, including the first one. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /** Default delay before the first retry, in milliseconds. */
+    public static final long DEFAULT_INITIAL_BACKOFF = 200;
+    /** Default max delay between two attempts, in milliseconds. */
+    public static final long DEFAULT_MAX_BACKOFF = 10000;
+    /** Default max time from the first attempt to the start of the last one, in milliseconds. */
+    public static final long DEFAULT_MAX_ELAPSED = 30000;
+    /** Default max size of a streamed request body kept to be sent again. */
+    public static final int DEFAULT_MAX_REPLAY_BYTES = 1024 * 1024;
+    /** Status code of Too Many Requests. */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    /** Idempotent methods. */
+    private static final Set<String> IDEMPOTENT = new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT",
+            "DELETE", "PROPFIND"));
+
+    /** Max number of attempts of a request. */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    /** Delay before the first retry in milliseconds. */
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    /** Max delay between two attempts in milliseconds. */
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    /** Max time from the first attempt to the start of the last one in milliseconds. */
+    private long maxElapsed = DEFAULT_MAX_ELAPSED;
+    /** Max size of a streamed request body kept to be sent again. */
+    private int maxReplayBytes = DEFAULT_MAX_REPLAY_BYTES;
+    /** Whether POST requests are retried. */
+    private boolean retryPost = false;
+    /** Status codes retried. */
+    private Set<Integer> retryStatuses = new HashSet<Integer>(Arrays.asList(SC_TOO_MANY_REQUESTS,
+            HttpStatus.SC_SERVICE_UNAVAILABLE));
+
+    /** Number of retries. */
+    private final AtomicLong retryCount = new AtomicLong();
+    /** Number of requests which succeeded after a retry. */
+    private final AtomicLong recoveredCount = new AtomicLong();
+    /** Number of requests which failed after the last allowed attempt. */
+    private final AtomicLong giveUpCount = new AtomicLong();
+
+    /**
+     * This method returns the max number of attempts of a request, including the first one.
+     * @return Number of attempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * This method sets the max number of attempts of a request, including the first one.
+     * @param value Number of attempts, 1 for no retry
+     */
+    public void setMaxAttempts(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("max attempts must be positive");
+        }
+        this.maxAttempts = value;
+    }
+
+    /**
+     * This method returns the delay before the first retry.
+     * @return Delay in milliseconds
+     */
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * This method sets the delay before the first retry. It doubles at each retry, up to the max delay.
+     * @param value Delay in milliseconds
+     */
+    public void setInitialBackoff(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("backoff can't be negative");
+        }
+        this.initialBackoff = value;
+    }
+
+    /**
+     * This method returns the max delay between two attempts.
+     * @return Delay in milliseconds
+     */
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * This method sets the max delay between two attempts.
+     * @param value Delay in milliseconds
+     */
+    public void setMaxBackoff(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("backoff can't be negative");
+        }
+        this.maxBackoff = value;
+    }
+
+    /**
+     * This method returns the retry budget of a request: the max time from the first attempt to the start of the
+     * last one.
+     * @return Time in milliseconds
+     */
+    public long getMaxElapsed() {
+        return maxElapsed;
+    }
+
+    /**
+     * This method sets the retry budget of a request. A retry which would start later, for example because of a long
+     * Retry-After, is not done.
+     * @param value Time in milliseconds
+     */
+    public void setMaxElapsed(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("max elapsed time can't be negative");
+        }
+        this.maxElapsed = value;
+    }
+
+    /**
+     * This method returns the max size of a streamed request body kept in memory to be sent again.
+     * @return Size in bytes
+     */
+    public int getMaxReplayBytes() {
+        return maxReplayBytes;
+    }
+
+    /**
+     * This method sets the max size of a streamed request body kept in memory to be sent again. A request whose body
+     * is larger is not retried once its body has been sent.
+     * @param value Size in bytes
+     */
+    public void setMaxReplayBytes(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("max replay size can't be negative");
+        }
+        this.maxReplayBytes = value;
+    }
+
+    /**
+     * This method returns whether POST requests are retried.
+     * @return true if retried
+     */
+    public boolean isRetryPost() {
+        return retryPost;
+    }
+
+    /**
+     * This method sets whether POST requests are retried. POST is not idempotent: only enable it when the requests
+     * sent can safely be processed twice by the server.
+     * @param value true to retry POST requests
+     */
+    public void setRetryPost(boolean value) {
+        this.retryPost = value;
+    }
+
+    /**
+     * This method sets the status codes of the responses retried.
+     * @param codes Status codes, 429 and 503 by default
+     */
+    public void setRetryStatuses(int... codes) {
+        Set<Integer> statuses = new HashSet<Integer>();
+        for (int code : codes) {
+            statuses.add(code);
+        }
+        this.retryStatuses = statuses;
+    }
+
+    /**
+     * This method returns the number of retries done.
+     * @return Number of retries
+     */
+    public long getRetryCount() {
+        return this.retryCount.get();
+    }
+
+    /**
+     * This method returns the number of requests which succeeded after at least one retry.
+     * @return Number of requests
+     */
+    public long getRecoveredCount() {
+        return this.recoveredCount.get();
+    }
+
+    /**
+     * This method returns the number of requests which still failed when no more retry was allowed.
+     * @return Number of requests
+     */
+    public long getGiveUpCount() {
+        return this.giveUpCount.get();
+    }
+
+    /**
+     * This method checks whether the requests of a method may be retried.
+     * @param method Method
+     * @return true if idempotent, or POST when enabled
+     */
+    public boolean isRetryable(String method) {
+        String m = method.toUpperCase(Locale.ROOT);
+        return IDEMPOTENT.contains(m) || (this.retryPost && "POST".equals(m));
+    }
+
+    /**
+     * This method checks whether a response status is retried.
+     * @param statusCode Status code
+     * @return true if retried
+     */
+    public boolean isRetryable(int statusCode) {
+        return this.retryStatuses.contains(statusCode);
+    }
+
+    /**
+     * This method checks whether an I/O error is retried. Unknown hosts and TLS errors are not.
+     * @param e I/O error
+     * @return true if retried
+     */
+    public boolean isRetryable(IOException e) {
+        return !(e instanceof UnknownHostException) && !(e instanceof SSLException);
+    }
+
+    /**
+     * This method computes the delay before a retry: a random time up to the exponential backoff ("full jitter").
+     * @param retry Number of the retry, 1 for the first one
+     * @return Delay in milliseconds
+     */
+    public long backoff(int retry) {
+        long ceiling = this.initialBackoff;
+        for (int i = 1; i < retry && ceiling < this.maxBackoff; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, this.maxBackoff);
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * This method computes the delay before the next attempt of a request, or tells not to retry it.
+     * @param retry Number of the retry, 1 for the first one
+     * @param startTime System.nanoTime() of the first attempt
+     * @param response Response retried, null after an I/O error
+     * @return Delay in milliseconds, or -1 not to retry
+     */
+    long nextDelay(int retry, long startTime, HttpResponse response) {
+        if (retry >= this.maxAttempts) {
+            return -1;
+        }
+        long delay = this.backoff(retry);
+        if (response != null) {
+            long retryAfter = retryAfter(response);
+            if (retryAfter >= 0) {
+                delay = retryAfter;
+            }
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        if (elapsed + delay > this.maxElapsed) {
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * This method counts a retry.
+     */
+    void retried() {
+        this.retryCount.incrementAndGet();
+    }
+
+    /**
+     * This method counts a request which succeeded after a retry.
+     */
+    void recovered() {
+        this.recoveredCount.incrementAndGet();
+    }
+
+    /**
+     * This method counts a request which still failed after its retries.
+     */
+    void gaveUp() {
+        this.giveUpCount.incrementAndGet();
+    }
+
+    /**
+     * This method reads the Retry-After header of a response, in seconds or as a date.
+     * @param response Response
+     * @return Delay in milliseconds, or -1 if none or invalid
+     */
+    private static long retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            if (date == null) {
+                return -1;
+            }
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+}
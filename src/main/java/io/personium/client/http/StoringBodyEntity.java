@@ -0,0 +1,171 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * This class is a streamed response body which is stored by a BodyStore while the caller reads it. The response is
+ * kept once the body has been read to the end. When the body is too large or can't be written, or when the caller
+ * closes the stream before the end, the stored part is dropped and the caller keeps reading the live stream.
+ */
+final class StoringBodyEntity extends HttpEntityWrapper {
+    /** Mask of a byte read as an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Sink of the body, null once it has been committed or aborted. */
+    private BodyStore.Sink sink;
+    /** Stream of the body, null until it is opened. */
+    private InputStream content;
+
+    /**
+     * This is the parameterized constructor.
+     * @param entity Streamed entity of the response
+     * @param bodySink Sink of the body
+     */
+    StoringBodyEntity(HttpEntity entity, BodyStore.Sink bodySink) {
+        super(entity);
+        this.sink = bodySink;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (this.content == null) {
+            this.content = new StoringInputStream(super.getContent());
+        }
+        return this.content;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = this.getContent()) {
+            byte[] buf = new byte[ResponseBodyReader.DEFAULT_BUFFER_SIZE];
+            int n = in.read(buf);
+            while (n >= 0) {
+                out.write(buf, 0, n);
+                n = in.read(buf);
+            }
+        }
+    }
+
+    /**
+     * This method writes a part of the body to the sink. The body is no longer stored once the sink fails.
+     * @param b Bytes
+     * @param off Offset of the part
+     * @param len Length of the part
+     */
+    private void store(byte[] b, int off, int len) {
+        if (this.sink == null || len <= 0) {
+            return;
+        }
+        try {
+            this.sink.write(b, off, len);
+        } catch (IOException e) {
+            // The cache is best effort: the response is just not kept.
+            this.abort();
+        }
+    }
+
+    /**
+     * This method keeps the response once the body has been read to the end.
+     */
+    private void commit() {
+        if (this.sink == null) {
+            return;
+        }
+        BodyStore.Sink s = this.sink;
+        this.sink = null;
+        try {
+            s.commit();
+        } catch (IOException e) {
+            s.abort();
+        }
+    }
+
+    /**
+     * This method drops the part of the body already stored.
+     */
+    private void abort() {
+        if (this.sink != null) {
+            this.sink.abort();
+            this.sink = null;
+        }
+    }
+
+    /**
+     * This class passes the bytes read by the caller to the sink.
+     */
+    private final class StoringInputStream extends FilterInputStream {
+        /**
+         * This is the parameterized constructor.
+         * @param in Live stream of the body
+         */
+        StoringInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = this.read(one, 0, 1);
+            if (n <= 0) {
+                return -1;
+            }
+            return one[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = super.read(b, off, len);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            if (n < 0) {
+                commit();
+            } else {
+                store(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abort();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            abort();
+            super.close();
+        }
+    }
+}
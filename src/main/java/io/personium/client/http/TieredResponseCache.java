@@ -0,0 +1,119 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+
+/**
+ * It creates a new object of TieredResponseCache. This class is a ResponseCache keeping the small responses in memory
+ * and the large responses of the HTTP cache on disk. A response is looked up in memory first, then on disk.
+ */
+public class TieredResponseCache implements ResponseCache, BodyStore {
+    /** Cache of the small responses. */
+    private final ResponseCache memory;
+    /** Cache of the large responses. */
+    private final DiskResponseCache disk;
+    /** Min weight in bytes of the responses kept on disk. */
+    private final long threshold;
+
+    /**
+     * This is the parameterized constructor.
+     * @param memoryCache Cache of the small responses, such as a CacheMap
+     * @param diskCache Cache of the large responses
+     * @param diskThreshold Min weight in bytes of the responses kept on disk
+     */
+    public TieredResponseCache(ResponseCache memoryCache, DiskResponseCache diskCache, long diskThreshold) {
+        this.memory = memoryCache;
+        this.disk = diskCache;
+        this.threshold = diskThreshold;
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        CacheEntry entry = this.memory.get(key);
+        if (entry == null) {
+            entry = this.disk.get(key);
+        }
+        return entry;
+    }
+
+    @Override
+    public void put(CacheEntry value) {
+        if (value instanceof HttpCacheEntry && value.getWeight() >= this.threshold) {
+            this.memory.invalidate(value.getUrl());
+            this.disk.put(value);
+        } else {
+            this.disk.invalidate(value.getUrl());
+            this.memory.put(value);
+        }
+    }
+
+    @Override
+    public boolean replace(CacheEntry expected, CacheEntry value) {
+        if (value instanceof HttpCacheEntry && value.getWeight() >= this.threshold) {
+            return ResponseCache.super.replace(expected, value);
+        }
+        this.disk.invalidate(value.getUrl());
+        return this.memory.replace(expected, value);
+    }
+
+    @Override
+    public boolean acceptsBody(long length) {
+        return (length < 0 || length >= this.threshold) && this.disk.acceptsBody(length);
+    }
+
+    @Override
+    public Sink openBody(HttpCacheEntry head) throws IOException {
+        this.memory.invalidate(head.getUrl());
+        return this.disk.openBody(head);
+    }
+
+    @Override
+    public void invalidate(String key) {
+        this.memory.invalidate(key);
+        this.disk.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        this.memory.clear();
+        this.disk.clear();
+    }
+
+    @Override
+    public int size() {
+        return this.memory.size() + this.disk.size();
+    }
+
+    @Override
+    public long weight() {
+        return this.memory.weight() + this.disk.weight();
+    }
+
+    /**
+     * This method returns the statistics of both tiers. A response found on disk counts as a miss of the memory tier
+     * and a hit of the disk tier.
+     * @return CacheStats object
+     */
+    @Override
+    public CacheStats stats() {
+        CacheStats m = this.memory.stats();
+        CacheStats d = this.disk.stats();
+        return new CacheStats(m.getHitCount() + d.getHitCount(), d.getMissCount(),
+                m.getEvictionCount() + d.getEvictionCount(), m.getExpirationCount() + d.getExpirationCount());
+    }
+}
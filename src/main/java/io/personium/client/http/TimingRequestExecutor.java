@@ -0,0 +1,50 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * It creates a new object of TimingRequestExecutor. This class is the request executor of the connection pool: it
+ * records in the RequestEvent of the HttpContext, if any, when the connection was obtained and when the response
+ * header was received.
+ */
+final class TimingRequestExecutor extends HttpRequestExecutor {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+            throws IOException, HttpException {
+        Object attribute = context.getAttribute(RequestEvent.ATTRIBUTE);
+        if (!(attribute instanceof RequestEvent)) {
+            return super.execute(request, conn, context);
+        }
+        RequestEvent event = (RequestEvent) attribute;
+        event.connected();
+        HttpResponse res = super.execute(request, conn, context);
+        event.firstByte();
+        return res;
+    }
+}
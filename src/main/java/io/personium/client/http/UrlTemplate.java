@@ -0,0 +1,175 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.http;
+
+/**
+ * This class computes the template of a Personium URL: the path with the cell, Box and collection names, the keys
+ * and the WebDAV paths replaced by placeholders, so that the requests to the same endpoint share a template.
+ */
+final class UrlTemplate {
+    /** Placeholders of the cell, Box and collection levels. */
+    private static final String[] LEVELS = {"{cell}", "{box}", "{collection}"};
+    /** Placeholder of a key. */
+    private static final String KEY = "({id})";
+    /** Placeholder of the rest of a path. */
+    private static final String PATH = "/{path}";
+    /** Prefix of the reserved segments. */
+    private static final String RESERVED = "__";
+    /** Reserved segment of the OData control objects. */
+    private static final String CTL = "__ctl";
+    /** Prefix of the OData system query options and segments. */
+    private static final String SYSTEM = "$";
+
+    /**
+     * This is the default constructor made private to disallow instantiation of objects of this class.
+     */
+    private UrlTemplate() {
+    }
+
+    /**
+     * This method computes the template of a URL. A URL under the base URL is a unit-level or path-based cell URL;
+     * another URL is a host-based cell URL, whose path starts at the cell. A segment without key under a collection is
+     * an EntitySet when it is followed by a system segment such as $count, or when it ends a URL with a system query
+     * option such as $top; otherwise it can't be told apart from a WebDAV path.
+     * @param url URL
+     * @param baseUrl Base URL of the unit, may be null
+     * @return Template, such as /{cell}/{box}/{collection}/{entitySet}({id})
+     */
+    static String of(String url, String baseUrl) {
+        String path = stripQuery(url);
+        boolean systemQuery = path.length() < url.length() && url.indexOf(SYSTEM, path.length()) >= 0;
+        StringBuilder sb = new StringBuilder();
+        int level = 0;
+        if (baseUrl != null && path.startsWith(baseUrl)) {
+            path = path.substring(baseUrl.length());
+        } else {
+            path = pathOf(path);
+            sb.append('/').append(LEVELS[0]);
+            level = 1;
+        }
+        String[] segments = path.split("/");
+        boolean ctl = false;
+        boolean keyed = false;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (ctl || segment.startsWith(SYSTEM)) {
+                sb.append('/').append(stripKey(segment));
+            } else if (segment.startsWith(RESERVED)) {
+                sb.append('/').append(stripKey(segment));
+                ctl = segment.startsWith(CTL);
+                if (!ctl && i < segments.length - 1) {
+                    sb.append(PATH);
+                    break;
+                }
+            } else if (level < LEVELS.length) {
+                sb.append('/').append(LEVELS[level++]);
+            } else if (keyed && segment.startsWith("_")) {
+                sb.append("/_{navigation}").append(keyOf(segment));
+            } else if (!keyed && segment.indexOf('(') > 0) {
+                sb.append("/{entitySet}").append(KEY);
+                keyed = true;
+            } else if (!keyed && isEntitySet(segments, i, systemQuery)) {
+                sb.append("/{entitySet}");
+                keyed = true;
+            } else {
+                sb.append(PATH);
+                break;
+            }
+        }
+        if (sb.length() == 0) {
+            return "/";
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This method checks whether a segment without key is an EntitySet.
+     * @param segments Segments of the path
+     * @param index Index of the segment
+     * @param systemQuery Whether the query of the URL has a system query option
+     * @return true if the segment is followed by a system segment, or ends a URL with a system query option
+     */
+    private static boolean isEntitySet(String[] segments, int index, boolean systemQuery) {
+        if (index == segments.length - 1) {
+            return systemQuery;
+        }
+        return segments[index + 1].startsWith(SYSTEM);
+    }
+
+    /**
+     * This method replaces the key of a segment by a placeholder.
+     * @param segment Segment, such as Box('name')
+     * @return Segment, such as Box({id})
+     */
+    private static String stripKey(String segment) {
+        int index = segment.indexOf('(');
+        if (index < 0) {
+            return segment;
+        }
+        return segment.substring(0, index) + KEY;
+    }
+
+    /**
+     * This method returns the key placeholder of a segment, if it has a key.
+     * @param segment Segment
+     * @return Key placeholder, or an empty string
+     */
+    private static String keyOf(String segment) {
+        if (segment.indexOf('(') < 0) {
+            return "";
+        }
+        return KEY;
+    }
+
+    /**
+     * This method removes the query and the fragment of a URL.
+     * @param url URL
+     * @return URL without query
+     */
+    private static String stripQuery(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end);
+    }
+
+    /**
+     * This method returns the path of a URL.
+     * @param url URL without query
+     * @return Path
+     */
+    private static String pathOf(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return url;
+        }
+        int slash = url.indexOf('/', scheme + "://".length());
+        if (slash < 0) {
+            return "";
+        }
+        return url.substring(slash);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.personium.client.DaoException;
+
+/**
+ * This is the JsonCodec based on the Jackson streaming parser. It is used by default when jackson-core is on the class
+ * path, and builds the same json-simple values as JsonSimpleCodec.
+ */
+public class JacksonJsonCodec implements JsonCodec {
+    /** Factory of the parsers, thread safe. */
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(JsonFactory.Feature.INTERN_FIELD_NAMES).build();
+
+    /**
+     * This method parses a JSON text from a stream. The encoding is detected by Jackson.
+     * @param in Stream
+     * @return Parsed value
+     * @throws IOException Exception thrown
+     * @throws DaoException Exception thrown
+     */
+    @Override
+    public Object parse(InputStream in) throws IOException, DaoException {
+        return parse(FACTORY.createParser(in));
+    }
+
+    /**
+     * This method parses a JSON text from a reader.
+     * @param reader Reader
+     * @return Parsed value
+     * @throws IOException Exception thrown
+     * @throws DaoException Exception thrown
+     */
+    @Override
+    public Object parse(Reader reader) throws IOException, DaoException {
+        return parse(FACTORY.createParser(reader));
+    }
+
+    /**
+     * This method parses a single JSON value and checks that nothing follows it.
+     * @param parser Parser
+     * @return Parsed value
+     * @throws IOException Exception thrown
+     * @throws DaoException Exception thrown
+     */
+    private Object parse(JsonParser parser) throws IOException, DaoException {
+        try {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw DaoException.create("parse exception: empty body", 0);
+            }
+            Object value = readValue(parser, token);
+            if (parser.nextToken() != null) {
+                throw DaoException.create("parse exception: unexpected token " + parser.currentToken(), 0);
+            }
+            return value;
+        } catch (JsonProcessingException e) {
+            throw DaoException.create("parse exception: " + e.getOriginalMessage(), 0);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * This method reads the value starting at the current token.
+     * @param parser Parser
+     * @param token Current token
+     * @return Value
+     * @throws IOException Exception thrown
+     */
+    @SuppressWarnings("unchecked")
+    private Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                JSONObject obj = new JSONObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    obj.put(name, readValue(parser, parser.nextToken()));
+                }
+                return obj;
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                JsonToken next;
+                while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    array.add(readValue(parser, next));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    return parser.getBigIntegerValue();
+                }
+                return parser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(parser, "unexpected token " + token);
+        }
+    }
+}
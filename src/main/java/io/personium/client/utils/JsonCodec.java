@@ -0,0 +1,50 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import io.personium.client.DaoException;
+
+/**
+ * This is the JSON parser interface. The parsed values are the json-simple types returned by the client API: JSONObject,
+ * JSONArray, String, Long (or BigInteger when it does not fit), Double, Boolean and null. Implementations are looked up
+ * with {@link java.util.ServiceLoader}, see {@link JsonUtils#getCodec()}.
+ */
+public interface JsonCodec {
+
+    /**
+     * This is the method signature for parsing a UTF-8 JSON text from a stream. The stream is read as it is parsed and
+     * is not closed.
+     * @param in Stream
+     * @return Parsed value
+     * @throws IOException Exception thrown when reading the stream fails
+     * @throws DaoException Exception thrown when the text is not valid JSON
+     */
+    Object parse(InputStream in) throws IOException, DaoException;
+
+    /**
+     * This is the method signature for parsing a JSON text from a reader. The reader is not closed.
+     * @param reader Reader
+     * @return Parsed value
+     * @throws IOException Exception thrown when reading fails
+     * @throws DaoException Exception thrown when the text is not valid JSON
+     */
+    Object parse(Reader reader) throws IOException, DaoException;
+}
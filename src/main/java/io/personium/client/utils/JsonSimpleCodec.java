@@ -0,0 +1,62 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import io.personium.client.DaoException;
+
+/**
+ * This is the JsonCodec based on json-simple. It is used when no other implementation is available.
+ */
+public class JsonSimpleCodec implements JsonCodec {
+
+    /**
+     * This method parses a UTF-8 JSON text from a stream.
+     * @param in Stream
+     * @return Parsed value
+     * @throws IOException Exception thrown
+     * @throws DaoException Exception thrown
+     */
+    @Override
+    public Object parse(InputStream in) throws IOException, DaoException {
+        return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method parses a JSON text from a reader.
+     * @param reader Reader
+     * @return Parsed value
+     * @throws IOException Exception thrown
+     * @throws DaoException Exception thrown
+     */
+    @Override
+    public Object parse(Reader reader) throws IOException, DaoException {
+        try {
+            return new JSONParser().parse(reader);
+        } catch (ParseException e) {
+            throw DaoException.create("parse exception: " + e.getMessage(), 0);
+        }
+    }
+}
@@ -16,7 +16,9 @@
  */
 package io.personium.client.utils;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.ServiceLoader;
 
 import org.json.simple.JSONObject;
 
@@ -27,6 +29,11 @@ import org.json.simple.JSONObject;
  * This is the JSON-related utility class.
  */
 public final class JsonUtils {
+    /** Class name of the Jackson streaming parser, used to detect jackson-core on the class path. */
+    private static final String JACKSON_FACTORY_CLASS = "com.fasterxml.jackson.core.JsonFactory";
+    /** JSON parser used by the responses, looked up on first use. */
+    private static volatile JsonCodec codec;
+
     // /**
     // * コンストラクタ.
     // */
@@ -49,4 +56,44 @@ public final class JsonUtils {
     public static String toJsonString(final Map<String, Object> jsonMap) {
         return JSONObject.toJSONString(jsonMap);
     }
+
+    /**
+     * This method returns the JSON parser used to read the response bodies. On first use it is the first JsonCodec
+     * registered with {@link ServiceLoader}, else the Jackson streaming parser if jackson-core is on the class path,
+     * else json-simple.
+     * @return JsonCodec object
+     */
+    public static JsonCodec getCodec() {
+        JsonCodec current = codec;
+        if (current == null) {
+            current = lookupCodec();
+            codec = current;
+        }
+        return current;
+    }
+
+    /**
+     * This method sets the JSON parser used to read the response bodies.
+     * @param value JsonCodec object, null to look it up again
+     */
+    public static void setCodec(JsonCodec value) {
+        codec = value;
+    }
+
+    /**
+     * This method looks up the JSON parser.
+     * @return JsonCodec object
+     */
+    private static JsonCodec lookupCodec() {
+        Iterator<JsonCodec> it = ServiceLoader.load(JsonCodec.class, JsonUtils.class.getClassLoader()).iterator();
+        if (it.hasNext()) {
+            return it.next();
+        }
+        try {
+            Class.forName(JACKSON_FACTORY_CLASS, false, JsonUtils.class.getClassLoader());
+            return new JacksonJsonCodec();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return new JsonSimpleCodec();
+        }
+    }
 }
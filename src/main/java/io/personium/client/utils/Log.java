@@ -16,16 +16,22 @@
  */
 package io.personium.client.utils;
 
+import java.util.function.Supplier;
+
 ///**
 // * ログクラス.
 // */
 /**
- * This class represents Log class used for logging purposes.
+ * This class represents Log class used for logging purposes. The logger is created by the default log factory, and
+ * created again when the default log factory is changed, so a Log can be kept in a static field.
  */
 public class Log {
+    /** Class of the logger. */
+    @SuppressWarnings("rawtypes")
+    private final Class clazz;
     // ログオブジェクト
-    /** Log object. */
-    private PersoniumLogger log;
+    /** Log object, with the factory which created it. */
+    private volatile Binding binding;
 
     // /**
     // * コンストラクタ.
@@ -37,7 +43,17 @@ public class Log {
      */
     @SuppressWarnings("rawtypes")
     public Log(Class clazz) {
-        log = PersoniumLoggerFactory.getLogger(clazz);
+        this.clazz = clazz;
+        PersoniumLoggerFactory factory = PersoniumLoggerFactory.getDefaultFactory();
+        this.binding = new Binding(factory, factory.newInstance(clazz));
+    }
+
+    /**
+     * This method returns whether the debugging information is output.
+     * @return true if enabled
+     */
+    public boolean isDebugEnabled() {
+        return this.logger().isDebugEnabled();
     }
 
     // /**
@@ -49,6 +65,76 @@ public class Log {
      * @param value Message
      */
     public void debug(String value) {
-        log.debug(value);
+        this.logger().debug(value);
+    }
+
+    /**
+     * This method logs the output information, with the {} of the format replaced by the argument.
+     * @param format Format
+     * @param arg Argument
+     */
+    public void debug(String format, Object arg) {
+        this.logger().debug(format, arg);
+    }
+
+    /**
+     * This method logs the output information, with the {} of the format replaced by the arguments.
+     * @param format Format
+     * @param arg1 First argument
+     * @param arg2 Second argument
+     */
+    public void debug(String format, Object arg1, Object arg2) {
+        this.logger().debug(format, arg1, arg2);
+    }
+
+    /**
+     * This method logs the output information, with the {} of the format replaced by the arguments.
+     * @param format Format
+     * @param args Arguments
+     */
+    public void debug(String format, Object... args) {
+        this.logger().debug(format, args);
+    }
+
+    /**
+     * This method logs the output information returned by the supplier, which is only called if enabled.
+     * @param value Supplier of the message
+     */
+    public void debug(Supplier<String> value) {
+        this.logger().debug(value);
+    }
+
+    /**
+     * This method returns the logger created by the default log factory.
+     * @return PersoniumLogger
+     */
+    private PersoniumLogger logger() {
+        Binding current = this.binding;
+        PersoniumLoggerFactory factory = PersoniumLoggerFactory.getDefaultFactory();
+        if (current.factory != factory) {
+            current = new Binding(factory, factory.newInstance(this.clazz));
+            this.binding = current;
+        }
+        return current.logger;
+    }
+
+    /**
+     * This class keeps a logger with the factory which created it.
+     */
+    private static final class Binding {
+        /** Log factory. */
+        private final PersoniumLoggerFactory factory;
+        /** Logger. */
+        private final PersoniumLogger logger;
+
+        /**
+         * This is the parameterized constructor.
+         * @param f Log factory
+         * @param l Logger
+         */
+        Binding(PersoniumLoggerFactory f, PersoniumLogger l) {
+            this.factory = f;
+            this.logger = l;
+        }
     }
 }
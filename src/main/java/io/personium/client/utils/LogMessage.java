@@ -0,0 +1,56 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.utils;
+
+/**
+ * This class formats the messages of the parameterized log methods, replacing each {} by the next argument as SLF4J
+ * does. The {} without argument are kept.
+ */
+final class LogMessage {
+    /** Placeholder of an argument. */
+    private static final String PLACEHOLDER = "{}";
+
+    /**
+     * This is the default constructor made private to disallow instantiation of objects of this class.
+     */
+    private LogMessage() {
+    }
+
+    /**
+     * This method formats a message.
+     * @param format Format
+     * @param args Arguments
+     * @return Message
+     */
+    static String format(String format, Object... args) {
+        if (format == null || args == null || args.length == 0) {
+            return format;
+        }
+        StringBuilder sb = new StringBuilder(format.length() * 2);
+        int start = 0;
+        for (Object arg : args) {
+            int index = format.indexOf(PLACEHOLDER, start);
+            if (index < 0) {
+                break;
+            }
+            sb.append(format, start, index).append(arg);
+            start = index + PLACEHOLDER.length();
+        }
+        sb.append(format, start, format.length());
+        return sb.toString();
+    }
+}
@@ -16,8 +16,11 @@
  */
 package io.personium.client.utils;
 
+import java.util.function.Supplier;
+
 /**
- * This is the Personium log interface.
+ * This is the Personium log interface. Only {@link #debug(String)} has to be implemented; the other methods build the
+ * message only when {@link #isDebugEnabled()} is true, so that a disabled logger costs no string building.
  */
 public interface PersoniumLogger {
 
@@ -30,4 +33,57 @@ public interface PersoniumLogger {
      * @param msg output message
      */
     void debug(String msg);
+
+    /**
+     * This method returns whether the debugging information is output. The callers building a message in several
+     * steps should check it first.
+     * @return true if enabled (default)
+     */
+    default boolean isDebugEnabled() {
+        return true;
+    }
+
+    /**
+     * This method outputs the debugging information, with the {} of the format replaced by the argument.
+     * @param format Format, such as "status: {}"
+     * @param arg Argument
+     */
+    default void debug(String format, Object arg) {
+        if (this.isDebugEnabled()) {
+            this.debug(LogMessage.format(format, arg));
+        }
+    }
+
+    /**
+     * This method outputs the debugging information, with the {} of the format replaced by the arguments.
+     * @param format Format, such as "header[{}] : {}"
+     * @param arg1 First argument
+     * @param arg2 Second argument
+     */
+    default void debug(String format, Object arg1, Object arg2) {
+        if (this.isDebugEnabled()) {
+            this.debug(LogMessage.format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * This method outputs the debugging information, with the {} of the format replaced by the arguments.
+     * @param format Format
+     * @param args Arguments
+     */
+    default void debug(String format, Object... args) {
+        if (this.isDebugEnabled()) {
+            this.debug(LogMessage.format(format, args));
+        }
+    }
+
+    /**
+     * This method outputs the debugging information returned by the supplier, which is only called if enabled.
+     * @param msg Supplier of the output message
+     */
+    default void debug(Supplier<String> msg) {
+        if (this.isDebugEnabled()) {
+            this.debug(msg.get());
+        }
+    }
 }
@@ -20,7 +20,7 @@ package io.personium.client.utils;
  * This is the abstract Personium log factory class.
  */
 public abstract class PersoniumLoggerFactory {
-    private static PersoniumLoggerFactory personiumLoggerFactory = new StdLoggerFactory();
+    private static volatile PersoniumLoggerFactory personiumLoggerFactory = new StdLoggerFactory();
 
     // /**
     // * デフォルトログファクトリー設定.
@@ -34,6 +34,14 @@ public abstract class PersoniumLoggerFactory {
         personiumLoggerFactory = loggerFactory;
     }
 
+    /**
+     * This method returns the default log factory.
+     * @return Log Factory
+     */
+    static PersoniumLoggerFactory getDefaultFactory() {
+        return personiumLoggerFactory;
+    }
+
     /**
      * This method is used for Log factory acquisition.
      * @param clazz class
@@ -0,0 +1,78 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * It creates a new object of Slf4jLogger. This is the log class writing the debugging information to the SLF4J
+ * logger of the class, at the DEBUG level.
+ */
+public class Slf4jLogger implements PersoniumLogger {
+    /** SLF4J logger. */
+    private final Logger logger;
+
+    /**
+     * This is the parameterized constructor.
+     * @param clazz Class
+     */
+    @SuppressWarnings("rawtypes")
+    public Slf4jLogger(Class clazz) {
+        this.logger = LoggerFactory.getLogger(clazz);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void debug(String msg) {
+        this.logger.debug(msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDebugEnabled() {
+        return this.logger.isDebugEnabled();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void debug(String format, Object arg) {
+        this.logger.debug(format, arg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        this.logger.debug(format, arg1, arg2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void debug(String format, Object... args) {
+        this.logger.debug(format, args);
+    }
+}
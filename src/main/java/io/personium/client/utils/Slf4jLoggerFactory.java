@@ -0,0 +1,36 @@
+/**
+ * Personium
+ * Copyright 2014-2021 Personium Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.client.utils;
+
+/**
+ * This is the log factory class creating Slf4jLogger objects. It needs slf4j-api and a binding, such as
+ * logback-classic, on the class path, and is enabled by
+ * {@link PersoniumLoggerFactory#setDefaultFactory(PersoniumLoggerFactory)}.
+ */
+public class Slf4jLoggerFactory extends PersoniumLoggerFactory {
+
+    /**
+     * This method is used for new instantiation of Slf4jLogger.
+     * @param clazz Class
+     * @return PersoniumLogger Personium Log
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected PersoniumLogger newInstance(Class clazz) {
+        return new Slf4jLogger(clazz);
+    }
+}
@@ -20,12 +20,18 @@ package io.personium.client.utils;
 // * 標準出力ログクラス.
 // */
 /**
- * This is the Standard output log class.
+ * This is the Standard output log class. The debugging information is only output when the system property
+ * {@value #DEBUG_PROPERTY} is "true" when the logger is created.
  */
 public class StdLogger implements PersoniumLogger {
+    /** System property enabling the debugging information. */
+    public static final String DEBUG_PROPERTY = "io.personium.client.debug";
+
     @SuppressWarnings("rawtypes")
     /** Variable Clazz. */
     private Class clazz;
+    /** Whether the debugging information is output. */
+    private final boolean debugEnabled;
 
     // /**
     // * コンストラクタ.
@@ -38,6 +44,16 @@ public class StdLogger implements PersoniumLogger {
     @SuppressWarnings("rawtypes")
     public StdLogger(Class clazz) {
         this.clazz = clazz;
+        this.debugEnabled = Boolean.getBoolean(DEBUG_PROPERTY);
+    }
+
+    /**
+     * This method returns whether the debugging information is output.
+     * @return true if the system property {@value #DEBUG_PROPERTY} is "true"
+     */
+    @Override
+    public boolean isDebugEnabled() {
+        return this.debugEnabled;
     }
 
     // /**
@@ -49,7 +65,9 @@ public class StdLogger implements PersoniumLogger {
      * @param msg Output Message
      */
     public void debug(String msg) {
-        System.out.println(msg);
+        if (this.debugEnabled) {
+            System.out.println(msg);
+        }
     }
 
     // /**